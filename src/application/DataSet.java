@@ -16,10 +16,10 @@ import util.GraphLoader;
  */
 public class DataSet {
 	String filePath;
-	roadgraph.MapGraph graph;
-	Set<GeographicPoint> intersections;
-    private HashMap<geography.GeographicPoint,HashSet<geography.RoadSegment>>  roads;
-	boolean currentlyDisplayed;
+	volatile roadgraph.MapGraph graph;
+	volatile Set<GeographicPoint> intersections;
+    private volatile HashMap<geography.GeographicPoint,HashSet<geography.RoadSegment>>  roads;
+	volatile boolean currentlyDisplayed;
 
 	public DataSet (String path) {
         this.filePath = path;
@@ -40,10 +40,13 @@ public class DataSet {
      * other than null (i.e. it's been implemented) we get the vertices from 
      * the graph itself.  But if the graph hasn't been implemented, we return 
      * the set of intersections we separately maintain specifically for this purpose.
-     * @return The set of road intersections (vertices in the graph)
+     * @return The set of road intersections (vertices in the graph), or
+     *   null if the data set is not loaded
      */
     public Set<GeographicPoint> getIntersections() {
-    	Set<GeographicPoint> intersectionsFromGraph = graph.getVertices();
+    	// read once, since the registry may unload the data set meanwhile
+    	roadgraph.MapGraph current = graph;
+    	Set<GeographicPoint> intersectionsFromGraph = (current == null) ? null : current.getVertices();
     	if (intersectionsFromGraph == null) {
     		return intersections;
     	}
@@ -54,12 +57,33 @@ public class DataSet {
     
     public HashMap<geography.GeographicPoint,HashSet<geography.RoadSegment>>  getRoads() { return this.roads; }
 
-    public void initializeGraph() {
-        graph = new roadgraph.MapGraph();
-        roads = new HashMap<geography.GeographicPoint, HashSet<geography.RoadSegment>>();
-        intersections = new HashSet<GeographicPoint>();
+    /** Parse the map file.  The data is only published once it is 
+     * complete, so this may run on a background thread.
+     */
+    public synchronized void initializeGraph() {
+        roadgraph.MapGraph newGraph = new roadgraph.MapGraph();
+        HashMap<geography.GeographicPoint,HashSet<geography.RoadSegment>> newRoads = 
+        		new HashMap<geography.GeographicPoint, HashSet<geography.RoadSegment>>();
+        Set<GeographicPoint> newIntersections = new HashSet<GeographicPoint>();
         //TODO: change to use intersections for points in graph.
-    	GraphLoader.loadRoadMap(filePath, graph, roads, intersections);
+    	GraphLoader.loadRoadMap(filePath, newGraph, newRoads, newIntersections);
+    	intersections = newIntersections;
+    	roads = newRoads;
+    	graph = newGraph;
+    }
+    
+    /** @return true if the map file has been parsed and not since unloaded */
+    public boolean isLoaded() {
+    	return graph != null && roads != null;
+    }
+    
+    /** Drop the parsed data so it can be garbage collected.  It is parsed
+     * again by the next call to initializeGraph.
+     */
+    public synchronized void unload() {
+    	graph = null;
+    	roads = null;
+    	intersections = null;
     }
 
 	public String getFilePath() {
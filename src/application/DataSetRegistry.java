@@ -0,0 +1,330 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+import geography.RoadSegment;
+
+/**
+ * Keeps one DataSet per map file, loads them on background threads when 
+ * first asked for, and reuses them while they stay loaded.
+ * 
+ * The registry estimates the heap used by each loaded data set, plus the
+ * search arrays each searching thread keeps, which are sized for the 
+ * largest graph it searches.  When the total goes over the memory budget, the least recently used data sets 
+ * are unloaded until it fits again; data sets that are displayed or still
+ * loading are never unloaded.  An unloaded data set is loaded again the 
+ * next time it is asked for.
+ * 
+ * Code that reads an unloaded-able data set should take its graph and 
+ * roads into local variables once, since they may be unloaded afterwards.
+ *
+ */
+public class DataSetRegistry {
+
+	/** System property giving the default budget in megabytes */
+	public static final String BUDGET_PROPERTY = "datasets.budget.mb";
+
+	/* Rough heap sizes, in bytes, of the objects a loaded map is made of,
+	 * for a 64 bit JVM with compressed references.  They include the 
+	 * hash table entries that refer to each object.
+	 */
+	private static final long POINT_BYTES = 32;
+	private static final long VERTEX_BYTES = 200;   // graph node, its edge set, map entry
+	private static final long EDGE_BYTES = 120;     // edge, two set entries; names are shared
+	private static final long ROAD_KEY_BYTES = 120; // roads map entry and its segment set
+	private static final long SEGMENT_BYTES = 160;  // segment, geometry list, set entry
+	private static final long INTERSECTION_BYTES = 40;
+
+	private static volatile DataSetRegistry defaultRegistry;
+
+	/** The registry's record of one map file */
+	private static class Entry {
+		final DataSet dataSet;
+		CompletableFuture<DataSet> loading; // null when not loaded
+		long bytes;
+		long searchBytes; // one thread's search arrays for the graph
+		boolean stale; // the file changed while the data set was displayed
+
+		Entry(DataSet dataSet) {
+			this.dataSet = dataSet;
+		}
+	}
+
+	// in access order, so the least recently used data set comes first
+	private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true);
+	private final ExecutorService loader;
+	private final long budgetBytes;
+	private long usedBytes;
+	private int searchThreads = 1;
+	private volatile Consumer<DataSet> onLoad = (d) -> {};
+
+	private long loads;
+	private long reuses;
+	private long evictions;
+
+	/**
+	 * Create an empty registry.
+	 * @param budgetBytes The most heap to use for loaded data sets
+	 * @param loaderThreads The number of data sets to load at once
+	 */
+	public DataSetRegistry(long budgetBytes, int loaderThreads) {
+		if (budgetBytes < 1 || loaderThreads < 1)
+			throw new IllegalArgumentException("budget and loader threads must be positive");
+		this.budgetBytes = budgetBytes;
+		AtomicInteger threads = new AtomicInteger();
+		loader = Executors.newFixedThreadPool(loaderThreads, (r) -> {
+			Thread t = new Thread(r, "dataset-loader-" + threads.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Get the registry shared by the application.  Its budget is set by
+	 * the datasets.budget.mb system property, or else half the maximum heap.
+	 * @return The shared registry
+	 */
+	public static DataSetRegistry getDefault() {
+		DataSetRegistry registry = defaultRegistry;
+		if (registry == null) {
+			synchronized (DataSetRegistry.class) {
+				registry = defaultRegistry;
+				if (registry == null) {
+					long budget = Runtime.getRuntime().maxMemory() / 2;
+					String mb = System.getProperty(BUDGET_PROPERTY);
+					if (mb != null) {
+						budget = Long.parseLong(mb.trim()) << 20;
+					}
+					registry = new DataSetRegistry(budget, 1);
+					defaultRegistry = registry;
+				}
+			}
+		}
+		return registry;
+	}
+
+	/**
+	 * Set something to do with each data set when it has been loaded,
+	 * before it is handed to whoever asked for it, e.g. set up its graph.
+	 * It runs on the loading thread.
+	 * @param onLoad The action to run
+	 */
+	public void setOnLoad(Consumer<DataSet> onLoad) {
+		this.onLoad = (onLoad == null) ? (d) -> {} : onLoad;
+	}
+
+	/**
+	 * Set how many threads may search the data sets at once, so their
+	 * search arrays are counted against the budget.
+	 * @param threads The number of searching threads, 1 by default
+	 */
+	public synchronized void setSearchThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("search threads must be positive");
+		this.searchThreads = threads;
+	}
+
+	/**
+	 * Get the data set for a map file, without loading it.  The same 
+	 * DataSet is returned every time for the same path.
+	 * @param path The .map file
+	 * @return The data set
+	 */
+	public synchronized DataSet get(String path) {
+		return entry(path).dataSet;
+	}
+
+	private Entry entry(String path) {
+		Entry entry = entries.get(path);
+		if (entry == null) {
+			entry = new Entry(new DataSet(path));
+			entries.put(path, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Load the data set for a map file in the background, or reuse it if
+	 * it is already loaded or loading.
+	 * @param path The .map file
+	 * @return A future completed with the loaded data set
+	 */
+	public synchronized CompletableFuture<DataSet> load(String path) {
+		Entry entry = entry(path);
+		if (entry.stale && entry.loading != null && entry.loading.isDone() 
+				&& !entry.dataSet.isDisplayed()) {
+			unload(entry);
+		}
+		if (entry.loading != null && !entry.loading.isCompletedExceptionally()) {
+			if (entry.loading.isDone() && !entry.dataSet.isLoaded()) {
+				// unloaded by someone else, account for it and load again
+				usedBytes -= entry.bytes;
+				entry.bytes = 0;
+				entry.searchBytes = 0;
+			}
+			else {
+				reuses++;
+				return entry.loading;
+			}
+		}
+		loads++;
+		CompletableFuture<DataSet> loading = CompletableFuture.supplyAsync(() -> {
+			entry.dataSet.initializeGraph();
+			onLoad.accept(entry.dataSet);
+			return entry.dataSet;
+		}, loader);
+		entry.loading = loading;
+		loading.whenComplete((dataSet, error) -> loaded(entry, loading, error == null));
+		return loading;
+	}
+
+	/**
+	 * Load a data set in the background, or reuse it if it is loaded.
+	 * @param dataSet A data set from this registry
+	 * @return A future completed with the loaded data set
+	 */
+	public CompletableFuture<DataSet> load(DataSet dataSet) {
+		return load(dataSet.getFilePath());
+	}
+
+	private synchronized void loaded(Entry entry, CompletableFuture<DataSet> loading, boolean succeeded) {
+		if (entry.loading != loading) {
+			return;
+		}
+		if (!succeeded) {
+			entry.loading = null;
+			return;
+		}
+		entry.bytes = estimateFootprint(entry.dataSet);
+		entry.searchBytes = entry.dataSet.getGraph().getSearchSpaceBytes();
+		usedBytes += entry.bytes;
+		evict(entry);
+	}
+
+	/** Unload least recently used data sets until within budget */
+	private void evict(Entry keep) {
+		Iterator<Entry> it = entries.values().iterator();
+		while (usedBytes + searchSpaceBytes() > budgetBytes && it.hasNext()) {
+			Entry entry = it.next();
+			if (entry == keep || entry.loading == null || !entry.loading.isDone() 
+					|| entry.dataSet.isDisplayed()) {
+				continue;
+			}
+			unload(entry);
+			evictions++;
+		}
+	}
+
+	private void unload(Entry entry) {
+		entry.stale = false;
+		entry.dataSet.unload();
+		entry.loading = null;
+		usedBytes -= entry.bytes;
+		entry.bytes = 0;
+		entry.searchBytes = 0;
+	}
+
+	/** @return The search arrays of all the searching threads, each sized for the largest loaded graph */
+	private long searchSpaceBytes() {
+		long largest = 0;
+		for (Entry entry : entries.values()) {
+			largest = Math.max(largest, entry.searchBytes);
+		}
+		return searchThreads * largest;
+	}
+
+	/**
+	 * Forget the loaded data for a map file, e.g. because the file has been
+	 * written again.  It is loaded afresh the next time it is asked for,
+	 * or if it is displayed, the next time it is asked for after that.
+	 * @param path The .map file
+	 */
+	public synchronized void invalidate(String path) {
+		Entry entry = entries.get(path);
+		if (entry == null || entry.loading == null) {
+			return;
+		}
+		if (entry.loading.isDone() && !entry.dataSet.isDisplayed()) {
+			unload(entry);
+		}
+		else {
+			entry.stale = true;
+		}
+	}
+
+	/** @return The paths of the data sets that are currently loaded */
+	public synchronized List<String> getLoadedPaths() {
+		List<String> paths = new ArrayList<String>();
+		for (Map.Entry<String,Entry> e : entries.entrySet()) {
+			if (e.getValue().dataSet.isLoaded()) {
+				paths.add(e.getKey());
+			}
+		}
+		return paths;
+	}
+
+	/** @return The estimated heap used by the loaded data sets and their searches, in bytes */
+	public synchronized long getUsedBytes() {
+		return usedBytes + searchSpaceBytes();
+	}
+
+	public long getBudgetBytes() {
+		return budgetBytes;
+	}
+
+	/** @return The number of times a data set was parsed */
+	public synchronized long getLoads() {
+		return loads;
+	}
+
+	/** @return The number of times a loaded or loading data set was reused */
+	public synchronized long getReuses() {
+		return reuses;
+	}
+
+	/** @return The number of data sets unloaded to stay within the budget */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/** Stop the loading threads */
+	public void shutdown() {
+		loader.shutdown();
+	}
+
+	/**
+	 * Estimate the heap used by a loaded data set from the number of 
+	 * objects it is made of.
+	 * @param dataSet A loaded data set
+	 * @return The estimated size in bytes
+	 */
+	public static long estimateFootprint(DataSet dataSet) {
+		roadgraph.MapGraph graph = dataSet.getGraph();
+		Map<GeographicPoint,HashSet<RoadSegment>> roads = dataSet.getRoads();
+		if (graph == null || roads == null) {
+			return 0;
+		}
+		long bytes = graph.getNumVertices() * (VERTEX_BYTES + POINT_BYTES)
+				+ graph.getNumEdges() * EDGE_BYTES
+				+ graph.getNumVertices() * INTERSECTION_BYTES;
+		for (HashSet<RoadSegment> segments : roads.values()) {
+			bytes += ROAD_KEY_BYTES;
+			for (RoadSegment segment : segments) {
+				// each segment is in the sets of both its ends, so count half
+				bytes += (SEGMENT_BYTES + segment.getNumGeometryPoints() * (POINT_BYTES + 4)) / 2;
+			}
+		}
+		return bytes;
+	}
+}
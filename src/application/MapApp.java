@@ -337,10 +337,18 @@ implements MapComponentInitializedListener {
 		RadioButton rbB = new RadioButton("BFS");
 		rbB.setUserData("BFS");
 
+		RadioButton rbK = new RadioButton("K Shortest");
+		rbK.setUserData("K Shortest");
+
+		RadioButton rbAlt = new RadioButton("Alternatives");
+		rbAlt.setUserData("Alternatives");
+
 		rbB.setToggleGroup(group);
 		rbD.setToggleGroup(group);
 		rbA.setToggleGroup(group);
-		return new LinkedList<RadioButton>(Arrays.asList(rbB, rbD, rbA));
+		rbK.setToggleGroup(group);
+		rbAlt.setToggleGroup(group);
+		return new LinkedList<RadioButton>(Arrays.asList(rbB, rbD, rbA, rbK, rbAlt));
 	}
 
 
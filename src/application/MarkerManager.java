@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import gmapsfx.javascript.event.UIEventType;
 import gmapsfx.javascript.object.Animation;
@@ -17,6 +18,7 @@ import gmapsfx.javascript.object.GoogleMap;
 import gmapsfx.javascript.object.LatLong;
 import gmapsfx.javascript.object.Marker;
 import gmapsfx.javascript.object.MarkerOptions;
+import javafx.application.Platform;
 import javafx.scene.control.Button;
 import gmapsfx.javascript.object.LatLongBounds;
 import netscape.javascript.JSObject;
@@ -26,6 +28,8 @@ public class MarkerManager {
     private static final double DEFAULT_Z = 2;
     private static final double SELECT_Z = 1;
     private static final double STRTDEST_Z = 3;
+    /** Tries to load a data set that is unloaded again before it can be shown */
+    private static final int MAX_LOAD_ATTEMPTS = 3;
 
     private HashMap<geography.GeographicPoint, Marker> markerMap;
     private ArrayList<geography.GeographicPoint> markerPositions;
@@ -209,9 +213,43 @@ public class MarkerManager {
     	}
     }
     public void displayDataSet() {
+    	displayDataSet(dataSet, 0);
+    }
+
+    /* The data set is normally loaded already.  If it was unloaded 
+     * meanwhile, load it off the UI thread and show it when done.
+     */
+    private void displayDataSet(DataSet shown, int attempts) {
+    	Set<geography.GeographicPoint> intersections = shown.getIntersections();
+    	if (intersections != null) {
+    		displayIntersections(intersections);
+    		return;
+    	}
+    	if (attempts == MAX_LOAD_ATTEMPTS) {
+    		shown.setDisplayed(false);
+    		MapApp.showErrorAlert("Display Error", "Could not keep " + shown.getFilePath() 
+    				+ " loaded; the memory budget is too small");
+    		return;
+    	}
+    	DataSetRegistry.getDefault().load(shown).whenComplete((loaded, error) -> 
+    		Platform.runLater(() -> {
+    			if (shown != dataSet) {
+    				return; // another data set was chosen meanwhile
+    			}
+    			if (error != null) {
+    				shown.setDisplayed(false);
+    				MapApp.showErrorAlert("Display Error", "Could not load " 
+    						+ shown.getFilePath() + " : " + error.getMessage());
+    			}
+    			else {
+    				displayDataSet(shown, attempts + 1);
+    			}
+    		}));
+    }
+
+    private void displayIntersections(Set<geography.GeographicPoint> intersections) {
         markerPositions = new ArrayList<geography.GeographicPoint>();
-        dataSet.initializeGraph();
-    	Iterator<geography.GeographicPoint>it = dataSet.getIntersections().iterator();
+    	Iterator<geography.GeographicPoint>it = intersections.iterator();
         bounds = new LatLongBounds();
         while(it.hasNext()) {
         	geography.GeographicPoint point = it.next();
@@ -20,6 +20,7 @@ import gmapsfx.javascript.object.MarkerOptions;
 import javafx.concurrent.Task;
 import javafx.scene.control.Button;
 import netscape.javascript.JSObject;
+import roadgraph.SearchStats;
 
 public class RouteVisualization {
 	List<geography.GeographicPoint> points;
@@ -27,6 +28,7 @@ public class RouteVisualization {
 	MarkerManager manager;
 	JavascriptArray markers;
     IJavascriptRuntime runtime;
+    SearchStats stats;
 
 
 
@@ -38,6 +40,16 @@ public class RouteVisualization {
 
 	}
 
+    /**
+     * Set the statistics of the search being visualized, so the
+     * real counts can be reported instead of the number of markers.
+     *
+     * @param stats the statistics of the search
+     */
+    public void setStats(SearchStats stats) {
+    	this.stats = stats;
+    }
+
     public void acceptPoint(geography.GeographicPoint point) {
     	points.add(point);
 
@@ -70,7 +82,14 @@ public class RouteVisualization {
 
         // get javascript runtime and execute animation
     	runtime = JavascriptRuntime.getInstance();
-    	String command = runtime.getFunction("visualizeSearch", manager.getMap(), jsArray);
+    	String command;
+    	if(stats != null) {
+    		command = runtime.getFunction("visualizeSearch", manager.getMap(), jsArray,
+    				stats.getNodesSettled(), stats.getEdgesRelaxed());
+    	}
+    	else {
+    		command = runtime.getFunction("visualizeSearch", manager.getMap(), jsArray);
+    	}
     	// System.out.println(command);
 
     	runtime.execute(command);
@@ -7,12 +7,14 @@ import java.io.FileReader;
 import com.sun.javafx.geom.Rectangle;
 
 import application.DataSet;
+import application.DataSetRegistry;
 import application.MapApp;
 import application.services.GeneralService;
 import application.services.RouteService;
 import gmapsfx.javascript.object.GoogleMap;
 import gmapsfx.javascript.object.LatLong;
 import gmapsfx.javascript.object.LatLongBounds;
+import javafx.application.Platform;
 import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
@@ -62,7 +64,7 @@ public class FetchController {
 			BufferedReader reader = new BufferedReader(new FileReader(persistPath));
             String line = reader.readLine();
             while(line != null) {
-            	dataChoices.getItems().add(new DataSet(GeneralService.getDataSetDirectory() + line));
+            	dataChoices.getItems().add(DataSetRegistry.getDefault().get(GeneralService.getDataSetDirectory() + line));
                 line = reader.readLine();
             }
 
@@ -178,7 +180,19 @@ public class FetchController {
                 if(routeService.isRouteDisplayed()) {
                 	routeService.hideRoute();
                 }
-        		generalService.displayIntersections(dataSet);
+                // parse the file off the UI thread, or reuse it if still loaded
+                displayButton.setDisable(true);
+                DataSetRegistry.getDefault().load(dataSet).whenComplete((loaded, error) -> 
+                	Platform.runLater(() -> {
+                		displayButton.setDisable(false);
+                		if (error != null) {
+                			MapApp.showErrorAlert("Display Error", "Could not load " 
+                					+ dataSet.getFilePath() + " : " + error.getMessage());
+                		}
+                		else {
+                			generalService.displayIntersections(loaded);
+                		}
+                	}));
 
             }
             else {
@@ -29,6 +29,8 @@ import javafx.util.StringConverter;
 
 public class RouteController {
 	// Strings for slider labels
+	public static final int ALTERNATIVES = 5;
+	public static final int K_SHORTEST = 4;
 	public static final int BFS = 3;
     public static final int A_STAR = 2;
     public static final int DIJ = 1;
@@ -141,6 +143,12 @@ public class RouteController {
             else if(group.getSelectedToggle().getUserData().equals("BFS")) {
             	selectedToggle = BFS;
             }
+            else if(group.getSelectedToggle().getUserData().equals("K Shortest")) {
+            	selectedToggle = K_SHORTEST;
+            }
+            else if(group.getSelectedToggle().getUserData().equals("Alternatives")) {
+            	selectedToggle = ALTERNATIVES;
+            }
             else {
             	System.err.println("Invalid radio button selection");
             }
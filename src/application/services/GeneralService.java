@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.regex.Pattern;
 
 import application.DataSet;
+import application.DataSetRegistry;
 import application.MapApp;
 import application.MarkerManager;
 import application.SelectManager;
@@ -91,9 +92,9 @@ public class GeneralService {
             markerManager.getDataSet().setDisplayed(false);
         }
 
-        // display new data set
-    	selectManager.setAndDisplayData(dataset);
+        // display new data set; mark it first so the registry keeps it loaded
         dataset.setDisplayed(true);
+    	selectManager.setAndDisplayData(dataset);
 
     }
     
@@ -144,7 +145,13 @@ public class GeneralService {
           if(task.getValue().equals(fName)) {
                addDataFile(fName);
 
-               cb.getItems().add(new DataSet(fName));
+               // the file may have been written before, so drop any old data
+               DataSetRegistry registry = DataSetRegistry.getDefault();
+               registry.invalidate(fName);
+               DataSet dataSet = registry.get(fName);
+               if (!cb.getItems().contains(dataSet)) {
+            	   cb.getItems().add(dataSet);
+               }
                if(fetchingAlert.isShowing()) {
             	   fetchingAlert.close();
                }
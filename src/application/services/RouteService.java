@@ -4,8 +4,6 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -16,17 +14,17 @@ import application.MarkerManager;
 import application.RouteVisualization;
 import application.controllers.RouteController;
 
-import java.util.Iterator;
-
 import geography.GeographicPoint;
-import geography.RoadSegment;
 import gmapsfx.GoogleMapView;
 import gmapsfx.javascript.object.GoogleMap;
 import gmapsfx.javascript.object.LatLong;
 import gmapsfx.javascript.object.LatLongBounds;
 import gmapsfx.javascript.object.MVCArray;
 import gmapsfx.shapes.Polyline;
+import gmapsfx.shapes.PolylineOptions;
 import javafx.scene.control.Button;
+import roadgraph.SearchResult;
+import util.RouteGeometry;
 
 public class RouteService {
 	private GoogleMap map;
@@ -36,6 +34,15 @@ public class RouteService {
     private Polyline routeLine;
     private RouteVisualization rv;
 
+    // Number of routes shown by the k shortest paths and alternatives options
+    private static final int ALTERNATIVE_ROUTES = 3;
+
+    // Colors of the routes when several are shown, best first
+    private static final String[] ROUTE_COLORS = { "#1E64DC", "#E67E22", "#27AE60", "#8E44AD", "#C0392B" };
+
+    // Every line drawn when several routes are shown, routeLine among them
+    private List<Polyline> routeLines = new ArrayList<Polyline>();
+
 	public RouteService(GoogleMapView mapComponent, MarkerManager manager) {
 		this.map = mapComponent.getMap();
         this.markerManager = manager;
@@ -78,15 +85,53 @@ public class RouteService {
 		return true;
 	}
 
+	/**
+	 * Displays several routes on Google Map, each in its own color, the
+	 * first on top
+	 * @param routes The routes, best first
+	 * @return returns false if there is no route to display
+	 */
+	private boolean displayRoutes(List<List<LatLong>> routes) {
+        if(routeLine != null) {
+        	removeRouteLine();
+        }
+        if(routes.isEmpty()) {
+        	return false;
+        }
+		LatLongBounds bounds = new LatLongBounds();
+		// draw the worst first so the best ends up on top
+		for(int i = routes.size() - 1; i >= 0; i--) {
+			MVCArray path = new MVCArray();
+			for(LatLong point : routes.get(i)) {
+				path.push(point);
+				bounds = bounds.extend(point);
+			}
+			PolylineOptions options = new PolylineOptions()
+					.path(path)
+					.strokeColor(ROUTE_COLORS[i % ROUTE_COLORS.length])
+					.strokeOpacity(i == 0 ? 1.0 : 0.7)
+					.strokeWeight(i == 0 ? 5 : 3);
+			Polyline line = new Polyline(options);
+			map.addMapShape(line);
+			routeLines.add(line);
+			if(i == 0) {
+				routeLine = line;
+			}
+		}
+
+		markerManager.hideIntermediateMarkers();
+		map.fitBounds(bounds);
+		return true;
+	}
+
     public void hideRoute() {
     	if(routeLine != null) {
-        	map.removeMapShape(routeLine);
+        	removeRouteLine();
         	if(markerManager.getVisualization() != null) {
         		markerManager.clearVisualization();
         	}
             markerManager.restoreMarkers();
         	markerManager.disableVisButton(true);
-            routeLine = null;
     	}
     }
 
@@ -107,17 +152,19 @@ public class RouteService {
         			toggle == RouteController.BFS) {
         		markerManager.initVisualization();
             	Consumer<geography.GeographicPoint> nodeAccepter = markerManager.getVisualization()::acceptPoint;
-            	List<geography.GeographicPoint> path = null;
+            	SearchResult result = null;
             	if (toggle == RouteController.BFS) {
-            		path = markerManager.getDataSet().getGraph().bfs(start, end, nodeAccepter);
+            		result = markerManager.getDataSet().getGraph().bfs(start, end, nodeAccepter);
             	}
             	else if (toggle == RouteController.DIJ) {
-            		path = markerManager.getDataSet().getGraph().dijkstra(start, end, nodeAccepter);
+            		result = markerManager.getDataSet().getGraph().dijkstra(start, end, nodeAccepter);
             	}
             	else if (toggle == RouteController.A_STAR) {
-            		path = markerManager.getDataSet().getGraph().aStarSearch(start, end, nodeAccepter);
+            		result = markerManager.getDataSet().getGraph().aStarSearch(start, end, nodeAccepter);
             	}
+            	markerManager.getVisualization().setStats(result.getStats());
 
+            	List<geography.GeographicPoint> path = result.getPath();
             	if(path == null) {
                     // System.out.println("In displayRoute : PATH NOT FOUND");
                     MapApp.showInfoAlert("Routing Error : ", "No path found");
@@ -135,6 +182,26 @@ public class RouteService {
                 return displayRoute(mapPath);
     		}
 
+        	else if(toggle == RouteController.K_SHORTEST || toggle == RouteController.ALTERNATIVES) {
+            	List<List<geography.GeographicPoint>> paths;
+            	if (toggle == RouteController.K_SHORTEST) {
+            		paths = markerManager.getDataSet().getGraph().kShortestPaths(start, end, ALTERNATIVE_ROUTES);
+            	}
+            	else {
+            		paths = markerManager.getDataSet().getGraph().alternativeRoutes(start, end, ALTERNATIVE_ROUTES);
+            	}
+            	if(paths.isEmpty()) {
+                    MapApp.showInfoAlert("Routing Error : ", "No path found");
+                	return false;
+            	}
+            	List<List<LatLong>> mapPaths = new ArrayList<List<LatLong>>();
+            	for(List<geography.GeographicPoint> path : paths) {
+            		mapPaths.add(constructMapPath(path));
+            	}
+                markerManager.setSelectMode(false);
+                return displayRoutes(mapPaths);
+        	}
+
     		return false;
         }
         return false;
@@ -150,58 +217,24 @@ public class RouteService {
      */
     private List<LatLong> constructMapPath(List<geography.GeographicPoint> path) {
     	List<LatLong> retVal = new ArrayList<LatLong>();
-        List<geography.GeographicPoint> segmentList = null;
-    	geography.GeographicPoint curr;
-    	geography.GeographicPoint next;
-
-    	geography.RoadSegment chosenSegment = null;;
-
-        for(int i = 0; i < path.size() - 1; i++) {
-            double minLength = Double.MAX_VALUE;
-        	curr = path.get(i);
-        	next = path.get(i+1);
-
-        	if(markerManager.getDataSet().getRoads().containsKey(curr)) {
-        		HashSet<geography.RoadSegment> segments = markerManager.getDataSet().getRoads().get(curr);
-        		Iterator<geography.RoadSegment> it = segments.iterator();
-
-        		// get segments which are
-            	geography.RoadSegment currSegment;
-                while(it.hasNext()) {
-                    //System.out.println("new segment");
-                	currSegment = it.next();
-                	if(currSegment.getOtherPoint(curr).equals(next)) {
-                        //System.out.println("1st check passed : other point correct");
-                		if(currSegment.getLength() < minLength) {
-                            //System.out.println("2nd check passed : length less");
-                			chosenSegment = currSegment;
-                		}
-                	}
-                }
-
-                if(chosenSegment != null) {
-                    segmentList = chosenSegment.getPoints(curr, next);
-                    for(geography.GeographicPoint point : segmentList) {
-                        retVal.add(new LatLong(point.getX(), point.getY()));
-                    }
-                }
-                else {
-                	System.err.println("ERROR in constructMapPath : chosenSegment was null");
-                }
-        		// find
-
-        	}
-        }
-
-        // System.out.println("NOW there are " + retVal.size() + " points");
+    	List<geography.GeographicPoint> points =
+    			RouteGeometry.constructMapPath(path, markerManager.getDataSet().getRoads());
+    	for(geography.GeographicPoint point : points) {
+    		retVal.add(new LatLong(point.getX(), point.getY()));
+    	}
     	return retVal;
     }
 
 
 	private void removeRouteLine() {
-        if(routeLine != null) {
+        if(routeLines.isEmpty() && routeLine != null) {
     		map.removeMapShape(routeLine);
         }
+        for(Polyline line : routeLines) {
+        	map.removeMapShape(line);
+        }
+        routeLines.clear();
+        routeLine = null;
 	}
 
 //    private void setMarkerManager(MarkerManager manager) {
@@ -0,0 +1,653 @@
+package basicgraph;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import geography.GeographicPoint;
+import geography.PointArray;
+import util.GraphLoader;
+import util.ScratchCapacity;
+
+/**
+ * The nonstop routes between airports, weighted by great circle distance,
+ * for finding itineraries: with the fewest flights, or the shortest
+ * distance flown, optionally on a chosen set of airlines only.
+ *
+ * Airports and airlines are numbered as they are first read, and the
+ * routes are kept in compressed sparse row form both ways: the routes out
+ * of airport v are firstOut[v] up to firstOut[v+1], with their destination,
+ * airline and length in arrays beside each other, and the routes into v
+ * are listed through firstIn and inRoute.  A route flown by several
+ * airlines is one entry per airline.
+ *
+ * Distances come from a table of airport locations.  Routes to or from an
+ * airport that has no location have no length; searches by hops still
+ * use them, searches by distance do not.
+ *
+ * The network is only read once built, and each thread searches with its
+ * own scratch space, so any number of threads can search it at once.
+ *
+ */
+public final class FlightNetwork {
+
+	/** An itinerary: the airports visited, and the airline of each flight */
+	public static final class Itinerary {
+		private final List<String> airports;
+		private final List<String> airlines;
+		private final double distance;
+
+		Itinerary(List<String> airports, List<String> airlines, double distance) {
+			this.airports = Collections.unmodifiableList(airports);
+			this.airlines = Collections.unmodifiableList(airlines);
+			this.distance = distance;
+		}
+
+		/** @return The airport codes from origin to destination */
+		public List<String> getAirports() { return airports; }
+
+		/** @return The airline of each flight, one fewer than the airports */
+		public List<String> getAirlines() { return airlines; }
+
+		/** @return The number of flights */
+		public int getHops() { return airlines.size(); }
+
+		/** @return The great circle distance flown in km, NaN if an airport's location is unknown */
+		public double getDistance() { return distance; }
+
+		@Override
+		public String toString() {
+			StringBuilder s = new StringBuilder(airports.get(0));
+			for (int i = 0; i < airlines.size(); i++) {
+				s.append(" -").append(airlines.get(i)).append("-> ").append(airports.get(i + 1));
+			}
+			return s.append(String.format(Locale.ROOT, " (%d flights, %.0f km)", getHops(), distance))
+					.toString();
+		}
+	}
+
+	/** Scratch for one search, one per thread; marks are stamped, so nothing is cleared between searches */
+	private static final class Scratch {
+		int stamp;
+		int[] forwardSeen = new int[0];
+		int[] backwardSeen = new int[0];
+		int[] forwardDist = new int[0];
+		int[] backwardDist = new int[0];
+		int[] forwardRoute = new int[0];
+		int[] backwardRoute = new int[0];
+		int[] forwardQueue = new int[0];
+		int[] backwardQueue = new int[0];
+		double[] dist = new double[0];
+		int[] heapNodes = new int[16];
+		double[] heapKeys = new double[16];
+		int heapSize;
+		final ScratchCapacity capacity = new ScratchCapacity();
+
+		void reset(int n) {
+			int size = capacity.fit(n);
+			if (forwardSeen.length != size) {
+				forwardSeen = new int[size];
+				backwardSeen = new int[size];
+				forwardDist = new int[size];
+				backwardDist = new int[size];
+				forwardRoute = new int[size];
+				backwardRoute = new int[size];
+				forwardQueue = new int[size];
+				backwardQueue = new int[size];
+				dist = new double[size];
+				// the heap grew for the old network, so start it over too
+				heapNodes = new int[16];
+				heapKeys = new double[16];
+				stamp = 0;
+			}
+			if (++stamp == Integer.MAX_VALUE) {
+				Arrays.fill(forwardSeen, 0);
+				Arrays.fill(backwardSeen, 0);
+				stamp = 1;
+			}
+			heapSize = 0;
+		}
+
+		/** Add to the heap; an airport may be in it more than once, with the stale entries skipped */
+		void push(int node, double key) {
+			if (heapSize == heapNodes.length) {
+				heapNodes = Arrays.copyOf(heapNodes, 2 * heapSize);
+				heapKeys = Arrays.copyOf(heapKeys, 2 * heapSize);
+			}
+			int i = heapSize++;
+			while (i > 0 && heapKeys[(i - 1) >>> 1] > key) {
+				int parent = (i - 1) >>> 1;
+				heapNodes[i] = heapNodes[parent];
+				heapKeys[i] = heapKeys[parent];
+				i = parent;
+			}
+			heapNodes[i] = node;
+			heapKeys[i] = key;
+		}
+
+		/** @return The node with the least key, removing it */
+		int pop() {
+			int top = heapNodes[0];
+			int node = heapNodes[--heapSize];
+			double key = heapKeys[heapSize];
+			int i = 0;
+			while (2 * i + 1 < heapSize) {
+				int child = 2 * i + 1;
+				if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+					child++;
+				}
+				if (heapKeys[child] >= key) {
+					break;
+				}
+				heapNodes[i] = heapNodes[child];
+				heapKeys[i] = heapKeys[child];
+				i = child;
+			}
+			heapNodes[i] = node;
+			heapKeys[i] = key;
+			return top;
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private final String[] airports;
+	private final Map<String,Integer> airportIndex;
+	private final String[] airlines;
+	private final Map<String,Integer> airlineIndex;
+	private final boolean[] located;
+	private final PointArray locations;
+	private final int[] firstOut;
+	private final int[] destination;
+	private final int[] origin;
+	private final int[] airline;
+	private final double[] length;
+	private final int[] firstIn;
+	private final int[] inRoute;
+
+	/**
+	 * Build the network from lists of routes
+	 * @param routeOrigins The origin airport of each route, by number
+	 * @param routeDestinations The destination airport of each route
+	 * @param routeAirlines The airline of each route, by number
+	 * @param airports The code of each airport
+	 * @param airlines The code of each airline
+	 * @param points The location of each airport, null where unknown
+	 */
+	private FlightNetwork(List<Integer> routeOrigins, List<Integer> routeDestinations,
+			List<Integer> routeAirlines, List<String> airports, List<String> airlines,
+			List<GeographicPoint> points)
+	{
+		int n = airports.size();
+		this.airports = airports.toArray(new String[n]);
+		this.airlines = airlines.toArray(new String[airlines.size()]);
+		airportIndex = index(this.airports);
+		airlineIndex = index(this.airlines);
+		located = new boolean[n];
+		List<GeographicPoint> known = new ArrayList<GeographicPoint>(n);
+		for (int v = 0; v < n; v++) {
+			located[v] = points.get(v) != null;
+			known.add(located[v] ? points.get(v) : new GeographicPoint(0, 0));
+		}
+		locations = new PointArray(known);
+
+		// counting sort of the routes by origin
+		int m = routeOrigins.size();
+		firstOut = new int[n + 1];
+		firstIn = new int[n + 1];
+		for (int r = 0; r < m; r++) {
+			firstOut[routeOrigins.get(r) + 1]++;
+			firstIn[routeDestinations.get(r) + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			firstOut[v + 1] += firstOut[v];
+			firstIn[v + 1] += firstIn[v];
+		}
+		origin = new int[m];
+		destination = new int[m];
+		airline = new int[m];
+		length = new double[m];
+		int[] fill = Arrays.copyOf(firstOut, n);
+		for (int r = 0; r < m; r++) {
+			int u = routeOrigins.get(r), w = routeDestinations.get(r);
+			int a = fill[u]++;
+			origin[a] = u;
+			destination[a] = w;
+			airline[a] = routeAirlines.get(r);
+			length[a] = (located[u] && located[w]) ? locations.distance(u, w) : Double.NaN;
+		}
+		inRoute = new int[m];
+		fill = Arrays.copyOf(firstIn, n);
+		for (int a = 0; a < m; a++) {
+			inRoute[fill[destination[a]]++] = a;
+		}
+	}
+
+	private static Map<String,Integer> index(String[] codes)
+	{
+		Map<String,Integer> index = new HashMap<String,Integer>();
+		for (int i = 0; i < codes.length; i++) {
+			index.put(codes[i], i);
+		}
+		return index;
+	}
+
+	/**
+	 * Read a network from an airline route file, in the format that
+	 * GraphLoader.loadRoutes reads, and optionally an airport file.
+	 * Only nonstop routes (with Stops == 0) are read, and a route that
+	 * appears more than once for the same airline is kept once.
+	 * @param routesFile The routes file, e.g. data/airports/routesUA.dat
+	 * @param airportsFile A file of airport locations in the format of
+	 *   OpenFlights' airports.dat, or null to search by hops only
+	 * @return The network
+	 */
+	public static FlightNetwork load(String routesFile, String airportsFile)
+	{
+		Map<String,GeographicPoint> known = (airportsFile == null) ?
+				Collections.<String,GeographicPoint>emptyMap() :
+				GraphLoader.loadAirportLocations(airportsFile);
+		List<String> airports = new ArrayList<String>();
+		Map<String,Integer> airportIndex = new HashMap<String,Integer>();
+		List<String> airlines = new ArrayList<String>();
+		Map<String,Integer> airlineIndex = new HashMap<String,Integer>();
+		List<Integer> origins = new ArrayList<Integer>();
+		List<Integer> destinations = new ArrayList<Integer>();
+		List<Integer> routeAirlines = new ArrayList<Integer>();
+		Set<Long> seen = new HashSet<Long>();
+
+		BufferedReader reader = null;
+		try {
+			String nextLine;
+			reader = new BufferedReader(new FileReader(routesFile));
+			while ((nextLine = reader.readLine()) != null) {
+				String[] flightInfo = nextLine.split(",");
+				if (flightInfo.length < 8 || !flightInfo[7].trim().equals("0")) {
+					continue;
+				}
+				int from = intern(flightInfo[2], airports, airportIndex);
+				int to = intern(flightInfo[4], airports, airportIndex);
+				int carrier = intern(flightInfo[0], airlines, airlineIndex);
+				// codes are far fewer than 2^21 of each kind
+				if (seen.add(((long) from << 42) | ((long) to << 21) | carrier)) {
+					origins.add(from);
+					destinations.add(to);
+					routeAirlines.add(carrier);
+				}
+			}
+			reader.close();
+		} catch (IOException e) {
+			System.err.println("Problem loading route file: " + routesFile);
+			e.printStackTrace();
+		}
+
+		List<GeographicPoint> points = new ArrayList<GeographicPoint>(airports.size());
+		for (String code : airports) {
+			points.add(known.get(code));
+		}
+		return new FlightNetwork(origins, destinations, routeAirlines, airports, airlines, points);
+	}
+
+	private static int intern(String code, List<String> codes, Map<String,Integer> index)
+	{
+		Integer i = index.get(code);
+		if (i == null) {
+			i = codes.size();
+			index.put(code, i);
+			codes.add(code);
+		}
+		return i;
+	}
+
+	/** @return The number of airports */
+	public int getNumAirports()
+	{
+		return airports.length;
+	}
+
+	/** @return The number of routes, counting each airline's separately */
+	public int getNumRoutes()
+	{
+		return destination.length;
+	}
+
+	/** @return The codes of the airlines, by number */
+	public List<String> getAirlines()
+	{
+		return Collections.unmodifiableList(Arrays.asList(airlines));
+	}
+
+	/** @return The code of an airport, by number */
+	public String getAirport(int v)
+	{
+		return airports[v];
+	}
+
+	/** @return The number of an airport, or -1 if it has no routes */
+	public int getIndex(String code)
+	{
+		Integer v = airportIndex.get(code);
+		return (v == null) ? -1 : v;
+	}
+
+	/** @return Whether the location of an airport is known */
+	public boolean hasLocation(int v)
+	{
+		return located[v];
+	}
+
+	/**
+	 * @param codes Airline codes, or null for all
+	 * @return Which airlines may be flown, by number
+	 */
+	private boolean[] allowed(Set<String> codes)
+	{
+		boolean[] allowed = new boolean[airlines.length];
+		if (codes == null) {
+			Arrays.fill(allowed, true);
+		}
+		else {
+			for (String code : codes) {
+				Integer i = airlineIndex.get(code);
+				if (i != null) {
+					allowed[i] = true;
+				}
+			}
+		}
+		return allowed;
+	}
+
+	/**
+	 * Find an itinerary with the fewest flights, by breadth first search
+	 * from both ends at once, growing whichever frontier is smaller a
+	 * level at a time until they meet.
+	 * @param from The origin airport code
+	 * @param to The destination airport code
+	 * @param airlineCodes The airlines that may be flown, or null for any
+	 * @return The itinerary, or null if there is none or either airport
+	 *   has no routes
+	 */
+	public Itinerary fewestHops(String from, String to, Set<String> airlineCodes)
+	{
+		int s = getIndex(from), t = getIndex(to);
+		if (s < 0 || t < 0) {
+			return null;
+		}
+		boolean[] allowed = allowed(airlineCodes);
+		Scratch scratch = SCRATCH.get();
+		scratch.reset(airports.length);
+		int stamp = scratch.stamp;
+		int[] fSeen = scratch.forwardSeen, bSeen = scratch.backwardSeen;
+		int[] fDist = scratch.forwardDist, bDist = scratch.backwardDist;
+		int[] fRoute = scratch.forwardRoute, bRoute = scratch.backwardRoute;
+		int[] fQueue = scratch.forwardQueue, bQueue = scratch.backwardQueue;
+		fSeen[s] = stamp;
+		fDist[s] = 0;
+		fRoute[s] = -1;
+		bSeen[t] = stamp;
+		bDist[t] = 0;
+		bRoute[t] = -1;
+		if (s == t) {
+			return itinerary(s, s, scratch, false);
+		}
+		fQueue[0] = s;
+		bQueue[0] = t;
+		// each queue's current level runs from its start to its end
+		int fStart = 0, fEnd = 1, bStart = 0, bEnd = 1;
+		int meet = -1, best = Integer.MAX_VALUE;
+
+		while (meet < 0 && fStart < fEnd && bStart < bEnd) {
+			if (fEnd - fStart <= bEnd - bStart) {
+				int levelEnd = fEnd;
+				for (int i = fStart; i < levelEnd; i++) {
+					int v = fQueue[i];
+					for (int a = firstOut[v]; a < firstOut[v + 1]; a++) {
+						int w = destination[a];
+						if (!allowed[airline[a]] || fSeen[w] == stamp) {
+							continue;
+						}
+						fSeen[w] = stamp;
+						fDist[w] = fDist[v] + 1;
+						fRoute[w] = a;
+						fQueue[fEnd++] = w;
+						if (bSeen[w] == stamp && fDist[w] + bDist[w] < best) {
+							best = fDist[w] + bDist[w];
+							meet = w;
+						}
+					}
+				}
+				fStart = levelEnd;
+			}
+			else {
+				int levelEnd = bEnd;
+				for (int i = bStart; i < levelEnd; i++) {
+					int v = bQueue[i];
+					for (int j = firstIn[v]; j < firstIn[v + 1]; j++) {
+						int a = inRoute[j];
+						int u = origin[a];
+						if (!allowed[airline[a]] || bSeen[u] == stamp) {
+							continue;
+						}
+						bSeen[u] = stamp;
+						bDist[u] = bDist[v] + 1;
+						bRoute[u] = a;
+						bQueue[bEnd++] = u;
+						if (fSeen[u] == stamp && fDist[u] + bDist[u] < best) {
+							best = fDist[u] + bDist[u];
+							meet = u;
+						}
+					}
+				}
+				bStart = levelEnd;
+			}
+		}
+		return (meet < 0) ? null : itinerary(s, meet, scratch, true);
+	}
+
+	/**
+	 * Find the itinerary that flies the shortest distance, by A* with the
+	 * great circle distance to the destination as the estimate; it never
+	 * overestimates since every route is a great circle.
+	 * @param from The origin airport code
+	 * @param to The destination airport code
+	 * @param airlineCodes The airlines that may be flown, or null for any
+	 * @return The itinerary, or null if there is none over airports with
+	 *   known locations, or either airport has no routes
+	 */
+	public Itinerary shortestDistance(String from, String to, Set<String> airlineCodes)
+	{
+		int s = getIndex(from), t = getIndex(to);
+		if (s < 0 || t < 0) {
+			return null;
+		}
+		boolean[] allowed = allowed(airlineCodes);
+		Scratch scratch = SCRATCH.get();
+		scratch.reset(airports.length);
+		int stamp = scratch.stamp;
+		// forwardSeen marks reached airports, backwardSeen settled ones
+		int[] reached = scratch.forwardSeen, settled = scratch.backwardSeen;
+		int[] route = scratch.forwardRoute;
+		double[] dist = scratch.dist;
+		reached[s] = stamp;
+		dist[s] = 0.0;
+		route[s] = -1;
+		scratch.push(s, 0.0);
+		while (scratch.heapSize > 0) {
+			int v = scratch.pop();
+			if (settled[v] == stamp) {
+				continue;
+			}
+			settled[v] = stamp;
+			if (v == t) {
+				return itinerary(s, t, scratch, false);
+			}
+			for (int a = firstOut[v]; a < firstOut[v + 1]; a++) {
+				int w = destination[a];
+				double d = dist[v] + length[a];
+				// routes without a length (NaN) are not flown
+				if (!allowed[airline[a]] || settled[w] == stamp || Double.isNaN(d) ||
+						(reached[w] == stamp && d >= dist[w])) {
+					continue;
+				}
+				reached[w] = stamp;
+				dist[w] = d;
+				route[w] = a;
+				scratch.push(w, d + estimate(w, t));
+			}
+		}
+		return null;
+	}
+
+	/** @return A lower bound on the distance flown from v to t, in km */
+	private double estimate(int v, int t)
+	{
+		// a hair under the great circle, so rounding cannot make it too high
+		return (located[v] && located[t]) ? locations.distance(v, t) * (1 - 1e-9) : 0.0;
+	}
+
+	/**
+	 * Build the itinerary found by a search: forward routes from the
+	 * origin to the meeting airport, then for a search from both ends,
+	 * backward routes on to the destination
+	 */
+	private Itinerary itinerary(int s, int meet, Scratch scratch, boolean bothEnds)
+	{
+		List<Integer> legs = new ArrayList<Integer>();
+		for (int v = meet; scratch.forwardRoute[v] >= 0; v = origin[scratch.forwardRoute[v]]) {
+			legs.add(scratch.forwardRoute[v]);
+		}
+		Collections.reverse(legs);
+		for (int v = meet; bothEnds && scratch.backwardRoute[v] >= 0;
+				v = destination[scratch.backwardRoute[v]]) {
+			legs.add(scratch.backwardRoute[v]);
+		}
+		List<String> path = new ArrayList<String>();
+		List<String> carriers = new ArrayList<String>();
+		path.add(airports[s]);
+		double distance = 0.0;
+		for (int a : legs) {
+			path.add(airports[destination[a]]);
+			carriers.add(airlines[airline[a]]);
+			distance += length[a];
+		}
+		return new Itinerary(path, carriers, distance);
+	}
+
+	/**
+	 * Answer random itinerary queries, checking the hop counts against a
+	 * plain breadth first search over the same routes in a GraphAdjList.
+	 * @param args ROUTES.dat [AIRPORTS.dat] [queries]
+	 */
+	public static void main(String[] args)
+	{
+		String routesFile = (args.length > 0) ? args[0] : "data/airports/routesUA.dat";
+		String airportsFile = (args.length > 1) ? args[1] : null;
+		int queries = (args.length > 2) ? Integer.parseInt(args[2]) : 10000;
+		long start = System.nanoTime();
+		FlightNetwork network = load(routesFile, airportsFile);
+		System.out.println(String.format(Locale.ROOT, "%d airports, %d routes of %d airlines in %.1f ms",
+				network.getNumAirports(), network.getNumRoutes(), network.getAirlines().size(),
+				(System.nanoTime() - start) / 1e6));
+
+		Graph graph = new GraphAdjList();
+		GraphLoader.loadRoutes(routesFile, graph);
+		Random random = new Random(42);
+		String[][] pairs = new String[queries][];
+		for (int i = 0; i < queries; i++) {
+			pairs[i] = new String[] {
+				network.getAirport(random.nextInt(network.getNumAirports())),
+				network.getAirport(random.nextInt(network.getNumAirports()))
+			};
+		}
+
+		start = System.nanoTime();
+		int found = 0, hops = 0;
+		Itinerary[] itineraries = new Itinerary[queries];
+		for (int i = 0; i < queries; i++) {
+			itineraries[i] = network.fewestHops(pairs[i][0], pairs[i][1], null);
+			if (itineraries[i] != null) {
+				found++;
+				hops += itineraries[i].getHops();
+			}
+		}
+		long hopNanos = System.nanoTime() - start;
+		int mismatches = 0;
+		for (int i = 0; i < Math.min(queries, 1000); i++) {
+			int expected = hopsByBfs(graph, graph.getIndex(pairs[i][0]), graph.getIndex(pairs[i][1]));
+			int actual = (itineraries[i] == null) ? -1 : itineraries[i].getHops();
+			if (expected != actual) {
+				mismatches++;
+			}
+		}
+		System.out.println(String.format(Locale.ROOT,
+				"Fewest hops: %d of %d found, %.2f flights on average, %.0f queries/s; " +
+				"%d differ from plain BFS", found, queries, hops / (double) Math.max(1, found),
+				queries / (hopNanos / 1e9), mismatches));
+		if (found > 0) {
+			for (Itinerary itinerary : itineraries) {
+				if (itinerary != null && itinerary.getHops() >= 2) {
+					System.out.println("  e.g. " + itinerary);
+					break;
+				}
+			}
+		}
+
+		if (airportsFile != null) {
+			start = System.nanoTime();
+			int shorter = 0;
+			double saved = 0.0;
+			for (int i = 0; i < queries; i++) {
+				Itinerary itinerary = network.shortestDistance(pairs[i][0], pairs[i][1], null);
+				if (itinerary != null && itineraries[i] != null &&
+						itinerary.getDistance() < itineraries[i].getDistance() - 1e-6) {
+					shorter++;
+					saved += itineraries[i].getDistance() - itinerary.getDistance();
+				}
+			}
+			long distanceNanos = System.nanoTime() - start;
+			System.out.println(String.format(Locale.ROOT,
+					"Shortest distance: %.0f queries/s; %d itineraries shorter than the fewest hops " +
+					"by %.0f km on average", queries / (distanceNanos / 1e9), shorter,
+					saved / Math.max(1, shorter)));
+		}
+	}
+
+	/** @return The fewest edges from s to t in a graph, or -1 if t cannot be reached */
+	private static int hopsByBfs(Graph graph, int s, int t)
+	{
+		int[] dist = new int[graph.getNumVertices()];
+		Arrays.fill(dist, -1);
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		dist[s] = 0;
+		queue.add(s);
+		while (!queue.isEmpty()) {
+			int v = queue.poll();
+			if (v == t) {
+				return dist[v];
+			}
+			for (int w : graph.getNeighbors(v)) {
+				if (dist[w] < 0) {
+					dist[w] = dist[v] + 1;
+					queue.add(w);
+				}
+			}
+		}
+		return -1;
+	}
+}
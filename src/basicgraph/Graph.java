@@ -1,7 +1,7 @@
 package basicgraph;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,8 +25,10 @@ public abstract class Graph {
 
 	private int numVertices;
 	private int numEdges;
-	//optional association of String labels to vertices 
-	private Map<Integer,String> vertexLabels;
+	//optional association of String labels to vertices, both ways:
+	//labels[v] is the label of vertex v, labelIndex the vertex of a label
+	private String[] labels;
+	private Map<String,Integer> labelIndex;
 	
 	/**
 	 * Create a new empty Graph
@@ -34,7 +36,8 @@ public abstract class Graph {
 	public Graph() {
 		numVertices = 0;
 		numEdges = 0;
-		vertexLabels = null;
+		labels = null;
+		labelIndex = null;
 	}
 
 	
@@ -111,6 +114,27 @@ public abstract class Graph {
 	 */
 	public abstract List<Integer> getInNeighbors(int v);
 	
+	/**
+	 * Count the outgoing edges of a vertex.
+	 * Representations that keep the count override this
+	 * to avoid building the neighbor list.
+	 * @param v Index of vertex in question.
+	 * @return The number of edges from v, counting parallel edges.
+	 */
+	public int getOutDegree(int v) {
+		return getNeighbors(v).size();
+	}
+	
+	/**
+	 * Count the incoming edges of a vertex.
+	 * Representations that keep the count override this
+	 * to avoid building the neighbor list.
+	 * @param v Index of vertex in question.
+	 * @return The number of edges into v, counting parallel edges.
+	 */
+	public int getInDegree(int v) {
+		return getInNeighbors(v).size();
+	}
 	
 
 	/** 
@@ -122,27 +146,51 @@ public abstract class Graph {
 	 */
 	public List<Integer> degreeSequence() {
 		
-		List<Integer> degrees = new ArrayList<Integer>();
+		int[] degrees = new int[getNumVertices()];
 		
-		for (int i = 0; i < getNumVertices(); i++) {
-			int currDegree = getNeighbors(i).size() + getInNeighbors(i).size();
-			degrees.add(currDegree);
+		for (int i = 0; i < degrees.length; i++) {
+			degrees[i] = getOutDegree(i) + getInDegree(i);
 		}
 		
-		Collections.sort(degrees);
-		Collections.reverse(degrees);
-		return degrees;
+		Arrays.sort(degrees);
+		List<Integer> sequence = new ArrayList<Integer>(degrees.length);
+		for (int i = degrees.length - 1; i >= 0; i--) {
+			sequence.add(degrees[i]);
+		}
+		return sequence;
 	}
 	
 	/**
 	 * Get all the vertices that are 2 away from the vertex in question.
 	 * @param v The starting vertex
 	 * @return A list of the vertices that can be reached in exactly two hops (by 
-	 * following two edges) from vertex v.
+	 * following two edges) from vertex v, in increasing order.  A vertex is listed 
+	 * once for each pair of edges leading to it, so it may appear more than once.
 	 * XXX: Implement in part 2 of week 2 for each subclass of Graph
 	 */
 	public abstract List<Integer> getDistance2(int v); 
 
+	/**
+	 * Get the vertices that are 2 away from the vertex in question, each once.
+	 * This default removes the repeats from getDistance2; a representation 
+	 * that can find them without listing every path should override it.
+	 * @param v The starting vertex
+	 * @return A list of the distinct vertices that can be reached in exactly 
+	 * two hops from vertex v, in increasing order.
+	 */
+	public List<Integer> getDistinctDistance2(int v) {
+		List<Integer> paths = getDistance2(v);
+		List<Integer> distinct = new ArrayList<Integer>(paths.size());
+		int last = -1;
+		for (int w : paths) {
+			if (w != last) {
+				distinct.add(w);
+				last = w;
+			}
+		}
+		return distinct;
+	}
+
 	/** Return a String representation of the graph
 	 * @return A string representation of the graph
 	 */
@@ -168,7 +216,8 @@ public abstract class Graph {
 	 * (Optional: only if using labeled vertices.)
 	 */
 	public void initializeLabels() {
-		vertexLabels = new HashMap<Integer,String>();
+		labels = new String[Math.max(16, numVertices)];
+		labelIndex = new HashMap<String,Integer>();
 	}	
 	/**
 	 * Test whether some vertex in the graph is labeled 
@@ -189,7 +238,7 @@ public abstract class Graph {
 	 */
 	public boolean hasVertex(String s)
 	{
-		return vertexLabels.containsValue(s);
+		return labelIndex.containsKey(s);
 	}
 	
 	/**
@@ -198,9 +247,15 @@ public abstract class Graph {
 	 * @param The label to be assigned to this vertex.
 	 */
 	public void addLabel(int v, String s) {
-		if (v < getNumVertices() && !vertexLabels.containsKey(v)) 
+		if (v < getNumVertices() && (v >= labels.length || labels[v] == null)) 
 		{
-			vertexLabels.put(v, s);
+			if (v >= labels.length) {
+				labels = Arrays.copyOf(labels, Math.max(2 * labels.length, v + 1));
+			}
+			labels[v] = s;
+			if (!labelIndex.containsKey(s)) {
+				labelIndex.put(s, v);
+			}
 		}
 		else {
 			System.out.println("ERROR: tried to label a vertex that is out of range or already labeled");
@@ -213,8 +268,8 @@ public abstract class Graph {
 	 * @return The String label of this vertex 
 	 */
 	public String getLabel(int v) {
-		if (vertexLabels.containsKey(v)) {
-			return vertexLabels.get(v);
+		if (v >= 0 && v < labels.length) {
+			return labels[v];
 		}
 		else return null;
 	}
@@ -226,9 +281,9 @@ public abstract class Graph {
 	 * @return The integer index of this vertex 
 	 */
 	public int getIndex(String s) {
-		for (Map.Entry<Integer,String> entry : vertexLabels.entrySet()) {
-			if (entry.getValue().equals(s))
-				return entry.getKey();
+		Integer v = labelIndex.get(s);
+		if (v != null) {
+			return v;
 		}
 		System.out.println("ERROR: No vertex with this label");
 		return -1;
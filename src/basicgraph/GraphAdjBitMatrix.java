@@ -0,0 +1,282 @@
+package basicgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A class that implements a directed graph.
+ * The graph may have self-loops, parallel edges.
+ * Vertices are labeled by integers 0 .. n-1
+ * and may also have String labels.
+ * The edges of the graph are not labeled.
+ * Representation of edges via an adjacency matrix of bits:
+ * row v is an array of longs with bit w set when there is an
+ * edge from v to w.  The matrix is also kept transposed, so
+ * in-neighbors are read from a row too.  Parallel edges beyond
+ * the first are counted in a map, since they are rare.
+ *
+ * A bit per entry takes 1/32 of the memory of an int matrix,
+ * and a row can be scanned or combined a word (64 vertices) at
+ * a time.
+ *
+ */
+public class GraphAdjBitMatrix extends Graph {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[][] outRows;
+	private long[][] inRows;
+	private int[] outDegree;
+	private int[] inDegree;
+	// extra edges from v to w beyond the first, by edgeKey(v, w)
+	private final Map<Long,Integer> parallelEdges;
+
+	/** Create a new empty Graph */
+	public GraphAdjBitMatrix () {
+		outRows = new long[0][];
+		inRows = new long[0][];
+		outDegree = new int[0];
+		inDegree = new int[0];
+		parallelEdges = new HashMap<Long,Integer>();
+	}
+
+	/**
+	 * Implement the abstract method for adding a vertex.
+	 * If need to increase dimensions of matrix, double them
+	 * to amortize cost; rows are copied a word at a time.
+	 */
+	public void implementAddVertex() {
+		int v = getNumVertices();
+		if (v >= outRows.length) {
+			int capacity = Math.max(INITIAL_CAPACITY, 2 * outRows.length);
+			int words = words(capacity);
+			outRows = grow(outRows, capacity, words);
+			inRows = grow(inRows, capacity, words);
+			outDegree = Arrays.copyOf(outDegree, capacity);
+			inDegree = Arrays.copyOf(inDegree, capacity);
+		}
+	}
+
+	private static int words(int bits) {
+		return (bits + 63) >>> 6;
+	}
+
+	private static long[][] grow(long[][] rows, int capacity, int words) {
+		long[][] grown = new long[capacity][];
+		for (int i = 0; i < capacity; i++) {
+			grown[i] = (i < rows.length) ? Arrays.copyOf(rows[i], words) : new long[words];
+		}
+		return grown;
+	}
+
+	private static long edgeKey(int v, int w) {
+		return ((long) v << 32) | w;
+	}
+
+	/**
+	 * Implement the abstract method for adding an edge.
+	 * Allows for multiple edges between two points:
+	 * the first sets the bit, the others are counted in
+	 * the map of parallel edges.
+	 * @param v the index of the start point for the edge.
+	 * @param w the index of the end point for the edge.
+	 */
+	public void implementAddEdge(int v, int w) {
+		long bit = 1L << w;
+		if ((outRows[v][w >>> 6] & bit) != 0) {
+			Long key = edgeKey(v, w);
+			Integer extra = parallelEdges.get(key);
+			parallelEdges.put(key, (extra == null) ? 1 : extra + 1);
+		}
+		else {
+			outRows[v][w >>> 6] |= bit;
+			inRows[w][v >>> 6] |= 1L << v;
+		}
+		outDegree[v]++;
+		inDegree[w]++;
+	}
+
+	/** @return The number of edges from v to w */
+	private int countEdges(int v, int w) {
+		Integer extra = parallelEdges.isEmpty() ? null : parallelEdges.get(edgeKey(v, w));
+		return 1 + ((extra == null) ? 0 : extra);
+	}
+
+	/**
+	 * List the vertices set in a row, each once per edge
+	 * @param row The row
+	 * @param degree The number of edges in it
+	 * @param v The vertex of the row
+	 * @param out true for a row of out-edges, false for in-edges
+	 */
+	private List<Integer> rowList(long[] row, int degree, int v, boolean out) {
+		int[] list = new int[degree];
+		int k = 0;
+		int words = words(getNumVertices());
+		for (int i = 0; i < words; i++) {
+			for (long bits = row[i]; bits != 0; bits &= bits - 1) {
+				int w = (i << 6) | Long.numberOfTrailingZeros(bits);
+				int count = out ? countEdges(v, w) : countEdges(w, v);
+				for (int j = 0; j < count; j++) {
+					list[k++] = w;
+				}
+			}
+		}
+		return new IntListView(list, k);
+	}
+
+	/**
+	 * Implement the abstract method for finding all
+	 * out-neighbors of a vertex.
+	 * If there are multiple edges between the vertex
+	 * and one of its out-neighbors, this neighbor
+	 * appears once in the list for each of these edges.
+	 *
+	 * @param v the index of vertex.
+	 * @return List<Integer> a read-only list of indices of vertices, in order.
+	 */
+	public List<Integer> getNeighbors(int v) {
+		return rowList(outRows[v], outDegree[v], v, true);
+	}
+
+	/**
+	 * Implement the abstract method for finding all
+	 * in-neighbors of a vertex.
+	 * If there are multiple edges from another vertex
+	 * to this one, the neighbor
+	 * appears once in the list for each of these edges.
+	 *
+	 * @param v the index of vertex.
+	 * @return List<Integer> a read-only list of indices of vertices, in order.
+	 */
+	public List<Integer> getInNeighbors(int v) {
+		return rowList(inRows[v], inDegree[v], v, false);
+	}
+
+	@Override
+	public int getOutDegree(int v) {
+		return outDegree[v];
+	}
+
+	@Override
+	public int getInDegree(int v) {
+		return inDegree[v];
+	}
+
+	/**
+	 * Implement the abstract method for finding all
+	 * vertices reachable by two hops from v.
+	 * As in the other representations, a vertex is listed
+	 * once for each two-hop path to it, counting parallel
+	 * edges, so the list is sized from the out-degrees of
+	 * v's out-neighbors.
+	 *
+	 * @param v the index of vertex.
+	 * @return List<Integer> a list of indices of vertices, in order.
+	 */
+	public List<Integer> getDistance2(int v) {
+		int words = words(getNumVertices());
+		long[] row = outRows[v];
+		int total = 0;
+		for (int i = 0; i < words; i++) {
+			for (long bits = row[i]; bits != 0; bits &= bits - 1) {
+				int u = (i << 6) | Long.numberOfTrailingZeros(bits);
+				total += countEdges(v, u) * outDegree[u];
+			}
+		}
+
+		int[] paths = new int[total];
+		int k = 0;
+		for (int i = 0; i < words; i++) {
+			for (long bits = row[i]; bits != 0; bits &= bits - 1) {
+				int u = (i << 6) | Long.numberOfTrailingZeros(bits);
+				int first = countEdges(v, u);
+				long[] next = outRows[u];
+				for (int j = 0; j < words; j++) {
+					for (long nextBits = next[j]; nextBits != 0; nextBits &= nextBits - 1) {
+						int w = (j << 6) | Long.numberOfTrailingZeros(nextBits);
+						for (int count = first * countEdges(u, w); count > 0; count--) {
+							paths[k++] = w;
+						}
+					}
+				}
+			}
+		}
+		Arrays.sort(paths);
+
+		List<Integer> dist2 = new ArrayList<Integer>(total);
+		for (int w : paths) {
+			dist2.add(w);
+		}
+		return dist2;
+	}
+
+	/**
+	 * Find the vertices reachable by two hops from v as a bitset.
+	 * The rows of v's out-neighbors are ORed together a word
+	 * at a time, so paths are not enumerated and each vertex
+	 * is set once however many two-hop paths lead to it.
+	 *
+	 * @param v the index of vertex.
+	 * @return A bitset with bit w (word w / 64) set when w
+	 *   is two hops from v.
+	 */
+	public long[] distance2Set(int v) {
+		int words = words(getNumVertices());
+		long[] row = outRows[v];
+		long[] reach = new long[words];
+		for (int i = 0; i < words; i++) {
+			for (long bits = row[i]; bits != 0; bits &= bits - 1) {
+				long[] next = outRows[(i << 6) | Long.numberOfTrailingZeros(bits)];
+				for (int j = 0; j < words; j++) {
+					reach[j] |= next[j];
+				}
+			}
+		}
+		return reach;
+	}
+
+	/**
+	 * List the vertices of distance2Set.
+	 *
+	 * @param v the index of vertex.
+	 * @return List<Integer> a read-only list of indices of vertices, in order.
+	 */
+	@Override
+	public List<Integer> getDistinctDistance2(int v) {
+		long[] reach = distance2Set(v);
+		int count = 0;
+		for (long word : reach) {
+			count += Long.bitCount(word);
+		}
+		int[] list = new int[count];
+		int k = 0;
+		for (int i = 0; i < reach.length; i++) {
+			for (long bits = reach[i]; bits != 0; bits &= bits - 1) {
+				list[k++] = (i << 6) | Long.numberOfTrailingZeros(bits);
+			}
+		}
+		return new IntListView(list, k);
+	}
+
+	/**
+	 * Generate string representation of adjacency matrix
+	 * @return the String
+	 */
+	public String adjacencyString() {
+		int dim = getNumVertices();
+		String s = "Adjacency bit matrix";
+		s += " (size " + dim + "x" + dim + " = " + dim * words(dim) + " longs, "
+				+ parallelEdges.size() + " parallel entries):";
+		for (int v = 0; v < dim; v ++) {
+			s += "\n\t"+v+": ";
+			for (int w : getNeighbors(v)) {
+				s += w + ", ";
+			}
+		}
+		return s;
+	}
+
+}
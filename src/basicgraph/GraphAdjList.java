@@ -1,11 +1,8 @@
 package basicgraph;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 /** A class that implements a directed graph. 
  * The graph may have self-loops, parallel edges. 
@@ -13,39 +10,68 @@ import java.util.Set;
  * and may also have String labels.
  * The edges of the graph are not labeled.
  * Representation of edges via adjacency lists.
+ * Each vertex keeps the heads of its outgoing edges and the tails
+ * of its incoming edges in growable int arrays, so in-neighbors
+ * and degrees cost no more than out-neighbors.
  * 
  * @author Maayon Thayaparan
  *
  */
 public class GraphAdjList extends Graph {
 
+	private static final int INITIAL_CAPACITY = 4;
 
-	private Map<Integer,ArrayList<Integer>> adjListsMap;
+	// the heads of v's out-edges are outLists[v][0 .. outDegree[v]),
+	// the tails of its in-edges inLists[v][0 .. inDegree[v])
+	private int[][] outLists;
+	private int[] outDegree;
+	private int[][] inLists;
+	private int[] inDegree;
 	
 	/** 
 	 * Create a new empty Graph
 	 */
 	public GraphAdjList () {
-		adjListsMap = new HashMap<Integer,ArrayList<Integer>>();
+		outLists = new int[INITIAL_CAPACITY][];
+		outDegree = new int[INITIAL_CAPACITY];
+		inLists = new int[INITIAL_CAPACITY][];
+		inDegree = new int[INITIAL_CAPACITY];
 	}
 
 	/** 
 	 * Implement the abstract method for adding a vertex. 
+	 * The per-vertex arrays double when full, to amortize the cost.
 	 */
 	public void implementAddVertex() {
 		int v = getNumVertices();
-		ArrayList<Integer> neighbors = new ArrayList<Integer>();
-		adjListsMap.put(v,  neighbors);
+		if (v >= outLists.length) {
+			int capacity = 2 * outLists.length;
+			outLists = Arrays.copyOf(outLists, capacity);
+			outDegree = Arrays.copyOf(outDegree, capacity);
+			inLists = Arrays.copyOf(inLists, capacity);
+			inDegree = Arrays.copyOf(inDegree, capacity);
+		}
+		outLists[v] = new int[INITIAL_CAPACITY];
+		inLists[v] = new int[INITIAL_CAPACITY];
 	}
 	
 	/** 
 	 * Implement the abstract method for adding an edge.
+	 * The edge is recorded at both ends.
 	 * @param v the index of the start point for the edge.
 	 * @param w the index of the end point for the edge.  
 	 */
 	public void implementAddEdge(int v, int w) {
-		(adjListsMap.get(v)).add(w);
-
+		outLists[v] = append(outLists[v], outDegree[v]++, w);
+		inLists[w] = append(inLists[w], inDegree[w]++, v);
+	}
+	
+	private static int[] append(int[] list, int size, int value) {
+		if (size == list.length) {
+			list = Arrays.copyOf(list, 2 * list.length);
+		}
+		list[size] = value;
+		return list;
 	}
 	
 	/** 
@@ -56,10 +82,11 @@ public class GraphAdjList extends Graph {
 	 * appears once in the list for each of these edges.
 	 * 
 	 * @param v the index of vertex.
-	 * @return List<Integer> a list of indices of vertices.  
+	 * @return List<Integer> a read-only view of the indices of vertices,
+	 * 	as they are when called; later edges do not appear in it.  
 	 */	
 	public List<Integer> getNeighbors(int v) {
-		return new ArrayList<Integer>(adjListsMap.get(v));
+		return new IntListView(outLists[v], outDegree[v]);
 	}
 
 	/** 
@@ -70,21 +97,21 @@ public class GraphAdjList extends Graph {
 	 * appears once in the list for each of these edges.
 	 * 
 	 * @param v the index of vertex.
-	 * @return List<Integer> a list of indices of vertices.  
+	 * @return List<Integer> a read-only view of the indices of vertices,
+	 * 	as they are when called; later edges do not appear in it.  
 	 */	
 	public List<Integer> getInNeighbors(int v) {
-		List<Integer> inNeighbors = new ArrayList<Integer>();
-		for (int u : adjListsMap.keySet()) {
-			//iterate through all edges in u's adjacency list and 
-			//add u to the inNeighbor list of v whenever an edge
-			//with startpoint u has endpoint v.
-			for (int w : adjListsMap.get(u)) {
-				if (v == w) {
-					inNeighbors.add(u);
-				}
-			}
-		}
-		return inNeighbors;
+		return new IntListView(inLists[v], inDegree[v]);
+	}
+	
+	@Override
+	public int getOutDegree(int v) {
+		return outDegree[v];
+	}
+	
+	@Override
+	public int getInDegree(int v) {
+		return inDegree[v];
 	}
 	 
 
@@ -96,23 +123,24 @@ public class GraphAdjList extends Graph {
 	 * @return List<Integer> a list of indices of vertices.  
 	 */		
 	 public List<Integer> getDistance2(int v) {
-		 // XXX: Implement this method in week 2
-		 
-		 List<Integer> dist2 = new ArrayList<Integer>();
-		 
-		 List<Integer> dist1 = adjListsMap.get(v); //get current neighbors
-		 
-		 for (int i=0; i<dist1.size(); i++) { //iterate through current neighbors
-			 int currDist1 = dist1.get(i); 
-			 List<Integer> currDist2List = adjListsMap.get(currDist1); //get current neighbor's (dist1) neighbors (dist2)
-			 for (int j=0; j<currDist2List.size(); j++) { //add each dist2 neighbor of these to the list
-				 dist2.add(currDist2List.get(j));
-			 }
-			 
+		 int count = 0;
+		 for (int i = 0; i < outDegree[v]; i++) {
+			 count += outDegree[outLists[v][i]];
 		 }
-		 Collections.sort(dist2);
+		 int[] dist2 = new int[count];
+		 int k = 0;
+		 for (int i = 0; i < outDegree[v]; i++) { //each neighbor's neighbors are two hops away
+			 int u = outLists[v][i];
+			 System.arraycopy(outLists[u], 0, dist2, k, outDegree[u]);
+			 k += outDegree[u];
+		 }
+		 Arrays.sort(dist2);
 		 
-		 return dist2;
+		 List<Integer> result = new ArrayList<Integer>(count);
+		 for (int w : dist2) {
+			 result.add(w);
+		 }
+		 return result;
 	}
 	
 	/**
@@ -123,10 +151,10 @@ public class GraphAdjList extends Graph {
 		String s = "Adjacency list";
 		s += " (size " + getNumVertices() + "+" + getNumEdges() + " integers):";
 
-		for (int v : adjListsMap.keySet()) {
+		for (int v = 0; v < getNumVertices(); v++) {
 			s += "\n\t"+v+": ";
-			for (int w : adjListsMap.get(v)) {
-				s += w+", ";
+			for (int i = 0; i < outDegree[v]; i++) {
+				s += outLists[v][i]+", ";
 			}
 		}
 		return s;
@@ -0,0 +1,525 @@
+package basicgraph;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import util.GraphLoader;
+
+/**
+ * Hub and vulnerability analytics over a directed Graph: PageRank,
+ * betweenness centrality, strongly connected components and core numbers.
+ *
+ * The graph is copied once into compressed sparse row form, both ways:
+ * the heads of the edges out of v are firstOut[v] up to firstOut[v+1] in
+ * head, and the tails of the edges into v likewise in tail.  Parallel
+ * edges are kept, one entry each.  Every analysis works on these int
+ * arrays, so it does not touch the graph's lists again; the copy does not
+ * see edges added to the graph later.
+ *
+ * PageRank and betweenness split their work into a fixed number of
+ * chunks that a fork-join pool runs in parallel, and combine the chunks
+ * in a fixed order, so they give the same result with any pool or none.
+ *
+ */
+public final class GraphAnalytics {
+
+	/** Vertices per chunk of a PageRank iteration */
+	private static final int PAGE_RANK_CHUNK = 1024;
+
+	/** The number of chunks the sources of betweenness are split into;
+	 * each keeps its own sums, so this bounds the memory to this many arrays */
+	private static final int BETWEENNESS_CHUNKS = 32;
+
+	/** Work on one chunk of a range */
+	private interface ChunkWork {
+		void run(int chunk, int from, int to);
+	}
+
+	/** Runs the chunks of a range, splitting it until it is one chunk */
+	@SuppressWarnings("serial")
+	private static class ChunkTask extends RecursiveAction {
+		private final ChunkWork work;
+		private final int size;
+		private final int end;
+		private final int fromChunk, toChunk;
+
+		ChunkTask(ChunkWork work, int size, int end, int fromChunk, int toChunk) {
+			this.work = work;
+			this.size = size;
+			this.end = end;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		@Override
+		protected void compute() {
+			if (toChunk - fromChunk == 1) {
+				int from = fromChunk * size;
+				work.run(fromChunk, from, Math.min(end, from + size));
+			}
+			else {
+				int mid = (fromChunk + toChunk) >>> 1;
+				invokeAll(new ChunkTask(work, size, end, fromChunk, mid),
+						new ChunkTask(work, size, end, mid, toChunk));
+			}
+		}
+	}
+
+	/**
+	 * Run work over 0 up to end in chunks
+	 * @return The number of chunks
+	 */
+	private static int runChunks(ChunkWork work, int end, int size, ForkJoinPool pool)
+	{
+		int chunks = (end + size - 1) / size;
+		if (chunks == 0) {
+			return 0;
+		}
+		ChunkTask task = new ChunkTask(work, size, end, 0, chunks);
+		if (pool == null) {
+			task.compute();
+		}
+		else {
+			pool.invoke(task);
+		}
+		return chunks;
+	}
+
+	private final int n;
+	private final int[] firstOut;
+	private final int[] head;
+	private final int[] firstIn;
+	private final int[] tail;
+
+	/**
+	 * Copy the edges of a graph
+	 * @param graph The graph
+	 */
+	public GraphAnalytics(Graph graph)
+	{
+		n = graph.getNumVertices();
+		firstOut = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			firstOut[v + 1] = firstOut[v] + graph.getOutDegree(v);
+		}
+		head = new int[firstOut[n]];
+		firstIn = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			int a = firstOut[v];
+			for (int w : graph.getNeighbors(v)) {
+				head[a++] = w;
+				firstIn[w + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			firstIn[v + 1] += firstIn[v];
+		}
+		tail = new int[head.length];
+		int[] fill = Arrays.copyOf(firstIn, n);
+		for (int v = 0; v < n; v++) {
+			for (int a = firstOut[v]; a < firstOut[v + 1]; a++) {
+				tail[fill[head[a]]++] = v;
+			}
+		}
+	}
+
+	/** @return The number of vertices */
+	public int getNumVertices()
+	{
+		return n;
+	}
+
+	/** @return The number of edges, counting parallel edges */
+	public int getNumEdges()
+	{
+		return head.length;
+	}
+
+	/**
+	 * Rank the vertices by PageRank, by power iteration: each step a
+	 * vertex keeps 1 - damping of the average rank and gets damping of
+	 * the rank of each in-neighbor, shared among that neighbor's edges.
+	 * The rank of vertices with no edges out is shared among all.
+	 * @param damping The chance of following an edge, e.g. 0.85
+	 * @param tolerance Stop once the ranks change by less than this in
+	 *   total in a step
+	 * @param maxIterations Stop after this many steps in any case
+	 * @param pool Where to compute the steps, or null to do it all on the
+	 *   calling thread
+	 * @return The rank of each vertex, summing to 1
+	 */
+	public double[] pageRank(final double damping, double tolerance, int maxIterations, ForkJoinPool pool)
+	{
+		if (!(damping >= 0 && damping < 1)) {
+			throw new IllegalArgumentException("Damping must be from 0 up to 1, not " + damping);
+		}
+		final double[][] rank = { new double[n], new double[n] };
+		Arrays.fill(rank[0], 1.0 / n);
+		final double[] share = new double[n];
+		int chunks = (n + PAGE_RANK_CHUNK - 1) / PAGE_RANK_CHUNK;
+		final double[] partial = new double[chunks];
+		final double[] base = new double[1];
+
+		for (int iteration = 0; iteration < maxIterations; iteration++) {
+			// what each vertex passes along each edge, and what it cannot
+			runChunks(new ChunkWork() {
+				public void run(int chunk, int from, int to) {
+					double dangling = 0.0;
+					for (int u = from; u < to; u++) {
+						int degree = firstOut[u + 1] - firstOut[u];
+						if (degree == 0) {
+							dangling += rank[0][u];
+							share[u] = 0.0;
+						}
+						else {
+							share[u] = rank[0][u] / degree;
+						}
+					}
+					partial[chunk] = dangling;
+				}
+			}, n, PAGE_RANK_CHUNK, pool);
+			double dangling = 0.0;
+			for (int c = 0; c < chunks; c++) {
+				dangling += partial[c];
+			}
+			base[0] = (1 - damping) / n + damping * dangling / n;
+
+			runChunks(new ChunkWork() {
+				public void run(int chunk, int from, int to) {
+					double change = 0.0;
+					for (int v = from; v < to; v++) {
+						double sum = 0.0;
+						for (int i = firstIn[v]; i < firstIn[v + 1]; i++) {
+							sum += share[tail[i]];
+						}
+						double next = base[0] + damping * sum;
+						change += Math.abs(next - rank[0][v]);
+						rank[1][v] = next;
+					}
+					partial[chunk] = change;
+				}
+			}, n, PAGE_RANK_CHUNK, pool);
+			double change = 0.0;
+			for (int c = 0; c < chunks; c++) {
+				change += partial[c];
+			}
+			double[] swap = rank[0];
+			rank[0] = rank[1];
+			rank[1] = swap;
+			if (change < tolerance) {
+				break;
+			}
+		}
+		return rank[0];
+	}
+
+	/**
+	 * Find the betweenness centrality of every vertex by Brandes'
+	 * algorithm: the number of shortest paths between other vertices that
+	 * pass through it, counting paths by their number of edges, with a
+	 * pair joined by several shortest paths counting the fraction through
+	 * the vertex.  Paths are directed, and parallel edges are separate
+	 * paths.  The breadth first search from each source is independent,
+	 * so the sources are split among the pool.
+	 * @param pool Where to run the searches, or null to run them all on
+	 *   the calling thread
+	 * @return The centrality of each vertex, not normalized
+	 */
+	public double[] betweenness(ForkJoinPool pool)
+	{
+		final double[][] sums = new double[BETWEENNESS_CHUNKS][];
+		int size = Math.max(1, (n + BETWEENNESS_CHUNKS - 1) / BETWEENNESS_CHUNKS);
+		int chunks = runChunks(new ChunkWork() {
+			public void run(int chunk, int from, int to) {
+				double[] centrality = new double[n];
+				int[] dist = new int[n];
+				double[] paths = new double[n];
+				double[] delta = new double[n];
+				int[] order = new int[n];
+				Arrays.fill(dist, -1);
+				for (int s = from; s < to; s++) {
+					accumulate(s, centrality, dist, paths, delta, order);
+				}
+				sums[chunk] = centrality;
+			}
+		}, n, size, pool);
+
+		double[] centrality = new double[n];
+		for (int c = 0; c < chunks; c++) {
+			for (int v = 0; v < n; v++) {
+				centrality[v] += sums[c][v];
+			}
+		}
+		return centrality;
+	}
+
+	/**
+	 * Add the dependencies of one source to the centralities
+	 * @param s The source
+	 * @param centrality The sums to add to
+	 * @param dist Scratch, all -1 on entry and left so
+	 * @param paths Scratch
+	 * @param delta Scratch
+	 * @param order Scratch
+	 */
+	private void accumulate(int s, double[] centrality, int[] dist, double[] paths,
+			double[] delta, int[] order)
+	{
+		// breadth first, counting the shortest paths to each vertex;
+		// order is the queue and, read backward, the stack
+		int reached = 0;
+		order[reached++] = s;
+		dist[s] = 0;
+		paths[s] = 1.0;
+		for (int i = 0; i < reached; i++) {
+			int v = order[i];
+			for (int a = firstOut[v]; a < firstOut[v + 1]; a++) {
+				int w = head[a];
+				if (dist[w] < 0) {
+					dist[w] = dist[v] + 1;
+					paths[w] = 0.0;
+					delta[w] = 0.0;
+					order[reached++] = w;
+				}
+				if (dist[w] == dist[v] + 1) {
+					paths[w] += paths[v];
+				}
+			}
+		}
+		delta[s] = 0.0;
+
+		// back from the farthest, passing each vertex's dependency to
+		// its predecessors on shortest paths
+		for (int i = reached - 1; i > 0; i--) {
+			int w = order[i];
+			double perPath = (1.0 + delta[w]) / paths[w];
+			for (int j = firstIn[w]; j < firstIn[w + 1]; j++) {
+				int u = tail[j];
+				if (dist[u] == dist[w] - 1) {
+					delta[u] += paths[u] * perPath;
+				}
+			}
+			centrality[w] += delta[w];
+		}
+		for (int i = 0; i < reached; i++) {
+			dist[order[i]] = -1;
+		}
+	}
+
+	/**
+	 * Split the vertices into strongly connected components, the largest
+	 * sets in which each vertex can reach every other, by Tarjan's
+	 * algorithm.  The depth first search keeps its own stack, so deep
+	 * graphs cannot overflow the thread's.
+	 * @return The component of each vertex, numbered from 0 so that no
+	 *   edge leads from a component to a higher-numbered one
+	 */
+	public int[] stronglyConnectedComponents()
+	{
+		int[] component = new int[n];
+		int[] index = new int[n];
+		int[] low = new int[n];
+		int[] nextArc = new int[n];
+		int[] callStack = new int[n];
+		int[] members = new int[n];
+		boolean[] onStack = new boolean[n];
+		Arrays.fill(index, -1);
+		int counter = 0, numComponents = 0, depth = 0, stacked = 0;
+
+		for (int root = 0; root < n; root++) {
+			if (index[root] >= 0) {
+				continue;
+			}
+			callStack[depth++] = root;
+			index[root] = low[root] = counter++;
+			nextArc[root] = firstOut[root];
+			members[stacked++] = root;
+			onStack[root] = true;
+			while (depth > 0) {
+				int v = callStack[depth - 1];
+				if (nextArc[v] < firstOut[v + 1]) {
+					int w = head[nextArc[v]++];
+					if (index[w] < 0) {
+						callStack[depth++] = w;
+						index[w] = low[w] = counter++;
+						nextArc[w] = firstOut[w];
+						members[stacked++] = w;
+						onStack[w] = true;
+					}
+					else if (onStack[w]) {
+						low[v] = Math.min(low[v], index[w]);
+					}
+					continue;
+				}
+				// v is finished: close its component if it is the root of one
+				depth--;
+				if (depth > 0) {
+					int parent = callStack[depth - 1];
+					low[parent] = Math.min(low[parent], low[v]);
+				}
+				if (low[v] == index[v]) {
+					int w;
+					do {
+						w = members[--stacked];
+						onStack[w] = false;
+						component[w] = numComponents;
+					} while (w != v);
+					numComponents++;
+				}
+			}
+		}
+		return component;
+	}
+
+	/**
+	 * Find the core number of every vertex: the largest k such that it
+	 * is in a subgraph where every vertex has degree at least k.  Degrees
+	 * count edges both ways, as in degreeSequence, so a vertex with few
+	 * neighbors but many edges to them is well connected.  Peels the
+	 * vertices off in order of degree with a bucket queue, in time linear
+	 * in the size of the graph.
+	 * @return The core number of each vertex
+	 */
+	public int[] coreNumbers()
+	{
+		int[] degree = new int[n];
+		int maxDegree = 0;
+		for (int v = 0; v < n; v++) {
+			degree[v] = (firstOut[v + 1] - firstOut[v]) + (firstIn[v + 1] - firstIn[v]);
+			maxDegree = Math.max(maxDegree, degree[v]);
+		}
+		// vertices sorted by degree, with where each degree starts
+		int[] bucketStart = new int[maxDegree + 2];
+		for (int v = 0; v < n; v++) {
+			bucketStart[degree[v] + 1]++;
+		}
+		for (int d = 0; d <= maxDegree; d++) {
+			bucketStart[d + 1] += bucketStart[d];
+		}
+		int[] sorted = new int[n];
+		int[] position = new int[n];
+		int[] fill = Arrays.copyOf(bucketStart, maxDegree + 1);
+		for (int v = 0; v < n; v++) {
+			position[v] = fill[degree[v]]++;
+			sorted[position[v]] = v;
+		}
+
+		for (int i = 0; i < n; i++) {
+			int v = sorted[i];
+			for (int a = firstOut[v]; a < firstOut[v + 1]; a++) {
+				lowerDegree(head[a], v, degree, bucketStart, sorted, position);
+			}
+			for (int j = firstIn[v]; j < firstIn[v + 1]; j++) {
+				lowerDegree(tail[j], v, degree, bucketStart, sorted, position);
+			}
+		}
+		return degree;
+	}
+
+	/** Take one from the degree of a neighbor of a peeled vertex, keeping the vertices sorted */
+	private static void lowerDegree(int u, int v, int[] degree, int[] bucketStart, int[] sorted,
+			int[] position)
+	{
+		if (degree[u] <= degree[v]) {
+			return;
+		}
+		// swap u with the first vertex of its degree, then shrink that degree by one
+		int d = degree[u];
+		int first = bucketStart[d];
+		int w = sorted[first];
+		if (w != u) {
+			sorted[position[u]] = w;
+			position[w] = position[u];
+			sorted[first] = u;
+			position[u] = first;
+		}
+		bucketStart[d]++;
+		degree[u]--;
+	}
+
+	/** @return The vertices with the highest scores, best first */
+	private static int[] top(double[] score, int count)
+	{
+		Integer[] byScore = new Integer[score.length];
+		for (int v = 0; v < score.length; v++) {
+			byScore[v] = v;
+		}
+		final double[] s = score;
+		Arrays.sort(byScore, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(s[b], s[a]);
+			}
+		});
+		int[] result = new int[Math.min(count, score.length)];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = byScore[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Analyse an airline route file, checking that the parallel results
+	 * match the sequential ones.
+	 * @param args [FILE.dat], routesUA.dat by default
+	 */
+	public static void main(String[] args)
+	{
+		String file = (args.length > 0) ? args[0] : "data/airports/routesUA.dat";
+		Graph graph = new GraphAdjList();
+		GraphLoader.loadRoutes(file, graph);
+		GraphAnalytics analytics = new GraphAnalytics(graph);
+		System.out.println(analytics.getNumVertices() + " airports, " + analytics.getNumEdges() + " routes");
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+
+		long start = System.nanoTime();
+		double[] rank = analytics.pageRank(0.85, 1e-10, 100, pool);
+		long rankNanos = System.nanoTime() - start;
+		boolean same = Arrays.equals(rank, analytics.pageRank(0.85, 1e-10, 100, null));
+		start = System.nanoTime();
+		double[] between = analytics.betweenness(pool);
+		long betweenNanos = System.nanoTime() - start;
+		same &= Arrays.equals(between, analytics.betweenness(null));
+
+		System.out.println(String.format(Locale.ROOT, "PageRank in %.1f ms, betweenness in %.1f ms; %s",
+				rankNanos / 1e6, betweenNanos / 1e6,
+				same ? "parallel and sequential agree" : "PARALLEL AND SEQUENTIAL DIFFER"));
+		StringBuilder hubs = new StringBuilder("Top PageRank:");
+		for (int v : top(rank, 5)) {
+			hubs.append(String.format(Locale.ROOT, " %s %.4f", graph.getLabel(v), rank[v]));
+		}
+		System.out.println(hubs);
+		StringBuilder brokers = new StringBuilder("Top betweenness:");
+		for (int v : top(between, 5)) {
+			brokers.append(String.format(Locale.ROOT, " %s %.0f", graph.getLabel(v), between[v]));
+		}
+		System.out.println(brokers);
+
+		int[] component = analytics.stronglyConnectedComponents();
+		int numComponents = 0;
+		for (int c : component) {
+			numComponents = Math.max(numComponents, c + 1);
+		}
+		int[] sizes = new int[numComponents];
+		for (int c : component) {
+			sizes[c]++;
+		}
+		Arrays.sort(sizes);
+		int[] core = analytics.coreNumbers();
+		int maxCore = 0, inMaxCore = 0;
+		for (int k : core) {
+			if (k > maxCore) {
+				maxCore = k;
+				inMaxCore = 0;
+			}
+			if (k == maxCore) {
+				inMaxCore++;
+			}
+		}
+		System.out.println(numComponents + " strongly connected components, the largest of " +
+				((numComponents == 0) ? 0 : sizes[numComponents - 1]) + " airports; " +
+				inMaxCore + " airports in the " + maxCore + "-core");
+	}
+}
@@ -0,0 +1,40 @@
+package basicgraph;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A read-only list over the first size entries of an int array, so a
+ * graph can hand out its neighbor lists without copying them.
+ *
+ * Graphs only ever append to their arrays, or move them to larger ones,
+ * so a view keeps showing the neighbors as they were when it was made.
+ *
+ */
+final class IntListView extends AbstractList<Integer> implements RandomAccess {
+
+	private final int[] values;
+	private final int size;
+
+	/**
+	 * @param values The array to show; not copied
+	 * @param size The number of entries to show, from the start
+	 */
+	IntListView(int[] values, int size) {
+		this.values = values;
+		this.size = size;
+	}
+
+	@Override
+	public Integer get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return values[index];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
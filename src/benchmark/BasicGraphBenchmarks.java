@@ -0,0 +1,164 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import basicgraph.FlightNetwork;
+import basicgraph.Graph;
+import basicgraph.GraphAdjBitMatrix;
+import basicgraph.GraphAdjList;
+import basicgraph.GraphAdjMatrix;
+import basicgraph.GraphAnalytics;
+import util.GraphLoader;
+
+/**
+ * Benchmarks for the basicgraph representations, on the airport
+ * route data and on one road map.
+ *
+ */
+public class BasicGraphBenchmarks {
+
+	/** Creates an empty graph of one representation */
+	interface GraphFactory {
+		Graph create();
+	}
+
+	private final String routesFile;
+	private final String roadFile;
+
+	/**
+	 * @param routesFile The airline routes file, e.g. data/airports/routesUA.dat
+	 * @param roadFile A road map file to load as an unlabeled graph
+	 */
+	public BasicGraphBenchmarks(String routesFile, String roadFile) {
+		this.routesFile = routesFile;
+		this.roadFile = roadFile;
+	}
+
+	/**
+	 * Run all basicgraph benchmarks.
+	 * @param runner The runner that times and records them
+	 */
+	public void runAll(BenchmarkRunner runner) {
+		runFor(runner, "GraphAdjList", new GraphFactory() {
+			public Graph create() { return new GraphAdjList(); }
+		});
+		runFor(runner, "GraphAdjMatrix", new GraphFactory() {
+			public Graph create() { return new GraphAdjMatrix(); }
+		});
+		runFor(runner, "GraphAdjBitMatrix", new GraphFactory() {
+			public Graph create() { return new GraphAdjBitMatrix(); }
+		});
+		runAnalytics(runner);
+		runItineraries(runner);
+	}
+
+	private void runAnalytics(BenchmarkRunner runner) {
+		Graph airports = new GraphAdjList();
+		GraphLoader.loadRoutes(routesFile, airports);
+		final GraphAnalytics analytics = new GraphAnalytics(airports);
+		runner.run("basicgraph.pageRank", BenchmarkRunner.param("impl", "GraphAnalytics"), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(analytics.pageRank(0.85, 1e-10, 100, ForkJoinPool.commonPool()));
+			}
+		});
+		runner.run("basicgraph.betweenness", BenchmarkRunner.param("impl", "GraphAnalytics"), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(analytics.betweenness(ForkJoinPool.commonPool()));
+			}
+		});
+		runner.run("basicgraph.stronglyConnectedComponents", BenchmarkRunner.param("impl", "GraphAnalytics"), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(analytics.stronglyConnectedComponents());
+			}
+		});
+		runner.run("basicgraph.coreNumbers", BenchmarkRunner.param("impl", "GraphAnalytics"), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(analytics.coreNumbers());
+			}
+		});
+	}
+
+	private void runItineraries(BenchmarkRunner runner) {
+		final FlightNetwork network = FlightNetwork.load(routesFile, null);
+		final String[][] pairs = new String[64][];
+		Random random = new Random(42);
+		for (int i = 0; i < pairs.length; i++) {
+			pairs[i] = new String[] {
+				network.getAirport(random.nextInt(network.getNumAirports())),
+				network.getAirport(random.nextInt(network.getNumAirports()))
+			};
+		}
+		runner.run("basicgraph.fewestHops", BenchmarkRunner.param("impl", "FlightNetwork"), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				String[] pair = pairs[(int) (i % pairs.length)];
+				Blackhole.consume(network.fewestHops(pair[0], pair[1], null));
+			}
+		});
+	}
+
+	private void runFor(BenchmarkRunner runner, String impl, final GraphFactory factory) {
+		runner.run("basicgraph.loadRoutes", BenchmarkRunner.param("impl", impl), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Graph g = factory.create();
+				GraphLoader.loadRoutes(routesFile, g);
+				Blackhole.consume(g.getNumEdges());
+			}
+		});
+		runner.run("basicgraph.loadRoadMap", BenchmarkRunner.param("impl", impl), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Graph g = factory.create();
+				GraphLoader.loadRoadMap(roadFile, g);
+				Blackhole.consume(g.getNumEdges());
+			}
+		});
+
+		final Graph airports = factory.create();
+		GraphLoader.loadRoutes(routesFile, airports);
+		final int n = airports.getNumVertices();
+
+		runner.run("basicgraph.degreeSequence", BenchmarkRunner.param("impl", impl), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(airports.degreeSequence());
+			}
+		});
+		runner.run("basicgraph.getNeighbors", BenchmarkRunner.param("impl", impl), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(airports.getNeighbors((int) (i % n)));
+			}
+		});
+		runner.run("basicgraph.getInNeighbors", BenchmarkRunner.param("impl", impl), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(airports.getInNeighbors((int) (i % n)));
+			}
+		});
+		runner.run("basicgraph.getDistance2", BenchmarkRunner.param("impl", impl), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(airports.getDistance2((int) (i % n)));
+			}
+		});
+		runner.run("basicgraph.getDistinctDistance2", BenchmarkRunner.param("impl", impl), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(airports.getDistinctDistance2((int) (i % n)));
+			}
+		});
+		runner.run("basicgraph.getIndex", BenchmarkRunner.param("impl", impl), 
+				new BenchmarkRunner.Operation() {
+			public void run(long i) {
+				Blackhole.consume(airports.getIndex(airports.getLabel((int) (i % n))));
+			}
+		});
+	}
+}
@@ -0,0 +1,115 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * The measured time per operation of one benchmark, in the same
+ * shape as the JSON written by JMH (-rf json) so results can be 
+ * compared with the usual tools.
+ *
+ */
+public class BenchmarkResult {
+
+	private final String name;
+	private final Map<String,String> params;
+	private final double[] samples; // average ns/op of each measurement iteration
+	private final int threads;
+
+	/**
+	 * @param name The benchmark name, e.g. "roadgraph.dijkstra"
+	 * @param params The benchmark parameters, e.g. the map file
+	 * @param samples The average time per operation of each iteration, in ns
+	 */
+	public BenchmarkResult(String name, Map<String,String> params, double[] samples) {
+		this.name = name;
+		this.params = new TreeMap<String,String>(params);
+		this.samples = samples.clone();
+		this.threads = 1;
+	}
+
+	public String getName() { return name; }
+	public Map<String,String> getParams() { return params; }
+
+	/** @return The mean time per operation over all iterations, in ns */
+	public double getScore() {
+		double sum = 0.0;
+		for (double s : samples) {
+			sum += s;
+		}
+		return sum / samples.length;
+	}
+
+	/** @return Half-width of the 99.9% confidence interval of the score, in ns */
+	public double getScoreError() {
+		int n = samples.length;
+		if (n < 2) {
+			return Double.NaN;
+		}
+		double mean = getScore();
+		double sq = 0.0;
+		for (double s : samples) {
+			sq += (s - mean) * (s - mean);
+		}
+		double stddev = Math.sqrt(sq / (n - 1));
+		// 3.29 is the two-sided z value for 99.9%; close enough for n >= 5
+		return 3.29 * stddev / Math.sqrt(n);
+	}
+
+	/**
+	 * @param p The percentile, between 0 and 100
+	 * @return The given percentile of the iteration scores, in ns
+	 */
+	public double getPercentile(double p) {
+		double[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	/** @return This result as a JMH style JSON object */
+	public JsonObject toJson() {
+		JsonObjectBuilder paramJson = Json.createObjectBuilder();
+		for (Map.Entry<String,String> e : params.entrySet()) {
+			paramJson.add(e.getKey(), e.getValue());
+		}
+		JsonArrayBuilder raw = Json.createArrayBuilder();
+		for (double s : samples) {
+			raw.add(s);
+		}
+		JsonObjectBuilder percentiles = Json.createObjectBuilder()
+				.add("0.0", getPercentile(0))
+				.add("50.0", getPercentile(50))
+				.add("90.0", getPercentile(90))
+				.add("100.0", getPercentile(100));
+		JsonObjectBuilder metric = Json.createObjectBuilder()
+				.add("score", getScore())
+				.add("scorePercentiles", percentiles)
+				.add("scoreUnit", "ns/op")
+				.add("rawData", Json.createArrayBuilder().add(raw));
+		double error = getScoreError();
+		if (!Double.isNaN(error)) {
+			metric.add("scoreError", error);
+		}
+		return Json.createObjectBuilder()
+				.add("benchmark", name)
+				.add("mode", "avgt")
+				.add("threads", threads)
+				.add("measurementIterations", samples.length)
+				.add("params", paramJson)
+				.add("primaryMetric", metric)
+				.build();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-40s %-30s %14.1f +- %10.1f ns/op", 
+				name, params, getScore(), getScoreError());
+	}
+}
@@ -0,0 +1,158 @@
+package benchmark;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonWriter;
+import javax.json.JsonWriterFactory;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * A small JMH-like harness.  Each benchmark is run in timed warmup
+ * iterations, then in timed measurement iterations, and the average
+ * time per operation of every measurement iteration is recorded.
+ * 
+ * The runner does not fork a JVM per benchmark, so run the whole
+ * suite with the same JVM flags when comparing against a baseline.
+ *
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * One operation to be timed.
+	 */
+	public interface Operation {
+		/**
+		 * Run the operation once.
+		 * @param invocation The number of times the operation ran before,
+		 *   useful to cycle through inputs
+		 */
+		void run(long invocation) throws Exception;
+	}
+
+	private int warmupIterations = 3;
+	private int measurementIterations = 5;
+	private long iterationMillis = 1000;
+	private Pattern filter = Pattern.compile(".*");
+	private final List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+
+	public BenchmarkRunner setWarmupIterations(int n) { warmupIterations = n; return this; }
+	public BenchmarkRunner setMeasurementIterations(int n) { measurementIterations = n; return this; }
+	public BenchmarkRunner setIterationMillis(long millis) { iterationMillis = millis; return this; }
+	public BenchmarkRunner setFilter(String regex) { filter = Pattern.compile(regex); return this; }
+
+	/**
+	 * Whether a benchmark with this name will be run.  Use to skip 
+	 * expensive setup for benchmarks that are filtered out.
+	 * @param name The benchmark name
+	 * @return true if the name matches the filter
+	 */
+	public boolean isSelected(String name) {
+		return filter.matcher(name).find();
+	}
+
+	/**
+	 * Time an operation, if it matches the filter, and keep the result.
+	 * @param name The benchmark name
+	 * @param params The benchmark parameters (may be empty)
+	 * @param op The operation to time
+	 * @return The result, or null if the benchmark was filtered out
+	 */
+	public BenchmarkResult run(String name, Map<String,String> params, Operation op) {
+		if (!isSelected(name)) {
+			return null;
+		}
+		long invocation = 0;
+		try {
+			for (int i = 0; i < warmupIterations; i++) {
+				invocation = iterate(op, invocation, null);
+			}
+			double[] samples = new double[measurementIterations];
+			double[] sample = new double[1];
+			for (int i = 0; i < measurementIterations; i++) {
+				invocation = iterate(op, invocation, sample);
+				samples[i] = sample[0];
+			}
+			BenchmarkResult result = new BenchmarkResult(name, params, samples);
+			results.add(result);
+			System.out.println(result);
+			return result;
+		}
+		catch (Exception e) {
+			System.err.println("Benchmark " + name + " " + params + " failed: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Convenience for benchmarks with no parameters.
+	 */
+	public BenchmarkResult run(String name, Operation op) {
+		return run(name, Collections.<String,String>emptyMap(), op);
+	}
+
+	/**
+	 * Convenience to build a one entry parameter map.
+	 */
+	public static Map<String,String> param(String key, String value) {
+		Map<String,String> params = new HashMap<String,String>();
+		params.put(key, value);
+		return params;
+	}
+
+	// Run the operation repeatedly for one iteration's worth of time,
+	// and always at least once.  Returns the updated invocation count.
+	private long iterate(Operation op, long invocation, double[] nsPerOp) throws Exception {
+		long deadline = System.nanoTime() + iterationMillis * 1000000L;
+		long ops = 0;
+		long start = System.nanoTime();
+		long now;
+		do {
+			op.run(invocation++);
+			ops++;
+			now = System.nanoTime();
+		} while (now < deadline);
+		if (nsPerOp != null) {
+			nsPerOp[0] = (double) (now - start) / ops;
+		}
+		return invocation;
+	}
+
+	/** @return The results of all benchmarks run so far */
+	public List<BenchmarkResult> getResults() {
+		return Collections.unmodifiableList(results);
+	}
+
+	/**
+	 * Write all results as a JSON array, like JMH's -rf json output.
+	 * @param filename The file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeJson(String filename) throws IOException {
+		JsonArrayBuilder array = Json.createArrayBuilder();
+		for (BenchmarkResult r : results) {
+			array.add(r.toJson());
+		}
+		Map<String,Object> config = new HashMap<String,Object>();
+		config.put(JsonGenerator.PRETTY_PRINTING, true);
+		JsonWriterFactory factory = Json.createWriterFactory(config);
+		OutputStream out = new FileOutputStream(filename);
+		try {
+			JsonWriter writer = factory.createWriter(out, java.nio.charset.StandardCharsets.UTF_8);
+			writer.writeArray(array.build());
+			writer.close();
+		}
+		finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package benchmark;
+
+import java.io.IOException;
+
+import tracing.Tracing;
+
+/**
+ * Entry point for the benchmark suite.
+ * 
+ * Options (all optional):
+ *   -f REGEX   only run benchmarks whose name matches, e.g. -f dijkstra
+ *   -wi N      warmup iterations per benchmark (default 3)
+ *   -i N       measurement iterations per benchmark (default 5)
+ *   -t MS      length of one iteration in milliseconds (default 1000)
+ *   -seed N    seed for origin-destination pairs (default 42)
+ *   -rff FILE  JSON result file (default benchmark-results.json)
+ * 
+ * Run from the project root so the data directory is found, e.g.
+ *   java -cp bin:libs/javax.json-1.0.4.jar benchmark.Benchmarks -f roadgraph
+ *
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws IOException {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		String output = "benchmark-results.json";
+		long seed = 42;
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				usage("Missing value for " + arg);
+				return;
+			}
+			String value = args[++i];
+			if (arg.equals("-f")) runner.setFilter(value);
+			else if (arg.equals("-wi")) runner.setWarmupIterations(Integer.parseInt(value));
+			else if (arg.equals("-i")) runner.setMeasurementIterations(Integer.parseInt(value));
+			else if (arg.equals("-t")) runner.setIterationMillis(Long.parseLong(value));
+			else if (arg.equals("-seed")) seed = Long.parseLong(value);
+			else if (arg.equals("-rff")) output = value;
+			else {
+				usage("Unknown option " + arg);
+				return;
+			}
+		}
+
+		// Graphs created by the loaders should not report to the console
+		Tracing.setDefaultTracer(Tracing.NONE);
+
+		new RoadGraphBenchmarks("data/maps", seed).runAll(runner);
+		new BasicGraphBenchmarks("data/airports/routesUA.dat", "data/maps/ucsd.map").runAll(runner);
+
+		runner.writeJson(output);
+		System.out.println("Wrote " + runner.getResults().size() + " results to " + output);
+	}
+
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("Usage: Benchmarks [-f regex] [-wi n] [-i n] [-t ms] [-seed n] [-rff file]");
+	}
+}
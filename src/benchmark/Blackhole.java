@@ -0,0 +1,37 @@
+package benchmark;
+
+/**
+ * Keeps the results of benchmarked operations alive so the JIT
+ * cannot remove the work that produced them.
+ *
+ */
+public final class Blackhole {
+
+	private static volatile int sink;
+
+	private Blackhole() {}
+
+	/**
+	 * Consume a result.
+	 * @param o The result of a benchmarked operation
+	 */
+	public static void consume(Object o) {
+		sink += System.identityHashCode(o);
+	}
+
+	/**
+	 * Consume a primitive result.
+	 * @param value The result of a benchmarked operation
+	 */
+	public static void consume(long value) {
+		sink += (int) (value ^ (value >>> 32));
+	}
+
+	/**
+	 * Consume a primitive result.
+	 * @param value The result of a benchmarked operation
+	 */
+	public static void consume(double value) {
+		consume(Double.doubleToLongBits(value));
+	}
+}
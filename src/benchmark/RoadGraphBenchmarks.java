@@ -0,0 +1,276 @@
+package benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import geography.GeographicPoint;
+import geography.PointArray;
+import geography.RoadSegment;
+import roadgraph.ArcFlags;
+import roadgraph.CchMetric;
+import roadgraph.CustomizableCH;
+import roadgraph.HubLabels;
+import roadgraph.MapGraph;
+import roadgraph.OverlayGraph;
+import roadgraph.OverlayMetric;
+import roadgraph.SpeedTable;
+import roadgraph.TurnCosts;
+import tracing.Tracing;
+import util.GraphLoader;
+import util.RouteGeometry;
+
+/**
+ * Benchmarks for loading road maps and routing on them.
+ * Every .map file in the map directory is a parameter value.
+ *
+ */
+public class RoadGraphBenchmarks {
+
+	/** Number of random origin-destination pairs per map */
+	public static final int NUM_PAIRS = 64;
+
+	private final String mapDirectory;
+	private final long seed;
+
+	/**
+	 * @param mapDirectory The directory holding the .map files
+	 * @param seed The seed for choosing origin-destination pairs
+	 */
+	public RoadGraphBenchmarks(String mapDirectory, long seed) {
+		this.mapDirectory = mapDirectory;
+		this.seed = seed;
+	}
+
+	/**
+	 * Run all road graph benchmarks.
+	 * @param runner The runner that times and records them
+	 */
+	public void runAll(BenchmarkRunner runner) {
+		for (final String file : mapFiles()) {
+			HashMap<String,String> params = new HashMap<String,String>();
+			params.put("map", new File(file).getName());
+
+			runner.run("roadgraph.loadRoadMap", params, new BenchmarkRunner.Operation() {
+				public void run(long i) {
+					MapGraph graph = new MapGraph();
+					GraphLoader.loadRoadMap(file, graph);
+					Blackhole.consume(graph.getNumEdges());
+				}
+			});
+
+			if (!runner.isSelected("roadgraph.bfs") && !runner.isSelected("roadgraph.dijkstra") 
+					&& !runner.isSelected("roadgraph.aStarSearch") 
+					&& !runner.isSelected("roadgraph.constructMapPath")
+					&& !runner.isSelected("roadgraph.cchCustomize") 
+					&& !runner.isSelected("roadgraph.cchQuery")
+					&& !runner.isSelected("roadgraph.hubLabelDistance")
+					&& !runner.isSelected("roadgraph.arcFlagsDijkstra")
+					&& !runner.isSelected("roadgraph.alternativeRoutes")
+					&& !runner.isSelected("roadgraph.turnDijkstra")
+					&& !runner.isSelected("roadgraph.fastestAStar")
+					&& !runner.isSelected("geography.distances")
+					&& !runner.isSelected("roadgraph.overlayCustomize") 
+					&& !runner.isSelected("roadgraph.overlayQuery")) {
+				continue;
+			}
+
+			final MapGraph graph = new MapGraph();
+			final HashMap<GeographicPoint,HashSet<RoadSegment>> roads = 
+					new HashMap<GeographicPoint,HashSet<RoadSegment>>();
+			GraphLoader.loadRoadMap(file, graph, roads, null);
+			graph.setTracer(Tracing.NONE);
+			final GeographicPoint[][] pairs = randomPairs(graph, NUM_PAIRS, seed);
+			params.put("pairs", String.valueOf(NUM_PAIRS));
+			params.put("seed", String.valueOf(seed));
+
+			runner.run("roadgraph.bfs", params, new BenchmarkRunner.Operation() {
+				public void run(long i) {
+					GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+					Blackhole.consume(graph.bfs(pair[0], pair[1]));
+				}
+			});
+			runner.run("roadgraph.dijkstra", params, new BenchmarkRunner.Operation() {
+				public void run(long i) {
+					GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+					Blackhole.consume(graph.dijkstra(pair[0], pair[1]));
+				}
+			});
+			runner.run("roadgraph.aStarSearch", params, new BenchmarkRunner.Operation() {
+				public void run(long i) {
+					GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+					Blackhole.consume(graph.aStarSearch(pair[0], pair[1]));
+				}
+			});
+			runner.run("roadgraph.alternativeRoutes", params, new BenchmarkRunner.Operation() {
+				public void run(long i) {
+					GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+					Blackhole.consume(graph.alternativeRoutes(pair[0], pair[1], 3));
+				}
+			});
+
+			if (runner.isSelected("roadgraph.arcFlagsDijkstra")) {
+				// Flags are computed once; only the pruned searches are timed
+				graph.addArcFlags(ArcFlags.build(graph, 64));
+				runner.run("roadgraph.arcFlagsDijkstra", params, new BenchmarkRunner.Operation() {
+					public void run(long i) {
+						GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+						Blackhole.consume(graph.dijkstra(pair[0], pair[1]));
+					}
+				});
+				graph.clearArcFlags();
+			}
+
+			if (runner.isSelected("roadgraph.turnDijkstra")) {
+				// The turns are built once; only the searches over them are timed
+				graph.setTurnCosts(TurnCosts.DEFAULT);
+				graph.getTurnGraph();
+				runner.run("roadgraph.turnDijkstra", params, new BenchmarkRunner.Operation() {
+					public void run(long i) {
+						GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+						Blackhole.consume(graph.dijkstra(pair[0], pair[1]));
+					}
+				});
+				graph.setTurnCosts(null);
+			}
+
+			if (runner.isSelected("roadgraph.fastestAStar")) {
+				graph.setSpeeds(SpeedTable.DEFAULT);
+				runner.run("roadgraph.fastestAStar", params, new BenchmarkRunner.Operation() {
+					public void run(long i) {
+						GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+						Blackhole.consume(graph.aStarSearch(pair[0], pair[1]));
+					}
+				});
+				graph.setSpeeds(null);
+			}
+
+			if (runner.isSelected("geography.distances")) {
+				// The great circle distance from each start to every intersection
+				final PointArray points = new PointArray(new ArrayList<GeographicPoint>(graph.getVertices()));
+				final double[] out = new double[points.size()];
+				runner.run("geography.distances", params, new BenchmarkRunner.Operation() {
+					public void run(long i) {
+						points.distances(pairs[(int) (i % pairs.length)][0], out);
+						Blackhole.consume(out[(int) (i % out.length)]);
+					}
+				});
+			}
+
+			if (runner.isSelected("roadgraph.cchCustomize") || runner.isSelected("roadgraph.cchQuery")
+					|| runner.isSelected("roadgraph.hubLabelDistance")) {
+				// Contraction is done once per map; only customization and queries are timed
+				final CustomizableCH cch = CustomizableCH.build(graph);
+				final CchMetric metric = cch.customize(graph.getSnapshot());
+				runner.run("roadgraph.cchCustomize", params, new BenchmarkRunner.Operation() {
+					public void run(long i) {
+						Blackhole.consume(cch.customize(graph.getSnapshot()));
+					}
+				});
+				runner.run("roadgraph.cchQuery", params, new BenchmarkRunner.Operation() {
+					public void run(long i) {
+						GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+						Blackhole.consume(metric.route(pair[0], pair[1]));
+					}
+				});
+				if (runner.isSelected("roadgraph.hubLabelDistance")) {
+					final HubLabels labels = HubLabels.build(metric);
+					runner.run("roadgraph.hubLabelDistance", params, new BenchmarkRunner.Operation() {
+						public void run(long i) {
+							GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+							Blackhole.consume(labels.distance(pair[0], pair[1]));
+						}
+					});
+				}
+			}
+
+			if (runner.isSelected("roadgraph.overlayCustomize") || runner.isSelected("roadgraph.overlayQuery")) {
+				// Partitioning is done once per map; only customization and queries are timed
+				final OverlayGraph overlay = OverlayGraph.build(graph);
+				final OverlayMetric metric = overlay.customize(graph.getSnapshot());
+				runner.run("roadgraph.overlayCustomize", params, new BenchmarkRunner.Operation() {
+					public void run(long i) {
+						Blackhole.consume(overlay.customize(graph.getSnapshot()));
+					}
+				});
+				runner.run("roadgraph.overlayQuery", params, new BenchmarkRunner.Operation() {
+					public void run(long i) {
+						GeographicPoint[] pair = pairs[(int) (i % pairs.length)];
+						Blackhole.consume(metric.route(pair[0], pair[1]));
+					}
+				});
+			}
+
+			if (runner.isSelected("roadgraph.constructMapPath")) {
+				// Routes are computed up front; only the expansion is timed
+				final List<List<GeographicPoint>> routes = new ArrayList<List<GeographicPoint>>();
+				for (GeographicPoint[] pair : pairs) {
+					List<GeographicPoint> route = graph.dijkstra(pair[0], pair[1]);
+					if (route != null) {
+						routes.add(route);
+					}
+				}
+				if (!routes.isEmpty()) {
+					runner.run("roadgraph.constructMapPath", params, new BenchmarkRunner.Operation() {
+						public void run(long i) {
+							List<GeographicPoint> route = routes.get((int) (i % routes.size()));
+							Blackhole.consume(RouteGeometry.constructMapPath(route, roads));
+						}
+					});
+				}
+			}
+		}
+	}
+
+	/**
+	 * Choose origin-destination pairs uniformly at random among the
+	 * vertices of a graph.  The same seed gives the same pairs for
+	 * the same map file.
+	 * @param graph The graph
+	 * @param n The number of pairs
+	 * @param seed The random seed
+	 * @return n pairs of {origin, destination}
+	 */
+	public static GeographicPoint[][] randomPairs(MapGraph graph, int n, long seed) {
+		List<GeographicPoint> vertices = new ArrayList<GeographicPoint>(graph.getVertices());
+		// HashSet order is not something to rely on across runs
+		Collections.sort(vertices, new Comparator<GeographicPoint>() {
+			public int compare(GeographicPoint a, GeographicPoint b) {
+				int c = Double.compare(a.getX(), b.getX());
+				return (c != 0) ? c : Double.compare(a.getY(), b.getY());
+			}
+		});
+		Random random = new Random(seed);
+		GeographicPoint[][] pairs = new GeographicPoint[n][];
+		for (int i = 0; i < n; i++) {
+			pairs[i] = new GeographicPoint[] {
+				vertices.get(random.nextInt(vertices.size())),
+				vertices.get(random.nextInt(vertices.size()))
+			};
+		}
+		return pairs;
+	}
+
+	// The .map files in the map directory, in name order
+	private List<String> mapFiles() {
+		List<String> files = new ArrayList<String>();
+		File[] listing = new File(mapDirectory).listFiles();
+		if (listing == null) {
+			System.err.println("No map directory at " + mapDirectory);
+			return files;
+		}
+		Arrays.sort(listing);
+		for (File f : listing) {
+			if (f.getName().endsWith(".map")) {
+				files.add(f.getPath());
+			}
+		}
+		return files;
+	}
+}
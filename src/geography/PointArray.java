@@ -0,0 +1,144 @@
+package geography;
+
+import java.util.List;
+
+/**
+ * A fixed list of points kept as structure-of-arrays, for measuring the
+ * distance from one point to many at once: the distance matrices, nearest
+ * neighbour searches and great circle weights that would otherwise call
+ * GeographicPoint.distance in a loop, on one object at a time.
+ *
+ * Each point is stored as the unit vector from the earth's centre through
+ * it, in three double arrays, so its trigonometry is done once when the
+ * list is built.  The great circle distance between two points is then
+ * 2R asin(c/2), where c is the straight chord between their unit vectors.
+ * That equals the haversine distance of GeographicPoint, to rounding.
+ *
+ * The batch kernels run in two passes over plain arrays: the squared
+ * chords first, in a loop of subtracts and multiplies the JIT compiles
+ * to vector instructions where the processor has them, then the arcsines.
+ * Finding the nearest point needs only the first pass, since a shorter
+ * chord is a shorter distance.
+ *
+ * The list is only read once built, so any number of threads can use it.
+ *
+ */
+public final class PointArray {
+
+	/** The radius of the earth in km, as GeographicPoint uses */
+	public static final double EARTH_RADIUS = 6373;
+
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] zs;
+
+	/**
+	 * @param points The points, in the order they are to be numbered
+	 */
+	public PointArray(List<? extends GeographicPoint> points)
+	{
+		int n = points.size();
+		xs = new double[n];
+		ys = new double[n];
+		zs = new double[n];
+		for (int i = 0; i < n; i++) {
+			GeographicPoint p = points.get(i);
+			double lat = Math.toRadians(p.getX());
+			double lon = Math.toRadians(p.getY());
+			double cosLat = Math.cos(lat);
+			xs[i] = cosLat * Math.cos(lon);
+			ys[i] = cosLat * Math.sin(lon);
+			zs[i] = Math.sin(lat);
+		}
+	}
+
+	/** @return The number of points */
+	public int size()
+	{
+		return xs.length;
+	}
+
+	/**
+	 * @return The great circle distance in km between two of the points
+	 */
+	public double distance(int i, int j)
+	{
+		double dx = xs[i] - xs[j];
+		double dy = ys[i] - ys[j];
+		double dz = zs[i] - zs[j];
+		return toKm(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Find the great circle distance from a point to each of the points
+	 * @param from The point to measure from
+	 * @param out Filled with the distances in km, by index; at least size() long
+	 */
+	public void distances(GeographicPoint from, double[] out)
+	{
+		distances(from, 0, size(), out);
+	}
+
+	/**
+	 * Find the great circle distance from a point to some of the points
+	 * @param from The point to measure from
+	 * @param start The index of the first point to measure to
+	 * @param end The index after the last point to measure to
+	 * @param out Filled with the distances in km at the indices of the points
+	 */
+	public void distances(GeographicPoint from, int start, int end, double[] out)
+	{
+		chordsSquared(from, start, end, out);
+		for (int i = start; i < end; i++) {
+			out[i] = toKm(out[i]);
+		}
+	}
+
+	/**
+	 * Find the point closest to another one
+	 * @param from The point to search around
+	 * @return The index of the closest point, the lowest if several are as
+	 *   close; -1 if the list is empty
+	 */
+	public int nearest(GeographicPoint from)
+	{
+		double lat = Math.toRadians(from.getX());
+		double lon = Math.toRadians(from.getY());
+		double cosLat = Math.cos(lat);
+		double fx = cosLat * Math.cos(lon), fy = cosLat * Math.sin(lon), fz = Math.sin(lat);
+		int best = -1;
+		double bestChord = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < xs.length; i++) {
+			double dx = xs[i] - fx;
+			double dy = ys[i] - fy;
+			double dz = zs[i] - fz;
+			double c = dx * dx + dy * dy + dz * dz;
+			if (c < bestChord) {
+				bestChord = c;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	private void chordsSquared(GeographicPoint from, int start, int end, double[] out)
+	{
+		double lat = Math.toRadians(from.getX());
+		double lon = Math.toRadians(from.getY());
+		double cosLat = Math.cos(lat);
+		double fx = cosLat * Math.cos(lon), fy = cosLat * Math.sin(lon), fz = Math.sin(lat);
+		// kept free of calls and branches, so it vectorizes
+		for (int i = start; i < end; i++) {
+			double dx = xs[i] - fx;
+			double dy = ys[i] - fy;
+			double dz = zs[i] - fz;
+			out[i] = dx * dx + dy * dy + dz * dz;
+		}
+	}
+
+	/** @return The great circle distance in km of a squared chord of the unit sphere */
+	private static double toKm(double chordSquared)
+	{
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, 0.5 * Math.sqrt(chordSquared)));
+	}
+}
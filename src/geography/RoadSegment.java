@@ -109,6 +109,9 @@ public class RoadSegment {
 	// get the length of the road segment
 	public double getLength() { return this.length; }
 	
+	// get the number of points between the two ends
+	public int getNumGeometryPoints() { return this.geometryPoints.size(); }
+	
 	
 	// given one end, return the other.
 	public geography.GeographicPoint getOtherPoint(geography.GeographicPoint point) {
@@ -1,11 +1,13 @@
 var delay = 300;
-var map, markers;
+var map, markers, settled, relaxed;
 var markerURL = "http://maps.google.com/mapfiles/kml/paddle/red-diamond-lv.png";
 var destURL = "http://maps.google.com/mapfiles/kml/pal2/icon5.png";
 
-function visualizeSearch(mapParam, markersParam) {
+function visualizeSearch(mapParam, markersParam, settledParam, relaxedParam) {
 	markers = markersParam;
 	map = mapParam;	
+	settled = settledParam;
+	relaxed = relaxedParam;
 	drop();
 }
 
@@ -23,7 +25,12 @@ function drop() {
 	}
 	displayMarker(markers[markers.length - 1], i*delay, destURL);
 	i++;
-	displayAlert(markers.length, i*delay);
+	if (settled !== undefined) {
+		alert(settled + " nodes settled and " + relaxed + " edges relaxed in search.");
+	}
+	else {
+		displayAlert(markers.length, i*delay);
+	}
 }
 
 function displayAlert(length, delay) {
@@ -6,8 +6,10 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import javax.json.*;
 
+import util.RoadDictionary;
+
 public class DataFetcher {
-    private final String[] HIGHWAYS = {"motorway", "trunk", "primary", "secondary", "tertiary", "unclassified", "residential", "motorway_link", "trunk_link", "primary_link", "secondary_link", "tertiary_link", "living_street"};
+    private final String[] HIGHWAYS = RoadDictionary.HIGHWAY_TYPES;
 
     private String query;
     public DataFetcher(float[] bounds) {
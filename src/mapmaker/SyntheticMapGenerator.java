@@ -0,0 +1,574 @@
+package mapmaker;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes synthetic road networks as .map files, in the same
+ * lat1 lon1 lat2 lon2 "roadName" roadType
+ * format that GraphLoader reads and MapMaker writes.
+ *
+ * Three layouts are available:
+ *   GRID     a Manhattan-style grid of streets and avenues
+ *   RANDOM   a random geometric graph: points scattered uniformly,
+ *            each joined to the points within a fixed radius
+ *   FRACTAL  a quadtree city: the square is split recursively at random,
+ *            and the borders of the resulting blocks are the roads, so
+ *            road density varies from place to place
+ *
+ * Output is streamed, so maps of 10^7 segments do not need to fit in
+ * memory.  The size is a target: the generator picks the layout
+ * dimensions that come closest to it and reports the actual count.
+ *
+ */
+public class SyntheticMapGenerator {
+
+	public enum Layout { GRID, RANDOM, FRACTAL }
+
+	// Road types in order of importance, as fetched by DataFetcher
+	private static final String[] ROAD_CLASSES = {"motorway", "trunk", "primary", "secondary",
+			"tertiary", "unclassified", "residential", "motorway_link", "trunk_link",
+			"primary_link", "secondary_link", "tertiary_link", "living_street"};
+
+	private static final double METRES_PER_DEGREE = 111320.0;
+
+	private Layout layout = Layout.GRID;
+	private long targetSegments = 100000;
+	private double oneWayRatio = 0.0;
+	private int shapePoints = 0;
+	private double blockMetres = 120.0;
+	private double originLat = 32.70;
+	private double originLon = -117.20;
+	private long seed = 1;
+	private String[] types;
+	private double[] cumulativeWeights;
+
+	private Writer out;
+	private long segmentsWritten;
+	private Random random;
+	private final StringBuilder line = new StringBuilder(96);
+
+	/**
+	 * Create a generator for a two way, mostly residential grid of about
+	 * 100000 segments.  Use the setters to change the defaults.
+	 */
+	public SyntheticMapGenerator() {
+		setRoadTypeMix(parseMix("primary=0.07,secondary=0.13,tertiary=0.2,residential=0.6"));
+	}
+
+	public SyntheticMapGenerator setLayout(Layout layout) { this.layout = layout; return this; }
+	public SyntheticMapGenerator setTargetSegments(long n) { this.targetSegments = n; return this; }
+	public SyntheticMapGenerator setBlockMetres(double metres) { this.blockMetres = metres; return this; }
+	public SyntheticMapGenerator setSeed(long seed) { this.seed = seed; return this; }
+
+	/**
+	 * @param ratio The fraction of roads that are one way, from 0 to 1
+	 */
+	public SyntheticMapGenerator setOneWayRatio(double ratio) {
+		if (ratio < 0 || ratio > 1) {
+			throw new IllegalArgumentException("One way ratio must be between 0 and 1");
+		}
+		this.oneWayRatio = ratio;
+		return this;
+	}
+
+	/**
+	 * @param n The number of intermediate geometry points on each
+	 *   road between two intersections
+	 */
+	public SyntheticMapGenerator setShapePoints(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("Shape points cannot be negative");
+		}
+		this.shapePoints = n;
+		return this;
+	}
+
+	/**
+	 * @param lat The latitude of the south west corner of the map
+	 * @param lon The longitude of the south west corner of the map
+	 */
+	public SyntheticMapGenerator setOrigin(double lat, double lon) {
+		this.originLat = lat;
+		this.originLon = lon;
+		return this;
+	}
+
+	/**
+	 * Set the share of each road type.  In FRACTAL maps the types are
+	 * handed out in order of importance instead: the coarsest subdivision
+	 * lines get the most important type in the mix.
+	 * @param mix Road type to relative weight, e.g. residential=6, primary=1
+	 */
+	public SyntheticMapGenerator setRoadTypeMix(Map<String,Double> mix) {
+		if (mix.isEmpty()) {
+			throw new IllegalArgumentException("Road type mix is empty");
+		}
+		// keep the mix ordered from most to least important
+		List<String> ordered = new ArrayList<String>();
+		for (String type : ROAD_CLASSES) {
+			if (mix.containsKey(type)) {
+				ordered.add(type);
+			}
+		}
+		for (String type : mix.keySet()) {
+			if (!ordered.contains(type)) {
+				ordered.add(type);
+			}
+		}
+		double total = 0;
+		for (double w : mix.values()) {
+			if (w < 0) {
+				throw new IllegalArgumentException("Negative weight in road type mix");
+			}
+			total += w;
+		}
+		types = ordered.toArray(new String[ordered.size()]);
+		cumulativeWeights = new double[types.length];
+		double sum = 0;
+		for (int i = 0; i < types.length; i++) {
+			sum += mix.get(types[i]) / total;
+			cumulativeWeights[i] = sum;
+		}
+		cumulativeWeights[types.length - 1] = 1.0;
+		return this;
+	}
+
+	/**
+	 * Generate a map and write it to a file.
+	 * @param filename The .map file to write
+	 * @return The number of segments (lines) written
+	 * @throws IOException if the file cannot be written
+	 */
+	public long generate(String filename) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(filename), StandardCharsets.UTF_8), 1 << 16);
+		try {
+			return generate(writer);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Generate a map and write it to a writer.
+	 * @param writer Where to write the map lines
+	 * @return The number of segments (lines) written
+	 * @throws IOException if writing fails
+	 */
+	public long generate(Writer writer) throws IOException {
+		out = writer;
+		segmentsWritten = 0;
+		random = new Random(seed);
+		switch (layout) {
+			case GRID: writeGrid(); break;
+			case RANDOM: writeRandomGeometric(); break;
+			default: writeFractal(); break;
+		}
+		out.flush();
+		return segmentsWritten;
+	}
+
+	// Average number of lines written per road between two intersections
+	private double segmentsPerRoad() {
+		return (shapePoints + 1) * (2.0 - oneWayRatio);
+	}
+
+	// ---- GRID ----
+
+	private void writeGrid() throws IOException {
+		// an n x n grid has 2n(n-1) roads between intersections
+		int n = (int) Math.max(2, Math.round(Math.sqrt(targetSegments / (2 * segmentsPerRoad()))));
+		double dLat = degreesLat(blockMetres);
+		double dLon = degreesLon(blockMetres);
+
+		for (int row = 0; row < n; row++) {
+			String name = "Street " + (row + 1);
+			String type = pickType(hash(1, row));
+			int direction = oneWayDirection(hash(2, row));
+			double lat = originLat + row * dLat;
+			for (int col = 0; col + 1 < n; col++) {
+				writeRoad(lat, originLon + col * dLon, lat, originLon + (col + 1) * dLon,
+						name, type, direction);
+			}
+		}
+		for (int col = 0; col < n; col++) {
+			String name = "Avenue " + (col + 1);
+			String type = pickType(hash(3, col));
+			int direction = oneWayDirection(hash(4, col));
+			double lon = originLon + col * dLon;
+			for (int row = 0; row + 1 < n; row++) {
+				writeRoad(originLat + row * dLat, lon, originLat + (row + 1) * dLat, lon,
+						name, type, direction);
+			}
+		}
+	}
+
+	// ---- RANDOM ----
+
+	private void writeRandomGeometric() throws IOException {
+		// Each point is joined to about DEGREE others, so there are
+		// about n * DEGREE / 2 roads.  Below about 4.5 the graph falls
+		// apart into small pieces.
+		final double degree = 6.0;
+		int n = (int) Math.max(2, Math.round(targetSegments / (segmentsPerRoad() * degree / 2)));
+		double side = Math.sqrt(n) * blockMetres;   // metres
+		double radius = Math.sqrt(degree / (Math.PI * n)) * side;
+
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = random.nextDouble() * side;
+			y[i] = random.nextDouble() * side;
+		}
+
+		// Bucket the points into cells one radius wide, so neighbours are
+		// found in the 3x3 cells around a point
+		int cells = Math.max(1, (int) (side / radius));
+		int[] cellOf = new int[n];
+		int[] cellStart = new int[cells * cells + 1];
+		for (int i = 0; i < n; i++) {
+			cellOf[i] = cellIndex(x[i], y[i], side, cells);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cells * cells; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		int[] members = new int[n];
+		int[] fill = Arrays.copyOf(cellStart, cells * cells);
+		for (int i = 0; i < n; i++) {
+			members[fill[cellOf[i]]++] = i;
+		}
+
+		double r2 = radius * radius;
+		for (int i = 0; i < n; i++) {
+			int cx = cellOf[i] % cells;
+			int cy = cellOf[i] / cells;
+			for (int ny = Math.max(0, cy - 1); ny <= Math.min(cells - 1, cy + 1); ny++) {
+				for (int nx = Math.max(0, cx - 1); nx <= Math.min(cells - 1, cx + 1); nx++) {
+					int c = ny * cells + nx;
+					for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+						int j = members[k];
+						if (j <= i) {
+							continue;
+						}
+						double dx = x[j] - x[i];
+						double dy = y[j] - y[i];
+						if (dx * dx + dy * dy <= r2) {
+							long id = (long) i * n + j;
+							writeRoad(originLat + degreesLat(y[i]), originLon + degreesLon(x[i]),
+									originLat + degreesLat(y[j]), originLon + degreesLon(x[j]),
+									"Road " + i + "-" + j, pickType(hash(5, id)),
+									oneWayDirection(hash(6, id)));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static int cellIndex(double x, double y, double side, int cells) {
+		int cx = Math.min(cells - 1, (int) (x / side * cells));
+		int cy = Math.min(cells - 1, (int) (y / side * cells));
+		return cy * cells + cx;
+	}
+
+	// ---- FRACTAL ----
+
+	// Probability that a quadtree block is split again
+	private static final double SPLIT_PROBABILITY = 0.6;
+	// Levels that are always split, so the map never is a single block
+	private static final int MIN_DEPTH = 2;
+
+	private int depth;
+	// Probability that a block is split at the last level
+	private double lastSplitProbability;
+
+	private void writeFractal() throws IOException {
+		// Each level multiplies the roads by about four, so find the
+		// smallest lattice that can reach the target when every block
+		// of the last level is split, then split only as many of them
+		// as the target needs.  Each split adds the same four roads.
+		double target = targetSegments / segmentsPerRoad();
+		depth = MIN_DEPTH + 1;
+		long coarser = -1;
+		long most = countFractalRoads(depth, 1.0);
+		while (depth < 24 && most < target) {
+			coarser = most;
+			depth++;
+			most = countFractalRoads(depth, 1.0);
+		}
+		long fewest = countFractalRoads(depth, 0.0);
+		if (target >= fewest) {
+			lastSplitProbability = Math.min(1.0, (target - fewest) / Math.max(1, most - fewest));
+		}
+		else if (coarser >= 0 && target - coarser < fewest - target) {
+			// a finer lattice overshoots by more than a coarser one falls short
+			depth--;
+			lastSplitProbability = 1.0;
+		}
+		else {
+			lastSplitProbability = 0.0;
+		}
+		int size = 1 << depth;
+		double dLat = degreesLat(blockMetres);
+		double dLon = degreesLon(blockMetres);
+
+		// Horizontal roads: the unit edge from (x, y) to (x+1, y) is a road
+		// when the blocks either side of it are different
+		for (int y = 0; y <= size; y++) {
+			String name = "Street " + y;
+			String type = fractalType(y);
+			int direction = oneWayDirection(hash(7, y));
+			for (int x = 0; x < size; x++) {
+				if (isHorizontalRoad(x, y)) {
+					writeRoad(originLat + y * dLat, originLon + x * dLon,
+							originLat + y * dLat, originLon + (x + 1) * dLon, name, type, direction);
+				}
+			}
+		}
+		for (int x = 0; x <= size; x++) {
+			String name = "Avenue " + x;
+			String type = fractalType(x);
+			int direction = oneWayDirection(hash(8, x));
+			for (int y = 0; y < size; y++) {
+				if (isVerticalRoad(x, y)) {
+					writeRoad(originLat + y * dLat, originLon + x * dLon,
+							originLat + (y + 1) * dLat, originLon + x * dLon, name, type, direction);
+				}
+			}
+		}
+	}
+
+	private long countFractalRoads(int d, double lastSplit) {
+		int saved = depth;
+		double savedSplit = lastSplitProbability;
+		depth = d;
+		lastSplitProbability = lastSplit;
+		int size = 1 << d;
+		long count = 0;
+		for (int a = 0; a <= size; a++) {
+			for (int b = 0; b < size; b++) {
+				if (isHorizontalRoad(b, a)) count++;
+				if (isVerticalRoad(a, b)) count++;
+			}
+		}
+		depth = saved;
+		lastSplitProbability = savedSplit;
+		return count;
+	}
+
+	private boolean isHorizontalRoad(int x, int y) {
+		int size = 1 << depth;
+		if (y == 0 || y == size) {
+			return true;
+		}
+		// the block above starts at y only if y is a multiple of its size
+		return y % blockSize(x, y) == 0;
+	}
+
+	private boolean isVerticalRoad(int x, int y) {
+		int size = 1 << depth;
+		if (x == 0 || x == size) {
+			return true;
+		}
+		return x % blockSize(x, y) == 0;
+	}
+
+	// The side of the quadtree block holding unit cell (x, y)
+	private int blockSize(int x, int y) {
+		for (int level = 0; level < depth; level++) {
+			int shift = depth - level;
+			double p = (level == depth - 1) ? lastSplitProbability : SPLIT_PROBABILITY;
+			boolean split = level < MIN_DEPTH ||
+					unit(hash(9, ((long) level << 48) ^ ((long) (x >> shift) << 24) ^ (y >> shift)))
+					< p;
+			if (!split) {
+				return 1 << shift;
+			}
+		}
+		return 1;
+	}
+
+	// Lines on coarser subdivisions get more important road types
+	private String fractalType(int coordinate) {
+		int level = (coordinate == 0) ? 0 : depth - Integer.numberOfTrailingZeros(coordinate);
+		double f = (double) level / depth;
+		for (int i = 0; i < types.length; i++) {
+			if (f <= cumulativeWeights[i]) {
+				return types[i];
+			}
+		}
+		return types[types.length - 1];
+	}
+
+	// ---- output ----
+
+	/*
+	 * Write one road between two intersections, with its shape points.
+	 * direction is 0 for two way, 1 for one way forward, -1 for one way back.
+	 */
+	private void writeRoad(double lat1, double lon1, double lat2, double lon2,
+			String name, String type, int direction) throws IOException {
+		int n = shapePoints + 2;
+		double[] lats = new double[n];
+		double[] lons = new double[n];
+		lats[0] = lat1;
+		lons[0] = lon1;
+		lats[n - 1] = lat2;
+		lons[n - 1] = lon2;
+		// bend the road a little sideways so the geometry is not a straight line
+		double perpLat = -(lon2 - lon1) * 0.05;
+		double perpLon = (lat2 - lat1) * 0.05;
+		for (int i = 1; i < n - 1; i++) {
+			double t = (double) i / (n - 1);
+			double bend = (random.nextDouble() - 0.5);
+			lats[i] = lat1 + t * (lat2 - lat1) + bend * perpLat;
+			lons[i] = lon1 + t * (lon2 - lon1) + bend * perpLon;
+		}
+		for (int i = 0; i + 1 < n; i++) {
+			if (direction >= 0) {
+				writeSegment(lats[i], lons[i], lats[i + 1], lons[i + 1], name, type);
+			}
+			if (direction <= 0) {
+				writeSegment(lats[i + 1], lons[i + 1], lats[i], lons[i], name, type);
+			}
+		}
+	}
+
+	private void writeSegment(double lat1, double lon1, double lat2, double lon2,
+			String name, String type) throws IOException {
+		line.setLength(0);
+		appendCoordinate(line, lat1).append(' ');
+		appendCoordinate(line, lon1).append(' ');
+		appendCoordinate(line, lat2).append(' ');
+		appendCoordinate(line, lon2).append(" \"").append(name).append("\" ").append(type).append('\n');
+		out.append(line);
+		segmentsWritten++;
+	}
+
+	// Seven decimal places, as in the fetched maps, without String.format
+	private static StringBuilder appendCoordinate(StringBuilder sb, double value) {
+		long fixed = Math.round(value * 1e7);
+		if (fixed < 0) {
+			sb.append('-');
+			fixed = -fixed;
+		}
+		sb.append(fixed / 10000000L).append('.');
+		String frac = Long.toString(fixed % 10000000L);
+		for (int i = frac.length(); i < 7; i++) {
+			sb.append('0');
+		}
+		return sb.append(frac);
+	}
+
+	private double degreesLat(double metres) {
+		return metres / METRES_PER_DEGREE;
+	}
+
+	private double degreesLon(double metres) {
+		return metres / (METRES_PER_DEGREE * Math.cos(Math.toRadians(originLat)));
+	}
+
+	private String pickType(long h) {
+		double u = unit(h);
+		for (int i = 0; i < types.length; i++) {
+			if (u <= cumulativeWeights[i]) {
+				return types[i];
+			}
+		}
+		return types[types.length - 1];
+	}
+
+	private int oneWayDirection(long h) {
+		if (unit(h) >= oneWayRatio) {
+			return 0;
+		}
+		return ((h >>> 1) & 1) == 0 ? 1 : -1;
+	}
+
+	// A well mixed hash of the seed, a stream number and a key (SplitMix64)
+	private long hash(int stream, long key) {
+		long z = seed * 0x9E3779B97F4A7C15L + stream * 0xBF58476D1CE4E5B9L + key;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// Map a hash to [0, 1)
+	private static double unit(long h) {
+		return (h >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Parse a road type mix such as "residential=0.6,primary=0.4".
+	 * @param spec The mix, as comma separated type=weight pairs
+	 * @return The mix as a map
+	 */
+	public static Map<String,Double> parseMix(String spec) {
+		Map<String,Double> mix = new LinkedHashMap<String,Double>();
+		for (String part : spec.split(",")) {
+			String[] kv = part.split("=");
+			if (kv.length != 2) {
+				throw new IllegalArgumentException("Bad road type weight: " + part);
+			}
+			mix.put(kv[0].trim(), Double.parseDouble(kv[1].trim()));
+		}
+		return mix;
+	}
+
+	public static void main(String[] args) {
+		SyntheticMapGenerator generator = new SyntheticMapGenerator();
+		String output = "data/maps/synthetic.map";
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				if (i + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value for " + args[i]);
+				}
+				String arg = args[i];
+				String value = args[i + 1];
+				if (arg.equals("-layout")) generator.setLayout(Layout.valueOf(value.toUpperCase()));
+				else if (arg.equals("-segments")) generator.setTargetSegments((long) Double.parseDouble(value));
+				else if (arg.equals("-oneway")) generator.setOneWayRatio(Double.parseDouble(value));
+				else if (arg.equals("-mix")) generator.setRoadTypeMix(parseMix(value));
+				else if (arg.equals("-shape")) generator.setShapePoints(Integer.parseInt(value));
+				else if (arg.equals("-block")) generator.setBlockMetres(Double.parseDouble(value));
+				else if (arg.equals("-seed")) generator.setSeed(Long.parseLong(value));
+				else if (arg.equals("-origin")) {
+					String[] latLon = value.split(",");
+					generator.setOrigin(Double.parseDouble(latLon[0]), Double.parseDouble(latLon[1]));
+				}
+				else if (arg.equals("-out")) output = value;
+				else throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Usage: SyntheticMapGenerator [-layout grid|random|fractal] [-segments n]"
+					+ " [-oneway ratio] [-mix type=w,...] [-shape n] [-block metres]"
+					+ " [-seed n] [-origin lat,lon] [-out file]");
+			return;
+		}
+
+		try {
+			long start = System.nanoTime();
+			long written = generator.generate(output);
+			System.out.printf("Wrote %d segments to %s in %.1fs%n", written, output,
+					(System.nanoTime() - start) / 1e9);
+		}
+		catch (IOException e) {
+			System.out.println("Could not write " + output + ": " + e);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import roadgraph.SearchResult;
+import roadgraph.SearchStats;
+
+/**
+ * Running totals and a latency histogram for one search algorithm.
+ *
+ */
+public class AlgorithmMetrics implements SearchMetricsMXBean {
+
+	private final String algorithm;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong queries = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong found = new AtomicLong();
+	private final AtomicLong settled = new AtomicLong();
+	private final AtomicLong relaxed = new AtomicLong();
+	private final AtomicLong pushes = new AtomicLong();
+	private final AtomicLong pops = new AtomicLong();
+	private final AtomicLong peakFrontier = new AtomicLong();
+	private final AtomicLong allocated = new AtomicLong();
+
+	AlgorithmMetrics(String algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Add one search to the totals.
+	 * @param result The result of the search
+	 */
+	public void record(SearchResult result) {
+		SearchStats stats = result.getStats();
+		queries.incrementAndGet();
+		if (result.isCached()) {
+			cacheHits.incrementAndGet();
+		}
+		if (result.isFound()) {
+			found.incrementAndGet();
+		}
+		settled.addAndGet(stats.getNodesSettled());
+		relaxed.addAndGet(stats.getEdgesRelaxed());
+		pushes.addAndGet(stats.getHeapPushes());
+		pops.addAndGet(stats.getHeapPops());
+		if (stats.getAllocatedBytes() > 0) {
+			allocated.addAndGet(stats.getAllocatedBytes());
+		}
+		long peak = peakFrontier.get();
+		while (stats.getPeakFrontier() > peak 
+				&& !peakFrontier.compareAndSet(peak, stats.getPeakFrontier())) {
+			peak = peakFrontier.get();
+		}
+		latency.record(stats.getWallNanos());
+	}
+
+	/** @return The latency histogram, in ns */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public long getQueries() { return queries.get(); }
+	public long getCacheHits() { return cacheHits.get(); }
+	public long getPathsFound() { return found.get(); }
+	public long getNodesSettled() { return settled.get(); }
+	public long getEdgesRelaxed() { return relaxed.get(); }
+	public long getHeapPushes() { return pushes.get(); }
+	public long getHeapPops() { return pops.get(); }
+	public long getMaxPeakFrontier() { return peakFrontier.get(); }
+	public long getAllocatedBytes() { return allocated.get(); }
+
+	public double getMeanLatencyMillis() { return latency.getMean() / 1e6; }
+	public double getLatencyMillisP50() { return latency.getValueAtPercentile(50) / 1e6; }
+	public double getLatencyMillisP90() { return latency.getValueAtPercentile(90) / 1e6; }
+	public double getLatencyMillisP99() { return latency.getValueAtPercentile(99) / 1e6; }
+	public double getLatencyMillisMax() { return latency.getMax() / 1e6; }
+
+	public void reset() {
+		latency.reset();
+		queries.set(0);
+		cacheHits.set(0);
+		found.set(0);
+		settled.set(0);
+		relaxed.set(0);
+		pushes.set(0);
+		pops.set(0);
+		peakFrontier.set(0);
+		allocated.set(0);
+	}
+}
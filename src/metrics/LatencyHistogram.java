@@ -0,0 +1,119 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-memory histogram of non-negative long values (nanoseconds),
+ * in the style of HdrHistogram.  Values below 128 are counted exactly;
+ * larger values fall into log-linear buckets, 64 per power of two, so a 
+ * reported percentile is within 1/64 (about 1.6%) of the true value.
+ * 
+ * Recording is lock free and safe from any number of threads.
+ * Readers see a consistent enough view for monitoring, not a snapshot.
+ *
+ */
+public class LatencyHistogram {
+
+	// 128 exact buckets, then 64 buckets for each of the 56 remaining powers of two
+	private static final int SUB_BUCKETS = 64;
+	private static final int NUM_BUCKETS = SUB_BUCKETS * 58;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalSum = new AtomicLong();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	/**
+	 * Record a value.  Negative values are recorded as 0.
+	 * @param value The value, e.g. a latency in ns
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucketIndex(value));
+		totalCount.incrementAndGet();
+		totalSum.addAndGet(value);
+		long max = maxValue.get();
+		while (value > max && !maxValue.compareAndSet(max, value)) {
+			max = maxValue.get();
+		}
+	}
+
+	/** @return The number of values recorded */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/** @return The sum of all values recorded */
+	public long getSum() {
+		return totalSum.get();
+	}
+
+	/** @return The largest value recorded, or 0 if none */
+	public long getMax() {
+		return maxValue.get();
+	}
+
+	/** @return The mean of the values recorded, or 0 if none */
+	public double getMean() {
+		long n = getCount();
+		return (n == 0) ? 0.0 : (double) getSum() / n;
+	}
+
+	/**
+	 * @param percentile Between 0 and 100
+	 * @return The smallest bucket value at or below which the given 
+	 *   percentage of values fall, or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = getCount();
+		if (n == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * n);
+		if (target < 1) {
+			target = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				// never report more than was actually recorded
+				return Math.min(highestValueInBucket(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/** Forget everything recorded so far. */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		totalSum.set(0);
+		maxValue.set(0);
+	}
+
+	// Values below 128 map to themselves.  Otherwise keep the 7 most 
+	// significant bits: shift the value into [64, 128) and add 64 per shift.
+	static int bucketIndex(long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - 6;
+		return SUB_BUCKETS * shift + (int) (value >>> shift);
+	}
+
+	// The largest value that maps to the given bucket
+	static long highestValueInBucket(int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long base = index - (long) SUB_BUCKETS * shift;
+		return ((base + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,23 @@
+package metrics;
+
+/**
+ * JMX view of a route cache.
+ * Registered under roadgraph:type=RouteCache,name=NAME
+ *
+ */
+public interface RouteCacheMXBean {
+
+	long getHits();
+	long getMisses();
+	double getHitRatio();
+	long getEvictions();
+	long getInvalidations();
+
+	int getSize();
+	long getWeight();
+	int getMaxEntries();
+	long getMaxWeight();
+
+	/** Remove every cached route */
+	void clear();
+}
@@ -0,0 +1,177 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import roadgraph.SearchResult;
+
+/**
+ * Aggregates search statistics per algorithm, and exports them as
+ * Prometheus text or as JMX MBeans.
+ * 
+ * Every MapGraph records into the default instance unless given another.
+ *
+ */
+public class SearchMetrics {
+
+	private static final SearchMetrics DEFAULT = new SearchMetrics();
+
+	// Quantiles reported in the Prometheus summary
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private final ConcurrentMap<String,AlgorithmMetrics> byAlgorithm = 
+			new ConcurrentHashMap<String,AlgorithmMetrics>();
+	private volatile MBeanServer mbeanServer;
+
+	/** @return The metrics shared by all graphs by default */
+	public static SearchMetrics getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Add one search to the totals of its algorithm.
+	 * @param result The result of the search
+	 */
+	public void record(SearchResult result) {
+		forAlgorithm(result.getAlgorithm()).record(result);
+	}
+
+	/**
+	 * @param algorithm The name of the algorithm, e.g. "dijkstra"
+	 * @return The metrics for that algorithm, created if needed
+	 */
+	public AlgorithmMetrics forAlgorithm(String algorithm) {
+		AlgorithmMetrics m = byAlgorithm.get(algorithm);
+		if (m == null) {
+			AlgorithmMetrics created = new AlgorithmMetrics(algorithm);
+			m = byAlgorithm.putIfAbsent(algorithm, created);
+			if (m == null) {
+				m = created;
+				registerIfEnabled(created);
+			}
+		}
+		return m;
+	}
+
+	/** @return The metrics of every algorithm seen so far, sorted by name */
+	public List<AlgorithmMetrics> getAll() {
+		List<String> names = new ArrayList<String>(byAlgorithm.keySet());
+		Collections.sort(names);
+		List<AlgorithmMetrics> all = new ArrayList<AlgorithmMetrics>();
+		for (String name : names) {
+			all.add(byAlgorithm.get(name));
+		}
+		return all;
+	}
+
+	/**
+	 * Register an MBean per algorithm with the platform MBean server, 
+	 * now and for algorithms seen later.
+	 */
+	public void registerMBeans() {
+		mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (AlgorithmMetrics m : byAlgorithm.values()) {
+			registerIfEnabled(m);
+		}
+	}
+
+	private void registerIfEnabled(AlgorithmMetrics m) {
+		MBeanServer server = mbeanServer;
+		if (server == null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName("roadgraph:type=SearchMetrics,algorithm=" 
+					+ ObjectName.quote(m.getAlgorithm()));
+			if (!server.isRegistered(name)) {
+				server.registerMBean(m, name);
+			}
+		}
+		catch (JMException e) {
+			System.err.println("Could not register search metrics MBean: " + e);
+		}
+	}
+
+	/**
+	 * Render all metrics in the Prometheus text exposition format.
+	 * Latencies are a summary in seconds; the rest are counters.
+	 * @return The text to serve from a /metrics endpoint
+	 */
+	public String toPrometheusText() {
+		StringBuilder sb = new StringBuilder();
+		List<AlgorithmMetrics> all = getAll();
+
+		sb.append("# HELP roadgraph_search_latency_seconds Wall time of route searches.\n");
+		sb.append("# TYPE roadgraph_search_latency_seconds summary\n");
+		for (AlgorithmMetrics m : all) {
+			LatencyHistogram h = m.getLatency();
+			String label = "algorithm=\"" + escape(m.getAlgorithm()) + "\"";
+			for (double q : QUANTILES) {
+				sb.append("roadgraph_search_latency_seconds{").append(label)
+				  .append(",quantile=\"").append(q).append("\"} ")
+				  .append(format(h.getValueAtPercentile(q * 100) / 1e9)).append('\n');
+			}
+			sb.append("roadgraph_search_latency_seconds_sum{").append(label).append("} ")
+			  .append(format(h.getSum() / 1e9)).append('\n');
+			sb.append("roadgraph_search_latency_seconds_count{").append(label).append("} ")
+			  .append(h.getCount()).append('\n');
+		}
+
+		counter(sb, all, "queries_total", "Route searches run.", Field.QUERIES);
+		counter(sb, all, "cache_hits_total", "Route searches answered from a route cache.", Field.CACHE_HITS);
+		counter(sb, all, "paths_found_total", "Route searches that found a path.", Field.FOUND);
+		counter(sb, all, "nodes_settled_total", "Nodes settled by route searches.", Field.SETTLED);
+		counter(sb, all, "edges_relaxed_total", "Edges relaxed by route searches.", Field.RELAXED);
+		counter(sb, all, "heap_pushes_total", "Frontier insertions by route searches.", Field.PUSHES);
+		counter(sb, all, "heap_pops_total", "Frontier removals by route searches.", Field.POPS);
+		counter(sb, all, "allocated_bytes_total", "Bytes allocated by route searches.", Field.ALLOCATED);
+
+		sb.append("# HELP roadgraph_search_peak_frontier Largest frontier seen in one search.\n");
+		sb.append("# TYPE roadgraph_search_peak_frontier gauge\n");
+		for (AlgorithmMetrics m : all) {
+			sb.append("roadgraph_search_peak_frontier{algorithm=\"").append(escape(m.getAlgorithm()))
+			  .append("\"} ").append(m.getMaxPeakFrontier()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private enum Field { QUERIES, CACHE_HITS, FOUND, SETTLED, RELAXED, PUSHES, POPS, ALLOCATED }
+
+	private static void counter(StringBuilder sb, List<AlgorithmMetrics> all, 
+			String name, String help, Field field) {
+		sb.append("# HELP roadgraph_search_").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE roadgraph_search_").append(name).append(" counter\n");
+		for (AlgorithmMetrics m : all) {
+			long value;
+			switch (field) {
+				case QUERIES: value = m.getQueries(); break;
+				case CACHE_HITS: value = m.getCacheHits(); break;
+				case FOUND: value = m.getPathsFound(); break;
+				case SETTLED: value = m.getNodesSettled(); break;
+				case RELAXED: value = m.getEdgesRelaxed(); break;
+				case PUSHES: value = m.getHeapPushes(); break;
+				case POPS: value = m.getHeapPops(); break;
+				default: value = m.getAllocatedBytes(); break;
+			}
+			sb.append("roadgraph_search_").append(name).append("{algorithm=\"")
+			  .append(escape(m.getAlgorithm())).append("\"} ").append(value).append('\n');
+		}
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.9f", value);
+	}
+
+	private static String escape(String label) {
+		return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,28 @@
+package metrics;
+
+/**
+ * JMX view of the aggregated statistics of one search algorithm.
+ * Registered under roadgraph:type=SearchMetrics,algorithm=NAME
+ *
+ */
+public interface SearchMetricsMXBean {
+
+	long getQueries();
+	long getCacheHits();
+	long getPathsFound();
+	long getNodesSettled();
+	long getEdgesRelaxed();
+	long getHeapPushes();
+	long getHeapPops();
+	long getMaxPeakFrontier();
+	long getAllocatedBytes();
+
+	double getMeanLatencyMillis();
+	double getLatencyMillisP50();
+	double getLatencyMillisP90();
+	double getLatencyMillisP99();
+	double getLatencyMillisMax();
+
+	/** Clear all counters and the latency histogram */
+	void reset();
+}
@@ -0,0 +1,261 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Meaningfully different alternatives to the shortest route between two
+ * nodes, by the plateau method.
+ *
+ * One search grows a shortest path tree from the start and one grows a
+ * tree into the goal, both only as far as an alternative may cost.  A
+ * plateau is a chain of roads that lies on both trees, so every node on
+ * it has a shortest route from the start and to the goal through it;
+ * following the forward tree to the end of a plateau and the backward
+ * tree from there gives a route that is shortest along the whole plateau.
+ * The shortest route itself is one long plateau.
+ *
+ * Candidates are taken by how little they spend off their plateau, and
+ * kept if they are
+ *   - short enough: at most MAX_STRETCH times the shortest route
+ *   - different enough: sharing at most MAX_SHARING of the shortest
+ *     route's cost with the routes already kept
+ *   - locally optimal enough: on a plateau of at least MIN_PLATEAU of the
+ *     shortest route's cost, so that a detour is not a short
+ *     pointless excursion off a good road
+ * The last is the usual approximation of the plateau method; it does not
+ * test every subpath of the route.
+ *
+ */
+final class AlternativeRoutes {
+
+	static final double MAX_STRETCH = 1.25;
+	static final double MAX_SHARING = 0.8;
+	static final double MIN_PLATEAU = 0.2;
+
+	/** A shortest path tree grown from (or into) one node, with its settle order */
+	private static final class Tree {
+		final double[] dist;
+		final int[] parentArc;
+		final int[] order;
+		int numSettled;
+
+		Tree(int n) {
+			dist = new double[n];
+			parentArc = new int[n];
+			order = new int[n];
+			Arrays.fill(dist, Double.POSITIVE_INFINITY);
+			Arrays.fill(parentArc, -1);
+		}
+	}
+
+	/** A plateau ending at a node, with the cost of the route through it */
+	private static final class Plateau {
+		final int end;
+		final double length;
+		final double cost;
+
+		Plateau(int end, double length, double cost) {
+			this.end = end;
+			this.length = length;
+			this.cost = cost;
+		}
+	}
+
+	private final CsrGraph graph;
+	private final double[] costs;
+
+	/**
+	 * @param graph The graph
+	 * @param costs The cost of each arc
+	 */
+	AlternativeRoutes(CsrGraph graph, double[] costs)
+	{
+		this.graph = graph;
+		this.costs = costs;
+	}
+
+	/**
+	 * Find the shortest route and up to a number of alternatives to it
+	 * @param start The start node
+	 * @param goal The goal node
+	 * @param maxRoutes The most routes to return, counting the shortest
+	 * @return The shortest route and then the alternatives, best first;
+	 *   empty if the goal cannot be reached
+	 */
+	List<KShortestPaths.Route> find(int start, int goal, int maxRoutes)
+	{
+		List<KShortestPaths.Route> routes = new ArrayList<KShortestPaths.Route>();
+		int n = graph.getNumNodes();
+		Tree backward = grow(goal, false, start, Double.POSITIVE_INFINITY);
+		double shortest = backward.dist[start];
+		if (shortest == Double.POSITIVE_INFINITY) {
+			return routes;
+		}
+		double limit = MAX_STRETCH * shortest;
+		Tree forward = grow(start, true, -1, limit);
+
+		// Walk the forward tree in settle order: a node's plateau continues
+		// its parent's if the arc into it is also the backward tree's arc
+		// out of the parent
+		int[] plateauStart = new int[n];
+		double[] plateauLength = new double[n];
+		for (int i = 0; i < forward.numSettled; i++) {
+			int v = forward.order[i];
+			int a = forward.parentArc[v];
+			if (a >= 0 && backward.parentArc[graph.tail(a)] == a) {
+				int u = graph.tail(a);
+				plateauStart[v] = plateauStart[u];
+				plateauLength[v] = plateauLength[u] + costs[a];
+			}
+			else {
+				plateauStart[v] = v;
+				plateauLength[v] = 0.0;
+			}
+		}
+
+		// A plateau ends where the backward tree's arc leaves the forward tree
+		List<Plateau> plateaus = new ArrayList<Plateau>();
+		for (int i = 0; i < forward.numSettled; i++) {
+			int v = forward.order[i];
+			double cost = forward.dist[v] + backward.dist[v];
+			if (plateauLength[v] < MIN_PLATEAU * shortest || cost > limit) {
+				continue;
+			}
+			int b = backward.parentArc[v];
+			if (b < 0 || forward.parentArc[graph.head(b)] != b) {
+				plateaus.add(new Plateau(v, plateauLength[v], cost));
+			}
+		}
+		Collections.sort(plateaus, new Comparator<Plateau>() {
+			@Override
+			public int compare(Plateau p, Plateau q) {
+				return Double.compare(p.cost - p.length, q.cost - q.length);
+			}
+		});
+
+		boolean[] used = new boolean[costs.length];
+		int[] visited = new int[n];
+		int stamp = 0;
+		routes.add(route(goal, forward, backward, goal));
+		markArcs(routes.get(0), used);
+		for (Plateau plateau : plateaus) {
+			if (routes.size() >= maxRoutes) {
+				break;
+			}
+			KShortestPaths.Route route = route(plateau.end, forward, backward, goal);
+			double shared = 0.0;
+			boolean simple = true;
+			stamp++;
+			for (int j = 0; j < route.nodes.length && simple; j++) {
+				simple = visited[route.nodes[j]] != stamp;
+				visited[route.nodes[j]] = stamp;
+			}
+			for (int j = 0; j + 1 < route.nodes.length && simple; j++) {
+				int a = arc(route.nodes[j], route.nodes[j + 1], route.costTo[j + 1] - route.costTo[j]);
+				if (used[a]) {
+					shared += costs[a];
+				}
+			}
+			if (simple && shared <= MAX_SHARING * shortest) {
+				routes.add(route);
+				markArcs(route, used);
+			}
+		}
+		return routes;
+	}
+
+	/**
+	 * Run Dijkstra's algorithm from a node, over outgoing arcs or into it
+	 * over incoming ones
+	 * @param root The node to grow from
+	 * @param outward true to follow arcs forward, false to follow them back
+	 * @param target A node whose distance, once settled, also bounds the
+	 *   search to MAX_STRETCH times it; -1 for none
+	 * @param limit The greatest distance to settle
+	 */
+	private Tree grow(int root, boolean outward, int target, double limit)
+	{
+		Tree tree = new Tree(graph.getNumNodes());
+		boolean[] settled = new boolean[graph.getNumNodes()];
+		NodeHeap heap = new NodeHeap();
+		tree.dist[root] = 0.0;
+		heap.push(root, 0.0);
+		while (!heap.isEmpty() && heap.peekKey() <= limit) {
+			int x = heap.pop();
+			if (settled[x]) {
+				continue;
+			}
+			settled[x] = true;
+			tree.order[tree.numSettled++] = x;
+			if (x == target) {
+				limit = Math.min(limit, MAX_STRETCH * tree.dist[x]);
+			}
+			int end = outward ? graph.firstOut(x + 1) : graph.firstIn(x + 1);
+			for (int i = outward ? graph.firstOut(x) : graph.firstIn(x); i < end; i++) {
+				int a = outward ? i : graph.inArc(i);
+				int y = outward ? graph.head(a) : graph.tail(a);
+				double d = tree.dist[x] + costs[a];
+				if (d < tree.dist[y] && !settled[y]) {
+					tree.dist[y] = d;
+					tree.parentArc[y] = a;
+					heap.push(y, d);
+				}
+			}
+		}
+		return tree;
+	}
+
+	/** @return The route along the forward tree to a node and the backward tree on to the goal */
+	private KShortestPaths.Route route(int via, Tree forward, Tree backward, int goal)
+	{
+		List<Integer> head = new ArrayList<Integer>();
+		for (int x = via; forward.parentArc[x] >= 0; x = graph.tail(forward.parentArc[x])) {
+			head.add(graph.tail(forward.parentArc[x]));
+		}
+		int length = head.size() + 1;
+		for (int x = via; x != goal; x = graph.head(backward.parentArc[x])) {
+			length++;
+		}
+		int[] nodes = new int[length];
+		double[] costTo = new double[length];
+		int p = 0;
+		for (int j = head.size() - 1; j >= 0; j--, p++) {
+			nodes[p] = head.get(j);
+			costTo[p] = forward.dist[nodes[p]];
+		}
+		nodes[p] = via;
+		costTo[p] = forward.dist[via];
+		for (int x = via; x != goal; ) {
+			int a = backward.parentArc[x];
+			x = graph.head(a);
+			p++;
+			nodes[p] = x;
+			costTo[p] = costTo[p - 1] + costs[a];
+		}
+		return new KShortestPaths.Route(nodes, costTo);
+	}
+
+	/** @return The cheapest arc between two nodes, which is the one a route of that cost took */
+	private int arc(int from, int to, double cost)
+	{
+		int best = -1;
+		for (int a = graph.firstOut(from); a < graph.firstOut(from + 1); a++) {
+			if (graph.head(a) == to && (best < 0 ||
+					Math.abs(costs[a] - cost) < Math.abs(costs[best] - cost))) {
+				best = a;
+			}
+		}
+		return best;
+	}
+
+	private void markArcs(KShortestPaths.Route route, boolean[] used)
+	{
+		for (int j = 0; j + 1 < route.nodes.length; j++) {
+			used[arc(route.nodes[j], route.nodes[j + 1], route.costTo[j + 1] - route.costTo[j])] = true;
+		}
+	}
+}
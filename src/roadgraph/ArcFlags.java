@@ -0,0 +1,391 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import geography.GeographicPoint;
+import tracing.Tracing;
+import util.GraphLoader;
+
+/**
+ * Arc flags over a grid of regions, a speed-up for Dijkstra and A* that is
+ * much cheaper to build than a contraction hierarchy.
+ * 
+ * The bounding box of the map is cut into a grid of regions.  Every road
+ * segment gets one bit per region, set if the segment lies on a shortest
+ * route into that region.  A search toward a goal then skips every segment
+ * whose bit for the goal's region is clear, which near the goal prunes
+ * little but far from it prunes most of the map.
+ * 
+ * The flags of a region are found by searching backward from each of its
+ * boundary nodes (nodes with a road coming in from another region) and 
+ * flagging the segments of the shortest path tree, plus every segment 
+ * ending inside the region.  Any shortest route into the region can be 
+ * rerouted, at the same length, along the tree of the boundary node where
+ * it last enters, so a flagged route always exists.  Regions are 
+ * independent, so they are computed in parallel.
+ * 
+ * Flags hold only for the weights and residential factor they were built
+ * with; see MapGraph.addArcFlags.
+ *
+ */
+public final class ArcFlags {
+
+	private final long version;
+	private final double residentialFactor;
+	private final int rows;
+	private final int cols;
+	private final int[] region;
+	private final int words;
+	
+	// The flags of edge e are words e*words up to (e+1)*words
+	private final long[] flags;
+	private final int boundaryNodes;
+
+	// Scratch for the backward searches, one per thread
+	private static final ThreadLocal<SearchSpace> SEARCH_SPACE = new ThreadLocal<SearchSpace>() {
+		@Override
+		protected SearchSpace initialValue() {
+			return new SearchSpace();
+		}
+	};
+
+	private ArcFlags(long version, double residentialFactor, int rows, int cols, int[] region,
+			long[] flags, int boundaryNodes)
+	{
+		this.version = version;
+		this.residentialFactor = residentialFactor;
+		this.rows = rows;
+		this.cols = cols;
+		this.region = region;
+		this.words = (rows * cols + 63) / 64;
+		this.flags = flags;
+		this.boundaryNodes = boundaryNodes;
+	}
+
+	/**
+	 * Compute arc flags for the current weights of a graph and the profile
+	 * its searches use at this time of day, on the common fork-join pool
+	 * @param graph The graph
+	 * @param numRegions The number of regions
+	 * @return The flags, to be given to MapGraph.addArcFlags
+	 */
+	public static ArcFlags build(MapGraph graph, int numRegions)
+	{
+		return build(graph, numRegions, MapGraph.currentResidentialFactor(), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Compute arc flags for the current weights of a graph.
+	 * @param graph The graph
+	 * @param numRegions The number of regions, arranged in the grid closest
+	 *   to square with exactly that many cells
+	 * @param residentialFactor The multiple of residential road weights of
+	 *   the searches the flags are for
+	 * @param pool Where to compute the regions, or null to do it all on the
+	 *   calling thread
+	 * @return The flags, to be given to MapGraph.addArcFlags
+	 */
+	public static ArcFlags build(MapGraph graph, int numRegions, double residentialFactor, 
+			ForkJoinPool pool)
+	{
+		if (numRegions < 1) {
+			throw new IllegalArgumentException("Need at least one region, not " + numRegions);
+		}
+		GraphSnapshot weights = graph.getSnapshot();
+		CsrGraph csr = graph.getCsr();
+		int n = csr.getNumNodes();
+		
+		int rows = (int) Math.sqrt(numRegions);
+		while (numRegions % rows != 0) {
+			rows--;
+		}
+		int cols = numRegions / rows;
+		int[] region = regions(csr, rows, cols);
+		
+		double[] costs = new double[csr.getNumArcs()];
+		for (int a = 0; a < costs.length; a++) {
+			costs[a] = MapGraph.cost(csr.getEdge(a), weights, residentialFactor);
+		}
+		
+		int numEdges = 0;
+		for (int a = 0; a < csr.getNumArcs(); a++) {
+			numEdges = Math.max(numEdges, csr.getEdge(a).getId() + 1);
+		}
+		long[][] byRegion = new long[numRegions][];
+		int[] boundary = new int[numRegions];
+		RegionTask task = new RegionTask(csr, costs, region, numEdges, 0, numRegions, byRegion, boundary);
+		if (pool == null) {
+			task.compute();
+		}
+		else {
+			pool.invoke(task);
+		}
+		
+		// Turn the bits of each region into the bits of each edge
+		int words = (numRegions + 63) / 64;
+		long[] flags = new long[numEdges * words];
+		int boundaryNodes = 0;
+		for (int r = 0; r < numRegions; r++) {
+			long[] bits = byRegion[r];
+			for (int e = 0; e < numEdges; e++) {
+				if ((bits[e >>> 6] & (1L << e)) != 0) {
+					flags[e * words + (r >>> 6)] |= 1L << r;
+				}
+			}
+			boundaryNodes += boundary[r];
+		}
+		return new ArcFlags(weights.getVersion(), residentialFactor, rows, cols, region, flags, boundaryNodes);
+	}
+
+	/**
+	 * Put every node in a cell of a grid over the bounding box of the map
+	 */
+	private static int[] regions(CsrGraph csr, int rows, int cols)
+	{
+		int n = csr.getNumNodes();
+		double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+		double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+		for (int v = 0; v < n; v++) {
+			GeographicPoint p = csr.getLocation(v);
+			minLat = Math.min(minLat, p.getX());
+			maxLat = Math.max(maxLat, p.getX());
+			minLon = Math.min(minLon, p.getY());
+			maxLon = Math.max(maxLon, p.getY());
+		}
+		int[] region = new int[n];
+		for (int v = 0; v < n; v++) {
+			GeographicPoint p = csr.getLocation(v);
+			int row = cell(p.getX(), minLat, maxLat, rows);
+			int col = cell(p.getY(), minLon, maxLon, cols);
+			region[v] = row * cols + col;
+		}
+		return region;
+	}
+
+	private static int cell(double value, double min, double max, int cells)
+	{
+		if (max <= min) {
+			return 0;
+		}
+		return Math.min(cells - 1, (int) ((value - min) / (max - min) * cells));
+	}
+
+	/** Computes the flags of a range of regions, splitting it until it is one region */
+	@SuppressWarnings("serial")
+	private static class RegionTask extends RecursiveAction {
+		private final CsrGraph csr;
+		private final double[] costs;
+		private final int[] region;
+		private final int numEdges;
+		private final int from, to;
+		private final long[][] byRegion;
+		private final int[] boundary;
+
+		RegionTask(CsrGraph csr, double[] costs, int[] region, int numEdges, int from, int to,
+				long[][] byRegion, int[] boundary) {
+			this.csr = csr;
+			this.costs = costs;
+			this.region = region;
+			this.numEdges = numEdges;
+			this.from = from;
+			this.to = to;
+			this.byRegion = byRegion;
+			this.boundary = boundary;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				flagRegion(from);
+			}
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new RegionTask(csr, costs, region, numEdges, from, mid, byRegion, boundary),
+						new RegionTask(csr, costs, region, numEdges, mid, to, byRegion, boundary));
+			}
+		}
+
+		private void flagRegion(int r) {
+			long[] bits = new long[(numEdges + 63) / 64];
+			int n = csr.getNumNodes();
+			int[] settled = new int[n];
+			for (int v = 0; v < n; v++) {
+				if (region[v] != r) {
+					continue;
+				}
+				boolean isBoundary = false;
+				for (int i = csr.firstIn(v); i < csr.firstIn(v + 1); i++) {
+					int a = csr.inArc(i);
+					set(bits, csr.getEdge(a).getId());
+					if (region[csr.tail(a)] != r) {
+						isBoundary = true;
+					}
+				}
+				if (isBoundary) {
+					boundary[r]++;
+					int count = searchBackward(v, settled);
+					SearchSpace space = SEARCH_SPACE.get();
+					for (int i = 0; i < count; i++) {
+						MapEdge via = space.getParentEdge(settled[i]);
+						if (via != null) {
+							set(bits, via.getId());
+						}
+					}
+				}
+			}
+			byRegion[r] = bits;
+		}
+
+		/**
+		 * Find the shortest path tree of the routes into a node
+		 * @return The number of nodes settled, which are stored in settled
+		 */
+		private int searchBackward(int target, int[] settled) {
+			SearchSpace space = SEARCH_SPACE.get();
+			space.reset(csr.getNumNodes());
+			space.reach(target, 0.0, null);
+			space.heap.push(target, 0.0);
+			int count = 0;
+			while (!space.heap.isEmpty()) {
+				int x = space.heap.pop();
+				if (space.isSettled(x)) {
+					continue;
+				}
+				space.settle(x);
+				settled[count++] = x;
+				double d = space.getDist(x);
+				for (int i = csr.firstIn(x); i < csr.firstIn(x + 1); i++) {
+					int a = csr.inArc(i);
+					int u = csr.tail(a);
+					double du = d + costs[a];
+					if (du < Double.POSITIVE_INFINITY && !space.isSettled(u) &&
+							(!space.isReached(u) || du < space.getDist(u))) {
+						space.reach(u, du, csr.getEdge(a));
+						space.heap.push(u, du);
+					}
+				}
+			}
+			return count;
+		}
+
+		private static void set(long[] bits, int e) {
+			bits[e >>> 6] |= 1L << e;
+		}
+	}
+
+	/**
+	 * @return true if a road segment is on a shortest route into a region
+	 */
+	boolean isFlagged(MapEdge edge, int region)
+	{
+		int e = edge.getId() * words + (region >>> 6);
+		return e < flags.length && (flags[e] & (1L << region)) != 0;
+	}
+
+	/** @return The region a node is in */
+	int getRegion(int node)
+	{
+		return region[node];
+	}
+
+	/** @return The version of the weights the flags were computed for */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/** @return The residential factor of the searches the flags are for */
+	public double getResidentialFactor()
+	{
+		return residentialFactor;
+	}
+
+	/** @return The number of regions */
+	public int getNumRegions()
+	{
+		return rows * cols;
+	}
+
+	/** @return The number of nodes searched from while computing the flags */
+	public int getNumBoundaryNodes()
+	{
+		return boundaryNodes;
+	}
+
+	/** @return The share of all edge and region pairs that are flagged */
+	public double getFlaggedFraction()
+	{
+		long set = 0;
+		for (long word : flags) {
+			set += Long.bitCount(word);
+		}
+		return (flags.length == 0) ? 0.0 : set / ((double) flags.length / words * getNumRegions());
+	}
+
+	/**
+	 * Compute flags for a map and compare Dijkstra with and without them
+	 * on random queries.
+	 * 
+	 * Usage: ArcFlags FILE.map [regions [queries]]
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length < 1) {
+			System.err.println("Usage: ArcFlags FILE.map [regions [queries]]");
+			System.exit(2);
+		}
+		int numRegions = (args.length > 1) ? Integer.parseInt(args[1]) : 64;
+		int queries = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+		MapGraph graph = new MapGraph();
+		GraphLoader.loadRoadMap(args[0], graph);
+		graph.setTracer(Tracing.NONE);
+		System.out.println(graph.getNumVertices() + " intersections, " + 
+				graph.getNumEdges() + " road segments");
+		
+		long start = System.nanoTime();
+		ArcFlags flags = build(graph, numRegions);
+		System.out.println(String.format(Locale.ROOT, 
+				"Flagged %d regions in %.1f ms from %d boundary nodes, %.1f%% of flags set",
+				flags.getNumRegions(), (System.nanoTime() - start) / 1e6, 
+				flags.getNumBoundaryNodes(), 100 * flags.getFlaggedFraction()));
+		
+		Random random = new Random(42);
+		List<GeographicPoint> points = new ArrayList<GeographicPoint>(graph.getVertices());
+		GeographicPoint[][] pairs = new GeographicPoint[queries][];
+		for (int i = 0; i < queries; i++) {
+			pairs[i] = new GeographicPoint[] { 
+				points.get(random.nextInt(points.size())), points.get(random.nextInt(points.size()))
+			};
+		}
+		double[] lengths = new double[queries];
+		long plainSettled = 0, plainNanos = 0;
+		for (int i = 0; i < queries; i++) {
+			SearchResult result = graph.search("dijkstra", pairs[i][0], pairs[i][1]);
+			plainSettled += result.getStats().getNodesSettled();
+			plainNanos += result.getStats().getWallNanos();
+			lengths[i] = result.isFound() ? graph.getPathLength(result.getPath()) : -1;
+		}
+		graph.addArcFlags(flags);
+		int mismatches = 0;
+		long flaggedSettled = 0, flaggedNanos = 0;
+		for (int i = 0; i < queries; i++) {
+			SearchResult result = graph.search("dijkstra", pairs[i][0], pairs[i][1]);
+			flaggedSettled += result.getStats().getNodesSettled();
+			flaggedNanos += result.getStats().getWallNanos();
+			double length = result.isFound() ? graph.getPathLength(result.getPath()) : -1;
+			if (Math.abs(length - lengths[i]) > 1e-9 * Math.max(1, lengths[i])) {
+				mismatches++;
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, 
+				"%d queries, %d mismatches; settled %.0f without flags, %.0f with; %.1f us and %.1f us on average",
+				queries, mismatches, plainSettled / (double) Math.max(1, queries), 
+				flaggedSettled / (double) Math.max(1, queries), plainNanos / 1e3 / Math.max(1, queries),
+				flaggedNanos / 1e3 / Math.max(1, queries)));
+	}
+}
@@ -0,0 +1,320 @@
+package roadgraph;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import geography.GeographicPoint;
+import tracing.Tracing;
+import util.GraphLoader;
+
+/**
+ * Routes a file of origin/destination pairs in parallel and writes one 
+ * line of results per pair, for jobs too large to click through in the 
+ * map application.
+ * 
+ * The input is a CSV file with one pair per line, either
+ *   origin_lat,origin_lon,dest_lat,dest_lon
+ * or with an id in front of the coordinates.  Blank lines, lines starting
+ * with # and a header line are skipped.  Each coordinate is snapped to the
+ * nearest intersection before searching.
+ * 
+ * The output is a CSV file with a header and, in input order,
+ *   id,origin_lat,origin_lon,dest_lat,dest_lon,found,distance_km,hops,nodes_settled,latency_us
+ * where the coordinates are the snapped intersections and the id is the 
+ * input id or line number.
+ * 
+ * Pairs are read in chunks so files of any size can be routed; each chunk
+ * is searched on a fork-join pool while the results of the previous chunk
+ * are written out.
+ * 
+ * Options:
+ *   -map FILE        the .map file to route on (required)
+ *   -in FILE         the pairs to route (required)
+ *   -out FILE        where to write the results (required)
+ *   -algorithm NAME  astar, dijkstra or bfs (default astar)
+ *   -threads N       parallelism of the pool (default the number of processors)
+ *   -chunk N         pairs read at a time (default 8192)
+ *
+ */
+public class BatchRouter {
+
+	/** Pairs routed by one task before it stops splitting */
+	private static final int SPLIT_THRESHOLD = 16;
+
+	private final MapGraph graph;
+	private final String algorithm;
+	private final ForkJoinPool pool;
+	private int chunkSize = 8192;
+
+	/** One origin/destination pair and, once routed, its result */
+	private static class Pair {
+		final String id;
+		final GeographicPoint origin;
+		final GeographicPoint destination;
+		GeographicPoint from;
+		GeographicPoint to;
+		SearchResult result;
+		double distance;
+
+		Pair(String id, GeographicPoint origin, GeographicPoint destination) {
+			this.id = id;
+			this.origin = origin;
+			this.destination = destination;
+		}
+	}
+
+	/** Routes a range of a chunk, splitting it in half until it is small */
+	@SuppressWarnings("serial")
+	private class RouteTask extends RecursiveAction {
+		private final Pair[] pairs;
+		private final int lo;
+		private final int hi;
+
+		RouteTask(Pair[] pairs, int lo, int hi) {
+			this.pairs = pairs;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= SPLIT_THRESHOLD) {
+				for (int i = lo; i < hi; i++) {
+					route(pairs[i]);
+				}
+			}
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new RouteTask(pairs, lo, mid), new RouteTask(pairs, mid, hi));
+			}
+		}
+	}
+
+	/**
+	 * Create a batch router on a loaded graph.
+	 * @param graph The graph to route on; it must not change while routing
+	 * @param algorithm "astar", "dijkstra" or "bfs"
+	 * @param parallelism The number of threads to route with
+	 * @throws IllegalArgumentException If the algorithm is not known
+	 */
+	public BatchRouter(MapGraph graph, String algorithm, int parallelism) {
+		if (!algorithm.equals("astar") && !algorithm.equals("dijkstra") && !algorithm.equals("bfs")) {
+			throw new IllegalArgumentException("Unknown algorithm " + algorithm 
+					+ ", expected astar, dijkstra or bfs");
+		}
+		this.graph = graph;
+		this.algorithm = algorithm;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Set how many pairs are read, routed and written at a time
+	 * @param chunkSize The number of pairs in a chunk
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("chunk size must be positive");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Route every pair in a CSV file and write the results.
+	 * @param input The pairs to route
+	 * @param output Where to write the results
+	 * @return The number of pairs routed
+	 * @throws IOException If reading or writing fails
+	 * @throws IllegalArgumentException If a line cannot be parsed
+	 */
+	public long run(String input, String output) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new FileReader(input));
+			 Writer writer = new BufferedWriter(new FileWriter(output))) {
+			return run(reader, writer);
+		}
+	}
+
+	/**
+	 * Route every pair read and write the results.
+	 * @param reader The pairs to route
+	 * @param writer Where to write the results
+	 * @return The number of pairs routed
+	 * @throws IOException If reading or writing fails
+	 * @throws IllegalArgumentException If a line cannot be parsed
+	 */
+	public long run(BufferedReader reader, Writer writer) throws IOException {
+		writer.write("id,origin_lat,origin_lon,dest_lat,dest_lon,found,distance_km,hops,nodes_settled,latency_us\n");
+		long[] lineNumber = new long[1];
+		long routed = 0;
+		Pair[] chunk = readChunk(reader, lineNumber);
+		while (chunk.length > 0) {
+			ForkJoinTask<Void> routing = pool.submit(new RouteTask(chunk, 0, chunk.length));
+			Pair[] next = readChunk(reader, lineNumber);
+			routing.join();
+			write(chunk, writer);
+			routed += chunk.length;
+			chunk = next;
+		}
+		writer.flush();
+		return routed;
+	}
+
+	/** Stop the threads of the pool */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private void route(Pair pair) {
+		pair.from = graph.nearestVertex(pair.origin);
+		pair.to = graph.nearestVertex(pair.destination);
+		if (pair.from == null || pair.to == null) {
+			return;
+		}
+		pair.result = graph.search(algorithm, pair.from, pair.to);
+		if (pair.result.isFound()) {
+			pair.distance = graph.getPathLength(pair.result.getPath());
+		}
+	}
+
+	private Pair[] readChunk(BufferedReader reader, long[] lineNumber) throws IOException {
+		List<Pair> pairs = new ArrayList<Pair>();
+		String line;
+		while (pairs.size() < chunkSize && (line = reader.readLine()) != null) {
+			lineNumber[0]++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split(",");
+			if (fields.length != 4 && fields.length != 5) {
+				throw new IllegalArgumentException("Line " + lineNumber[0] 
+						+ ": expected 4 coordinates, optionally after an id");
+			}
+			int first = fields.length - 4;
+			double[] coords = new double[4];
+			try {
+				for (int i = 0; i < 4; i++) {
+					coords[i] = Double.parseDouble(fields[first + i].trim());
+				}
+			}
+			catch (NumberFormatException e) {
+				if (lineNumber[0] == 1) {
+					continue; // header
+				}
+				throw new IllegalArgumentException("Line " + lineNumber[0] + ": " + e.getMessage());
+			}
+			String id = (first == 1) ? fields[0].trim() : String.valueOf(lineNumber[0]);
+			pairs.add(new Pair(id, new GeographicPoint(coords[0], coords[1]), 
+			                   new GeographicPoint(coords[2], coords[3])));
+		}
+		return pairs.toArray(new Pair[pairs.size()]);
+	}
+
+	private static void write(Pair[] pairs, Writer writer) throws IOException {
+		StringBuilder line = new StringBuilder(128);
+		for (Pair pair : pairs) {
+			line.setLength(0);
+			line.append(pair.id).append(',');
+			appendPoint(line, pair.from).append(',');
+			appendPoint(line, pair.to).append(',');
+			SearchResult result = pair.result;
+			if (result == null) {
+				line.append("false,,,,");
+			}
+			else {
+				line.append(result.isFound()).append(',');
+				if (result.isFound()) {
+					line.append(String.format(Locale.ROOT, "%.4f", pair.distance)).append(',');
+					line.append(result.getPath().size() - 1);
+				}
+				else {
+					line.append(',');
+				}
+				line.append(',').append(result.getStats().getNodesSettled());
+				line.append(',').append(result.getStats().getWallNanos() / 1000);
+			}
+			line.append('\n');
+			writer.write(line.toString());
+		}
+	}
+
+	private static StringBuilder appendPoint(StringBuilder line, GeographicPoint p) {
+		if (p == null) {
+			return line.append(',');
+		}
+		return line.append(p.getX()).append(',').append(p.getY());
+	}
+
+	public static void main(String[] args) throws IOException {
+		String mapFile = null;
+		String input = null;
+		String output = null;
+		String algorithm = "astar";
+		int threads = Runtime.getRuntime().availableProcessors();
+		int chunk = 8192;
+		SpeedTable speeds = null;
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				usage("Missing value for " + arg);
+				return;
+			}
+			String value = args[++i];
+			if (arg.equals("-map")) mapFile = value;
+			else if (arg.equals("-in")) input = value;
+			else if (arg.equals("-out")) output = value;
+			else if (arg.equals("-algorithm")) algorithm = value;
+			else if (arg.equals("-threads")) threads = Integer.parseInt(value);
+			else if (arg.equals("-chunk")) chunk = Integer.parseInt(value);
+			else if (arg.equals("-metric") && value.equals("fastest")) speeds = SpeedTable.DEFAULT;
+			else if (arg.equals("-metric") && value.equals("shortest")) speeds = null;
+			else if (arg.equals("-speeds")) speeds = SpeedTable.parse(value);
+			else {
+				usage("Unknown option " + arg);
+				return;
+			}
+		}
+		if (mapFile == null || input == null || output == null) {
+			usage("-map, -in and -out are required");
+			return;
+		}
+
+		MapGraph graph = new MapGraph();
+		GraphLoader.loadRoadMap(mapFile, graph);
+		// one line per pair that has no route would swamp the console
+		graph.setTracer(Tracing.NONE);
+		if (speeds != null) {
+			graph.setSpeeds(speeds);
+		}
+
+		BatchRouter router = new BatchRouter(graph, algorithm, threads);
+		router.setChunkSize(chunk);
+		long start = System.nanoTime();
+		long routed;
+		try {
+			routed = router.run(input, output);
+		}
+		finally {
+			router.shutdown();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format(Locale.ROOT, "Routed %d pairs in %.2f s (%.0f pairs/s) with %d threads to %s",
+				routed, seconds, routed / seconds, threads, output));
+	}
+
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("Usage: BatchRouter -map file.map -in pairs.csv -out results.csv "
+				+ "[-algorithm astar|dijkstra|bfs] [-threads n] [-chunk n] "
+				+ "[-metric shortest|fastest] [-speeds type=km/h,...]");
+	}
+}
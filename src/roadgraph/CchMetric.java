@@ -0,0 +1,305 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import geography.GeographicPoint;
+import util.ScratchCapacity;
+
+/**
+ * The weights of a customizable contraction hierarchy for one metric, and
+ * the queries answered with them.  Immutable once customized, so it can 
+ * be shared by any number of searching threads; when the graph's weights
+ * change, customize again and swap in the new metric.
+ * 
+ * A query walks the elimination tree: every node an upward search from 
+ * the start could reach is an ancestor of the start in the tree, so 
+ * instead of a priority queue the search just relaxes the up edges of 
+ * each ancestor in turn.  The same is done backward from the goal, and 
+ * the best meeting point is the common ancestor with the least total 
+ * distance.
+ *
+ */
+public final class CchMetric {
+
+	private final CustomizableCH cch;
+	
+	// Per edge of the hierarchy: cost from its lower end to its higher end
+	// and back, and the lower triangle each came through (-1 for a road)
+	private final double[] up;
+	private final double[] down;
+	private final int[] upVia;
+	private final int[] downVia;
+
+	/** Distances and parents for both directions, reused by each thread */
+	private static class Query {
+		double[] forward = new double[0];
+		double[] backward = new double[0];
+		int[] forwardEdge = new int[0];
+		int[] backwardEdge = new int[0];
+		int[] stamp = new int[0];
+		int currentStamp;
+		final ScratchCapacity capacity = new ScratchCapacity();
+
+		void reset(int n) {
+			int size = capacity.fit(n);
+			if (forward.length != size) {
+				forward = new double[size];
+				backward = new double[size];
+				forwardEdge = new int[size];
+				backwardEdge = new int[size];
+				stamp = new int[size];
+				currentStamp = 0;
+			}
+			currentStamp++;
+		}
+
+		// Start on a node, clearing its entry if this query has not seen it
+		void touch(int v) {
+			if (stamp[v] != currentStamp) {
+				stamp[v] = currentStamp;
+				forward[v] = Double.POSITIVE_INFINITY;
+				backward[v] = Double.POSITIVE_INFINITY;
+				forwardEdge[v] = -1;
+				backwardEdge[v] = -1;
+			}
+		}
+	}
+
+	private static final ThreadLocal<Query> QUERY = new ThreadLocal<Query>() {
+		@Override
+		protected Query initialValue() {
+			return new Query();
+		}
+	};
+
+	CchMetric(CustomizableCH cch, double[] up, double[] down, int[] upVia, int[] downVia)
+	{
+		this.cch = cch;
+		this.up = up;
+		this.down = down;
+		this.upVia = upVia;
+		this.downVia = downVia;
+	}
+
+	/** @return The cost of an edge of the hierarchy from its lower end to its higher end */
+	double upWeight(int e)
+	{
+		return up[e];
+	}
+
+	/** @return The cost of an edge of the hierarchy from its higher end to its lower end */
+	double downWeight(int e)
+	{
+		return down[e];
+	}
+
+	/** @return The hierarchy these weights are for */
+	public CustomizableCH getHierarchy()
+	{
+		return cch;
+	}
+
+	/**
+	 * Find the least cost route between two intersections
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The route, or a result with no path if either point is not an
+	 *   intersection or the goal cannot be reached
+	 */
+	public SearchResult route(GeographicPoint start, GeographicPoint goal)
+	{
+		SearchStats.Counter counter = new SearchStats.Counter();
+		CsrGraph graph = cch.getGraph();
+		int s = graph.getNode(start);
+		int t = graph.getNode(goal);
+		List<GeographicPoint> path = null;
+		if (s >= 0 && t >= 0) {
+			Query query = QUERY.get();
+			int meet = search(cch.rankOf(s), cch.rankOf(t), query, counter);
+			if (meet >= 0) {
+				path = new ArrayList<GeographicPoint>();
+				for (int rank : unpack(meet, query)) {
+					path.add(graph.getLocation(cch.nodeAt(rank)));
+				}
+			}
+		}
+		return new SearchResult("cch", start, goal, path, counter.finish());
+	}
+
+	/**
+	 * Find the least cost between two intersections
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The cost of the best route, or infinity if there is none
+	 */
+	public double distance(GeographicPoint start, GeographicPoint goal)
+	{
+		CsrGraph graph = cch.getGraph();
+		int s = graph.getNode(start);
+		int t = graph.getNode(goal);
+		if (s < 0 || t < 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		Query query = QUERY.get();
+		int meet = search(cch.rankOf(s), cch.rankOf(t), query, new SearchStats.Counter());
+		return (meet < 0) ? Double.POSITIVE_INFINITY : query.forward[meet] + query.backward[meet];
+	}
+
+	/**
+	 * Run both upward searches along the elimination tree
+	 * @return The rank where the best route meets, or -1 if there is no route
+	 */
+	private int search(int s, int t, Query query, SearchStats.Counter counter)
+	{
+		query.reset(cch.getNumNodes());
+		query.touch(s);
+		query.touch(t);
+		query.forward[s] = 0.0;
+		query.backward[t] = 0.0;
+		
+		for (int x = s; x >= 0; x = parent(x)) {
+			query.touch(x);
+			counter.settled();
+			relax(x, query.forward, query.forwardEdge, up, query, counter);
+		}
+		
+		// Every ancestor of the start has been touched, so the common 
+		// ancestors are those the backward walk finds already touched
+		int[] ancestors = new int[16];
+		int count = 0;
+		for (int x = t; x >= 0; x = parent(x)) {
+			if (count == ancestors.length) {
+				ancestors = Arrays.copyOf(ancestors, count * 2);
+			}
+			ancestors[count++] = x;
+			query.touch(x);
+		}
+		int meet = -1;
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < count; i++) {
+			int x = ancestors[i];
+			counter.settled();
+			relax(x, query.backward, query.backwardEdge, down, query, counter);
+			double total = query.forward[x] + query.backward[x];
+			if (total < best) {
+				best = total;
+				meet = x;
+			}
+		}
+		return meet;
+	}
+
+	/**
+	 * Relax the up edges of a rank in one direction
+	 */
+	private void relax(int x, double[] dist, int[] parentEdge, double[] weights, 
+			Query query, SearchStats.Counter counter)
+	{
+		double base = dist[x];
+		if (base == Double.POSITIVE_INFINITY) {
+			return;
+		}
+		for (int e = cch.firstUp(x); e < cch.firstUp(x + 1); e++) {
+			int w = cch.upHead(e);
+			query.touch(w);
+			double d = base + weights[e];
+			if (d < dist[w]) {
+				dist[w] = d;
+				parentEdge[w] = e;
+				counter.relaxed();
+			}
+		}
+	}
+
+	/**
+	 * @return The parent of a rank in the elimination tree, or -1 for a root
+	 */
+	private int parent(int x)
+	{
+		int e = cch.firstUp(x);
+		return (e < cch.firstUp(x + 1)) ? cch.upHead(e) : -1;
+	}
+
+	/**
+	 * Turn the two half routes meeting at a rank into the ranks of the 
+	 * whole route, expanding every shortcut
+	 */
+	private List<Integer> unpack(int meet, Query query)
+	{
+		// Edges from the start up to the meeting point, collected backward
+		List<Integer> forwardEdges = new ArrayList<Integer>();
+		List<Integer> forwardTails = new ArrayList<Integer>();
+		for (int x = meet; query.forwardEdge[x] >= 0; ) {
+			int e = query.forwardEdge[x];
+			int tail = tailOf(e);
+			forwardEdges.add(e);
+			forwardTails.add(tail);
+			x = tail;
+		}
+		List<Integer> ranks = new ArrayList<Integer>();
+		ranks.add(forwardTails.isEmpty() ? meet : forwardTails.get(forwardTails.size() - 1));
+		for (int i = forwardEdges.size() - 1; i >= 0; i--) {
+			unpackUp(forwardEdges.get(i), forwardTails.get(i), ranks);
+		}
+		for (int x = meet; query.backwardEdge[x] >= 0; ) {
+			int e = query.backwardEdge[x];
+			int tail = tailOf(e);
+			unpackDown(e, tail, ranks);
+			x = tail;
+		}
+		return ranks;
+	}
+
+	/**
+	 * @return The lower end of an edge of the hierarchy
+	 */
+	private int tailOf(int e)
+	{
+		// The up edges are stored rank by rank, so search the offsets
+		int lo = 0, hi = cch.getNumNodes() - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (cch.firstUp(mid) <= e) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Append the ranks after the lower end of an edge walking it upward
+	 */
+	void unpackUp(int e, int low, List<Integer> ranks)
+	{
+		int via = upVia[e];
+		int high = cch.upHead(e);
+		if (via < 0) {
+			ranks.add(high);
+			return;
+		}
+		// low -> via is the down direction of (via, low), via -> high is up
+		unpackDown(cch.findEdge(via, low), via, ranks);
+		unpackUp(cch.findEdge(via, high), via, ranks);
+	}
+
+	/**
+	 * Append the ranks after the higher end of an edge walking it downward
+	 */
+	void unpackDown(int e, int low, List<Integer> ranks)
+	{
+		int via = downVia[e];
+		int high = cch.upHead(e);
+		if (via < 0) {
+			ranks.add(low);
+			return;
+		}
+		// high -> via is the down direction of (via, high), via -> low is up
+		unpackDown(cch.findEdge(via, high), via, ranks);
+		unpackUp(cch.findEdge(via, low), via, ranks);
+	}
+}
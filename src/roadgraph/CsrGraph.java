@@ -0,0 +1,173 @@
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import geography.GeographicPoint;
+
+/**
+ * A compact, read-only copy of the topology of a MapGraph in compressed
+ * sparse row form: the arcs out of node v are firstOut[v] up to 
+ * firstOut[v+1] in the head array.  Node ids are the MapGraph's node ids.
+ * 
+ * The speed-up techniques that preprocess the graph work on this form,
+ * since walking flat int arrays is much cheaper than walking the node and
+ * edge objects.  Costs are kept apart from the topology, as an array per
+ * metric indexed like head, so one topology serves any number of metrics.
+ * The arcs into each node are listed the same way through firstIn and
+ * inArc, for searches that run backward.
+ *
+ */
+public final class CsrGraph {
+
+	private final int[] firstOut;
+	private final int[] head;
+	private final int[] tail;
+	private final int[] firstIn;
+	private final int[] inArcs;
+	private final MapEdge[] arcEdges;
+	private final GeographicPoint[] points;
+	private final NodeCoordinates coordinates;
+	private final Map<GeographicPoint,MapNode> pointNodeMap;
+
+	/**
+	 * Build from the nodes of a graph
+	 * @param nodes The nodes, by id
+	 * @param pointNodeMap The graph's index from location to node
+	 */
+	CsrGraph(List<MapNode> nodes, Map<GeographicPoint,MapNode> pointNodeMap)
+	{
+		int n = nodes.size();
+		firstOut = new int[n + 1];
+		points = new GeographicPoint[n];
+		for (int v = 0; v < n; v++) {
+			firstOut[v + 1] = firstOut[v] + nodes.get(v).getEdges().size();
+			points[v] = nodes.get(v).getLocation();
+		}
+		head = new int[firstOut[n]];
+		tail = new int[firstOut[n]];
+		arcEdges = new MapEdge[firstOut[n]];
+		firstIn = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			int a = firstOut[v];
+			for (MapEdge edge : nodes.get(v).getEdges()) {
+				head[a] = edge.getEndNode().getId();
+				tail[a] = v;
+				arcEdges[a] = edge;
+				firstIn[head[a] + 1]++;
+				a++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			firstIn[v + 1] += firstIn[v];
+		}
+		inArcs = new int[head.length];
+		int[] fill = Arrays.copyOf(firstIn, n);
+		for (int a = 0; a < head.length; a++) {
+			inArcs[fill[head[a]]++] = a;
+		}
+		coordinates = new NodeCoordinates(points);
+		this.pointNodeMap = pointNodeMap;
+	}
+
+	/** @return The number of nodes */
+	public int getNumNodes()
+	{
+		return points.length;
+	}
+
+	/** @return The number of arcs (directed road segments) */
+	public int getNumArcs()
+	{
+		return head.length;
+	}
+
+	/** @return The index of the first arc out of v; arcs of v end at firstOut(v + 1) */
+	public int firstOut(int v)
+	{
+		return firstOut[v];
+	}
+
+	/** @return The node an arc leads to */
+	public int head(int arc)
+	{
+		return head[arc];
+	}
+
+	/** @return The node an arc leaves */
+	public int tail(int arc)
+	{
+		return tail[arc];
+	}
+
+	/** @return The index of the first arc into v; arcs into v end at firstIn(v + 1) */
+	public int firstIn(int v)
+	{
+		return firstIn[v];
+	}
+
+	/**
+	 * @param i An index from firstIn(v) up to firstIn(v + 1)
+	 * @return The arc at that index, an arc into v
+	 */
+	public int inArc(int i)
+	{
+		return inArcs[i];
+	}
+
+	/** @return The location of a node */
+	public GeographicPoint getLocation(int v)
+	{
+		return points[v];
+	}
+
+	/** @return The node locations in fixed point, for cheap distance bounds */
+	NodeCoordinates getCoordinates()
+	{
+		return coordinates;
+	}
+
+	/**
+	 * @param point A location
+	 * @return The id of the node there, or -1 if there is none
+	 */
+	public int getNode(GeographicPoint point)
+	{
+		MapNode node = pointNodeMap.get(point);
+		return (node == null) ? -1 : node.getId();
+	}
+
+	/** @return The road segment an arc stands for */
+	MapEdge getEdge(int arc)
+	{
+		return arcEdges[arc];
+	}
+
+	/**
+	 * @return The length of each arc in km, indexed like the arcs
+	 */
+	public double[] arcLengths()
+	{
+		double[] lengths = new double[head.length];
+		for (int a = 0; a < lengths.length; a++) {
+			lengths[a] = arcEdges[a].getLength();
+		}
+		return lengths;
+	}
+
+	/**
+	 * Get the cost of each arc under a snapshot of the graph's weights
+	 * @param weights The snapshot
+	 * @return The costs, indexed like the arcs: weights, or travel times if
+	 *   the snapshot has speeds; infinity for closed roads
+	 */
+	public double[] arcCosts(GraphSnapshot weights)
+	{
+		double[] costs = new double[head.length];
+		for (int a = 0; a < costs.length; a++) {
+			costs[a] = weights.getCost(arcEdges[a]);
+		}
+		return costs;
+	}
+}
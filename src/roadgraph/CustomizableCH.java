@@ -0,0 +1,437 @@
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/**
+ * A customizable contraction hierarchy (CCH) over a road graph.
+ * 
+ * Building one is split in two.  The first phase depends only on the 
+ * topology: the nodes are ranked by nested dissection and contracted in 
+ * that order, adding a shortcut between every pair of higher ranked 
+ * neighbors of each contracted node.  This is slow but is done once per 
+ * map.  The second phase, customization, takes a cost for every arc and 
+ * computes the weight of every shortcut from the weights below it; it 
+ * only walks arrays, so it is fast enough to redo whenever weights change
+ * (see customize).  The result is a CchMetric, which answers queries.
+ * 
+ * Nodes are handled by rank inside this class: rank 0 is contracted first.
+ * Each edge of the hierarchy joins a lower ranked node to a higher ranked 
+ * one, is stored with the lower node in the up arrays, and carries two 
+ * weights, one for each direction.
+ *
+ */
+public class CustomizableCH {
+
+	// Levels with fewer nodes than this are customized on the calling thread
+	private static final int PARALLEL_LEVEL_SIZE = 256;
+	
+	// Nodes customized by one task before it stops splitting
+	private static final int SPLIT_THRESHOLD = 64;
+
+	private final CsrGraph graph;
+	
+	// rankOf[node] and nodeAt[rank]
+	private final int[] rankOf;
+	private final int[] nodeAt;
+	
+	// The edges up from rank r are firstUp[r] to firstUp[r+1]; upHead holds 
+	// their higher end, sorted ascending
+	private final int[] firstUp;
+	private final int[] upHead;
+	
+	// The edges down from rank r, i.e. to its lower neighbors, as the lower
+	// neighbor and the edge joining them
+	private final int[] firstDown;
+	private final int[] downTail;
+	private final int[] downEdge;
+	
+	// For each arc of the graph, the edge it belongs to and whether it runs up
+	private final int[] arcEdge;
+	private final boolean[] arcUp;
+	
+	// The ranks grouped by level; a rank's lower neighbors are all on lower levels
+	private final int[] firstOfLevel;
+	private final int[] byLevel;
+	
+	private final int originalEdges;
+
+	/**
+	 * Build the metric independent part of the hierarchy for a graph
+	 * @param graph The graph
+	 * @return The hierarchy, ready to customize
+	 */
+	public static CustomizableCH build(MapGraph graph)
+	{
+		CsrGraph csr = graph.getCsr();
+		return new CustomizableCH(csr, NestedDissection.order(csr));
+	}
+
+	/**
+	 * Contract a graph in a given order
+	 * @param graph The graph
+	 * @param order The nodes in the order they are contracted
+	 */
+	CustomizableCH(CsrGraph graph, int[] order)
+	{
+		this.graph = graph;
+		int n = graph.getNumNodes();
+		nodeAt = order.clone();
+		rankOf = new int[n];
+		for (int r = 0; r < n; r++) {
+			rankOf[nodeAt[r]] = r;
+		}
+		
+		// Higher ranked neighbors of each rank, sorted
+		int[][] neighbors = NestedDissection.undirected(graph);
+		int[][] up = new int[n][];
+		int count = 0;
+		for (int r = 0; r < n; r++) {
+			int[] list = neighbors[nodeAt[r]];
+			int[] higher = new int[list.length];
+			int size = 0;
+			for (int v : list) {
+				if (rankOf[v] > r) {
+					higher[size++] = rankOf[v];
+				}
+			}
+			up[r] = Arrays.copyOf(higher, size);
+			Arrays.sort(up[r]);
+			count += size;
+		}
+		originalEdges = count;
+		
+		// Contract: the higher neighbors of r all become neighbors of the
+		// lowest of them, its parent in the elimination tree
+		for (int r = 0; r < n; r++) {
+			if (up[r].length > 1) {
+				int parent = up[r][0];
+				up[parent] = union(up[parent], up[r], 1);
+			}
+		}
+		
+		firstUp = new int[n + 1];
+		for (int r = 0; r < n; r++) {
+			firstUp[r + 1] = firstUp[r] + up[r].length;
+		}
+		upHead = new int[firstUp[n]];
+		int[] downDegree = new int[n];
+		for (int r = 0; r < n; r++) {
+			System.arraycopy(up[r], 0, upHead, firstUp[r], up[r].length);
+			for (int h : up[r]) {
+				downDegree[h]++;
+			}
+			up[r] = null;
+		}
+		
+		firstDown = new int[n + 1];
+		for (int r = 0; r < n; r++) {
+			firstDown[r + 1] = firstDown[r] + downDegree[r];
+		}
+		downTail = new int[upHead.length];
+		downEdge = new int[upHead.length];
+		int[] fill = Arrays.copyOf(firstDown, n);
+		int[] level = new int[n];
+		int levels = 0;
+		for (int r = 0; r < n; r++) {
+			for (int e = firstUp[r]; e < firstUp[r + 1]; e++) {
+				int h = upHead[e];
+				downTail[fill[h]] = r;
+				downEdge[fill[h]] = e;
+				fill[h]++;
+				level[h] = Math.max(level[h], level[r] + 1);
+			}
+			levels = Math.max(levels, level[r] + 1);
+		}
+		
+		firstOfLevel = new int[levels + 1];
+		for (int r = 0; r < n; r++) {
+			firstOfLevel[level[r] + 1]++;
+		}
+		for (int l = 0; l < levels; l++) {
+			firstOfLevel[l + 1] += firstOfLevel[l];
+		}
+		byLevel = new int[n];
+		fill = Arrays.copyOf(firstOfLevel, levels);
+		for (int r = 0; r < n; r++) {
+			byLevel[fill[level[r]]++] = r;
+		}
+		
+		arcEdge = new int[graph.getNumArcs()];
+		arcUp = new boolean[graph.getNumArcs()];
+		for (int v = 0; v < n; v++) {
+			for (int a = graph.firstOut(v); a < graph.firstOut(v + 1); a++) {
+				int from = rankOf[v];
+				int to = rankOf[graph.head(a)];
+				if (from == to) {
+					arcEdge[a] = -1;
+				}
+				else {
+					arcUp[a] = from < to;
+					arcEdge[a] = findEdge(Math.min(from, to), Math.max(from, to));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merge two sorted lists, skipping the first skip elements of the second
+	 */
+	private static int[] union(int[] a, int[] b, int skip)
+	{
+		int[] result = new int[a.length + b.length - skip];
+		int i = 0, j = skip, size = 0;
+		while (i < a.length || j < b.length) {
+			if (j == b.length || (i < a.length && a[i] < b[j])) {
+				result[size++] = a[i++];
+			}
+			else if (i == a.length || b[j] < a[i]) {
+				result[size++] = b[j++];
+			}
+			else {
+				result[size++] = a[i++];
+				j++;
+			}
+		}
+		return (size == result.length) ? result : Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * @return The edge joining two ranks, the lower first, or -1 if there is none
+	 */
+	int findEdge(int low, int high)
+	{
+		int e = Arrays.binarySearch(upHead, firstUp[low], firstUp[low + 1], high);
+		return (e < 0) ? -1 : e;
+	}
+
+	/**
+	 * Compute the weights of the hierarchy for a snapshot of the graph's 
+	 * weights, in parallel on the common fork-join pool.
+	 * @param weights The snapshot, e.g. MapGraph.getSnapshot()
+	 * @return The customized hierarchy
+	 */
+	public CchMetric customize(GraphSnapshot weights)
+	{
+		return customize(graph.arcCosts(weights), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Compute the weights of the hierarchy for a cost of every arc.
+	 * 
+	 * The weight of an edge is its own arc cost improved by the paths 
+	 * through each lower triangle: a lower neighbor x of both its ends.
+	 * Those paths use only edges of x, whose weights are final once every
+	 * lower level is done, so the levels are customized bottom up and the 
+	 * ranks within a level in parallel.  Each rank writes only the weights
+	 * of its own up edges.
+	 * @param arcCosts The cost of each arc, indexed like the CsrGraph's arcs;
+	 *   infinite for arcs that cannot be used
+	 * @param pool Where to customize the levels, or null to do it all on 
+	 *   the calling thread
+	 * @return The customized hierarchy
+	 */
+	public CchMetric customize(double[] arcCosts, ForkJoinPool pool)
+	{
+		if (arcCosts.length != arcEdge.length) {
+			throw new IllegalArgumentException("Expected " + arcEdge.length + 
+					" arc costs but got " + arcCosts.length);
+		}
+		double[] up = new double[upHead.length];
+		double[] down = new double[upHead.length];
+		int[] upVia = new int[upHead.length];
+		int[] downVia = new int[upHead.length];
+		Arrays.fill(up, Double.POSITIVE_INFINITY);
+		Arrays.fill(down, Double.POSITIVE_INFINITY);
+		Arrays.fill(upVia, -1);
+		Arrays.fill(downVia, -1);
+		for (int a = 0; a < arcCosts.length; a++) {
+			int e = arcEdge[a];
+			if (e < 0) {
+				continue;
+			}
+			if (arcUp[a]) {
+				up[e] = Math.min(up[e], arcCosts[a]);
+			}
+			else {
+				down[e] = Math.min(down[e], arcCosts[a]);
+			}
+		}
+		
+		for (int l = 0; l + 1 < firstOfLevel.length; l++) {
+			int from = firstOfLevel[l];
+			int to = firstOfLevel[l + 1];
+			if (pool == null || to - from < PARALLEL_LEVEL_SIZE) {
+				for (int i = from; i < to; i++) {
+					customizeRank(byLevel[i], up, down, upVia, downVia);
+				}
+			}
+			else {
+				pool.invoke(new LevelTask(from, to, up, down, upVia, downVia));
+			}
+		}
+		return new CchMetric(this, up, down, upVia, downVia);
+	}
+
+	/** Customizes a range of one level, splitting it in half until it is small */
+	@SuppressWarnings("serial")
+	private class LevelTask extends RecursiveAction {
+		private final int from, to;
+		private final double[] up, down;
+		private final int[] upVia, downVia;
+
+		LevelTask(int from, int to, double[] up, double[] down, int[] upVia, int[] downVia) {
+			this.from = from;
+			this.to = to;
+			this.up = up;
+			this.down = down;
+			this.upVia = upVia;
+			this.downVia = downVia;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SPLIT_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					customizeRank(byLevel[i], up, down, upVia, downVia);
+				}
+			}
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new LevelTask(from, mid, up, down, upVia, downVia),
+						new LevelTask(mid, to, up, down, upVia, downVia));
+			}
+		}
+	}
+
+	/**
+	 * Settle the weights of the edges up from rank y from its lower triangles
+	 */
+	private void customizeRank(int y, double[] up, double[] down, int[] upVia, int[] downVia)
+	{
+		for (int d = firstDown[y]; d < firstDown[y + 1]; d++) {
+			int x = downTail[d];
+			int xy = downEdge[d];
+			// Every neighbor of x above y is also a neighbor of y, and both 
+			// lists are sorted, so walk them together
+			int yw = firstUp[y];
+			for (int xw = xy + 1; xw < firstUp[x + 1]; xw++) {
+				int w = upHead[xw];
+				while (upHead[yw] != w) {
+					yw++;
+				}
+				// y -> x -> w
+				double through = down[xy] + up[xw];
+				if (through < up[yw]) {
+					up[yw] = through;
+					upVia[yw] = x;
+				}
+				// w -> x -> y
+				through = down[xw] + up[xy];
+				if (through < down[yw]) {
+					down[yw] = through;
+					downVia[yw] = x;
+				}
+			}
+		}
+	}
+
+	CsrGraph getGraph() { return graph; }
+	int rankOf(int node) { return rankOf[node]; }
+	int nodeAt(int rank) { return nodeAt[rank]; }
+	int firstUp(int rank) { return firstUp[rank]; }
+	int upHead(int edge) { return upHead[edge]; }
+	int firstOfLevel(int level) { return firstOfLevel[level]; }
+	int byLevel(int i) { return byLevel[i]; }
+
+	/** @return The number of nodes */
+	public int getNumNodes()
+	{
+		return rankOf.length;
+	}
+
+	/** @return The number of edges in the hierarchy, shortcuts included */
+	public int getNumEdges()
+	{
+		return upHead.length;
+	}
+
+	/** @return The number of edges added by contraction */
+	public int getNumShortcuts()
+	{
+		return upHead.length - originalEdges;
+	}
+
+	/** @return The number of levels customized one after another */
+	public int getNumLevels()
+	{
+		return firstOfLevel.length - 1;
+	}
+
+	/**
+	 * Build a hierarchy for a map, time customization with and without 
+	 * the pool (after one run to warm up), and check random queries 
+	 * against Dijkstra.
+	 * 
+	 * Usage: CustomizableCH FILE.map [queries]
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length < 1) {
+			System.err.println("Usage: CustomizableCH FILE.map [queries]");
+			System.exit(2);
+		}
+		int queries = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		MapGraph graph = new MapGraph();
+		GraphLoader.loadRoadMap(args[0], graph);
+		System.out.println(graph.getNumVertices() + " intersections, " + 
+				graph.getNumEdges() + " road segments");
+		
+		long start = System.nanoTime();
+		CustomizableCH cch = build(graph);
+		System.out.println(String.format(Locale.ROOT, 
+				"Contracted in %.1f ms: %d edges, %d shortcuts, %d levels",
+				(System.nanoTime() - start) / 1e6, cch.getNumEdges(), 
+				cch.getNumShortcuts(), cch.getNumLevels()));
+		
+		double[] costs = graph.getCsr().arcCosts(graph.getSnapshot());
+		CchMetric metric = cch.customize(costs, null);
+		for (ForkJoinPool pool : new ForkJoinPool[] { null, ForkJoinPool.commonPool() }) {
+			start = System.nanoTime();
+			metric = cch.customize(costs, pool);
+			System.out.println(String.format(Locale.ROOT, "Customized %s in %.1f ms",
+					(pool == null) ? "sequentially" : "on " + pool.getParallelism() + " threads",
+					(System.nanoTime() - start) / 1e6));
+		}
+		
+		Random random = new Random(42);
+		GeographicPoint[] points = graph.getVertices().toArray(new GeographicPoint[0]);
+		int mismatches = 0;
+		long cchNanos = 0, dijkstraNanos = 0;
+		for (int i = 0; i < queries; i++) {
+			GeographicPoint from = points[random.nextInt(points.length)];
+			GeographicPoint to = points[random.nextInt(points.length)];
+			start = System.nanoTime();
+			SearchResult result = metric.route(from, to);
+			cchNanos += System.nanoTime() - start;
+			start = System.nanoTime();
+			double expected = graph.distances(from, Collections.singletonList(to))[0];
+			dijkstraNanos += System.nanoTime() - start;
+			double actual = result.isFound() ? graph.getPathLength(result.getPath()) : Double.POSITIVE_INFINITY;
+			if (Math.abs(actual - expected) > 1e-9 * Math.max(1, expected)) {
+				mismatches++;
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, 
+				"%d queries, %d mismatches; cch %.1f us, dijkstra %.1f us on average",
+				queries, mismatches, cchNanos / 1e3 / Math.max(1, queries), 
+				dijkstraNanos / 1e3 / Math.max(1, queries)));
+	}
+}
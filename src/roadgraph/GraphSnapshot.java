@@ -0,0 +1,177 @@
+package roadgraph;
+
+import java.util.List;
+
+/**
+ * An immutable view of the edge weights of a MapGraph at one version.
+ * 
+ * A search reads the graph's current snapshot once when it starts and 
+ * uses it to the end, so weight updates published meanwhile never change
+ * the costs a running search sees.  Updates copy the weights, change the
+ * copy and publish it as a new snapshot; nothing on the search side 
+ * takes a lock.
+ * 
+ * The weight of an edge is the cost of driving it, in km of road length
+ * equivalent.  Until the weights are first changed every edge costs its
+ * length, and no array is kept.  Edges added after the last update also
+ * cost their length.
+ * 
+ * The searches weigh edges by their cost, which is their weight unless 
+ * the snapshot has a speed table.  Then it is their travel time in hours,
+ * their weight at the speed of their type of road, computed for every 
+ * edge when the snapshot is made.
+ *
+ */
+public final class GraphSnapshot {
+
+	private final long version;
+	private final double[] weights;      // by edge id, or null for the lengths
+	private final SpeedTable speeds;     // null to weigh edges by distance
+	private final float[] times;         // travel time by edge id, with speeds
+	private final double minCostRatio;   // smallest cost / length
+
+	/**
+	 * Make a snapshot, computing the travel times if there are speeds
+	 * @param version The version of the graph
+	 * @param weights The weights by edge id, or null for the lengths
+	 * @param speeds The speeds, or null to weigh edges by distance
+	 * @param edges The edges of the graph, by id
+	 */
+	GraphSnapshot(long version, double[] weights, SpeedTable speeds, List<MapEdge> edges)
+	{
+		this.version = version;
+		this.weights = weights;
+		this.speeds = speeds;
+		
+		// the A* estimate has to be scaled down if any road got cheaper,
+		// and is by the top speed when weighing by time
+		double minRatio = (speeds == null) ? 1.0 : 1.0 / speeds.getMaxSpeed();
+		if (speeds != null) {
+			times = new float[edges.size()];
+			for (MapEdge edge : edges) {
+				times[edge.getId()] = (float) (getWeight(edge) / speeds.getSpeed(edge.getRoadType()));
+			}
+		}
+		else {
+			times = null;
+		}
+		if (weights != null || speeds != null) {
+			for (MapEdge edge : edges) {
+				double length = edge.getLength();
+				if (length > 0) {
+					minRatio = Math.min(minRatio, getCost(edge) / length);
+				}
+			}
+		}
+		minCostRatio = minRatio;
+	}
+
+	private GraphSnapshot(long version, GraphSnapshot same)
+	{
+		this.version = version;
+		weights = same.weights;
+		speeds = same.speeds;
+		times = same.times;
+		minCostRatio = same.minCostRatio;
+	}
+
+	/** @return The version of the graph this snapshot belongs to */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/** @return true if any weight differs from the length of its edge */
+	public boolean hasWeights()
+	{
+		return weights != null;
+	}
+
+	/** @return The speeds edges are weighed by, or null if they are weighed by distance */
+	public SpeedTable getSpeeds()
+	{
+		return speeds;
+	}
+
+	/**
+	 * @return The smallest ratio of an edge's cost to its length, at most
+	 *   1 (or 1 / the top speed when weighing by time).  Scaling a 
+	 *   straight line distance by this keeps it from overestimating the 
+	 *   cost along the roads.
+	 */
+	double getMinCostRatio()
+	{
+		return minCostRatio;
+	}
+
+	/**
+	 * @return The cost of driving a distance apart from the roads, such as
+	 *   the delay of a turn: the distance itself, or the time it takes at
+	 *   the default speed when weighing by time
+	 */
+	double distanceCost(double km)
+	{
+		return (speeds == null) ? km : km / speeds.getDefaultSpeed();
+	}
+
+	/**
+	 * Get the cost of an edge to the searches
+	 * @param edge The edge
+	 * @return Its weight, or its travel time in hours if there are 
+	 *   speeds; infinity if it is closed
+	 */
+	double getCost(MapEdge edge)
+	{
+		if (times == null) {
+			return getWeight(edge);
+		}
+		int id = edge.getId();
+		return (id < times.length) ? times[id] : getWeight(edge) / speeds.getSpeed(edge.getRoadType());
+	}
+
+	/**
+	 * Get the weight of an edge
+	 * @param edge The edge
+	 * @return Its weight, or infinity if it is closed
+	 */
+	double getWeight(MapEdge edge)
+	{
+		int id = edge.getId();
+		return (weights != null && id < weights.length) ? weights[id] : edge.getLength();
+	}
+
+	/**
+	 * Create the next version, with the same weights
+	 * @return The new snapshot
+	 */
+	GraphSnapshot nextVersion()
+	{
+		return new GraphSnapshot(version + 1, this);
+	}
+
+	/**
+	 * Create the next version, with the same weights and other speeds
+	 * @param speeds The speeds, or null to weigh edges by distance
+	 * @param edges The edges of the graph now, by id
+	 * @return The new snapshot
+	 */
+	GraphSnapshot withSpeeds(SpeedTable speeds, List<MapEdge> edges)
+	{
+		return new GraphSnapshot(version + 1, weights, speeds, edges);
+	}
+
+	/**
+	 * Copy the weights to change them, with an entry for each edge
+	 * @param numEdges The number of edges in the graph now
+	 * @param edges The edges, by id
+	 * @return A new array of weights
+	 */
+	double[] copyWeights(int numEdges, List<MapEdge> edges)
+	{
+		double[] copy = new double[numEdges];
+		for (int i = 0; i < numEdges; i++) {
+			copy[i] = getWeight(edges.get(i));
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,776 @@
+package roadgraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/**
+ * Hub labels for distance queries that touch two short arrays and nothing
+ * else.  Every node has a forward label, a list of (hub, distance to the 
+ * hub) pairs, and a backward label of (hub, distance from the hub) pairs,
+ * such that every shortest route passes through a hub in both the forward
+ * label of its start and the backward label of its goal.  The distance is
+ * then the least sum over the hubs the two labels share, found by walking
+ * both labels, which are sorted by hub, side by side.
+ * 
+ * The labels are built from a customized contraction hierarchy: the label
+ * of a node is what an upward search from it reaches, computed top down 
+ * from the labels of its higher neighbors, less the entries whose distance
+ * a shorter route through another hub beats.  Hubs are ranks in the 
+ * hierarchy.
+ * 
+ * Labels are packed in flat int and float buffers indexed through an 
+ * offset per node.  They can be written next to the map file (see 
+ * FILE_EXTENSION) either raw, in which case reading maps the file into 
+ * memory instead of copying it, or compressed, with hubs stored as 
+ * variable length deltas and the whole deflated.
+ * 
+ * Routes (not just distances) can be found when the labels know the 
+ * hierarchy they were built from, which expands the hierarchy's shortcuts.
+ *
+ */
+public final class HubLabels {
+
+	/** The extension of a labels file, added to the name of its map file */
+	public static final String FILE_EXTENSION = ".hl";
+
+	private static final int RAW_MAGIC = 0x484C4231;          // "HLB1"
+	private static final int COMPRESSED_MAGIC = 0x484C5A31;   // "HLZ1"
+	private static final int HEADER_INTS = 7;
+
+	// Entries whose distance is beaten by this fraction are dropped; 
+	// anything closer is kept, since it may be a tie blurred by rounding
+	private static final double PRUNE_TOLERANCE = 1e-9;
+
+	// Levels with fewer nodes than this are labeled on the calling thread
+	private static final int PARALLEL_LEVEL_SIZE = 256;
+
+	// Nodes labeled by one task before it stops splitting
+	private static final int SPLIT_THRESHOLD = 32;
+
+	/** 
+	 * One direction of labels: the entries of node v are offsets[v] up to
+	 * offsets[v+1], with their hub, distance, and the higher neighbor the 
+	 * entry was reached through (-1 for the node itself)
+	 */
+	private static final class Labels {
+		final IntBuffer offsets;
+		final IntBuffer hubs;
+		final FloatBuffer dists;
+		final IntBuffer parents;
+
+		Labels(IntBuffer offsets, IntBuffer hubs, FloatBuffer dists, IntBuffer parents) {
+			this.offsets = offsets;
+			this.hubs = hubs;
+			this.dists = dists;
+			this.parents = parents;
+		}
+
+		int size() {
+			return hubs.limit();
+		}
+
+		// The position of a hub in a node's label, or -1
+		int find(int v, int hub) {
+			int lo = offsets.get(v), hi = offsets.get(v + 1) - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				int h = hubs.get(mid);
+				if (h < hub) {
+					lo = mid + 1;
+				}
+				else if (h > hub) {
+					hi = mid - 1;
+				}
+				else {
+					return mid;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private final CsrGraph graph;
+	private final Labels forward;
+	private final Labels backward;
+	private final int orderHash;
+	
+	// The hierarchy the labels were built from, to expand routes; may be null
+	private final CchMetric metric;
+
+	private HubLabels(CsrGraph graph, Labels forward, Labels backward, int orderHash, CchMetric metric)
+	{
+		this.graph = graph;
+		this.forward = forward;
+		this.backward = backward;
+		this.orderHash = orderHash;
+		this.metric = metric;
+	}
+
+	/**
+	 * Build labels from a customized hierarchy, on the common fork-join pool
+	 * @param metric The hierarchy and its weights
+	 * @return The labels, able to find routes through the hierarchy
+	 */
+	public static HubLabels build(CchMetric metric)
+	{
+		return build(metric, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Build labels from a customized hierarchy.  Each node's labels depend
+	 * only on those of its higher neighbors, which are on higher levels of 
+	 * the hierarchy, so the levels are labeled top down and the nodes 
+	 * within a level in parallel.
+	 * @param metric The hierarchy and its weights
+	 * @param pool Where to build the labels, or null to do it all on the 
+	 *   calling thread
+	 * @return The labels, able to find routes through the hierarchy
+	 */
+	public static HubLabels build(CchMetric metric, ForkJoinPool pool)
+	{
+		CustomizableCH cch = metric.getHierarchy();
+		int n = cch.getNumNodes();
+		Builder builder = new Builder(cch, metric);
+		for (int l = cch.getNumLevels() - 1; l >= 0; l--) {
+			int from = cch.firstOfLevel(l);
+			int to = cch.firstOfLevel(l + 1);
+			if (pool == null || to - from < PARALLEL_LEVEL_SIZE) {
+				for (int i = from; i < to; i++) {
+					builder.label(cch.byLevel(i));
+				}
+			}
+			else {
+				pool.invoke(builder.new LevelTask(from, to));
+			}
+		}
+		
+		// Pack the labels by node id
+		Labels[] packed = new Labels[2];
+		for (int direction = 0; direction < 2; direction++) {
+			int[][] hubs = (direction == 0) ? builder.forwardHubs : builder.backwardHubs;
+			double[][] dists = (direction == 0) ? builder.forwardDists : builder.backwardDists;
+			int[][] parents = (direction == 0) ? builder.forwardParents : builder.backwardParents;
+			int[] offsets = new int[n + 1];
+			for (int v = 0; v < n; v++) {
+				offsets[v + 1] = offsets[v] + hubs[cch.rankOf(v)].length;
+			}
+			int[] allHubs = new int[offsets[n]];
+			float[] allDists = new float[offsets[n]];
+			int[] allParents = new int[offsets[n]];
+			for (int v = 0; v < n; v++) {
+				int r = cch.rankOf(v);
+				System.arraycopy(hubs[r], 0, allHubs, offsets[v], hubs[r].length);
+				System.arraycopy(parents[r], 0, allParents, offsets[v], parents[r].length);
+				for (int i = 0; i < hubs[r].length; i++) {
+					allDists[offsets[v] + i] = (float) dists[r][i];
+				}
+			}
+			packed[direction] = new Labels(IntBuffer.wrap(offsets), IntBuffer.wrap(allHubs),
+					FloatBuffer.wrap(allDists), IntBuffer.wrap(allParents));
+		}
+		return new HubLabels(cch.getGraph(), packed[0], packed[1], orderHash(cch), metric);
+	}
+
+	/** Labels of every rank while they are built, and scratch for each thread */
+	private static class Builder {
+		final CustomizableCH cch;
+		final CchMetric metric;
+		final int[][] forwardHubs, backwardHubs;
+		final double[][] forwardDists, backwardDists;
+		final int[][] forwardParents, backwardParents;
+		final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+			@Override
+			protected Scratch initialValue() {
+				return new Scratch(cch.getNumNodes());
+			}
+		};
+
+		Builder(CustomizableCH cch, CchMetric metric) {
+			this.cch = cch;
+			this.metric = metric;
+			int n = cch.getNumNodes();
+			forwardHubs = new int[n][];
+			backwardHubs = new int[n][];
+			forwardDists = new double[n][];
+			backwardDists = new double[n][];
+			forwardParents = new int[n][];
+			backwardParents = new int[n][];
+		}
+
+		/** Labels a range of one level, splitting it in half until it is small */
+		@SuppressWarnings("serial")
+		class LevelTask extends RecursiveAction {
+			private final int from, to;
+
+			LevelTask(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			protected void compute() {
+				if (to - from <= SPLIT_THRESHOLD) {
+					for (int i = from; i < to; i++) {
+						label(cch.byLevel(i));
+					}
+				}
+				else {
+					int mid = (from + to) >>> 1;
+					invokeAll(new LevelTask(from, mid), new LevelTask(mid, to));
+				}
+			}
+		}
+
+		void label(int r) {
+			Scratch s = scratch.get();
+			collect(r, true, s);
+			forwardHubs[r] = s.hubs(); 
+			forwardDists[r] = s.dists(forwardHubs[r]);
+			forwardParents[r] = s.parents(forwardHubs[r]);
+			collect(r, false, s);
+			backwardHubs[r] = s.hubs(); 
+			backwardDists[r] = s.dists(backwardHubs[r]);
+			backwardParents[r] = s.parents(backwardHubs[r]);
+		}
+
+		/**
+		 * Gather the label of a rank from the labels of its higher 
+		 * neighbors into the scratch, then drop the entries another hub beats
+		 */
+		void collect(int r, boolean isForward, Scratch s) {
+			int[][] hubs = isForward ? forwardHubs : backwardHubs;
+			double[][] dists = isForward ? forwardDists : backwardDists;
+			s.start();
+			s.offer(r, 0.0, -1);
+			for (int e = cch.firstUp(r); e < cch.firstUp(r + 1); e++) {
+				int w = cch.upHead(e);
+				double weight = isForward ? metric.upWeight(e) : metric.downWeight(e);
+				if (weight == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				for (int i = 0; i < hubs[w].length; i++) {
+					s.offer(hubs[w][i], weight + dists[w][i], w);
+				}
+			}
+			
+			// A forward entry for hub h is beaten if some other hub g can be
+			// reached and h reached from g for less, which h's backward 
+			// label tells; backward entries are checked the other way round
+			int[][] otherHubs = isForward ? backwardHubs : forwardHubs;
+			double[][] otherDists = isForward ? backwardDists : forwardDists;
+			for (int i = 0; i < s.count; i++) {
+				int h = s.list[i];
+				if (h == r) {
+					continue;
+				}
+				double d = s.dist[h];
+				double through = Double.POSITIVE_INFINITY;
+				int[] labelHubs = otherHubs[h];
+				double[] labelDists = otherDists[h];
+				for (int j = 0; j < labelHubs.length; j++) {
+					int g = labelHubs[j];
+					if (g != h && s.stamp[g] == s.currentStamp) {
+						through = Math.min(through, s.dist[g] + labelDists[j]);
+					}
+				}
+				if (through < d - PRUNE_TOLERANCE * d) {
+					s.dropped[h] = s.currentStamp;
+				}
+			}
+		}
+	}
+
+	/** Dense scratch for gathering one label */
+	private static class Scratch {
+		final int[] stamp;
+		final int[] dropped;
+		final double[] dist;
+		final int[] parent;
+		final int[] list;
+		int count;
+		int currentStamp;
+
+		Scratch(int n) {
+			stamp = new int[n];
+			dropped = new int[n];
+			dist = new double[n];
+			parent = new int[n];
+			list = new int[n];
+		}
+
+		void start() {
+			currentStamp++;
+			count = 0;
+		}
+
+		void offer(int hub, double d, int via) {
+			if (stamp[hub] != currentStamp) {
+				stamp[hub] = currentStamp;
+				list[count++] = hub;
+				dist[hub] = d;
+				parent[hub] = via;
+			}
+			else if (d < dist[hub]) {
+				dist[hub] = d;
+				parent[hub] = via;
+			}
+		}
+
+		int[] hubs() {
+			int size = 0;
+			int[] result = new int[count];
+			for (int i = 0; i < count; i++) {
+				if (dropped[list[i]] != currentStamp) {
+					result[size++] = list[i];
+				}
+			}
+			result = Arrays.copyOf(result, size);
+			Arrays.sort(result);
+			return result;
+		}
+
+		double[] dists(int[] hubs) {
+			double[] result = new double[hubs.length];
+			for (int i = 0; i < hubs.length; i++) {
+				result[i] = dist[hubs[i]];
+			}
+			return result;
+		}
+
+		int[] parents(int[] hubs) {
+			int[] result = new int[hubs.length];
+			for (int i = 0; i < hubs.length; i++) {
+				result[i] = parent[hubs[i]];
+			}
+			return result;
+		}
+	}
+
+	/** A checksum of a hierarchy's order, to tell whether labels were built from it */
+	private static int orderHash(CustomizableCH cch)
+	{
+		int hash = 1;
+		for (int r = 0; r < cch.getNumNodes(); r++) {
+			hash = 31 * hash + cch.nodeAt(r);
+		}
+		return hash;
+	}
+
+	/**
+	 * Find the least cost between two intersections
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The cost of the best route, or infinity if there is none or
+	 *   either point is not an intersection
+	 */
+	public double distance(GeographicPoint start, GeographicPoint goal)
+	{
+		int s = graph.getNode(start);
+		int t = graph.getNode(goal);
+		if (s < 0 || t < 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		long meet = meet(s, t);
+		return (meet < 0) ? Double.POSITIVE_INFINITY : 
+			(double) forward.dists.get((int) (meet >>> 32)) + backward.dists.get((int) meet);
+	}
+
+	/**
+	 * Find the least cost route between two intersections.  Only possible
+	 * when the labels know the hierarchy they were built from.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The route, or a result with no path if either point is not an
+	 *   intersection or the goal cannot be reached
+	 * @throws IllegalStateException if the labels were read without their hierarchy
+	 */
+	public SearchResult route(GeographicPoint start, GeographicPoint goal)
+	{
+		if (metric == null) {
+			throw new IllegalStateException("Routes need the hierarchy the labels were built from");
+		}
+		SearchStats.Counter counter = new SearchStats.Counter();
+		int s = graph.getNode(start);
+		int t = graph.getNode(goal);
+		List<GeographicPoint> path = null;
+		if (s >= 0 && t >= 0) {
+			long meet = meet(s, t);
+			if (meet >= 0) {
+				CustomizableCH cch = metric.getHierarchy();
+				int hub = forward.hubs.get((int) (meet >>> 32));
+				List<Integer> ranks = new ArrayList<Integer>();
+				
+				// Up from the start to the hub, one higher neighbor at a time
+				int r = cch.rankOf(s);
+				ranks.add(r);
+				while (r != hub) {
+					int w = forward.parents.get(forward.find(cch.nodeAt(r), hub));
+					metric.unpackUp(cch.findEdge(r, w), r, ranks);
+					r = w;
+				}
+				// The same up from the goal, then walked down in reverse
+				List<Integer> chain = new ArrayList<Integer>();
+				r = cch.rankOf(t);
+				chain.add(r);
+				while (r != hub) {
+					r = backward.parents.get(backward.find(cch.nodeAt(r), hub));
+					chain.add(r);
+				}
+				for (int i = chain.size() - 1; i > 0; i--) {
+					metric.unpackDown(cch.findEdge(chain.get(i - 1), chain.get(i)), chain.get(i - 1), ranks);
+				}
+				
+				path = new ArrayList<GeographicPoint>();
+				for (int rank : ranks) {
+					path.add(graph.getLocation(cch.nodeAt(rank)));
+				}
+			}
+		}
+		return new SearchResult("hub", start, goal, path, counter.finish());
+	}
+
+	/**
+	 * Merge the forward label of s with the backward label of t
+	 * @return The positions of the best shared hub in the forward (high 32
+	 *   bits) and backward (low 32 bits) labels, or -1 if they share none
+	 */
+	private long meet(int s, int t)
+	{
+		int i = forward.offsets.get(s), iEnd = forward.offsets.get(s + 1);
+		int j = backward.offsets.get(t), jEnd = backward.offsets.get(t + 1);
+		float best = Float.POSITIVE_INFINITY;
+		long meet = -1;
+		while (i < iEnd && j < jEnd) {
+			int a = forward.hubs.get(i);
+			int b = backward.hubs.get(j);
+			if (a < b) {
+				i++;
+			}
+			else if (a > b) {
+				j++;
+			}
+			else {
+				float d = forward.dists.get(i) + backward.dists.get(j);
+				if (d < best) {
+					best = d;
+					meet = ((long) i << 32) | j;
+				}
+				i++;
+				j++;
+			}
+		}
+		return meet;
+	}
+
+	/** @return The number of entries in all forward and backward labels */
+	public long getNumEntries()
+	{
+		return (long) forward.size() + backward.size();
+	}
+
+	/** @return The average number of entries in one label */
+	public double getAverageLabelSize()
+	{
+		return getNumEntries() / (2.0 * Math.max(1, graph.getNumNodes()));
+	}
+
+	/**
+	 * Write the labels to a file
+	 * @param file Where to write them, by convention the map file's name 
+	 *   followed by FILE_EXTENSION
+	 * @param compress Whether to compress them; compressed labels take 
+	 *   less space but are read into memory rather than mapped
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(File file, boolean compress) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(compress ? COMPRESSED_MAGIC : RAW_MAGIC);
+			out.writeInt(graph.getNumNodes());
+			out.writeInt(graph.getNumArcs());
+			out.writeInt(orderHash);
+			out.writeInt(forward.size());
+			out.writeInt(backward.size());
+			out.writeInt(0);
+			if (compress) {
+				DataOutputStream deflated = new DataOutputStream(new DeflaterOutputStream(out));
+				writeCompressed(deflated, forward);
+				writeCompressed(deflated, backward);
+				deflated.close();
+			}
+			else {
+				writeRaw(out, forward);
+				writeRaw(out, backward);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private void writeRaw(DataOutputStream out, Labels labels) throws IOException
+	{
+		for (int v = 0; v <= graph.getNumNodes(); v++) {
+			out.writeInt(labels.offsets.get(v));
+		}
+		for (int i = 0; i < labels.size(); i++) {
+			out.writeInt(labels.hubs.get(i));
+		}
+		for (int i = 0; i < labels.size(); i++) {
+			out.writeFloat(labels.dists.get(i));
+		}
+		for (int i = 0; i < labels.size(); i++) {
+			out.writeInt(labels.parents.get(i));
+		}
+	}
+
+	// Per node: the label size, then per entry the gap to the previous hub,
+	// one more than the parent, and the distance; counts as variable length ints
+	private void writeCompressed(DataOutputStream out, Labels labels) throws IOException
+	{
+		for (int v = 0; v < graph.getNumNodes(); v++) {
+			int from = labels.offsets.get(v), to = labels.offsets.get(v + 1);
+			writeVarInt(out, to - from);
+			int previous = 0;
+			for (int i = from; i < to; i++) {
+				writeVarInt(out, labels.hubs.get(i) - previous);
+				previous = labels.hubs.get(i);
+				writeVarInt(out, labels.parents.get(i) + 1);
+				out.writeFloat(labels.dists.get(i));
+			}
+		}
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Read labels written by write, for distances only
+	 * @param file The file
+	 * @param graph The graph of the map they were built for
+	 * @return The labels
+	 * @throws IOException if the file cannot be read, or was written for another map
+	 */
+	public static HubLabels read(File file, CsrGraph graph) throws IOException
+	{
+		return read(file, graph, null);
+	}
+
+	/**
+	 * Read labels written by write, able to find routes
+	 * @param file The file
+	 * @param metric The hierarchy the labels were built from
+	 * @return The labels
+	 * @throws IOException if the file cannot be read, or was written for 
+	 *   another map or hierarchy
+	 */
+	public static HubLabels read(File file, CchMetric metric) throws IOException
+	{
+		return read(file, metric.getHierarchy().getGraph(), metric);
+	}
+
+	private static HubLabels read(File file, CsrGraph graph, CchMetric metric) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			int magic = in.readInt();
+			if (magic != RAW_MAGIC && magic != COMPRESSED_MAGIC) {
+				throw new IOException(file + " is not a hub labels file");
+			}
+			int numNodes = in.readInt();
+			int numArcs = in.readInt();
+			int hash = in.readInt();
+			int forwardSize = in.readInt();
+			int backwardSize = in.readInt();
+			in.readInt();
+			if (numNodes != graph.getNumNodes() || numArcs != graph.getNumArcs()) {
+				throw new IOException(file + " was written for a map of " + numNodes + 
+						" intersections and " + numArcs + " road segments");
+			}
+			if (metric != null && hash != orderHash(metric.getHierarchy())) {
+				throw new IOException(file + " was written for another contraction order");
+			}
+			if (magic == RAW_MAGIC) {
+				in.close();
+				return map(file, graph, metric, hash, forwardSize, backwardSize);
+			}
+			DataInputStream inflated = new DataInputStream(new InflaterInputStream(in));
+			Labels forward = readCompressed(inflated, numNodes, forwardSize);
+			Labels backward = readCompressed(inflated, numNodes, backwardSize);
+			return new HubLabels(graph, forward, backward, hash, metric);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static Labels readCompressed(DataInputStream in, int numNodes, int size) throws IOException
+	{
+		int[] offsets = new int[numNodes + 1];
+		int[] hubs = new int[size];
+		float[] dists = new float[size];
+		int[] parents = new int[size];
+		int i = 0;
+		for (int v = 0; v < numNodes; v++) {
+			int count = readVarInt(in);
+			offsets[v + 1] = offsets[v] + count;
+			int previous = 0;
+			for (int k = 0; k < count; k++, i++) {
+				previous += readVarInt(in);
+				hubs[i] = previous;
+				parents[i] = readVarInt(in) - 1;
+				dists[i] = in.readFloat();
+			}
+		}
+		return new Labels(IntBuffer.wrap(offsets), IntBuffer.wrap(hubs), 
+				FloatBuffer.wrap(dists), IntBuffer.wrap(parents));
+	}
+
+	/**
+	 * Map a raw labels file into memory, the buffers reading straight 
+	 * from the file's pages
+	 */
+	private static HubLabels map(File file, CsrGraph graph, CchMetric metric, int hash, 
+			int forwardSize, int backwardSize) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to map");
+			}
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			int position = HEADER_INTS * 4;
+			int numNodes = graph.getNumNodes();
+			Labels[] labels = new Labels[2];
+			for (int direction = 0; direction < 2; direction++) {
+				int size = (direction == 0) ? forwardSize : backwardSize;
+				IntBuffer offsets = slice(buffer, position, numNodes + 1).asIntBuffer();
+				position += (numNodes + 1) * 4;
+				IntBuffer hubs = slice(buffer, position, size).asIntBuffer();
+				position += size * 4;
+				FloatBuffer dists = slice(buffer, position, size).asFloatBuffer();
+				position += size * 4;
+				IntBuffer parents = slice(buffer, position, size).asIntBuffer();
+				position += size * 4;
+				labels[direction] = new Labels(offsets, hubs, dists, parents);
+			}
+			return new HubLabels(graph, labels[0], labels[1], hash, metric);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int position, int values)
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.position(position);
+		view.limit(position + values * 4);
+		return view.slice();
+	}
+
+	/**
+	 * Build labels for a map, write them next to it, read them back and 
+	 * check random queries against Dijkstra.
+	 * 
+	 * Usage: HubLabels FILE.map [-compress] [queries]
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1) {
+			System.err.println("Usage: HubLabels FILE.map [-compress] [queries]");
+			System.exit(2);
+		}
+		boolean compress = args.length > 1 && args[1].equals("-compress");
+		int queries = (args.length > (compress ? 2 : 1)) ? Integer.parseInt(args[args.length - 1]) : 100;
+		MapGraph graph = new MapGraph();
+		GraphLoader.loadRoadMap(args[0], graph);
+		System.out.println(graph.getNumVertices() + " intersections, " + 
+				graph.getNumEdges() + " road segments");
+		
+		long start = System.nanoTime();
+		CchMetric metric = CustomizableCH.build(graph).customize(graph.getSnapshot());
+		HubLabels built = build(metric);
+		System.out.println(String.format(Locale.ROOT, 
+				"Labeled in %.1f ms: %d entries, %.1f per label on average",
+				(System.nanoTime() - start) / 1e6, built.getNumEntries(), built.getAverageLabelSize()));
+		
+		File file = new File(args[0] + FILE_EXTENSION);
+		built.write(file, compress);
+		System.out.println("Wrote " + file + " (" + file.length() + " bytes" + 
+				(compress ? ", compressed" : "") + ")");
+		HubLabels labels = read(file, metric);
+		
+		Random random = new Random(42);
+		List<GeographicPoint> points = new ArrayList<GeographicPoint>(graph.getVertices());
+		int mismatches = 0;
+		long labelNanos = 0, dijkstraNanos = 0;
+		for (int i = 0; i < queries; i++) {
+			GeographicPoint from = points.get(random.nextInt(points.size()));
+			GeographicPoint to = points.get(random.nextInt(points.size()));
+			start = System.nanoTime();
+			double actual = labels.distance(from, to);
+			labelNanos += System.nanoTime() - start;
+			start = System.nanoTime();
+			double expected = graph.distances(from, Collections.singletonList(to))[0];
+			dijkstraNanos += System.nanoTime() - start;
+			SearchResult route = labels.route(from, to);
+			double routeLength = route.isFound() ? graph.getPathLength(route.getPath()) : Double.POSITIVE_INFINITY;
+			// Label distances are floats
+			if (Math.abs(actual - expected) > 1e-5 * Math.max(1, expected) ||
+					Math.abs(routeLength - expected) > 1e-9 * Math.max(1, expected)) {
+				mismatches++;
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, 
+				"%d queries, %d mismatches; labels %.2f us, dijkstra %.1f us on average",
+				queries, mismatches, labelNanos / 1e3 / Math.max(1, queries), 
+				dijkstraNanos / 1e3 / Math.max(1, queries)));
+	}
+}
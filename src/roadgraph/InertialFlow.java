@@ -0,0 +1,262 @@
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * Partitions a road graph into nested cells by recursive bisection with
+ * inertial flow.  To split a part, its nodes are sorted along a direction
+ * across the map; the first quarter become sources, the last quarter sinks,
+ * and a minimum cut between them (with every road of capacity one) splits 
+ * the part.  Several directions are tried and the smallest cut kept.  
+ * Because sources and sinks each hold a quarter of the nodes, both sides 
+ * get at least a quarter of the part.
+ * 
+ * Compared with cutting along a straight line (see NestedDissection), the
+ * cut follows rivers, highways and other natural borders of the map, where
+ * few roads cross.
+ *
+ */
+public class InertialFlow {
+
+	// Share of a part's nodes, at each end of the order, used as sources and sinks
+	private static final double TERMINAL_FRACTION = 0.25;
+	
+	// Directions of the orders tried at each step: the two axes and the diagonals
+	private static final double[][] DIRECTIONS = {
+		{1, 0}, {0, 1}, {Math.sqrt(0.5), Math.sqrt(0.5)}, {Math.sqrt(0.5), -Math.sqrt(0.5)}
+	};
+
+	// The graph without direction: neighbors of v are adj[firstAdj[v]] to 
+	// adj[firstAdj[v+1]-1], and reverse[j] is the entry for the same road
+	// seen from the other end
+	private final int[] firstAdj;
+	private final int[] adj;
+	private final int[] reverse;
+	private final double[] x;
+	private final double[] y;
+	
+	// Flow through each entry: +1 along it, -1 against it
+	private final int[] flow;
+	
+	// Per node scratch: membership of the part being cut, role in the flow,
+	// and the entry a search reached it through
+	private final int[] partStamp;
+	private final int[] visitStamp;
+	private final byte[] role;
+	private final int[] via;
+	private int currentPart;
+	private int currentVisit;
+	private final int[] queue;
+	
+	private final int[] maxCellSizes;
+	private final int[][] cells;
+	private final int[] numCells;
+
+	private InertialFlow(CsrGraph graph, int[] maxCellSizes)
+	{
+		int n = graph.getNumNodes();
+		int[][] neighbors = NestedDissection.undirected(graph);
+		firstAdj = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			firstAdj[v + 1] = firstAdj[v] + neighbors[v].length;
+		}
+		adj = new int[firstAdj[n]];
+		for (int v = 0; v < n; v++) {
+			System.arraycopy(neighbors[v], 0, adj, firstAdj[v], neighbors[v].length);
+		}
+		reverse = new int[adj.length];
+		for (int v = 0; v < n; v++) {
+			for (int j = firstAdj[v]; j < firstAdj[v + 1]; j++) {
+				int w = adj[j];
+				reverse[j] = Arrays.binarySearch(adj, firstAdj[w], firstAdj[w + 1], v);
+			}
+		}
+		
+		x = new double[n];
+		y = new double[n];
+		for (int v = 0; v < n; v++) {
+			double lat = graph.getLocation(v).getX();
+			double lon = graph.getLocation(v).getY();
+			x[v] = lon * Math.cos(Math.toRadians(lat));
+			y[v] = lat;
+		}
+		
+		flow = new int[adj.length];
+		partStamp = new int[n];
+		visitStamp = new int[n];
+		role = new byte[n];
+		via = new int[n];
+		queue = new int[n];
+		
+		this.maxCellSizes = maxCellSizes;
+		cells = new int[maxCellSizes.length][n];
+		numCells = new int[maxCellSizes.length];
+	}
+
+	/**
+	 * Partition a graph into nested cells
+	 * @param graph The graph
+	 * @param maxCellSizes The most nodes a cell may hold on each level, 
+	 *   level 1 (the smallest) first, each larger than the one before
+	 * @return The partition
+	 */
+	public static MultiLevelPartition partition(CsrGraph graph, int... maxCellSizes)
+	{
+		if (maxCellSizes.length == 0) {
+			throw new IllegalArgumentException("At least one level is needed");
+		}
+		for (int l = 0; l < maxCellSizes.length; l++) {
+			if (maxCellSizes[l] < 1 || (l > 0 && maxCellSizes[l] <= maxCellSizes[l - 1])) {
+				throw new IllegalArgumentException("Cell sizes must be positive and increasing: " + 
+						Arrays.toString(maxCellSizes));
+			}
+		}
+		InertialFlow partitioner = new InertialFlow(graph, maxCellSizes.clone());
+		int[] all = new int[graph.getNumNodes()];
+		for (int v = 0; v < all.length; v++) {
+			all[v] = v;
+		}
+		partitioner.split(all, maxCellSizes.length - 1);
+		return new MultiLevelPartition(partitioner.cells, partitioner.numCells, 
+				partitioner.maxCellSizes);
+	}
+
+	/**
+	 * Give a part a cell on every level it fits, then bisect it until it 
+	 * fits on level 1
+	 * @param part The nodes of the part
+	 * @param level The highest level (counted from 0) the part has no cell on yet
+	 */
+	private void split(int[] part, int level)
+	{
+		if (part.length == 0) {
+			return;
+		}
+		while (level >= 0 && part.length <= maxCellSizes[level]) {
+			int cell = numCells[level]++;
+			for (int v : part) {
+				cells[level][v] = cell;
+			}
+			level--;
+		}
+		if (level < 0) {
+			return;
+		}
+		
+		boolean[] best = null;
+		int bestCut = Integer.MAX_VALUE;
+		for (double[] direction : DIRECTIONS) {
+			boolean[] side = new boolean[part.length];
+			int cut = bisect(part, direction, side);
+			if (cut < bestCut) {
+				bestCut = cut;
+				best = side;
+			}
+		}
+		int sourceSide = 0;
+		for (boolean b : best) {
+			if (b) {
+				sourceSide++;
+			}
+		}
+		int[] a = new int[sourceSide];
+		int[] b = new int[part.length - sourceSide];
+		int i = 0, j = 0;
+		for (int k = 0; k < part.length; k++) {
+			if (best[k]) {
+				a[i++] = part[k];
+			}
+			else {
+				b[j++] = part[k];
+			}
+		}
+		split(a, level);
+		split(b, level);
+	}
+
+	/**
+	 * Find a minimum cut of a part between the nodes at either end of an 
+	 * order along a direction
+	 * @param part The nodes of the part
+	 * @param direction The direction to order them along
+	 * @param side Set to true for the nodes on the source side of the cut
+	 * @return The number of roads cut
+	 */
+	private int bisect(int[] part, double[] direction, boolean[] side)
+	{
+		// Order the part along the direction
+		long[] keyed = new long[part.length];
+		double[] position = new double[part.length];
+		for (int i = 0; i < part.length; i++) {
+			position[i] = x[part[i]] * direction[0] + y[part[i]] * direction[1];
+		}
+		double[] sorted = position.clone();
+		Arrays.sort(sorted);
+		for (int i = 0; i < part.length; i++) {
+			long rank = Arrays.binarySearch(sorted, position[i]);
+			keyed[i] = (rank << 32) | i;
+		}
+		Arrays.sort(keyed);
+		
+		currentPart++;
+		int terminals = Math.max(1, (int) (part.length * TERMINAL_FRACTION));
+		for (int k = 0; k < part.length; k++) {
+			int v = part[(int) keyed[k]];
+			partStamp[v] = currentPart;
+			role[v] = (k < terminals) ? (byte) 1 : (k >= part.length - terminals) ? (byte) 2 : (byte) 0;
+			for (int j = firstAdj[v]; j < firstAdj[v + 1]; j++) {
+				flow[j] = 0;
+			}
+		}
+		
+		// Augment along shortest paths until the sinks cannot be reached;
+		// every road has capacity one, so each path adds one to the flow
+		int cut = 0;
+		while (augment(part)) {
+			cut++;
+		}
+		// The last search marked everything reachable from the sources
+		for (int i = 0; i < part.length; i++) {
+			side[i] = visitStamp[part[i]] == currentVisit;
+		}
+		return cut;
+	}
+
+	/**
+	 * Search the residual graph from the sources, and if a sink is reached 
+	 * send one unit of flow along the path found
+	 * @return true if the flow was increased
+	 */
+	private boolean augment(int[] part)
+	{
+		currentVisit++;
+		int head = 0, tail = 0;
+		for (int v : part) {
+			if (role[v] == 1) {
+				visitStamp[v] = currentVisit;
+				via[v] = -1;
+				queue[tail++] = v;
+			}
+		}
+		while (head < tail) {
+			int v = queue[head++];
+			for (int j = firstAdj[v]; j < firstAdj[v + 1]; j++) {
+				int w = adj[j];
+				if (partStamp[w] != currentPart || visitStamp[w] == currentVisit || flow[j] >= 1) {
+					continue;
+				}
+				visitStamp[w] = currentVisit;
+				via[w] = j;
+				if (role[w] == 2) {
+					for (int u = w; via[u] >= 0; u = adj[reverse[via[u]]]) {
+						flow[via[u]]++;
+						flow[reverse[via[u]]]--;
+					}
+					return true;
+				}
+				queue[tail++] = w;
+			}
+		}
+		return false;
+	}
+}
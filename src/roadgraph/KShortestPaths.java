@@ -0,0 +1,364 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Yen's algorithm for the k shortest loopless routes between two nodes.
+ * 
+ * Each route after the first is found as a deviation from an earlier one:
+ * for every node of the last route found (the spur node), the routes that 
+ * share the way there (the root) may not leave it by the roads they took,
+ * nor revisit the root, and the best way on to the goal is searched for.
+ * The best of all such candidates is the next route.
+ * 
+ * The spur searches share one shortest path tree toward the goal, built 
+ * once per query by searching backward from it.  Its distances are an 
+ * exact lower bound for every spur search, since removing roads only 
+ * makes routes longer, so the spur searches are A* searches guided by it.
+ * And as soon as a spur search settles a node whose tree route to the 
+ * goal avoids the root, that tree route completes the best spur route, so
+ * most spur searches stop after a few nodes.  The spur searches of one 
+ * round are independent and run in parallel.
+ *
+ */
+final class KShortestPaths {
+
+	// Spur searches run by one task before it stops splitting
+	private static final int SPLIT_THRESHOLD = 4;
+
+	/** A route by node ids, with the cost of the route up to each node */
+	static final class Route implements Comparable<Route> {
+		final int[] nodes;
+		final double[] costTo;
+
+		Route(int[] nodes, double[] costTo) {
+			this.nodes = nodes;
+			this.costTo = costTo;
+		}
+
+		double getCost() {
+			return costTo[costTo.length - 1];
+		}
+
+		@Override
+		public int compareTo(Route other) {
+			return Double.compare(getCost(), other.getCost());
+		}
+	}
+
+	/** Scratch for one spur search, one per thread */
+	private static final class Scratch {
+		final SearchSpace space = new SearchSpace();
+		int[] removed = new int[0];
+		int[] cleanStamp = new int[0];
+		boolean[] clean = new boolean[0];
+		int epoch;
+
+		void reset(int n) {
+			space.reset(n);
+			// sized like the search, so they shrink along with it
+			int size = space.capacity();
+			if (removed.length != size) {
+				removed = new int[size];
+				cleanStamp = new int[size];
+				clean = new boolean[size];
+				epoch = 0;
+			}
+			epoch++;
+			if (epoch == Integer.MAX_VALUE) {
+				// marks from long ago could now look current
+				Arrays.fill(removed, 0);
+				Arrays.fill(cleanStamp, 0);
+				epoch = 1;
+			}
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	private final CsrGraph graph;
+	private final double[] costs;
+	private final int goal;
+	
+	// The shortest path tree toward the goal: distance to it, and the next
+	// node and arc on the way (-1 at the goal or where it cannot be reached)
+	private final double[] toGoal;
+	private final int[] next;
+	private final int[] nextArc;
+
+	/**
+	 * Build the shared tree toward a goal
+	 * @param graph The graph
+	 * @param costs The cost of each arc
+	 * @param goal The goal node
+	 */
+	KShortestPaths(CsrGraph graph, double[] costs, int goal)
+	{
+		this.graph = graph;
+		this.costs = costs;
+		this.goal = goal;
+		int n = graph.getNumNodes();
+		toGoal = new double[n];
+		next = new int[n];
+		nextArc = new int[n];
+		Arrays.fill(toGoal, Double.POSITIVE_INFINITY);
+		Arrays.fill(next, -1);
+		Arrays.fill(nextArc, -1);
+		
+		SearchSpace space = SCRATCH.get().space;
+		space.reset(n);
+		space.reach(goal, 0.0, null);
+		space.heap.push(goal, 0.0);
+		while (!space.heap.isEmpty()) {
+			int x = space.heap.pop();
+			if (space.isSettled(x)) {
+				continue;
+			}
+			space.settle(x);
+			toGoal[x] = space.getDist(x);
+			for (int i = graph.firstIn(x); i < graph.firstIn(x + 1); i++) {
+				int a = graph.inArc(i);
+				int u = graph.tail(a);
+				double d = toGoal[x] + costs[a];
+				if (d < Double.POSITIVE_INFINITY && !space.isSettled(u) &&
+						(!space.isReached(u) || d < space.getDist(u))) {
+					space.reach(u, d, null);
+					space.heap.push(u, d);
+					next[u] = x;
+					nextArc[u] = a;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find the k shortest loopless routes from a node to the goal
+	 * @param start The start node
+	 * @param k The most routes to find
+	 * @param pool Where to run the spur searches, or null to run them on 
+	 *   the calling thread
+	 * @return The routes, shortest first; fewer than k if there are no more
+	 */
+	List<Route> find(int start, int k, ForkJoinPool pool)
+	{
+		List<Route> found = new ArrayList<Route>();
+		if (toGoal[start] == Double.POSITIVE_INFINITY) {
+			return found;
+		}
+		found.add(treeRoute(start));
+		
+		PriorityQueue<Route> candidates = new PriorityQueue<Route>();
+		Set<List<Integer>> seen = new HashSet<List<Integer>>();
+		seen.add(asList(found.get(0).nodes));
+		while (found.size() < k) {
+			Route last = found.get(found.size() - 1);
+			Route[] spurs = new Route[last.nodes.length - 1];
+			SpurTask task = new SpurTask(last, found, 0, spurs.length, spurs);
+			if (pool == null) {
+				task.compute();
+			}
+			else {
+				pool.invoke(task);
+			}
+			for (Route spur : spurs) {
+				if (spur != null && seen.add(asList(spur.nodes))) {
+					candidates.add(spur);
+				}
+			}
+			if (candidates.isEmpty()) {
+				break;
+			}
+			found.add(candidates.poll());
+		}
+		return found;
+	}
+
+	/** Runs the spur searches for a range of spur nodes, splitting it until it is small */
+	@SuppressWarnings("serial")
+	private class SpurTask extends RecursiveAction {
+		private final Route last;
+		private final List<Route> found;
+		private final int from, to;
+		private final Route[] spurs;
+
+		SpurTask(Route last, List<Route> found, int from, int to, Route[] spurs) {
+			this.last = last;
+			this.found = found;
+			this.from = from;
+			this.to = to;
+			this.spurs = spurs;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SPLIT_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					spurs[i] = spur(last, i, found);
+				}
+			}
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new SpurTask(last, found, from, mid, spurs), 
+						new SpurTask(last, found, mid, to, spurs));
+			}
+		}
+	}
+
+	/**
+	 * Find the best route that follows a route to its i-th node and then
+	 * leaves it by a road no earlier route with the same root took, without
+	 * returning to the root
+	 * @return The route, or null if there is none
+	 */
+	private Route spur(Route last, int i, List<Route> found)
+	{
+		int n = graph.getNumNodes();
+		Scratch scratch = SCRATCH.get();
+		scratch.reset(n);
+		int epoch = scratch.epoch;
+		int spurNode = last.nodes[i];
+		for (int j = 0; j <= i; j++) {
+			scratch.removed[last.nodes[j]] = epoch;
+		}
+		
+		// The nodes earlier routes with this root go to next
+		Set<Integer> banned = new HashSet<Integer>();
+		for (Route route : found) {
+			if (route.nodes.length > i + 1 && sameRoot(route, last, i)) {
+				banned.add(route.nodes[i + 1]);
+			}
+		}
+		
+		SearchSpace space = scratch.space;
+		space.reach(spurNode, 0.0, null);
+		space.heap.push(spurNode, toGoal[spurNode]);
+		int meet = -1;
+		while (!space.heap.isEmpty()) {
+			int x = space.heap.pop();
+			if (space.isSettled(x)) {
+				continue;
+			}
+			space.settle(x);
+			if (x != spurNode && isClean(x, scratch)) {
+				meet = x;
+				break;
+			}
+			double d = space.getDist(x);
+			for (int a = graph.firstOut(x); a < graph.firstOut(x + 1); a++) {
+				int w = graph.head(a);
+				if (scratch.removed[w] == epoch || (x == spurNode && banned.contains(w)) ||
+						toGoal[w] == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				double dw = d + costs[a];
+				if (dw < Double.POSITIVE_INFINITY && !space.isSettled(w) &&
+						(!space.isReached(w) || dw < space.getDist(w))) {
+					space.reach(w, dw, graph.getEdge(a));
+					space.heap.push(w, dw + toGoal[w]);
+				}
+			}
+		}
+		if (meet < 0) {
+			return null;
+		}
+		
+		// Root, then the spur search's route to the meeting node, then the tree
+		List<Integer> spurPart = new ArrayList<Integer>();
+		for (int x = meet; x != spurNode; x = space.getParentEdge(x).getStartNode().getId()) {
+			spurPart.add(x);
+		}
+		int length = i + 1 + spurPart.size();
+		for (int x = meet; x != goal; x = next[x]) {
+			length++;
+		}
+		int[] nodes = new int[length];
+		double[] costTo = new double[length];
+		System.arraycopy(last.nodes, 0, nodes, 0, i + 1);
+		System.arraycopy(last.costTo, 0, costTo, 0, i + 1);
+		int p = i + 1;
+		for (int j = spurPart.size() - 1; j >= 0; j--, p++) {
+			nodes[p] = spurPart.get(j);
+			costTo[p] = costTo[i] + space.getDist(nodes[p]);
+		}
+		for (int x = meet; x != goal; x = next[x], p++) {
+			nodes[p] = next[x];
+			costTo[p] = costTo[p - 1] + costs[nextArc[x]];
+		}
+		return new Route(nodes, costTo);
+	}
+
+	/**
+	 * @return true if the tree route from a node to the goal avoids the
+	 *   removed nodes; remembered for the rest of the spur search
+	 */
+	private boolean isClean(int x, Scratch scratch)
+	{
+		int epoch = scratch.epoch;
+		// Walk until a node with a known answer, then fill the answer in
+		int y = x;
+		boolean result = true;
+		while (true) {
+			if (scratch.cleanStamp[y] == epoch) {
+				result = scratch.clean[y];
+				break;
+			}
+			if (scratch.removed[y] == epoch) {
+				result = false;
+				break;
+			}
+			if (y == goal) {
+				break;
+			}
+			y = next[y];
+		}
+		for (int z = x; z != y; z = next[z]) {
+			scratch.cleanStamp[z] = epoch;
+			scratch.clean[z] = result;
+		}
+		return result;
+	}
+
+	private static boolean sameRoot(Route a, Route b, int i)
+	{
+		for (int j = 0; j <= i; j++) {
+			if (a.nodes[j] != b.nodes[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return The route from a node to the goal along the tree */
+	private Route treeRoute(int start)
+	{
+		int length = 1;
+		for (int x = start; x != goal; x = next[x]) {
+			length++;
+		}
+		int[] nodes = new int[length];
+		double[] costTo = new double[length];
+		nodes[0] = start;
+		int p = 1;
+		for (int x = start; x != goal; x = next[x], p++) {
+			nodes[p] = next[x];
+			costTo[p] = costTo[p - 1] + costs[nextArc[x]];
+		}
+		return new Route(nodes, costTo);
+	}
+
+	private static List<Integer> asList(int[] nodes)
+	{
+		List<Integer> list = new ArrayList<Integer>(nodes.length);
+		for (int v : nodes) {
+			list.add(v);
+		}
+		return list;
+	}
+}
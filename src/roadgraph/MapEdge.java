@@ -7,6 +7,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import geography.GeographicPoint;
+import util.RoadDictionary;
 
 /**
  * @author UCSD Intermediate Programming MOOC team and Maayon Thayaparan
@@ -15,11 +16,10 @@ import geography.GeographicPoint;
  */
 class MapEdge 
 {
-	/** The name of the road */
-	private String roadName;
-	
-	/** The type of the road */
-	private String roadType;
+	/** The codes of the name and type of the road in its graph's dictionary */
+	private int roadName;
+	private int roadType;
+	private RoadDictionary dictionary;
 	
 	/** The two end points of the edge */
 	private MapNode start;
@@ -31,47 +31,120 @@ class MapEdge
 	
 	static final double DEFAULT_LENGTH = 0.01;
 	
+	/** The position of this edge in its graph, used to look up its weight */
+	private int id;
+	
+	/** The compass bearing, in degrees clockwise from north, at which the 
+	 * road leaves its start and arrives at its end */
+	private float startBearing;
+	private float endBearing;
+	
 	
 	/** Create a new MapEdge object
 	 * 
+	 * @param dictionary The dictionary of the graph's road names and types
 	 * @param roadName
 	 * @param n1  The point at one end of the segment
 	 * @param n2  The point at the other end of the segment
 	 * 
 	 */
-	MapEdge(String roadName, MapNode n1, MapNode n2) 
+	MapEdge(RoadDictionary dictionary, String roadName, MapNode n1, MapNode n2) 
 	{
-		this(roadName, "", n1, n2, DEFAULT_LENGTH);
+		this(dictionary, roadName, "", n1, n2, DEFAULT_LENGTH);
 	}
 	
 	/** 
 	 * Create a new MapEdge object
+	 * @param dictionary The dictionary of the graph's road names and types
 	 * @param roadName  The name of the road
 	 * @param roadType  The type of the road
 	 * @param n1 The point at one end of the segment
 	 * @param n2 The point at the other end of the segment
 	 */
-	MapEdge(String roadName, String roadType, MapNode n1, MapNode n2) 
+	MapEdge(RoadDictionary dictionary, String roadName, String roadType, MapNode n1, MapNode n2) 
 	{
-		this(roadName, roadType, n1, n2, DEFAULT_LENGTH);
+		this(dictionary, roadName, roadType, n1, n2, DEFAULT_LENGTH);
 	}
 	
 	/** 
 	 * Create a new MapEdge object
+	 * @param dictionary The dictionary of the graph's road names and types,
+	 *   to which the name and type are added if they are new
 	 * @param roadName  The name of the road
 	 * @param roadType  The type of the road
 	 * @param n1 The point at one end of the segment
 	 * @param n2 The point at the other end of the segment
 	 * @param length The length of the road segment
 	 */	
-	MapEdge(String roadName, String roadType,
+	MapEdge(RoadDictionary dictionary, String roadName, String roadType,
 			MapNode n1, MapNode n2, double length) 
 	{
-		this.roadName = roadName;
+		this.dictionary = dictionary;
+		this.roadName = dictionary.nameCode(roadName);
 		start = n1;
 		end = n2;
-		this.roadType = roadType;
+		this.roadType = dictionary.typeCode(roadType);
 		this.length = length;
+		startBearing = endBearing = (float) bearing(n1.getLocation(), n2.getLocation());
+	}
+	
+	/**
+	 * Take the bearings at the ends from the shape of the road rather 
+	 * than the straight line between them
+	 * @param geometry The points of the road between its ends, in order
+	 */
+	void setGeometry(List<GeographicPoint> geometry)
+	{
+		if (geometry.isEmpty()) {
+			return;
+		}
+		startBearing = (float) bearing(getStartPoint(), geometry.get(0));
+		endBearing = (float) bearing(geometry.get(geometry.size() - 1), getEndPoint());
+	}
+	
+	/** @return The bearing at which the road leaves its start, in degrees */
+	double getStartBearing()
+	{
+		return startBearing;
+	}
+	
+	/** @return The bearing at which the road arrives at its end, in degrees */
+	double getEndBearing()
+	{
+		return endBearing;
+	}
+	
+	/**
+	 * Get the direction from one point to another, treating the earth as
+	 * flat over the short distance between them
+	 * @return The bearing in degrees clockwise from north, from 0 up to 360
+	 */
+	static double bearing(GeographicPoint from, GeographicPoint to)
+	{
+		double dLat = to.getX() - from.getX();
+		double dLon = (to.getY() - from.getY()) * Math.cos(Math.toRadians(from.getX()));
+		double degrees = Math.toDegrees(Math.atan2(dLon, dLat));
+		return (degrees < 0) ? degrees + 360 : degrees;
+	}
+	
+	/**
+	 * Get the index of this edge in its graph
+	 * @return the index of this edge, from 0 to the number of edges - 1
+	 */
+	int getId() {
+		return id;
+	}
+	
+	void setId(int id) {
+		this.id = id;
+	}
+	
+	/**
+	 * return the MapNode for the start point
+	 * @return the MapNode for the start point
+	 */
+	MapNode getStartNode() {
+	   return start;
 	}
 	
 	/**
@@ -115,10 +188,22 @@ class MapEdge
 	 */
 	public String getRoadName()
 	{
-		return roadName;
+		return dictionary.getName(roadName);
 	}
 	
 	public String getRoadType() {
+		return dictionary.getType(roadType);
+	}
+	
+	/** @return The code of the road's name in the graph's dictionary */
+	int getRoadNameCode()
+	{
+		return roadName;
+	}
+	
+	/** @return The code of the road's type in the graph's dictionary */
+	int getRoadTypeCode()
+	{
 		return roadType;
 	}
 
@@ -146,7 +231,7 @@ class MapEdge
 		String toReturn = "[EDGE between ";
 		toReturn += "\n\t" + start.getLocation();
 		toReturn += "\n\t" + end.getLocation();
-		toReturn += "\nRoad name: " + roadName + " Road type: " + roadType +
+		toReturn += "\nRoad name: " + getRoadName() + " Road type: " + getRoadType() +
 				" Segment length: " + String.format("%.3g", length) + "km";
 		
 		return toReturn;
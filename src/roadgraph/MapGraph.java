@@ -8,27 +8,96 @@
 package roadgraph;
 
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import geography.GeographicPoint;
+import metrics.SearchMetrics;
+import tracing.ConsoleTracer;
+import tracing.SearchTracer;
+import tracing.TraceLevel;
+import tracing.Tracing;
 import util.GraphLoader;
+import util.RoadDictionary;
 
 
+/**
+ * Once the graph has been loaded the searches only read it, keeping their
+ * own state per thread, so any number of threads may search the same graph
+ * at once.  Adding vertices or edges while searches run is not safe.
+ * 
+ * Edge weights can be changed while searches run, through 
+ * {@link #updateWeights}.  Each change publishes a new immutable 
+ * {@link GraphSnapshot}; a search uses the snapshot that was current when
+ * it started.
+ */
 public class MapGraph {
 	// Maintain both nodes and edges as you will need to
 	// be able to look up nodes by lat/lon or by roads
 	// that contain those nodes.
 	private HashMap<GeographicPoint,MapNode> pointNodeMap;
-	private HashSet<MapEdge> edges;
+	private ArrayList<MapEdge> edges;
+	
+	// The nodes by id, so searches can keep their state in arrays
+	private ArrayList<MapNode> nodes;
+	
+	// Finds the nearest node to a point; built when first needed
+	private volatile NodeGrid grid;
+	
+	// Flat copy of the topology for preprocessing; built when first needed
+	private volatile CsrGraph csr;
+	
+	// The searches run over turns instead of intersections while turn 
+	// costs are set; the turns are built when first needed
+	private volatile TurnCosts turnCosts;
+	private volatile TurnGraph turnGraph;
+	
+	// Forbidden turns, by TurnGraph.turnKey
+	private final Set<Long> turnRestrictions = new HashSet<Long>();
+	
+	// Each thread reuses its own arrays for the state of its searches,
+	// sized to the graphs it has searched lately
+	private static final ThreadLocal<SearchSpace> SEARCH_SPACE = 
+			ThreadLocal.withInitial(SearchSpace::new);
+	
+	// The current weights and version; searches read it once and keep it
+	private final AtomicReference<GraphSnapshot> snapshot = 
+			new AtomicReference<GraphSnapshot>(
+					new GraphSnapshot(0, null, null, Collections.<MapEdge>emptyList()));
+	
+	// Serializes the changes that publish snapshots
+	private final Object writeLock = new Object();
+	
+	// Remembers the results of repeated queries; null when not caching
+	private volatile RouteCache routeCache;
+	
+	// Arc flags by the residential factor they were computed for; replaced
+	// as a whole when one is added
+	private volatile Map<Double,ArcFlags> arcFlags = Collections.emptyMap();
+	
+	// The road names and types, each kept once for all the edges
+	private final RoadDictionary dictionary = new RoadDictionary();
+	
+	// Receives search events in place of printing them
+	private SearchTracer tracer;
+	
+	// Aggregates the statistics of every search
+	private SearchMetrics metrics;
 
 	
 	/** 
@@ -37,7 +106,337 @@ public class MapGraph {
 	public MapGraph()
 	{
 		pointNodeMap = new HashMap<GeographicPoint,MapNode>();
-		edges = new HashSet<MapEdge>();
+		edges = new ArrayList<MapEdge>();
+		nodes = new ArrayList<MapNode>();
+		tracer = Tracing.getDefaultTracer();
+		metrics = SearchMetrics.getDefault();
+	}
+	
+	/**
+	 * Set the tracer that receives events from the searches on this graph.
+	 * @param tracer The tracer to use, or null to turn tracing off
+	 */
+	public void setTracer(SearchTracer tracer)
+	{
+		this.tracer = (tracer == null) ? Tracing.NONE : tracer;
+	}
+	
+	/**
+	 * @return The tracer used by the searches on this graph
+	 */
+	public SearchTracer getTracer()
+	{
+		return tracer;
+	}
+	
+	/**
+	 * Set where the statistics of the searches on this graph are aggregated.
+	 * @param metrics The metrics to record into
+	 */
+	public void setMetrics(SearchMetrics metrics)
+	{
+		if (metrics == null)
+			throw new NullPointerException("metrics");
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * @return The metrics the searches on this graph are recorded into
+	 */
+	public SearchMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Cache the results of the searches on this graph.  Only searches that
+	 * do not report the nodes they visit (the two argument searches and 
+	 * {@link #search}) use the cache.
+	 * @param routeCache The cache to use, or null to stop caching
+	 */
+	public void setRouteCache(RouteCache routeCache)
+	{
+		this.routeCache = routeCache;
+	}
+	
+	/**
+	 * @return The cache of search results, or null if there is none
+	 */
+	public RouteCache getRouteCache()
+	{
+		return routeCache;
+	}
+	
+	/**
+	 * Get the version of the graph, which goes up whenever a vertex or
+	 * edge is added or the weights change.
+	 * @return The current version
+	 */
+	public long getVersion()
+	{
+		return snapshot.get().getVersion();
+	}
+	
+	/**
+	 * Get the current edge weights.  The snapshot never changes, however
+	 * the graph's weights are updated afterwards.
+	 * @return The current snapshot
+	 */
+	public GraphSnapshot getSnapshot()
+	{
+		return snapshot.get();
+	}
+	
+	/**
+	 * Change edge weights, e.g. to close roads or slow down a type of road.
+	 * The changes are made to a copy of the current weights and published 
+	 * together as a new snapshot; searches already running keep the 
+	 * weights they started with.  Updates are applied one at a time.
+	 * 
+	 * For example
+	 *   graph.updateWeights(w -> w.closeRoad("Main Street").setRoadTypeFactor("primary", 1.5));
+	 * 
+	 * @param edits Makes the changes
+	 * @return The new snapshot
+	 */
+	public GraphSnapshot updateWeights(Consumer<WeightUpdate> edits)
+	{
+		synchronized (writeLock) {
+			GraphSnapshot current = snapshot.get();
+			double[] weights = current.copyWeights(edges.size(), edges);
+			edits.accept(new WeightUpdate(this, weights));
+			GraphSnapshot next = new GraphSnapshot(current.getVersion() + 1, weights, 
+					current.getSpeeds(), edges);
+			snapshot.set(next);
+			return next;
+		}
+	}
+	
+	/**
+	 * Close every segment of a named road
+	 * @param roadName The name of the road
+	 * @return The new snapshot
+	 */
+	public GraphSnapshot closeRoad(String roadName)
+	{
+		return updateWeights((w) -> w.closeRoad(roadName));
+	}
+	
+	/**
+	 * Weight every segment of a type of road by a multiple of its length
+	 * @param roadType The type of road, e.g. "primary"
+	 * @param factor The multiple of the length, e.g. 2 for half speed
+	 * @return The new snapshot
+	 */
+	public GraphSnapshot setRoadTypeFactor(String roadType, double factor)
+	{
+		return updateWeights((w) -> w.setRoadTypeFactor(roadType, factor));
+	}
+	
+	/**
+	 * Set every weight back to the length of its edge
+	 * @return The new snapshot
+	 */
+	public GraphSnapshot resetWeights()
+	{
+		return updateWeights((w) -> w.reset());
+	}
+	
+	/**
+	 * Choose between the shortest and the fastest routes, without
+	 * reloading.  With a speed table the weighted searches weigh each 
+	 * road segment by the time it takes at the speed of its type of road,
+	 * its weight in km divided by the speed, and A* estimates the time to
+	 * the goal at the top speed.  The travel times are computed once here
+	 * and again on each weight update.  Distances and isochrones still 
+	 * measure km.
+	 * @param speeds The speed of each type of road, or null to weigh 
+	 *   segments by distance again
+	 * @return The new snapshot
+	 */
+	public GraphSnapshot setSpeeds(SpeedTable speeds)
+	{
+		synchronized (writeLock) {
+			GraphSnapshot next = snapshot.get().withSpeeds(speeds, edges);
+			snapshot.set(next);
+			return next;
+		}
+	}
+	
+	/** @return The speeds the searches weigh segments by, or null if they weigh them by distance */
+	public SpeedTable getSpeeds()
+	{
+		return snapshot.get().getSpeeds();
+	}
+	
+	/** Publish a new version with the same weights after the graph changed */
+	private void nextVersion()
+	{
+		synchronized (writeLock) {
+			snapshot.set(snapshot.get().nextVersion());
+		}
+	}
+	
+	/**
+	 * Prune the weighted searches with arc flags.  The flags are used by
+	 * searches whose residential factor they were computed for, while the
+	 * weights are those they were computed with; after any change to the
+	 * graph they are ignored until replaced.
+	 * @param flags The flags, replacing any for the same residential factor
+	 */
+	public void addArcFlags(ArcFlags flags)
+	{
+		synchronized (writeLock) {
+			Map<Double,ArcFlags> updated = new HashMap<Double,ArcFlags>(arcFlags);
+			updated.put(flags.getResidentialFactor(), flags);
+			arcFlags = updated;
+		}
+	}
+	
+	/**
+	 * Stop pruning searches with arc flags
+	 */
+	public void clearArcFlags()
+	{
+		arcFlags = Collections.emptyMap();
+	}
+	
+	/**
+	 * @param residentialFactor The residential factor of a search profile
+	 * @return The arc flags used for that profile, or null if there are none
+	 */
+	public ArcFlags getArcFlags(double residentialFactor)
+	{
+		return arcFlags.get(residentialFactor);
+	}
+	
+	/**
+	 * Get the topology of the graph in compressed sparse row form, for 
+	 * the speed-up techniques that preprocess it.
+	 * @return The graph as flat arrays, built when first asked for after a change
+	 */
+	public CsrGraph getCsr()
+	{
+		CsrGraph result = csr;
+		if (result == null) {
+			synchronized (this) {
+				result = csr;
+				if (result == null) {
+					result = new CsrGraph(nodes, pointNodeMap);
+					csr = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Make the searches take turns into account, or stop them doing so.
+	 * While turn costs are set, bfs, dijkstra and aStarSearch (and search)
+	 * run over the road segments and the turns between them, so that 
+	 * turns cost what the turn costs say, U-turns are only made at dead
+	 * ends and restricted turns are never made.
+	 * @param costs The cost of each kind of turn, or null to search over
+	 *   intersections again
+	 */
+	public void setTurnCosts(TurnCosts costs)
+	{
+		synchronized (this) {
+			turnCosts = costs;
+			turnGraph = null;
+		}
+		clearRouteCache();
+	}
+	
+	/** @return The turn costs the searches use, or null if they ignore turns */
+	public TurnCosts getTurnCosts()
+	{
+		return turnCosts;
+	}
+	
+	/**
+	 * Forbid the turn from one road segment onto the next, for example a 
+	 * left turn that signs prohibit.  Applies while turn costs are set.
+	 * @param from The start of the segment turned from
+	 * @param via The intersection where the turn is made
+	 * @param to The end of the segment turned onto
+	 * @return true if there were such segments, false if not
+	 */
+	public boolean restrictTurn(GeographicPoint from, GeographicPoint via, GeographicPoint to)
+	{
+		boolean found = false;
+		synchronized (this) {
+			for (MapEdge in : getEdgesFrom(from)) {
+				if (!in.getEndPoint().equals(via)) {
+					continue;
+				}
+				for (MapEdge out : getEdgesFrom(via)) {
+					if (out.getEndPoint().equals(to)) {
+						found |= turnRestrictions.add(TurnGraph.turnKey(in, out));
+					}
+				}
+			}
+			if (found) {
+				turnGraph = null;
+			}
+		}
+		if (found) {
+			clearRouteCache();
+		}
+		return found;
+	}
+	
+	private void clearRouteCache()
+	{
+		RouteCache cache = routeCache;
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * Get the turns of the graph, with the current turn costs (or the 
+	 * default ones if turns are ignored) and restrictions.
+	 * @return The turns, built when first asked for after a change
+	 */
+	public TurnGraph getTurnGraph()
+	{
+		TurnGraph result = turnGraph;
+		if (result == null) {
+			synchronized (this) {
+				result = turnGraph;
+				if (result == null) {
+					TurnCosts costs = turnCosts;
+					result = new TurnGraph(getCsr(), (costs == null) ? TurnCosts.DEFAULT : costs, 
+							turnRestrictions);
+					turnGraph = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Get the road names and types of the graph, for loaders to enter 
+	 * them as they read them so that equal names share one string
+	 * @return The dictionary of the graph
+	 */
+	public RoadDictionary getRoadDictionary()
+	{
+		return dictionary;
+	}
+	
+	/** @return The edges out of a point, none if it is not in the graph */
+	Set<MapEdge> getEdgesFrom(GeographicPoint point)
+	{
+		MapNode node = pointNodeMap.get(point);
+		return (node == null) ? Collections.<MapEdge>emptySet() : node.getEdges();
+	}
+	
+	/** @return The edges of the graph, by id */
+	List<MapEdge> getEdgeList()
+	{
+		return edges;
 	}
 	
 	/**
@@ -66,6 +465,21 @@ public class MapGraph {
 	{
 		return edges.size();
 	}
+	
+	/**
+	 * Estimate the heap each searching thread keeps for this graph.  A 
+	 * thread holds it until it has searched smaller graphs for a while.
+	 * @return The size in bytes of one thread's search arrays
+	 */
+	public long getSearchSpaceBytes()
+	{
+		long bytes = nodes.size() * SearchSpace.BYTES_PER_NODE;
+		if (turnCosts != null) {
+			// turn-aware searches keep their state per road segment, with its parent arc
+			bytes += edges.size() * (SearchSpace.BYTES_PER_NODE + 4);
+		}
+		return bytes;
+	}
 
 	
 	
@@ -83,8 +497,13 @@ public class MapGraph {
 		}
 		MapNode n = pointNodeMap.get(location);
 		if (n == null) {
-			n = new MapNode(location);
+			n = new MapNode(location, nodes.size());
 			pointNodeMap.put(location, n);
+			nodes.add(n);
+			grid = null;
+			csr = null;
+			turnGraph = null;
+			nextVersion();
 			return true;
 		}
 		else {
@@ -106,6 +525,28 @@ public class MapGraph {
 	 */
 	public void addEdge(GeographicPoint from, GeographicPoint to, String roadName,
 			String roadType, double length) throws IllegalArgumentException {
+		addEdge(from, to, roadName, roadType, length, null);
+	}
+	
+	/**
+	 * Adds a directed edge to the graph from pt1 to pt2, with the shape of
+	 * the road between them, which decides the angle of the turns onto 
+	 * and off it.
+	 * Precondition: Both GeographicPoints have already been added to the graph
+	 * @param from The starting point of the edge
+	 * @param to The ending point of the edge
+	 * @param roadName The name of the road
+	 * @param roadType The type of the road
+	 * @param length The length of the road, in km
+	 * @param geometry The points of the road between its ends, in order, 
+	 *   or null to treat it as straight
+	 * @throws IllegalArgumentException If the points have not already been
+	 *   added as nodes to the graph, if any of the arguments is null,
+	 *   or if the length is less than 0.
+	 */
+	public void addEdge(GeographicPoint from, GeographicPoint to, String roadName,
+			String roadType, double length, List<GeographicPoint> geometry) 
+					throws IllegalArgumentException {
 
 		MapNode n1 = pointNodeMap.get(from);
 		MapNode n2 = pointNodeMap.get(to);
@@ -116,22 +557,76 @@ public class MapGraph {
 		if (n2 == null)
 			throw new NullPointerException("addEdge: pt2:"+to+"is not in graph");
 
-		MapEdge edge = new MapEdge(roadName, roadType, n1, n2, length);
+		MapEdge edge = new MapEdge(dictionary, roadName, roadType, n1, n2, length);
+		edge.setId(edges.size());
 		edges.add(edge);
 		n1.addEdge(edge);
+		if (geometry != null) {
+			edge.setGeometry(geometry);
+		}
+		csr = null;
+		turnGraph = null;
+		nextVersion();
 		
 	}
-		
-	/** 
-	 * Get a set of neighbor nodes from a mapNode
-	 * @param node  The node to get the neighbors from
-	 * @return A set containing the MapNode objects that are the neighbors 
-	 * 	of node
+	
+	/**
+	 * Find the intersection closest to a point, for example to snap a 
+	 * location picked on a map onto the road network.
+	 * @param point The point to search around
+	 * @return The closest vertex, or null if the graph has no vertices
+	 * @throws IllegalArgumentException If the point's coordinates are not finite
 	 */
-	private Set<MapNode> getNeighbors(MapNode node) {
-		return node.getNeighbors();
+	public GeographicPoint nearestVertex(GeographicPoint point)
+	{
+		if (point == null)
+			throw new NullPointerException("Cannot find the vertex nearest to null");
+		if (nodes.isEmpty()) {
+			return null;
+		}
+		NodeGrid index = grid;
+		if (index == null) {
+			synchronized (this) {
+				index = grid;
+				if (index == null) {
+					index = new NodeGrid(nodes);
+					grid = index;
+				}
+			}
+		}
+		return index.nearest(point).getLocation();
 	}
 	
+	/**
+	 * Get the length along the roads of a path returned by one of the 
+	 * searches.  Where two consecutive points are joined by more than one
+	 * road segment the shortest is used.
+	 * @param path The intersections on the path, in order
+	 * @return The length of the path in km, or infinity if two consecutive
+	 *   points are not joined by a road segment
+	 */
+	public double getPathLength(List<GeographicPoint> path)
+	{
+		double length = 0;
+		GeographicPoint prev = null;
+		for (GeographicPoint pt : path) {
+			if (prev != null) {
+				MapNode node = pointNodeMap.get(prev);
+				double best = Double.POSITIVE_INFINITY;
+				if (node != null) {
+					for (MapEdge edge : node.getEdges()) {
+						if (edge.getEndPoint().equals(pt)) {
+							best = Math.min(best, edge.getLength());
+						}
+					}
+				}
+				length += best;
+			}
+			prev = pt;
+		}
+		return length;
+	}
+		
 	/** Find the path from start to goal using breadth first search
 	 * 
 	 * @param start The starting location
@@ -140,9 +635,7 @@ public class MapGraph {
 	 *   path from start to goal (including both start and goal).
 	 */
 	public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal) {
-		// Dummy variable for calling the search algorithms
-        Consumer<GeographicPoint> temp = (x) -> {};
-        return bfs(start, goal, temp);
+        return search("bfs", start, goal).getPath();
 	}
 	
 	/** Find the path from start to goal using breadth first search
@@ -151,85 +644,137 @@ public class MapGraph {
 	 * @param goal The goal location
 	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
 	 * @return The list of intersections that form the shortest (unweighted)
-	 *   path from start to goal (including both start and goal).
+	 *   path from start to goal (including both start and goal), or a null
+	 *   path if there is none, together with the search statistics.
 	 */
-	public List<GeographicPoint> bfs(GeographicPoint start, 
-			 					     GeographicPoint goal, 
-			 					     Consumer<GeographicPoint> nodeSearched)
+	public SearchResult bfs(GeographicPoint start, 
+			 				GeographicPoint goal, 
+			 				Consumer<GeographicPoint> nodeSearched)
+	{
+		return bfs(start, goal, nodeSearched, snapshot.get());
+	}
+	
+	private SearchResult bfs(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched, GraphSnapshot weights)
 	{
-		/* Note that this method is a little long and we might think
-		 * about refactoring it to break it into shorter methods as we 
-		 * did in the Maze search code in week 2 */
-		
 		// Setup - check validity of inputs
 		if (start == null || goal == null)
 			throw new NullPointerException("Cannot find route from or to null node");
+		SearchStats.Counter counter = new SearchStats.Counter();
 		MapNode startNode = pointNodeMap.get(start);
 		MapNode endNode = pointNodeMap.get(goal);
 		if (startNode == null) {
-			System.err.println("Start node " + start + " does not exist");
-			return null;
+			tracer.missingNode("bfs", "Start", start);
+			return finish("bfs", start, goal, null, counter);
 		}
 		if (endNode == null) {
-			System.err.println("End node " + goal + " does not exist");
-			return null;
+			tracer.missingNode("bfs", "End", goal);
+			return finish("bfs", start, goal, null, counter);
+		}
+
+		TurnCosts turns = turnCosts;
+		if (turns != null) {
+			return turnSearch("bfs", startNode, endNode, nodeSearched, false, 0.0, 1.0, weights, counter);
 		}
 
 		// setup to begin BFS
-		HashMap<MapNode,MapNode> parentMap = new HashMap<MapNode,MapNode>();
-		Queue<MapNode> toExplore = new LinkedList<MapNode>();
-		HashSet<MapNode> visited = new HashSet<MapNode>();
+		SearchSpace space = searchSpace();
+		ArrayDeque<MapNode> toExplore = new ArrayDeque<MapNode>();
+		space.reach(startNode.getId(), 0, null);
 		toExplore.add(startNode);
-		MapNode curr = null;
+		counter.pushed(toExplore.size());
+		boolean found = false;
 
 		while (!toExplore.isEmpty()) {
-			curr = toExplore.remove();
+			MapNode curr = toExplore.remove();
+			counter.popped();
+			counter.settled();
 			
 			 // hook for visualization
 			nodeSearched.accept(curr.getLocation());
 			
-			if (curr.equals(endNode)) break;
-			Set<MapNode> neighbors = getNeighbors(curr);
-			for (MapNode neighbor : neighbors) {
-				if (!visited.contains(neighbor)) {
-					visited.add(neighbor);
-					parentMap.put(neighbor, curr);
+			if (curr == endNode) {
+				found = true;
+				break;
+			}
+			double depth = space.getDist(curr.getId()) + 1;
+			for (MapEdge edge : curr.getEdges()) {
+				MapNode neighbor = edge.getEndNode();
+				// closed roads cannot be used, however few hops they save
+				if (!space.isReached(neighbor.getId()) && 
+						!(weights.hasWeights() && weights.getWeight(edge) == Double.POSITIVE_INFINITY)) {
+					space.reach(neighbor.getId(), depth, edge);
 					toExplore.add(neighbor);
+					counter.relaxed();
+					counter.pushed(toExplore.size());
 				}
 			}
 		}
-		if (!curr.equals(endNode)) {
-			System.out.println("No path found from " +start+ " to " + goal);
-			return null;
+		if (tracer.isEnabled(TraceLevel.DEBUG)) {
+			tracer.searchFinished("bfs", start, goal, found, counter.getSettled());
+		}
+		if (!found) {
+			tracer.noPathFound("bfs", start, goal);
+			return finish("bfs", start, goal, null, counter);
 		}
 		// Reconstruct the parent path
 		List<GeographicPoint> path =
-				reconstructPath(parentMap, startNode, endNode);
+				reconstructPath(space, startNode, endNode);
 
-		return path;
+		return finish("bfs", start, goal, path, counter);
 	
 	}
 	
 
 
-	/** Reconstruct a path from start to goal using the parentMap
+	/** Package up the outcome of a search and record it in the metrics
+	 * 
+	 * @param algorithm The name of the search
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param path The path found, or null
+	 * @param counter The counters kept by the search
+	 * @return The result of the search
+	 */
+	private SearchResult finish(String algorithm, GeographicPoint start, GeographicPoint goal,
+			List<GeographicPoint> path, SearchStats.Counter counter)
+	{
+		SearchResult result = new SearchResult(algorithm, start, goal, path, counter.finish());
+		metrics.record(result);
+		return result;
+	}
+	
+	/** 
+	 * Get the calling thread's search space, ready for a new search.
+	 * Each thread has its own, so searches never share state.
+	 * @return The search space to use
+	 */
+	private SearchSpace searchSpace()
+	{
+		SearchSpace space = SEARCH_SPACE.get();
+		space.reset(nodes.size());
+		return space;
+	}
+
+
+	/** Reconstruct a path from start to goal using the parent edges
+	 * recorded in the search space
 	 *
-	 * @param parentMap the HashNode map of children and their parents
+	 * @param space The search space the search ran in
 	 * @param start The starting location
 	 * @param goal The goal location
 	 * @return The list of intersections that form the shortest path from
 	 *   start to goal (including both start and goal).
 	 */
 	private List<GeographicPoint>
-	reconstructPath(HashMap<MapNode,MapNode> parentMap,
-					MapNode start, MapNode goal)
+	reconstructPath(SearchSpace space, MapNode start, MapNode goal)
 	{
 		LinkedList<GeographicPoint> path = new LinkedList<GeographicPoint>();
 		MapNode current = goal;
 
-		while (!current.equals(start)) {
+		while (current != start) {
 			path.addFirst(current.getLocation());
-			current = parentMap.get(current);
+			current = space.getParentEdge(current.getId()).getStartNode();
 		}
 
 		// add start
@@ -246,10 +791,7 @@ public class MapGraph {
 	 *   start to goal (including both start and goal).
 	 */
 	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal) {
-		// Dummy variable for calling the search algorithms
-		// You do not need to change this method.
-        Consumer<GeographicPoint> temp = (x) -> {};
-        return dijkstra(start, goal, temp);
+        return search("dijkstra", start, goal).getPath();
 	}
 	
 	/** Find the path from start to goal using Dijkstra's algorithm
@@ -258,56 +800,14 @@ public class MapGraph {
 	 * @param goal The goal location
 	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
 	 * @return The list of intersections that form the shortest path from 
-	 *   start to goal (including both start and goal).
+	 *   start to goal (including both start and goal), or a null path if 
+	 *   there is none, together with the search statistics.
 	 */
-	public List<GeographicPoint> dijkstra(GeographicPoint start, 
-										  GeographicPoint goal, Consumer<GeographicPoint> nodeSearched)
+	public SearchResult dijkstra(GeographicPoint start, 
+								 GeographicPoint goal, Consumer<GeographicPoint> nodeSearched)
 	{
-
-		
-		// Setup - check validity of inputs
-		
-		if (start == null || goal == null)
-			throw new NullPointerException("Cannot find route from or to null node");
-		MapNode startNode = pointNodeMap.get(start);
-		MapNode endNode = pointNodeMap.get(goal);
-		if (startNode == null) {
-			System.err.println("Start node " + start + " does not exist");
-			return null;
-		}
-		if (endNode == null) {
-			System.err.println("End node " + goal + " does not exist");
-			return null;
-		}
-		
-
-
-		
-		/* ----EXTENSION ----
-		 * When date and time variables are set to null, the search will behave as normal.
-		 * When date and time variables are valued, the 
-		 */
-		
-		LocalDate date = LocalDate.now();
-		LocalTime time = LocalTime.now();
-		
-		// setup to begin Dijkstra
-		
-		HashMap<MapNode,MapNode> parentMap = new HashMap<MapNode,MapNode>();
-		boolean found = aStarSearch(startNode, endNode, parentMap, nodeSearched, false, date, time);
-		
-		
-		if (found == false) {
-			System.out.println("No path found from " +start+ " to " + goal);
-			return null;
-		}
-		
-		
-		// Reconstruct the parent path
-		List<GeographicPoint> path =
-				reconstructPath(parentMap, startNode, endNode);
-
-		return path;
+		return weightedSearch("dijkstra", start, goal, nodeSearched, false, 
+				currentResidentialFactor(), snapshot.get());
 	}
 	
 	/** Find the path from start to goal using A-Star search
@@ -318,9 +818,7 @@ public class MapGraph {
 	 *   start to goal (including both start and goal).
 	 */
 	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal) {
-		// Dummy variable for calling the search algorithms
-        Consumer<GeographicPoint> temp = (x) -> {};
-        return aStarSearch(start, goal, temp);
+        return search("astar", start, goal).getPath();
 	}
 	
 	/** Find the path from start to goal using A-Star search
@@ -329,147 +827,306 @@ public class MapGraph {
 	 * @param goal The goal location
 	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
 	 * @return The list of intersections that form the shortest path from 
-	 *   start to goal (including both start and goal).
+	 *   start to goal (including both start and goal), or a null path if 
+	 *   there is none, together with the search statistics.
 	 */
-	public List<GeographicPoint> aStarSearch(GeographicPoint start, 
-											 GeographicPoint goal, Consumer<GeographicPoint> nodeSearched)
+	public SearchResult aStarSearch(GeographicPoint start, 
+									GeographicPoint goal, Consumer<GeographicPoint> nodeSearched)
 	{
+		return weightedSearch("aStarSearch", start, goal, nodeSearched, true, 
+				currentResidentialFactor(), snapshot.get());
+	}	
+	
+	/** Find the path from start to goal with a search chosen by name, for
+	 * callers such as the routing server and the batch router that take the
+	 * algorithm as an option.
+	 * 
+	 * @param algorithm "astar", "dijkstra" or "bfs"
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The path found, or a null path if there is none, together 
+	 *   with the search statistics
+	 * @throws IllegalArgumentException If the algorithm is not known
+	 */
+	public SearchResult search(String algorithm, GeographicPoint start, GeographicPoint goal)
+	{
+		if (!algorithm.equals("astar") && !algorithm.equals("dijkstra") && !algorithm.equals("bfs")) {
+			throw new IllegalArgumentException("Unknown algorithm " + algorithm 
+					+ ", expected astar, dijkstra or bfs");
+		}
+		if (start == null || goal == null)
+			throw new NullPointerException("Cannot find route from or to null node");
+		
+		// breadth first search ignores road weights, so it has one profile
+		double profile = algorithm.equals("bfs") ? 0.0 : currentResidentialFactor();
+		GraphSnapshot weights = snapshot.get();
+		RouteCache cache = routeCache;
+		MapNode startNode = pointNodeMap.get(start);
+		MapNode endNode = pointNodeMap.get(goal);
+		if (cache == null || startNode == null || endNode == null) {
+			return runSearch(algorithm, start, goal, profile, weights);
+		}
+		
+		// the search runs on this snapshot, so its result belongs to this version
+		long current = weights.getVersion();
+		// routes over turns differ from routes over intersections
+		String name = (turnCosts == null) ? algorithm : algorithm + "+turns";
+		RouteCache.Key key = new RouteCache.Key(startNode.getId(), endNode.getId(), name, profile);
+		SearchStats.Counter counter = new SearchStats.Counter();
+		SearchResult cached = cache.get(key, current);
+		if (cached == null) {
+			return cache.put(key, runSearch(algorithm, start, goal, profile, weights), current);
+		}
 		
+		// report the lookup, not the search that first found the route
+		SearchResult result = new SearchResult(cached.getAlgorithm(), start, goal, 
+				cached.getPath(), counter.finish(), true);
+		if (tracer.isEnabled(TraceLevel.DEBUG)) {
+			tracer.searchFinished(result.getAlgorithm(), start, goal, result.isFound(), 0);
+		}
+		metrics.record(result);
+		return result;
+	}
+	
+	private SearchResult runSearch(String algorithm, GeographicPoint start, GeographicPoint goal,
+			double residentialFactor, GraphSnapshot weights)
+	{
+		Consumer<GeographicPoint> temp = (x) -> {};
+		if (algorithm.equals("astar")) {
+			return weightedSearch("aStarSearch", start, goal, temp, true, residentialFactor, weights);
+		}
+		else if (algorithm.equals("dijkstra")) {
+			return weightedSearch("dijkstra", start, goal, temp, false, residentialFactor, weights);
+		}
+		return bfs(start, goal, temp, weights);
+	}
+	
+	/** Shared setup for Dijkstra and A-Star, which differ only in whether
+	 * the distance to the goal is estimated.
+	 */
+	private SearchResult weightedSearch(String searchName, GeographicPoint start,
+			GeographicPoint goal, Consumer<GeographicPoint> nodeSearched, boolean aStar,
+			double residentialFactor, GraphSnapshot weights)
+	{
 		// Setup - check validity of inputs
 		
 		if (start == null || goal == null)
 			throw new NullPointerException("Cannot find route from or to null node");
+		SearchStats.Counter counter = new SearchStats.Counter();
 		MapNode startNode = pointNodeMap.get(start);
 		MapNode endNode = pointNodeMap.get(goal);
 		if (startNode == null) {
-			System.err.println("Start node " + start + " does not exist");
-			return null;
+			tracer.missingNode(searchName, "Start", start);
+			return finish(searchName, start, goal, null, counter);
 		}
 		if (endNode == null) {
-			System.err.println("End node " + goal + " does not exist");
-			return null;
+			tracer.missingNode(searchName, "End", goal);
+			return finish(searchName, start, goal, null, counter);
 		}
 		
-		/* ----EXTENSION ----
-		 * When date and time variables are set to null, the search will behave as normal.
-		 * When date and time variables are valued, the 
-		 */
-		
-		LocalDate date = LocalDate.now();
-		LocalTime time = LocalTime.now();
-
-		// setup to begin Dijkstra
+		TurnCosts turns = turnCosts;
+		if (turns != null) {
+			// turn costs only add to a route, so the usual heuristic still holds
+			double heuristicScale = aStar ? Math.min(1.0, residentialFactor) * weights.getMinCostRatio() : 0.0;
+			return turnSearch(searchName, startNode, endNode, nodeSearched, true, heuristicScale, 
+					residentialFactor, weights, counter);
+		}
 		
-		HashMap<MapNode,MapNode> parentMap = new HashMap<MapNode,MapNode>();
-		boolean found = aStarSearch(startNode, endNode, parentMap, nodeSearched, true, date, time);
+		SearchSpace space = searchSpace();
+		boolean found = aStarSearch(startNode, endNode, space, nodeSearched, aStar, residentialFactor, weights, counter);
 
 		if (found == false) {
-			System.out.println("No path found from " +start+ " to " + goal);
-			return null;
+			tracer.noPathFound(searchName, start, goal);
+			return finish(searchName, start, goal, null, counter);
 		}		
 		
 		// Reconstruct the parent path
 		List<GeographicPoint> path =
-				reconstructPath(parentMap, startNode, endNode);
+				reconstructPath(space, startNode, endNode);
 
-		return path;
-	}	
+		return finish(searchName, start, goal, path, counter);
+	}
 
+	/** Run a search over the turns of the graph instead of its intersections */
+	private SearchResult turnSearch(String searchName, MapNode startNode, MapNode endNode,
+			Consumer<GeographicPoint> nodeSearched, boolean weighted, double heuristicScale,
+			double residentialFactor, GraphSnapshot weights, SearchStats.Counter counter)
+	{
+		GeographicPoint start = startNode.getLocation();
+		GeographicPoint goal = endNode.getLocation();
+		int[] route = getTurnGraph().search(startNode.getId(), endNode.getId(), weighted, heuristicScale, 
+				weights, residentialFactor, nodeSearched, counter);
+		if (tracer.isEnabled(TraceLevel.DEBUG)) {
+			tracer.searchFinished(searchName, start, goal, route != null, counter.getSettled());
+		}
+		if (route == null) {
+			tracer.noPathFound(searchName, start, goal);
+			return finish(searchName, start, goal, null, counter);
+		}
+		List<GeographicPoint> path = new ArrayList<GeographicPoint>(route.length);
+		for (int v : route) {
+			path.add(nodes.get(v).getLocation());
+		}
+		return finish(searchName, start, goal, path, counter);
+	}
 	
 	// ----- EXTENSION ------
-	/* The aStarSearch includes parameters for date and time.
-	 * When date and time are set to null, the search will behave the same as in the course without extension
-	 * When date and time are valued, the search will modify nodes in the search based on road type depending on whether it is rush hour or not
+	/* The aStarSearch includes a weight for residential roads, which depends on the date and time.
+	 * When it is 1, the search will behave the same as in the course without extension
+	 * Otherwise, the search will weight residential roads depending on whether it is rush hour or not
+	 * 
+	 * All the state of the search lives in the search space, so the graph
+	 * itself is only read and any number of searches can run at once.
 	 */
 
-	private boolean aStarSearch(MapNode startNode, MapNode endNode, HashMap<MapNode,MapNode> parentMap, Consumer<GeographicPoint> nodeSearched, boolean aStar, LocalDate date,  LocalTime time)	
+	private boolean aStarSearch(MapNode startNode, MapNode endNode, SearchSpace space, Consumer<GeographicPoint> nodeSearched, boolean aStar, double residentialFactor, GraphSnapshot weights, SearchStats.Counter counter)	
 	{
 		
-		/* When using dijkstra, this just needs to be false since dijkstra 
+		/* When using dijkstra, the heuristic is just 0 since dijkstra 
 		 * is just a special case of aStar where distance to goal is 0.
 		 * */
 		 
+		/* The heuristic must never overestimate the cost to the goal.  Each
+		 * road segment is at least as long as the straight line between its
+		 * ends, but residential roads may be discounted, and updated weights
+		 * may be below the length, so the straight line is discounted by the
+		 * same factors.  The straight line is the flat-earth bound of the
+		 * fixed-point coordinates, which is never longer than the great
+		 * circle and needs no trigonometry.
+		 */
+		double heuristicScale = aStar ? Math.min(1.0, residentialFactor) * weights.getMinCostRatio() : 0.0;
+		NodeCoordinates coordinates = (heuristicScale == 0.0) ? null : getCsr().getCoordinates();
+		int goalId = endNode.getId();
 		
-		for (GeographicPoint key : pointNodeMap.keySet()) {
-			pointNodeMap.get(key).setFromDist(Double.POSITIVE_INFINITY);
-			
-			if (aStar == true) {
-				pointNodeMap.get(key).setToDist(key.distance(endNode.getLocation()));
-			}
+		// Arc flags only hold for the weights and profile they were computed for
+		ArcFlags flags = arcFlags.get(residentialFactor);
+		if (flags != null && flags.getVersion() != weights.getVersion()) {
+			flags = null;
 		}
-			
-		PriorityQueue<MapNode> toExplore = new PriorityQueue<MapNode>();
-		HashSet<MapNode> visited = new HashSet<MapNode>();
+		int goalRegion = (flags == null) ? -1 : flags.getRegion(endNode.getId());
+		
+		NodeHeap toExplore = space.heap;
 		boolean found = false;
 		
-		startNode.setFromDist(0.0);
-		toExplore.add(startNode);
-		MapNode curr = null;
+		space.reach(startNode.getId(), 0.0, null);
+		toExplore.push(startNode.getId(), 0.0);
+		counter.pushed(toExplore.size());
 		int count = 0;
+		
+		// Decide once whether anyone wants per-node events, so a disabled
+		// tracer costs nothing inside the loop
+		String searchName = aStar ? "aStarSearch" : "dijkstra";
+		boolean traceNodes = tracer.isEnabled(TraceLevel.TRACE);
 
 		while (!toExplore.isEmpty()) {
-			curr = toExplore.remove();
+			int currId = toExplore.pop();
+			MapNode curr = nodes.get(currId);
+			counter.popped();
 			count++;
-			System.out.println(curr + " " + curr.getRoadType() + " " + count);
+			if (traceNodes) {
+				MapEdge via = space.getParentEdge(currId);
+				tracer.nodeSettled(searchName, curr.getLocation(), 
+						(via == null) ? "" : via.getRoadType(), count);
+			}
 			
 			
 			 // hook for visualization
 			nodeSearched.accept(curr.getLocation());
 			
 			
-			if (!visited.contains(curr)) {
-				visited.add(curr);
+			if (!space.isSettled(currId)) {
+				space.settle(currId);
+				counter.settled();
 				
-				if (curr.equals(endNode)) {
+				if (curr == endNode) {
 					found = true;
-					return found;
+					break;
 				}
 				
-				Set<MapNode> neighbors = getNeighbors(curr);
-				for (MapNode neighbor : neighbors) {
+				double currDistance = space.getDist(currId);
+				for (MapEdge edge : curr.getEdges()) {
+					MapNode neighbor = edge.getEndNode();
+					int neighborId = neighbor.getId();
 					
-					if (!visited.contains(neighbor)) {
-							
-						double neighborDistance = neighbor.getFromDist() + neighbor.getToDist();
-						double neighborFromDistance = curr.getFromDist() + curr.getLocation().distance(neighbor.getLocation()); 
-						double neighborTrueDistance = neighborFromDistance + neighbor.getToDist();
+					if (!space.isSettled(neighborId)) {
+						
+						// Skip roads on no shortest route into the goal's region
+						if (flags != null && !flags.isFlagged(edge, goalRegion)) {
+							continue;
+						}
 						
-						if (neighborTrueDistance < neighborDistance) {
-							
-							/* ------ EXTENSION -------
-							 * This helper method checks to see if it is rush hour.
-							 * Will modify neighborFromDistance based on road type based on whether it is rus hour or not
-							 */
-							neighborFromDistance = rushHourCheck(neighborFromDistance, neighbor, date, time); 
-							
-							neighbor.setFromDist(neighborFromDistance);
-							parentMap.put(neighbor, curr);
-							toExplore.add(neighbor);
+						/* ------ EXTENSION -------
+						 * Residential roads are weighted by whether it is rush hour or not
+						 */
+						double cost = cost(edge, weights, residentialFactor);
+						double neighborFromDistance = currDistance + cost;
+						
+						if (neighborFromDistance < space.getDist(neighborId)) {
+							if (!space.hasHeuristic(neighborId)) {
+								space.setHeuristic(neighborId, (heuristicScale == 0.0) ? 0.0 
+										: heuristicScale * coordinates.lowerBound(neighborId, goalId));
+							}
+							space.reach(neighborId, neighborFromDistance, edge);
+							toExplore.push(neighborId, neighborFromDistance + space.getHeuristic(neighborId));
+							counter.relaxed();
+							counter.pushed(toExplore.size());
 						}
 					}
 				}
 			}
 		}
+		if (tracer.isEnabled(TraceLevel.DEBUG)) {
+			tracer.searchFinished(searchName, startNode.getLocation(), endNode.getLocation(), found, count);
+		}
 		return found; 
 	}
 	
+	/**
+	 * The cost of a road segment to the weighted searches
+	 * @param edge The road segment
+	 * @param weights The edge weights
+	 * @param residentialFactor The multiple of residential road weights
+	 * @return The weight of the segment, scaled if it is residential
+	 */
+	static double cost(MapEdge edge, GraphSnapshot weights, double residentialFactor)
+	{
+		double cost = weights.getCost(edge);
+		if (edge.getRoadTypeCode() == RoadDictionary.RESIDENTIAL) {
+			cost *= residentialFactor;
+		}
+		return cost;
+	}
+	
+	/* 
+	 * ----EXTENSION ----
+	 * When date and time variables are set to null, the search will behave as normal.
+	 * When date and time variables are valued, residential roads are weighted
+	 * according to whether it is rush hour, so the weighting used is the
+	 * cost profile of the search.
+	 */
+	static double currentResidentialFactor() {
+		return rushHourCheck(LocalDate.now(), LocalTime.now());
+	}
+	
 	/* 
 	 *  --------- EXTENSION -----------
 	 * 
 	 * This is a helper method to check if the inputed date/time is during rush hour.
 	 * When date and time are set to null, the search will behave the same as in the course without extension
-	 * When date and time are valued, the search will modify nodes in the search based on road type depending on whether it is rush hour or not
+	 * When date and time are valued, the search will weight residential roads depending on whether it is rush hour or not
 	 * Residential roads will be considered of lower distance during rush hour. 
 	 * Residential roads will be considered longer distance outside of rush hour. 
 	 * Can optimize this method to look at additional road types
+	 * 
+	 * @return The factor to multiply the length of residential roads by
 	 */
 	
-	private double rushHourCheck(double fromDistance, MapNode neighbor, LocalDate date, LocalTime time) {
+	private static double rushHourCheck(LocalDate date, LocalTime time) {
 		
 		
 		// Initialize rush hour values for morning and evening
 		// Morning rush hour is set to 6AM - 9AM on weekdays
-		// Evening rush hour is set to 4PM - 7AM on weekdays 
+		// Evening rush hour is set to 4PM - 7PM on weekdays 
 		
 		LocalTime morningRushStart = LocalTime.of(6, 0);
 		LocalTime morningRushEnd = LocalTime.of(9, 0);
@@ -477,52 +1134,240 @@ public class MapGraph {
 		LocalTime eveningRushEnd = LocalTime.of(19, 0);
 		boolean rushHour = false; 
 		
-		// if date or time parameter is null, we will not alter fromDistance value
+		// if date or time parameter is null, we will not alter road lengths
 		
 		if (date == null || time == null ) {  
-			return fromDistance;
+			return 1.0;
 		}
 		
 		/* Checks if it is a weekday and if the date and time set are during rush hour. 
 		 * If it is rush hour, we will set boolean of rushHour to true which will be used 
-		 * to determine how we adjust fromDistance 
+		 * to determine how we weight residential roads
 		 */
 		
-		
-		if ((!date.getDayOfWeek().toString().equals("SATURDAY") || 
-				!date.getDayOfWeek().toString().equals("SUNDAY")) &&
-				(time.isAfter(morningRushStart) && time.isBefore(morningRushEnd)) ||
-				(time.isAfter(eveningRushStart) && time.isBefore(eveningRushEnd)) ) 
+		DayOfWeek day = date.getDayOfWeek();
+		boolean weekday = (day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY);
+		if (weekday &&
+				((time.isAfter(morningRushStart) && time.isBefore(morningRushEnd)) ||
+				 (time.isAfter(eveningRushStart) && time.isBefore(eveningRushEnd))) ) 
 		{
 			rushHour = true;
 		}
 		
-		/* if it is rush hour and road type is residential, we will lower fromDistance since 
-		 * taking residential road may be favorable during rush hour
-		 * This clause can be optimized for additional road types 
-		 * Can also change the modifier accordingly 
+		/* if it is rush hour, residential roads count as shorter since 
+		 * taking residential road may be favorable during rush hour.
+		 * Outside of rush hour they count as longer since they are less favorable.
+		 * Can also change the modifiers accordingly 
 		 */
 		
+		return rushHour ? 0.5 : 1.5;
+	}
+	
+	/**
+	 * Find the length along the roads from one point to each of several 
+	 * others, for example to fill one row of a distance matrix.  The search
+	 * stops as soon as every target has been reached.  Roads are measured
+	 * by their current weights, which are their lengths unless updated.
+	 * @param source The starting location
+	 * @param targets The locations to measure to
+	 * @return The distances in km, in the order of the targets; infinity for
+	 *   a target that cannot be reached or is not in the graph, and for 
+	 *   every target if the source is not in the graph
+	 */
+	public double[] distances(GeographicPoint source, List<GeographicPoint> targets)
+	{
+		double[] result = new double[targets.size()];
+		Arrays.fill(result, Double.POSITIVE_INFINITY);
+		MapNode sourceNode = pointNodeMap.get(source);
+		if (sourceNode == null) {
+			return result;
+		}
+		SearchSpace space = searchSpace();
 		
-		if (rushHour == true) {
-			if (neighbor.getRoadType().equals("residential")) {
-				fromDistance = fromDistance * 0.5;
+		// mark the targets, so the search knows when it has found them all
+		int remaining = 0;
+		for (GeographicPoint target : targets) {
+			MapNode node = pointNodeMap.get(target);
+			if (node != null && !space.hasHeuristic(node.getId())) {
+				space.setHeuristic(node.getId(), 0.0);
+				remaining++;
 			}
 		}
 		
-		/* If it is NOT rush hour and road type is residential, we will increase fromDistance since 
-		 * taking residential road is less favorable outside of rush hour
-		 * This clause can be optimized for additional road types
-		 */
-		
-		if (rushHour == false) {
-			if (neighbor.getRoadType().equals("residential")) {
-				fromDistance = fromDistance * 1.5;
+		expand(sourceNode, Double.POSITIVE_INFINITY, space, remaining, snapshot.get());
+		for (int i = 0; i < result.length; i++) {
+			MapNode node = pointNodeMap.get(targets.get(i));
+			if (node != null && space.isSettled(node.getId())) {
+				result[i] = space.getDist(node.getId());
 			}
 		}
+		return result;
+	}
+	
+	/**
+	 * Find several distinct routes from start to goal, for planners that 
+	 * want to choose among candidates: the k shortest routes that visit no
+	 * intersection twice, by Yen's algorithm, weighted like dijkstra.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param k The most routes to find
+	 * @return The routes, each from start to goal (including both), 
+	 *   shortest first; fewer than k if there are no more, and none if 
+	 *   either point is not in the graph or the goal cannot be reached
+	 * @throws IllegalArgumentException If k is less than one
+	 */
+	public List<List<GeographicPoint>> kShortestPaths(GeographicPoint start, GeographicPoint goal, int k)
+	{
+		if (k < 1) {
+			throw new IllegalArgumentException("k must be at least 1, not " + k);
+		}
+		if (start == null || goal == null)
+			throw new NullPointerException("Cannot find route from or to null node");
+		List<List<GeographicPoint>> routes = new ArrayList<List<GeographicPoint>>();
+		MapNode startNode = pointNodeMap.get(start);
+		MapNode endNode = pointNodeMap.get(goal);
+		if (startNode == null || endNode == null) {
+			tracer.missingNode("kShortestPaths", (startNode == null) ? "Start" : "End", 
+					(startNode == null) ? start : goal);
+			return routes;
+		}
 		
-
-		return fromDistance;
+		CsrGraph csr = getCsr();
+		KShortestPaths yen = new KShortestPaths(csr, currentArcCosts(csr), endNode.getId());
+		for (KShortestPaths.Route route : yen.find(startNode.getId(), k, ForkJoinPool.commonPool())) {
+			routes.add(toPath(csr, route));
+		}
+		return routes;
+	}
+	
+	/**
+	 * Find the shortest route from start to goal and a few meaningfully 
+	 * different alternatives to it, weighted like dijkstra.  Alternatives
+	 * cost at most a quarter more than the shortest route, share little 
+	 * of it, and follow a long stretch of road that no shorter detour 
+	 * would avoid; finding them takes about two searches.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param maxRoutes The most routes to return, counting the shortest
+	 * @return The shortest route followed by its alternatives, best first,
+	 *   each from start to goal (including both); none if either point is
+	 *   not in the graph or the goal cannot be reached
+	 * @throws IllegalArgumentException If maxRoutes is less than one
+	 */
+	public List<List<GeographicPoint>> alternativeRoutes(GeographicPoint start, GeographicPoint goal, 
+			int maxRoutes)
+	{
+		if (maxRoutes < 1) {
+			throw new IllegalArgumentException("maxRoutes must be at least 1, not " + maxRoutes);
+		}
+		if (start == null || goal == null)
+			throw new NullPointerException("Cannot find route from or to null node");
+		List<List<GeographicPoint>> routes = new ArrayList<List<GeographicPoint>>();
+		MapNode startNode = pointNodeMap.get(start);
+		MapNode endNode = pointNodeMap.get(goal);
+		if (startNode == null || endNode == null) {
+			tracer.missingNode("alternativeRoutes", (startNode == null) ? "Start" : "End", 
+					(startNode == null) ? start : goal);
+			return routes;
+		}
+		
+		CsrGraph csr = getCsr();
+		AlternativeRoutes alternatives = new AlternativeRoutes(csr, currentArcCosts(csr));
+		for (KShortestPaths.Route route : alternatives.find(startNode.getId(), endNode.getId(), maxRoutes)) {
+			routes.add(toPath(csr, route));
+		}
+		return routes;
+	}
+	
+	/** @return The cost of each arc under the current weights and time of day */
+	private double[] currentArcCosts(CsrGraph csr)
+	{
+		GraphSnapshot weights = snapshot.get();
+		double residentialFactor = currentResidentialFactor();
+		double[] costs = new double[csr.getNumArcs()];
+		for (int a = 0; a < costs.length; a++) {
+			costs[a] = cost(csr.getEdge(a), weights, residentialFactor);
+		}
+		return costs;
+	}
+	
+	private static List<GeographicPoint> toPath(CsrGraph csr, KShortestPaths.Route route)
+	{
+		List<GeographicPoint> path = new ArrayList<GeographicPoint>(route.nodes.length);
+		for (int v : route.nodes) {
+			path.add(csr.getLocation(v));
+		}
+		return path;
+	}
+	
+	/**
+	 * Find every intersection within a given distance along the roads of a
+	 * starting point, measuring roads by their current weights.
+	 * @param start The starting location
+	 * @param limit The greatest distance to go, in km
+	 * @return The intersections reached with their distance from the start
+	 *   in km, nearest first; empty if the start is not in the graph
+	 */
+	public Map<GeographicPoint,Double> isochrone(GeographicPoint start, double limit)
+	{
+		LinkedHashMap<GeographicPoint,Double> reached = new LinkedHashMap<GeographicPoint,Double>();
+		MapNode startNode = pointNodeMap.get(start);
+		if (startNode == null) {
+			return reached;
+		}
+		SearchSpace space = searchSpace();
+		for (MapNode node : expand(startNode, limit, space, -1, snapshot.get())) {
+			reached.put(node.getLocation(), space.getDist(node.getId()));
+		}
+		return reached;
+	}
+	
+	/**
+	 * Run Dijkstra's algorithm by edge weight from a node until everything
+	 * within the limit is settled, or until the given number of nodes 
+	 * marked in the search space (by a heuristic entry) have been settled.
+	 * @param startNode The node to start from
+	 * @param limit The greatest distance to settle, in km
+	 * @param space The search space to run in
+	 * @param marked The number of marked nodes to stop after, or -1 
+	 *   to ignore marks
+	 * @param weights The edge weights to use
+	 * @return The settled nodes, in the order they were settled
+	 */
+	private List<MapNode> expand(MapNode startNode, double limit, SearchSpace space, int marked,
+			GraphSnapshot weights)
+	{
+		List<MapNode> settled = new ArrayList<MapNode>();
+		NodeHeap toExplore = space.heap;
+		space.reach(startNode.getId(), 0.0, null);
+		toExplore.push(startNode.getId(), 0.0);
+		
+		while (!toExplore.isEmpty() && marked != 0) {
+			int currId = toExplore.pop();
+			if (space.isSettled(currId)) {
+				continue;
+			}
+			double currDistance = space.getDist(currId);
+			if (currDistance > limit) {
+				break;
+			}
+			space.settle(currId);
+			MapNode curr = nodes.get(currId);
+			settled.add(curr);
+			if (marked > 0 && space.hasHeuristic(currId)) {
+				marked--;
+			}
+			
+			for (MapEdge edge : curr.getEdges()) {
+				int neighborId = edge.getEndNode().getId();
+				double d = currDistance + weights.getWeight(edge);
+				if (!space.isSettled(neighborId) && d < space.getDist(neighborId)) {
+					space.reach(neighborId, d, edge);
+					toExplore.push(neighborId, d);
+				}
+			}
+		}
+		return settled;
 	}
 
 
@@ -559,6 +1404,8 @@ public class MapGraph {
 		
 	    MapGraph simpleTestMap = new MapGraph();
 		GraphLoader.loadRoadMap("data/testdata/simpletest.map", simpleTestMap);
+		// Report the number of nodes each search visits
+		simpleTestMap.setTracer(new ConsoleTracer(TraceLevel.DEBUG));
 		
 		GeographicPoint testStart = new GeographicPoint(1.0, 1.0);
 		GeographicPoint testEnd = new GeographicPoint(8.0, -1.0);
@@ -572,6 +1419,7 @@ public class MapGraph {
 		
 		MapGraph testMap = new MapGraph();
 		GraphLoader.loadRoadMap("data/maps/utc.map", testMap);
+		testMap.setTracer(new ConsoleTracer(TraceLevel.DEBUG));
 		
 		// A very simple test using real data
 		testStart = new GeographicPoint(32.869423, -117.220917);
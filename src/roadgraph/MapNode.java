@@ -14,82 +14,43 @@ import geography.GeographicPoint;
  * Class representing a vertex (or node) in our MapGraph
  *
  */
-class MapNode implements Comparable<MapNode>
+class MapNode
 {
 	/** The list of edges out of this node */
 	private HashSet<MapEdge> edges;
 		
 	/** the latitude and longitude of this node */
 	private GeographicPoint location;
-	double fromStartDist;
-	double toGoalDist; 
-	String roadType; //this is only used when Node is created as a neighbor to another Node
+	
+	/** the position of this node in its graph, used to index search state */
+	private final int id;
 
 		
 	/** 
 	 * Create a new MapNode at a given Geographic location
 	 * @param loc the location of this node
+	 * @param id the index of this node in its graph
 	 */
-	MapNode(GeographicPoint loc)
+	MapNode(GeographicPoint loc, int id)
 	{
 		location = loc;
+		this.id = id;
 		edges = new HashSet<MapEdge>();
-		fromStartDist = 0.0;
-		toGoalDist = 0.0;
-		roadType = "";
+	}
+	
+	/**
+	 * Get the index of this node in its graph
+	 * @return the index of this node, from 0 to the number of nodes - 1
+	 */
+	int getId()
+	{
+		return id;
 	}
 		
 	/**
 	 * Add an edge that is outgoing from this node in the graph
 	 * @param edge The edge to be added
 	 */
-	
-	public void setFromDist(double d) {
-		this.fromStartDist = d;
-	}
-	
-	
-	public void setToDist(double d) {
-		this.toGoalDist = d;
-	}
-	
-	
-	public double getFromDist() {
-		return fromStartDist;
-	}
-	
-	public double getToDist() {
-		return toGoalDist;
-	}
-	
-	public void setRoadType(String road) {
-		this.roadType = road;
-	}
-	
-	public String getRoadType() {
-		return roadType;
-	}
-	
-	
-	
-	public int compareTo(MapNode m) {
-		double thisDistance = this.getFromDist() + this.getToDist();
-		double mDistance = m.getFromDist() + m.getToDist();
-		
-		if (thisDistance > mDistance) {
-			return 1;
-		}
-		if (thisDistance < mDistance) {
-			return -1;
-		}
-		if (thisDistance == mDistance) {
-			return 0;
-		}
-		//int diff = (int) (thisDistance - mDistance);
-		
-		return -1; 
-	}
-	
 	void addEdge(MapEdge edge)
 	{
 		edges.add(edge);
@@ -103,11 +64,7 @@ class MapNode implements Comparable<MapNode>
 	{
 		Set<MapNode> neighbors = new HashSet<MapNode>();
 		for (MapEdge edge : edges) {
-			MapNode curr = edge.getOtherNode(this);
-			
-			//this sets the roadType for this node
-			curr.setRoadType(edge.getRoadType()); 
-			neighbors.add(curr);
+			neighbors.add(edge.getOtherNode(this));
 		}
 		return neighbors;
 	}
@@ -163,24 +120,25 @@ class MapNode implements Comparable<MapNode>
 	@Override
 	public String toString()
 	{
-		String toReturn = "[NODE at location (" + location + ")";
-		toReturn += " intersects streets: ";
+		StringBuilder toReturn = new StringBuilder("[NODE at location (");
+		toReturn.append(location).append(")");
+		toReturn.append(" intersects streets: ");
 		for (MapEdge e: edges) {
-			toReturn += e.getRoadName() + ", ";
+			toReturn.append(e.getRoadName()).append(", ");
 		}
-		toReturn += "]";
-		return toReturn;
+		toReturn.append("]");
+		return toReturn.toString();
 	}
 
 	// For debugging, output roadNames as a String.
 	public String roadNamesAsString()
 	{
-		String toReturn = "(";
+		StringBuilder toReturn = new StringBuilder("(");
 		for (MapEdge e: edges) {
-			toReturn += e.getRoadName() + ", ";
+			toReturn.append(e.getRoadName()).append(", ");
 		}
-		toReturn += ")";
-		return toReturn;
+		toReturn.append(")");
+		return toReturn.toString();
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package roadgraph;
+
+/**
+ * A nested partition of the nodes of a graph into cells on several 
+ * levels.  Level 1 has the smallest cells; every cell on a level lies 
+ * entirely inside one cell of each level above it.
+ *
+ */
+public final class MultiLevelPartition {
+
+	// cells[l - 1][node] is the node's cell on level l
+	private final int[][] cells;
+	private final int[] numCells;
+	private final int[] maxCellSizes;
+
+	/**
+	 * @param cells The cell of every node on each level, level 1 first
+	 * @param numCells The number of cells on each level, level 1 first
+	 * @param maxCellSizes The bound on cell size the partition was made for
+	 */
+	MultiLevelPartition(int[][] cells, int[] numCells, int[] maxCellSizes)
+	{
+		this.cells = cells;
+		this.numCells = numCells;
+		this.maxCellSizes = maxCellSizes;
+	}
+
+	/** @return The number of levels */
+	public int getNumLevels()
+	{
+		return cells.length;
+	}
+
+	/**
+	 * @param level A level from 1 to getNumLevels()
+	 * @return The number of cells on that level
+	 */
+	public int getNumCells(int level)
+	{
+		return numCells[level - 1];
+	}
+
+	/**
+	 * @param level A level from 1 to getNumLevels()
+	 * @return The most nodes a cell on that level may hold
+	 */
+	public int getMaxCellSize(int level)
+	{
+		return maxCellSizes[level - 1];
+	}
+
+	/**
+	 * @param level A level from 1 to getNumLevels()
+	 * @param node A node id
+	 * @return The cell the node is in on that level
+	 */
+	public int getCell(int level, int node)
+	{
+		return cells[level - 1][node];
+	}
+
+	/**
+	 * @return The cell ids of all nodes on one level, indexed by node; 
+	 *   for the overlay code, which must not modify them
+	 */
+	int[] cellsOn(int level)
+	{
+		return cells[level - 1];
+	}
+}
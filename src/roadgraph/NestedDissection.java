@@ -0,0 +1,238 @@
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * Computes a contraction order for a road graph by nested dissection: the
+ * nodes are split into two halves by a straight cut across the map, the 
+ * nodes along the cut (a vertex separator) are put last, and each half is
+ * ordered the same way.  Road networks are nearly planar, so a straight 
+ * cut crosses few roads and the separators stay small, which is what keeps
+ * the number of shortcuts of a customizable contraction hierarchy down.
+ * 
+ * The order depends only on the topology and the node locations, never on
+ * edge weights, so it is computed once per map.
+ *
+ */
+class NestedDissection {
+
+	// Parts this small are not split further
+	private static final int LEAF_SIZE = 16;
+	
+	// Directions of the cuts tried at each step: the two axes and the diagonals
+	private static final double[][] DIRECTIONS = {
+		{1, 0}, {0, 1}, {Math.sqrt(0.5), Math.sqrt(0.5)}, {Math.sqrt(0.5), -Math.sqrt(0.5)}
+	};
+
+	private final int[] firstAdj;
+	private final int[] adj;
+	private final double[] x;
+	private final double[] y;
+	
+	// Marks the nodes of the part being split, and the side each is on
+	private final int[] stamp;
+	private final boolean[] high;
+	private int currentStamp;
+	
+	private final int[] order;
+	private int ordered;
+
+	private NestedDissection(CsrGraph graph)
+	{
+		int n = graph.getNumNodes();
+		int[][] neighbors = undirected(graph);
+		firstAdj = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			firstAdj[v + 1] = firstAdj[v] + neighbors[v].length;
+		}
+		adj = new int[firstAdj[n]];
+		for (int v = 0; v < n; v++) {
+			System.arraycopy(neighbors[v], 0, adj, firstAdj[v], neighbors[v].length);
+		}
+		
+		// Project onto a plane so both axes are in the same units
+		x = new double[n];
+		y = new double[n];
+		for (int v = 0; v < n; v++) {
+			double lat = graph.getLocation(v).getX();
+			double lon = graph.getLocation(v).getY();
+			x[v] = lon * Math.cos(Math.toRadians(lat));
+			y[v] = lat;
+		}
+		stamp = new int[n];
+		high = new boolean[n];
+		order = new int[n];
+	}
+
+	/**
+	 * Order the nodes of a graph for contraction
+	 * @param graph The graph
+	 * @return The nodes, in the order they are to be contracted
+	 */
+	static int[] order(CsrGraph graph)
+	{
+		NestedDissection nd = new NestedDissection(graph);
+		int[] all = new int[graph.getNumNodes()];
+		for (int v = 0; v < all.length; v++) {
+			all[v] = v;
+		}
+		nd.dissect(all);
+		return nd.order;
+	}
+
+	/**
+	 * Get the neighbors of each node ignoring direction, without loops or
+	 * repeats
+	 */
+	static int[][] undirected(CsrGraph graph)
+	{
+		int n = graph.getNumNodes();
+		int[] degree = new int[n];
+		for (int v = 0; v < n; v++) {
+			for (int a = graph.firstOut(v); a < graph.firstOut(v + 1); a++) {
+				degree[v]++;
+				degree[graph.head(a)]++;
+			}
+		}
+		int[][] neighbors = new int[n][];
+		for (int v = 0; v < n; v++) {
+			neighbors[v] = new int[degree[v]];
+			degree[v] = 0;
+		}
+		for (int v = 0; v < n; v++) {
+			for (int a = graph.firstOut(v); a < graph.firstOut(v + 1); a++) {
+				int w = graph.head(a);
+				neighbors[v][degree[v]++] = w;
+				neighbors[w][degree[w]++] = v;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			int[] list = neighbors[v];
+			Arrays.sort(list);
+			int size = 0;
+			for (int i = 0; i < list.length; i++) {
+				if (list[i] != v && (size == 0 || list[size - 1] != list[i])) {
+					list[size++] = list[i];
+				}
+			}
+			neighbors[v] = Arrays.copyOf(list, size);
+		}
+		return neighbors;
+	}
+
+	/**
+	 * Append the nodes of a part to the order, separators last
+	 */
+	private void dissect(int[] part)
+	{
+		if (part.length <= LEAF_SIZE) {
+			for (int v : part) {
+				order[ordered++] = v;
+			}
+			return;
+		}
+		
+		// Try a cut in each direction and keep the one with the smallest separator
+		int[] bestSorted = null;
+		boolean[] bestSeparator = null;
+		int bestSize = Integer.MAX_VALUE;
+		for (double[] direction : DIRECTIONS) {
+			int[] sorted = sortAlong(part, direction);
+			boolean[] separator = new boolean[part.length];
+			int size = separate(sorted, separator);
+			if (size < bestSize) {
+				bestSize = size;
+				bestSorted = sorted;
+				bestSeparator = separator;
+			}
+		}
+		
+		int half = bestSorted.length / 2;
+		int[] low = new int[half];
+		int[] rest = new int[bestSorted.length - half];
+		int[] separator = new int[bestSize];
+		int lowSize = 0, restSize = 0, separatorSize = 0;
+		for (int i = 0; i < bestSorted.length; i++) {
+			if (bestSeparator[i]) {
+				separator[separatorSize++] = bestSorted[i];
+			}
+			else if (i < half) {
+				low[lowSize++] = bestSorted[i];
+			}
+			else {
+				rest[restSize++] = bestSorted[i];
+			}
+		}
+		dissect(Arrays.copyOf(low, lowSize));
+		dissect(Arrays.copyOf(rest, restSize));
+		for (int v : separator) {
+			order[ordered++] = v;
+		}
+	}
+
+	/**
+	 * Sort a part by position along a direction
+	 */
+	private int[] sortAlong(int[] part, double[] direction)
+	{
+		long[] keyed = new long[part.length];
+		double[] position = new double[part.length];
+		for (int i = 0; i < part.length; i++) {
+			int v = part[i];
+			position[i] = x[v] * direction[0] + y[v] * direction[1];
+		}
+		// Sort indexes by position via their ranks among the sorted positions
+		double[] sortedPosition = position.clone();
+		Arrays.sort(sortedPosition);
+		for (int i = 0; i < part.length; i++) {
+			long rank = Arrays.binarySearch(sortedPosition, position[i]);
+			keyed[i] = (rank << 32) | i;
+		}
+		Arrays.sort(keyed);
+		int[] sorted = new int[part.length];
+		for (int i = 0; i < part.length; i++) {
+			sorted[i] = part[(int) keyed[i]];
+		}
+		return sorted;
+	}
+
+	/**
+	 * Split a sorted part in the middle and find a vertex separator: the 
+	 * boundary nodes of whichever half has fewer of them.
+	 * @param sorted The part, sorted along the cut direction
+	 * @param separator Set for the positions of the separator nodes
+	 * @return The size of the separator
+	 */
+	private int separate(int[] sorted, boolean[] separator)
+	{
+		currentStamp++;
+		int half = sorted.length / 2;
+		for (int i = 0; i < sorted.length; i++) {
+			stamp[sorted[i]] = currentStamp;
+			high[sorted[i]] = (i >= half);
+		}
+		int lowBoundary = 0, highBoundary = 0;
+		boolean[] boundary = new boolean[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			int v = sorted[i];
+			for (int j = firstAdj[v]; j < firstAdj[v + 1]; j++) {
+				int w = adj[j];
+				if (stamp[w] == currentStamp && high[w] != high[v]) {
+					boundary[i] = true;
+					if (high[v]) {
+						highBoundary++;
+					}
+					else {
+						lowBoundary++;
+					}
+					break;
+				}
+			}
+		}
+		boolean useHigh = highBoundary < lowBoundary;
+		for (int i = 0; i < sorted.length; i++) {
+			separator[i] = boundary[i] && ((i >= half) == useHigh);
+		}
+		return useHigh ? highBoundary : lowBoundary;
+	}
+}
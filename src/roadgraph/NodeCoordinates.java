@@ -0,0 +1,102 @@
+package roadgraph;
+
+import geography.GeographicPoint;
+
+/**
+ * The locations of a graph's nodes as fixed-point ints, in units of
+ * 1e-7 degree (about a centimetre), with a straight line distance
+ * between them that costs a few multiplies instead of the trigonometry of
+ * GeographicPoint.distance.  Map data gives coordinates to seven decimals,
+ * so they are kept exactly.
+ *
+ * The distance treats the map as flat, scaling longitude by the cosine of
+ * the latitude farthest from the equator, and shrinks the result by a
+ * factor k = 1 - s*s/24, where s is the largest span of latitude or
+ * longitude on the map in radians.  It is never more than the great
+ * circle distance: that distance is 2R asin(sqrt(a)) >= 2R sqrt(a), where
+ *   a = sin^2(dLat/2) + cos(lat1) cos(lat2) sin^2(dLon/2)
+ * and sin(x) >= x (1 - x*x/6), so each sine is at least k times its angle,
+ * while both cosines are at least the smallest on the map.  Being a fixed
+ * norm of the coordinate differences it also obeys the triangle
+ * inequality, so as an A* heuristic it is consistent and a search may
+ * settle each node once.  It falls short of the true distance by at most
+ * the spread of cos(lat) over the map, under 1% for a city, plus a few
+ * parts per million.
+ *
+ * A map that spans more than 180 degrees of longitude, across the date
+ * line, would measure some distances the long way round, so there the
+ * distance is 0.
+ *
+ */
+final class NodeCoordinates {
+
+	/** Fixed-point units per degree */
+	static final double E7 = 1e7;
+
+	/** The radius of the earth in km, as GeographicPoint uses */
+	static final double EARTH_RADIUS = 6373;
+
+	private final int[] lat;
+	private final int[] lon;
+	private final double latScale;
+	private final double lonScale;
+
+	/**
+	 * @param points The node locations, by id
+	 */
+	NodeCoordinates(GeographicPoint[] points)
+	{
+		int n = points.length;
+		lat = new int[n];
+		lon = new int[n];
+		int minLat = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE;
+		int minLon = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+		for (int v = 0; v < n; v++) {
+			lat[v] = toE7(points[v].getX());
+			lon[v] = toE7(points[v].getY());
+			minLat = Math.min(minLat, lat[v]);
+			maxLat = Math.max(maxLat, lat[v]);
+			minLon = Math.min(minLon, lon[v]);
+			maxLon = Math.max(maxLon, lon[v]);
+		}
+		double radians = Math.toRadians(1 / E7);
+		double latSpan = (n == 0) ? 0 : ((double) maxLat - minLat) * radians;
+		double lonSpan = (n == 0) ? 0 : ((double) maxLon - minLon) * radians;
+		double span = Math.max(latSpan, lonSpan);
+		double k = (lonSpan > Math.PI) ? 0.0 : Math.max(0.0, 1 - span * span / 24);
+		double farthest = (n == 0) ? 0 : Math.max(Math.abs((double) minLat), Math.abs((double) maxLat));
+		double minCos = Math.max(0.0, Math.cos(farthest * radians));
+		latScale = EARTH_RADIUS * radians * k;
+		lonScale = latScale * minCos;
+	}
+
+	/** @return A coordinate in degrees as fixed point */
+	static int toE7(double degrees)
+	{
+		return (int) Math.round(degrees * E7);
+	}
+
+	/** @return The latitude of a node in 1e-7 degrees */
+	int getLatE7(int v)
+	{
+		return lat[v];
+	}
+
+	/** @return The longitude of a node in 1e-7 degrees */
+	int getLonE7(int v)
+	{
+		return lon[v];
+	}
+
+	/**
+	 * @return A distance in km between two nodes that is at most the
+	 *   great circle distance between them
+	 */
+	double lowerBound(int u, int v)
+	{
+		// the longitudes can differ by more than an int holds
+		double dy = (lat[u] - lat[v]) * latScale;
+		double dx = ((double) lon[u] - lon[v]) * lonScale;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+}
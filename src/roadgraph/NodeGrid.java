@@ -0,0 +1,169 @@
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/**
+ * A uniform grid over the nodes of a graph, used to find the node 
+ * closest to an arbitrary point without looking at every node.
+ * 
+ * Points are projected onto a flat plane (longitude scaled by the cosine
+ * of the mean latitude), which is accurate enough to pick the closest
+ * node within the extent of a city map.  The grid is built once and only
+ * read afterwards, so any number of threads can query it.
+ *
+ */
+class NodeGrid
+{
+	/** Aim for about this many nodes in each cell */
+	private static final int NODES_PER_CELL = 2;
+	
+	private final MapNode[] nodes;
+	private final double[] xs;
+	private final double[] ys;
+	private final double cosLat;
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int cols;
+	private final int rows;
+	// nodes of cell c are cellNodes[cellStart[c] .. cellStart[c+1])
+	private final int[] cellStart;
+	private final int[] cellNodes;
+
+	/**
+	 * Build the grid over a list of nodes
+	 * @param nodeList The nodes to index; must not be empty
+	 */
+	NodeGrid(List<MapNode> nodeList)
+	{
+		int n = nodeList.size();
+		nodes = nodeList.toArray(new MapNode[n]);
+		
+		double latSum = 0;
+		for (MapNode node : nodes) {
+			latSum += node.getLocation().getX();
+		}
+		cosLat = Math.cos(Math.toRadians(latSum / n));
+		
+		xs = new double[n];
+		ys = new double[n];
+		double loX = Double.POSITIVE_INFINITY, hiX = Double.NEGATIVE_INFINITY;
+		double loY = Double.POSITIVE_INFINITY, hiY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			xs[i] = projectX(nodes[i].getLocation());
+			ys[i] = projectY(nodes[i].getLocation());
+			loX = Math.min(loX, xs[i]);
+			hiX = Math.max(hiX, xs[i]);
+			loY = Math.min(loY, ys[i]);
+			hiY = Math.max(hiY, ys[i]);
+		}
+		minX = loX;
+		minY = loY;
+		
+		// square cells sized so each holds NODES_PER_CELL nodes on average
+		double width = Math.max(hiX - loX, 1e-9);
+		double height = Math.max(hiY - loY, 1e-9);
+		double cells = Math.max(1.0, (double) n / NODES_PER_CELL);
+		cellSize = Math.max(Math.sqrt(width * height / cells), 
+		                    Math.max(width, height) / 1024);
+		cols = (int) (width / cellSize) + 1;
+		rows = (int) (height / cellSize) + 1;
+		
+		// counting sort of the nodes by cell
+		int[] cellOf = new int[n];
+		cellStart = new int[cols * rows + 1];
+		for (int i = 0; i < n; i++) {
+			cellOf[i] = cellRow(ys[i]) * cols + cellCol(xs[i]);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cols * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		int[] fill = Arrays.copyOf(cellStart, cols * rows);
+		cellNodes = new int[n];
+		for (int i = 0; i < n; i++) {
+			cellNodes[fill[cellOf[i]]++] = i;
+		}
+	}
+	
+	private double projectX(GeographicPoint p)
+	{
+		return p.getY() * cosLat;
+	}
+	
+	private double projectY(GeographicPoint p)
+	{
+		return p.getX();
+	}
+	
+	private int cellCol(double x)
+	{
+		int c = (int) ((x - minX) / cellSize);
+		return Math.max(0, Math.min(cols - 1, c));
+	}
+	
+	private int cellRow(double y)
+	{
+		int r = (int) ((y - minY) / cellSize);
+		return Math.max(0, Math.min(rows - 1, r));
+	}
+
+	/**
+	 * Find the node closest to a point
+	 * @param point The point to search around
+	 * @return The closest node
+	 * @throws IllegalArgumentException If the point's coordinates are not 
+	 *   finite, so no node is closer than any other
+	 */
+	MapNode nearest(GeographicPoint point)
+	{
+		double x = projectX(point);
+		double y = projectY(point);
+		int col = cellCol(x);
+		int row = cellRow(y);
+		
+		int best = -1;
+		double bestDist = Double.POSITIVE_INFINITY;
+		int maxRing = Math.max(cols, rows);
+		// Search rings of cells around the point's cell.  Everything in
+		// ring r is at least (r - 1) cells away, so stop once that is 
+		// further than the best node found so far.
+		for (int r = 0; r <= maxRing; r++) {
+			double bound = (r - 1) * cellSize;
+			if (best >= 0 && bound * bound > bestDist) {
+				break;
+			}
+			for (int cr = row - r; cr <= row + r; cr++) {
+				if (cr < 0 || cr >= rows) {
+					continue;
+				}
+				boolean edgeRow = (cr == row - r || cr == row + r);
+				for (int cc = col - r; cc <= col + r; cc += (edgeRow ? 1 : 2 * r)) {
+					if (cc >= 0 && cc < cols) {
+						int cell = cr * cols + cc;
+						for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+							int i = cellNodes[k];
+							double dx = xs[i] - x;
+							double dy = ys[i] - y;
+							double d = dx * dx + dy * dy;
+							if (d < bestDist) {
+								bestDist = d;
+								best = i;
+							}
+						}
+					}
+					if (r == 0) {
+						break;
+					}
+				}
+			}
+		}
+		if (best < 0) {
+			throw new IllegalArgumentException("No node is nearest to " + point);
+		}
+		return nodes[best];
+	}
+}
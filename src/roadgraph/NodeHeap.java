@@ -0,0 +1,113 @@
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of node ids keyed by double priorities, stored in
+ * two primitive arrays.  A node may be pushed again with a better key
+ * instead of decreasing its key in place; the search skips the stale
+ * copies when they are popped.
+ *
+ */
+class NodeHeap
+{
+	private int[] nodes;
+	private double[] keys;
+	private int size;
+
+	NodeHeap()
+	{
+		nodes = new int[64];
+		keys = new double[64];
+		size = 0;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Empty the heap, and give back its arrays if they have grown longer
+	 * than a limit
+	 * @param limit The most entries to keep room for
+	 */
+	void clear(int limit)
+	{
+		size = 0;
+		if (nodes.length > limit) {
+			int length = Math.max(64, limit);
+			nodes = new int[length];
+			keys = new double[length];
+		}
+	}
+
+	/**
+	 * Add a node to the heap
+	 * @param node The node id
+	 * @param key The priority, smallest first
+	 */
+	void push(int node, double key)
+	{
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			keys = Arrays.copyOf(keys, size * 2);
+		}
+		// sift up
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (keys[parent] <= key) {
+				break;
+			}
+			nodes[i] = nodes[parent];
+			keys[i] = keys[parent];
+			i = parent;
+		}
+		nodes[i] = node;
+		keys[i] = key;
+	}
+
+	/** @return The key of the node at the top of the heap */
+	double peekKey()
+	{
+		return keys[0];
+	}
+
+	/**
+	 * Remove the node with the smallest key
+	 * @return The node id
+	 */
+	int pop()
+	{
+		int top = nodes[0];
+		size--;
+		if (size > 0) {
+			int node = nodes[size];
+			double key = keys[size];
+			// sift down
+			int i = 0;
+			int half = size >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && keys[child + 1] < keys[child]) {
+					child++;
+				}
+				if (key <= keys[child]) {
+					break;
+				}
+				nodes[i] = nodes[child];
+				keys[i] = keys[child];
+				i = child;
+			}
+			nodes[i] = node;
+			keys[i] = key;
+		}
+		return top;
+	}
+}
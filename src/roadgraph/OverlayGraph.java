@@ -0,0 +1,394 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/**
+ * The metric independent part of a multi-level overlay over a road graph,
+ * in the manner of customizable route planning (CRP).
+ * 
+ * The graph is split into nested cells (see InertialFlow).  A node is a 
+ * boundary node of its cell on a level if a road joins it to a node in 
+ * another cell on that level.  For each cell the overlay keeps a matrix 
+ * of the least costs between its boundary nodes, a clique standing for 
+ * everything inside the cell.  A query can then cross a cell in one step,
+ * only searching the road graph itself in the cells around the start and
+ * the goal.
+ * 
+ * The matrices are filled by customize, one cell at a time: cells on 
+ * level 1 are searched on the roads inside them, and cells on higher
+ * levels on the cliques of the level below.  Cells on the same level are
+ * independent, so they are customized in parallel.  Only customization 
+ * depends on the edge weights; the partition is made once per map.
+ *
+ */
+public class OverlayGraph {
+
+	/** Cell sizes used when none are given: levels of 2^8, 2^11, 2^14 and 2^17 nodes */
+	public static final int[] DEFAULT_CELL_SIZES = { 1 << 8, 1 << 11, 1 << 14, 1 << 17 };
+
+	// Cells customized by one task before it stops splitting
+	private static final int SPLIT_THRESHOLD = 4;
+
+	private final CsrGraph graph;
+	private final MultiLevelPartition partition;
+	
+	// Per level (counted from 0): the boundary nodes of cell c are 
+	// boundary[l][firstBoundary[l][c]] onward, and boundaryIndex[l][v] is
+	// v's position among them or -1; the matrix of cell c starts at 
+	// matrixOffset[l][c] in the level's weights, row by row
+	private final int[][] firstBoundary;
+	private final int[][] boundary;
+	private final int[][] boundaryIndex;
+	private final int[][] matrixOffset;
+
+	// Scratch for the searches run by customization, one per thread
+	private static final ThreadLocal<SearchSpace> SEARCH_SPACE = new ThreadLocal<SearchSpace>() {
+		@Override
+		protected SearchSpace initialValue() {
+			return new SearchSpace();
+		}
+	};
+
+	/**
+	 * Partition a graph with the default cell sizes and build its overlay.
+	 * Levels whose cells could hold the whole graph are left out.
+	 * @param graph The graph
+	 * @return The overlay, ready to customize
+	 */
+	public static OverlayGraph build(MapGraph graph)
+	{
+		CsrGraph csr = graph.getCsr();
+		int levels = 1;
+		while (levels < DEFAULT_CELL_SIZES.length && DEFAULT_CELL_SIZES[levels] < csr.getNumNodes()) {
+			levels++;
+		}
+		return build(graph, Arrays.copyOf(DEFAULT_CELL_SIZES, levels));
+	}
+
+	/**
+	 * Partition a graph and build its overlay
+	 * @param graph The graph
+	 * @param maxCellSizes The most nodes a cell may hold on each level,
+	 *   smallest first
+	 * @return The overlay, ready to customize
+	 */
+	public static OverlayGraph build(MapGraph graph, int... maxCellSizes)
+	{
+		CsrGraph csr = graph.getCsr();
+		return new OverlayGraph(csr, InertialFlow.partition(csr, maxCellSizes));
+	}
+
+	/**
+	 * Build the overlay for a partition
+	 * @param graph The graph
+	 * @param partition Its cells
+	 */
+	OverlayGraph(CsrGraph graph, MultiLevelPartition partition)
+	{
+		this.graph = graph;
+		this.partition = partition;
+		int levels = partition.getNumLevels();
+		int n = graph.getNumNodes();
+		firstBoundary = new int[levels][];
+		boundary = new int[levels][];
+		boundaryIndex = new int[levels][];
+		matrixOffset = new int[levels][];
+		for (int l = 0; l < levels; l++) {
+			int[] cells = partition.cellsOn(l + 1);
+			int numCells = partition.getNumCells(l + 1);
+			boolean[] isBoundary = new boolean[n];
+			for (int v = 0; v < n; v++) {
+				for (int a = graph.firstOut(v); a < graph.firstOut(v + 1); a++) {
+					int w = graph.head(a);
+					if (cells[v] != cells[w]) {
+						isBoundary[v] = true;
+						isBoundary[w] = true;
+					}
+				}
+			}
+			
+			int[] first = new int[numCells + 1];
+			for (int v = 0; v < n; v++) {
+				if (isBoundary[v]) {
+					first[cells[v] + 1]++;
+				}
+			}
+			for (int c = 0; c < numCells; c++) {
+				first[c + 1] += first[c];
+			}
+			int[] nodes = new int[first[numCells]];
+			int[] index = new int[n];
+			Arrays.fill(index, -1);
+			int[] fill = Arrays.copyOf(first, numCells);
+			for (int v = 0; v < n; v++) {
+				if (isBoundary[v]) {
+					index[v] = fill[cells[v]] - first[cells[v]];
+					nodes[fill[cells[v]]++] = v;
+				}
+			}
+			int[] offset = new int[numCells + 1];
+			for (int c = 0; c < numCells; c++) {
+				int size = first[c + 1] - first[c];
+				offset[c + 1] = offset[c] + size * size;
+			}
+			firstBoundary[l] = first;
+			boundary[l] = nodes;
+			boundaryIndex[l] = index;
+			matrixOffset[l] = offset;
+		}
+	}
+
+	/**
+	 * Compute the cliques of every cell for a snapshot of the graph's 
+	 * weights, in parallel on the common fork-join pool.
+	 * @param weights The snapshot, e.g. MapGraph.getSnapshot()
+	 * @return The customized overlay
+	 */
+	public OverlayMetric customize(GraphSnapshot weights)
+	{
+		return customize(graph.arcCosts(weights), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Compute the cliques of every cell for a cost of every arc, level by
+	 * level from the bottom, with the cells of each level in parallel.
+	 * @param arcCosts The cost of each arc, indexed like the CsrGraph's arcs;
+	 *   infinite for arcs that cannot be used
+	 * @param pool Where to customize the cells, or null to do it all on the
+	 *   calling thread
+	 * @return The customized overlay
+	 */
+	public OverlayMetric customize(double[] arcCosts, ForkJoinPool pool)
+	{
+		if (arcCosts.length != graph.getNumArcs()) {
+			throw new IllegalArgumentException("Expected " + graph.getNumArcs() + 
+					" arc costs but got " + arcCosts.length);
+		}
+		double[][] cliques = new double[getNumLevels()][];
+		for (int l = 0; l < cliques.length; l++) {
+			int numCells = partition.getNumCells(l + 1);
+			cliques[l] = new double[matrixOffset[l][numCells]];
+			CellTask task = new CellTask(l, 0, numCells, arcCosts, cliques);
+			if (pool == null) {
+				task.compute();
+			}
+			else {
+				pool.invoke(task);
+			}
+		}
+		return new OverlayMetric(this, arcCosts, cliques);
+	}
+
+	/** Customizes a range of cells on one level, splitting it in half until it is small */
+	@SuppressWarnings("serial")
+	private class CellTask extends RecursiveAction {
+		private final int level, from, to;
+		private final double[] arcCosts;
+		private final double[][] cliques;
+
+		CellTask(int level, int from, int to, double[] arcCosts, double[][] cliques) {
+			this.level = level;
+			this.from = from;
+			this.to = to;
+			this.arcCosts = arcCosts;
+			this.cliques = cliques;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SPLIT_THRESHOLD) {
+				for (int c = from; c < to; c++) {
+					customizeCell(level, c, arcCosts, cliques);
+				}
+			}
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new CellTask(level, from, mid, arcCosts, cliques),
+						new CellTask(level, mid, to, arcCosts, cliques));
+			}
+		}
+	}
+
+	/**
+	 * Fill the matrix of one cell by searching from each of its boundary 
+	 * nodes inside the cell, on the level below
+	 */
+	private void customizeCell(int l, int c, double[] arcCosts, double[][] cliques)
+	{
+		int first = firstBoundary[l][c];
+		int size = firstBoundary[l][c + 1] - first;
+		int offset = matrixOffset[l][c];
+		int[] cells = partition.cellsOn(l + 1);
+		int[] lowerCells = (l == 0) ? null : partition.cellsOn(l);
+		SearchSpace space = SEARCH_SPACE.get();
+		for (int i = 0; i < size; i++) {
+			space.reset(graph.getNumNodes());
+			NodeHeap heap = space.heap;
+			space.reach(boundary[l][first + i], 0.0, null);
+			heap.push(boundary[l][first + i], 0.0);
+			int remaining = size;
+			while (!heap.isEmpty() && remaining > 0) {
+				int v = heap.pop();
+				if (space.isSettled(v)) {
+					continue;
+				}
+				space.settle(v);
+				if (boundaryIndex[l][v] >= 0) {
+					remaining--;
+				}
+				double d = space.getDist(v);
+				if (l > 0) {
+					// Cross v's cell on the level below in one step
+					int sub = lowerCells[v];
+					int subFirst = firstBoundary[l - 1][sub];
+					int subSize = firstBoundary[l - 1][sub + 1] - subFirst;
+					int row = matrixOffset[l - 1][sub] + boundaryIndex[l - 1][v] * subSize;
+					for (int j = 0; j < subSize; j++) {
+						relax(space, boundary[l - 1][subFirst + j], d + cliques[l - 1][row + j]);
+					}
+				}
+				for (int a = graph.firstOut(v); a < graph.firstOut(v + 1); a++) {
+					int w = graph.head(a);
+					if (cells[w] == c && (l == 0 || lowerCells[w] != lowerCells[v])) {
+						relax(space, w, d + arcCosts[a]);
+					}
+				}
+			}
+			for (int j = 0; j < size; j++) {
+				int w = boundary[l][first + j];
+				cliques[l][offset + i * size + j] = space.isSettled(w) ? 
+						space.getDist(w) : Double.POSITIVE_INFINITY;
+			}
+		}
+	}
+
+	private static void relax(SearchSpace space, int w, double d)
+	{
+		if (d < Double.POSITIVE_INFINITY && !space.isSettled(w) && 
+				(!space.isReached(w) || d < space.getDist(w))) {
+			space.reach(w, d, null);
+			space.heap.push(w, d);
+		}
+	}
+
+	CsrGraph getGraph() { return graph; }
+	int[] firstBoundary(int l) { return firstBoundary[l]; }
+	int[] boundary(int l) { return boundary[l]; }
+	int[] boundaryIndex(int l) { return boundaryIndex[l]; }
+	int[] matrixOffset(int l) { return matrixOffset[l]; }
+
+	/** @return The partition the overlay is built on */
+	public MultiLevelPartition getPartition()
+	{
+		return partition;
+	}
+
+	/** @return The number of levels of cells */
+	public int getNumLevels()
+	{
+		return partition.getNumLevels();
+	}
+
+	/**
+	 * @param level A level from 1 to getNumLevels()
+	 * @return The number of boundary nodes on that level
+	 */
+	public int getNumBoundaryNodes(int level)
+	{
+		return boundary[level - 1].length;
+	}
+
+	/**
+	 * @param level A level from 1 to getNumLevels()
+	 * @return The number of entries in the matrices of that level
+	 */
+	public int getNumCliqueEntries(int level)
+	{
+		return matrixOffset[level - 1][partition.getNumCells(level)];
+	}
+
+	/**
+	 * Partition a map, time customization with and without the pool 
+	 * (after one run to warm up), and check random queries against 
+	 * Dijkstra.
+	 * 
+	 * Usage: OverlayGraph FILE.map [queries [cell sizes...]]
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length < 1) {
+			System.err.println("Usage: OverlayGraph FILE.map [queries [cell sizes...]]");
+			System.exit(2);
+		}
+		int queries = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		MapGraph graph = new MapGraph();
+		GraphLoader.loadRoadMap(args[0], graph);
+		System.out.println(graph.getNumVertices() + " intersections, " + 
+				graph.getNumEdges() + " road segments");
+		
+		long start = System.nanoTime();
+		OverlayGraph overlay;
+		if (args.length > 2) {
+			int[] sizes = new int[args.length - 2];
+			for (int i = 0; i < sizes.length; i++) {
+				sizes[i] = Integer.parseInt(args[i + 2]);
+			}
+			overlay = build(graph, sizes);
+		}
+		else {
+			overlay = build(graph);
+		}
+		System.out.println(String.format(Locale.ROOT, "Partitioned in %.1f ms", 
+				(System.nanoTime() - start) / 1e6));
+		MultiLevelPartition partition = overlay.getPartition();
+		for (int l = 1; l <= overlay.getNumLevels(); l++) {
+			System.out.println(String.format(Locale.ROOT, 
+					"  level %d: %d cells of at most %d nodes, %d boundary nodes, %d clique entries",
+					l, partition.getNumCells(l), partition.getMaxCellSize(l), 
+					overlay.getNumBoundaryNodes(l), overlay.getNumCliqueEntries(l)));
+		}
+		
+		double[] costs = graph.getCsr().arcCosts(graph.getSnapshot());
+		OverlayMetric metric = overlay.customize(costs, null);
+		for (ForkJoinPool pool : new ForkJoinPool[] { null, ForkJoinPool.commonPool() }) {
+			start = System.nanoTime();
+			metric = overlay.customize(costs, pool);
+			System.out.println(String.format(Locale.ROOT, "Customized %s in %.1f ms",
+					(pool == null) ? "sequentially" : "on " + pool.getParallelism() + " threads",
+					(System.nanoTime() - start) / 1e6));
+		}
+		
+		Random random = new Random(42);
+		List<GeographicPoint> points = new ArrayList<GeographicPoint>(graph.getVertices());
+		int mismatches = 0;
+		long overlayNanos = 0, dijkstraNanos = 0;
+		for (int i = 0; i < queries; i++) {
+			GeographicPoint from = points.get(random.nextInt(points.size()));
+			GeographicPoint to = points.get(random.nextInt(points.size()));
+			start = System.nanoTime();
+			SearchResult result = metric.route(from, to);
+			overlayNanos += System.nanoTime() - start;
+			start = System.nanoTime();
+			double expected = graph.distances(from, Collections.singletonList(to))[0];
+			dijkstraNanos += System.nanoTime() - start;
+			double actual = result.isFound() ? graph.getPathLength(result.getPath()) : Double.POSITIVE_INFINITY;
+			if (Math.abs(actual - expected) > 1e-9 * Math.max(1, expected)) {
+				mismatches++;
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, 
+				"%d queries, %d mismatches; overlay %.1f us, dijkstra %.1f us on average",
+				queries, mismatches, overlayNanos / 1e3 / Math.max(1, queries), 
+				dijkstraNanos / 1e3 / Math.max(1, queries)));
+	}
+}
@@ -0,0 +1,305 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/**
+ * The cell cliques of a multi-level overlay for one metric, and the 
+ * queries answered with them.  Immutable once customized, so it can be 
+ * shared by any number of searching threads; when the graph's weights 
+ * change, customize again and swap in the new metric.
+ * 
+ * A query is a bidirectional Dijkstra search on a graph that depends on
+ * the start and goal.  Each node is searched on the highest level on which
+ * its cell holds neither the start nor the goal: on the roads themselves 
+ * near the ends, and on ever larger cells, through their cliques and the 
+ * roads leaving them, further away.  Clique steps on the route are 
+ * expanded afterwards by searching the roads inside their cell.
+ *
+ */
+public final class OverlayMetric {
+
+	private final OverlayGraph overlay;
+	private final double[] arcCosts;
+	private final double[][] cliques;
+
+	/** Both searches of one query and how each node was reached */
+	private static class Query {
+		final SearchSpace forward = new SearchSpace();
+		final SearchSpace backward = new SearchSpace();
+		final SearchSpace unpack = new SearchSpace();
+		int[] forwardParent = new int[0];
+		int[] backwardParent = new int[0];
+		// The level of the step that reached a node, 0 for a road
+		int[] forwardLevel = new int[0];
+		int[] backwardLevel = new int[0];
+
+		void reset(int n) {
+			forward.reset(n);
+			backward.reset(n);
+			// sized like the searches, so they shrink along with them
+			int size = forward.capacity();
+			if (forwardParent.length != size) {
+				forwardParent = new int[size];
+				backwardParent = new int[size];
+				forwardLevel = new int[size];
+				backwardLevel = new int[size];
+			}
+		}
+	}
+
+	private static final ThreadLocal<Query> QUERY = new ThreadLocal<Query>() {
+		@Override
+		protected Query initialValue() {
+			return new Query();
+		}
+	};
+
+	OverlayMetric(OverlayGraph overlay, double[] arcCosts, double[][] cliques)
+	{
+		this.overlay = overlay;
+		this.arcCosts = arcCosts;
+		this.cliques = cliques;
+	}
+
+	/** @return The overlay these cliques are for */
+	public OverlayGraph getOverlay()
+	{
+		return overlay;
+	}
+
+	/**
+	 * Find the least cost route between two intersections
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The route, or a result with no path if either point is not an
+	 *   intersection or the goal cannot be reached
+	 */
+	public SearchResult route(GeographicPoint start, GeographicPoint goal)
+	{
+		SearchStats.Counter counter = new SearchStats.Counter();
+		CsrGraph graph = overlay.getGraph();
+		int s = graph.getNode(start);
+		int t = graph.getNode(goal);
+		List<GeographicPoint> path = null;
+		if (s >= 0 && t >= 0) {
+			Query query = QUERY.get();
+			int meet = search(s, t, query, counter);
+			if (meet >= 0) {
+				path = new ArrayList<GeographicPoint>();
+				for (int v : unpack(s, t, meet, query)) {
+					path.add(graph.getLocation(v));
+				}
+			}
+		}
+		return new SearchResult("crp", start, goal, path, counter.finish());
+	}
+
+	/**
+	 * Find the least cost between two intersections
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The cost of the best route, or infinity if there is none
+	 */
+	public double distance(GeographicPoint start, GeographicPoint goal)
+	{
+		CsrGraph graph = overlay.getGraph();
+		int s = graph.getNode(start);
+		int t = graph.getNode(goal);
+		if (s < 0 || t < 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		Query query = QUERY.get();
+		int meet = search(s, t, query, new SearchStats.Counter());
+		return (meet < 0) ? Double.POSITIVE_INFINITY : 
+			query.forward.getDist(meet) + query.backward.getDist(meet);
+	}
+
+	/**
+	 * @return The level a node is searched on: the highest on which its 
+	 *   cell holds neither s nor t, or 0 if there is none
+	 */
+	private int queryLevel(int v, int s, int t)
+	{
+		MultiLevelPartition partition = overlay.getPartition();
+		for (int l = partition.getNumLevels(); l > 0; l--) {
+			int cell = partition.getCell(l, v);
+			if (cell != partition.getCell(l, s) && cell != partition.getCell(l, t)) {
+				return l;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Run the bidirectional search
+	 * @return The node where the best route meets, or -1 if there is no route
+	 */
+	private int search(int s, int t, Query query, SearchStats.Counter counter)
+	{
+		CsrGraph graph = overlay.getGraph();
+		query.reset(graph.getNumNodes());
+		SearchSpace forward = query.forward;
+		SearchSpace backward = query.backward;
+		forward.reach(s, 0.0, null);
+		forward.heap.push(s, 0.0);
+		backward.reach(t, 0.0, null);
+		backward.heap.push(t, 0.0);
+		query.forwardParent[s] = -1;
+		query.backwardParent[t] = -1;
+		
+		double[] best = { (s == t) ? 0.0 : Double.POSITIVE_INFINITY };
+		int[] meet = { (s == t) ? s : -1 };
+		while (true) {
+			double forwardKey = forward.heap.isEmpty() ? Double.POSITIVE_INFINITY : forward.heap.peekKey();
+			double backwardKey = backward.heap.isEmpty() ? Double.POSITIVE_INFINITY : backward.heap.peekKey();
+			if (forwardKey + backwardKey >= best[0]) {
+				break;
+			}
+			boolean isForward = forwardKey <= backwardKey;
+			SearchSpace space = isForward ? forward : backward;
+			int v = space.heap.pop();
+			counter.popped();
+			if (space.isSettled(v)) {
+				continue;
+			}
+			space.settle(v);
+			counter.settled();
+			if (isForward) {
+				expand(v, s, t, true, forward, backward, query.forwardParent, query.forwardLevel, best, meet, counter);
+			}
+			else {
+				expand(v, s, t, false, backward, forward, query.backwardParent, query.backwardLevel, best, meet, counter);
+			}
+		}
+		return meet[0];
+	}
+
+	/**
+	 * Relax every step out of a settled node in one direction
+	 */
+	private void expand(int v, int s, int t, boolean isForward, SearchSpace space, SearchSpace other,
+			int[] parent, int[] parentLevel, double[] best, int[] meet, SearchStats.Counter counter)
+	{
+		CsrGraph graph = overlay.getGraph();
+		double d = space.getDist(v);
+		int level = queryLevel(v, s, t);
+		int[] cells = (level == 0) ? null : overlay.getPartition().cellsOn(level);
+		if (level > 0) {
+			int l = level - 1;
+			int cell = cells[v];
+			int first = overlay.firstBoundary(l)[cell];
+			int size = overlay.firstBoundary(l)[cell + 1] - first;
+			int offset = overlay.matrixOffset(l)[cell];
+			int i = overlay.boundaryIndex(l)[v];
+			for (int j = 0; j < size; j++) {
+				double cost = isForward ? cliques[l][offset + i * size + j] : cliques[l][offset + j * size + i];
+				relax(overlay.boundary(l)[first + j], v, level, d + cost, space, other, 
+						parent, parentLevel, best, meet, counter);
+			}
+		}
+		int end = isForward ? graph.firstOut(v + 1) : graph.firstIn(v + 1);
+		for (int i = isForward ? graph.firstOut(v) : graph.firstIn(v); i < end; i++) {
+			int a = isForward ? i : graph.inArc(i);
+			int w = isForward ? graph.head(a) : graph.tail(a);
+			if (level == 0 || cells[w] != cells[v]) {
+				relax(w, v, 0, d + arcCosts[a], space, other, parent, parentLevel, best, meet, counter);
+			}
+		}
+	}
+
+	private static void relax(int w, int v, int level, double d, SearchSpace space, SearchSpace other,
+			int[] parent, int[] parentLevel, double[] best, int[] meet, SearchStats.Counter counter)
+	{
+		if (d == Double.POSITIVE_INFINITY || space.isSettled(w) || 
+				(space.isReached(w) && d >= space.getDist(w))) {
+			return;
+		}
+		space.reach(w, d, null);
+		parent[w] = v;
+		parentLevel[w] = level;
+		space.heap.push(w, d);
+		counter.relaxed();
+		counter.pushed(space.heap.size());
+		if (other.isReached(w) && d + other.getDist(w) < best[0]) {
+			best[0] = d + other.getDist(w);
+			meet[0] = w;
+		}
+	}
+
+	/**
+	 * Turn the two half routes meeting at a node into the nodes of the 
+	 * whole route, expanding every clique step
+	 */
+	private List<Integer> unpack(int s, int t, int meet, Query query)
+	{
+		List<Integer> nodes = new ArrayList<Integer>();
+		nodes.add(meet);
+		for (int v = meet; v != s; v = query.forwardParent[v]) {
+			int u = query.forwardParent[v];
+			if (query.forwardLevel[v] > 0) {
+				List<Integer> inside = searchCell(u, v, query.forwardLevel[v], query.unpack);
+				for (int i = inside.size() - 2; i > 0; i--) {
+					nodes.add(inside.get(i));
+				}
+			}
+			nodes.add(u);
+		}
+		Collections.reverse(nodes);
+		for (int v = meet; v != t; v = query.backwardParent[v]) {
+			int w = query.backwardParent[v];
+			if (query.backwardLevel[v] > 0) {
+				List<Integer> inside = searchCell(v, w, query.backwardLevel[v], query.unpack);
+				for (int i = 1; i < inside.size() - 1; i++) {
+					nodes.add(inside.get(i));
+				}
+			}
+			nodes.add(w);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Find the best route between two boundary nodes of a cell on the 
+	 * roads inside it
+	 * @return The nodes of the route, both ends included
+	 */
+	private List<Integer> searchCell(int from, int to, int level, SearchSpace space)
+	{
+		CsrGraph graph = overlay.getGraph();
+		int[] cells = overlay.getPartition().cellsOn(level);
+		int cell = cells[from];
+		space.reset(graph.getNumNodes());
+		space.reach(from, 0.0, null);
+		space.heap.push(from, 0.0);
+		while (!space.heap.isEmpty()) {
+			int v = space.heap.pop();
+			if (space.isSettled(v)) {
+				continue;
+			}
+			space.settle(v);
+			if (v == to) {
+				break;
+			}
+			for (int a = graph.firstOut(v); a < graph.firstOut(v + 1); a++) {
+				int w = graph.head(a);
+				double d = space.getDist(v) + arcCosts[a];
+				if (cells[w] == cell && d < Double.POSITIVE_INFINITY && !space.isSettled(w) &&
+						(!space.isReached(w) || d < space.getDist(w))) {
+					space.reach(w, d, graph.getEdge(a));
+					space.heap.push(w, d);
+				}
+			}
+		}
+		List<Integer> route = new ArrayList<Integer>();
+		for (int v = to; v != from; v = space.getParentEdge(v).getStartNode().getId()) {
+			route.add(v);
+		}
+		route.add(from);
+		Collections.reverse(route);
+		return route;
+	}
+}
@@ -0,0 +1,357 @@
+package roadgraph;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import geography.GeographicPoint;
+
+import metrics.RouteCacheMXBean;
+
+/**
+ * A bounded least-recently-used cache of search results, for graphs that 
+ * answer the same queries again and again.  Results are keyed by the start
+ * and goal node ids, the algorithm, and the cost profile the search ran 
+ * with (the rush hour weighting in effect), so a query in a different 
+ * time bucket is searched again.
+ * 
+ * The cache is bounded both by its number of entries and by its weight,
+ * the total number of intersections in the cached paths; whichever limit
+ * is reached first evicts the least recently used entries.
+ * 
+ * Each entry remembers the version of the graph it was computed on, and 
+ * is dropped when read against a later version, so changes to the graph 
+ * or its weights never return stale routes.
+ * 
+ * The cache is split into independently locked segments so concurrent 
+ * searches rarely wait on each other.
+ *
+ */
+public class RouteCache implements RouteCacheMXBean {
+
+	/** The weight of an entry beyond its path, so empty results still count */
+	private static final int ENTRY_OVERHEAD = 1;
+
+	private static final int MAX_SEGMENTS = 16;
+
+	/** Identifies one query */
+	static final class Key {
+		final int start;
+		final int goal;
+		final String algorithm;
+		final double profile;
+
+		/**
+		 * @param start The id of the start node
+		 * @param goal The id of the goal node
+		 * @param algorithm The search used
+		 * @param profile The cost profile, e.g. the residential road weighting
+		 */
+		Key(int start, int goal, String algorithm, double profile) {
+			this.start = start;
+			this.goal = goal;
+			this.algorithm = algorithm;
+			this.profile = profile;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return start == k.start && goal == k.goal && profile == k.profile 
+					&& algorithm.equals(k.algorithm);
+		}
+
+		@Override
+		public int hashCode() {
+			int h = start * 31 + goal;
+			h = h * 31 + algorithm.hashCode();
+			long bits = Double.doubleToLongBits(profile);
+			return h * 31 + (int) (bits ^ (bits >>> 32));
+		}
+	}
+
+	private static final class Entry {
+		final SearchResult result;
+		final long version;
+		final int weight;
+
+		Entry(SearchResult result, long version, int weight) {
+			this.result = result;
+			this.version = version;
+			this.weight = weight;
+		}
+	}
+
+	/** One independently locked part of the cache */
+	private final class Segment {
+		// in access order, so the least recently used entry comes first
+		private final LinkedHashMap<Key,Entry> entries = new LinkedHashMap<Key,Entry>(16, 0.75f, true);
+		private final int maxEntries;
+		private final long maxWeight;
+		private long weight;
+
+		Segment(int maxEntries, long maxWeight) {
+			this.maxEntries = maxEntries;
+			this.maxWeight = maxWeight;
+		}
+
+		synchronized SearchResult get(Key key, long version) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.version != version) {
+				entries.remove(key);
+				weight -= entry.weight;
+				invalidations.incrementAndGet();
+				return null;
+			}
+			return entry.result;
+		}
+
+		synchronized void put(Key key, Entry entry) {
+			Entry old = entries.put(key, entry);
+			if (old != null) {
+				weight -= old.weight;
+			}
+			weight += entry.weight;
+			Iterator<Entry> it = entries.values().iterator();
+			while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+				Entry eldest = it.next();
+				it.remove();
+				weight -= eldest.weight;
+				evictions.incrementAndGet();
+			}
+		}
+
+		synchronized int size() {
+			return entries.size();
+		}
+
+		synchronized long getWeight() {
+			return weight;
+		}
+
+		synchronized void clear() {
+			entries.clear();
+			weight = 0;
+		}
+	}
+
+	private final Segment[] segments;
+	private final int maxEntries;
+	private final long maxWeight;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * Create an empty cache.
+	 * @param maxEntries The most results to keep
+	 * @param maxWeight The most intersections to keep across all cached paths
+	 */
+	public RouteCache(int maxEntries, long maxWeight) {
+		if (maxEntries < 1 || maxWeight < 1)
+			throw new IllegalArgumentException("Cache limits must be positive");
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		// small caches get fewer segments so each can hold a few entries
+		int n = 1;
+		while (n < MAX_SEGMENTS && n * 4 <= maxEntries) {
+			n *= 2;
+		}
+		segments = new Segment[n];
+		for (int i = 0; i < n; i++) {
+			segments[i] = new Segment((maxEntries + n - 1) / n, (maxWeight + n - 1) / n);
+		}
+	}
+
+	/**
+	 * Create a cache bounded by number of entries, allowing an average 
+	 * of 64 intersections per path.
+	 * @param maxEntries The most results to keep
+	 */
+	public RouteCache(int maxEntries) {
+		this(maxEntries, maxEntries * 64L);
+	}
+
+	private Segment segmentFor(Key key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (segments.length - 1)];
+	}
+
+	/**
+	 * Look up a query.
+	 * @param key The query
+	 * @param version The current version of the graph
+	 * @return The cached result, or null if there is none for this version
+	 */
+	SearchResult get(Key key, long version) {
+		SearchResult result = segmentFor(key).get(key, version);
+		if (result == null) {
+			misses.incrementAndGet();
+		}
+		else {
+			hits.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * Remember the result of a query.  The path is copied so callers 
+	 * cannot change the cached route.
+	 * @param key The query
+	 * @param result Its result
+	 * @param version The version of the graph it was computed on
+	 * @return The result as cached
+	 */
+	SearchResult put(Key key, SearchResult result, long version) {
+		SearchResult cached = result;
+		int weight = ENTRY_OVERHEAD;
+		if (result.isFound()) {
+			List<GeographicPoint> path = Collections.unmodifiableList(
+					new ArrayList<GeographicPoint>(result.getPath()));
+			cached = new SearchResult(result.getAlgorithm(), result.getStart(), 
+					result.getGoal(), path, result.getStats());
+			weight += path.size();
+		}
+		segmentFor(key).put(key, new Entry(cached, version, weight));
+		return cached;
+	}
+
+	/** Remove every cached route */
+	@Override
+	public void clear() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return (total == 0) ? 0.0 : (double) h / total;
+	}
+
+	@Override
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	@Override
+	public int getSize() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	@Override
+	public long getWeight() {
+		long weight = 0;
+		for (Segment segment : segments) {
+			weight += segment.getWeight();
+		}
+		return weight;
+	}
+
+	@Override
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	@Override
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * Register this cache with the platform MBean server.
+	 * @param name The name to register under, e.g. the map it serves
+	 */
+	public void registerMBean(String name) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName("roadgraph:type=RouteCache,name=" 
+					+ ObjectName.quote(name));
+			// a map that was unloaded and loaded again replaces its old cache
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+		}
+		catch (JMException e) {
+			System.err.println("Could not register route cache MBean: " + e);
+		}
+	}
+
+	/**
+	 * Render the statistics of several caches in the Prometheus text 
+	 * exposition format.
+	 * @param caches The caches by name
+	 * @return The text to add to a /metrics endpoint
+	 */
+	public static String toPrometheusText(Map<String,RouteCache> caches) {
+		StringBuilder sb = new StringBuilder();
+		metric(sb, caches, "hits_total", "counter", "Route queries answered from the cache.");
+		metric(sb, caches, "misses_total", "counter", "Route queries that had to be searched.");
+		metric(sb, caches, "evictions_total", "counter", "Routes evicted to stay within the limits.");
+		metric(sb, caches, "invalidations_total", "counter", "Routes dropped because the graph changed.");
+		metric(sb, caches, "entries", "gauge", "Routes in the cache.");
+		metric(sb, caches, "weight", "gauge", "Intersections on the routes in the cache.");
+		return sb.toString();
+	}
+
+	private static void metric(StringBuilder sb, Map<String,RouteCache> caches, 
+			String name, String type, String help) {
+		sb.append("# HELP roadgraph_route_cache_").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE roadgraph_route_cache_").append(name).append(' ').append(type).append('\n');
+		for (Map.Entry<String,RouteCache> e : caches.entrySet()) {
+			RouteCache c = e.getValue();
+			long value;
+			switch (name) {
+				case "hits_total": value = c.getHits(); break;
+				case "misses_total": value = c.getMisses(); break;
+				case "evictions_total": value = c.getEvictions(); break;
+				case "invalidations_total": value = c.getInvalidations(); break;
+				case "entries": value = c.getSize(); break;
+				default: value = c.getWeight(); break;
+			}
+			sb.append("roadgraph_route_cache_").append(name).append("{cache=\"")
+			  .append(e.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\"} ")
+			  .append(value).append('\n');
+		}
+	}
+}
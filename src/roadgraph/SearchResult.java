@@ -0,0 +1,80 @@
+package roadgraph;
+
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/**
+ * The outcome of one search: the path, if one was found, together
+ * with the counters describing how much work the search did.  A result
+ * answered from a route cache is marked cached, and its counters are
+ * those of the cache lookup.
+ *
+ */
+public final class SearchResult {
+
+	private final String algorithm;
+	private final GeographicPoint start;
+	private final GeographicPoint goal;
+	private final List<GeographicPoint> path;
+	private final SearchStats stats;
+	private final boolean cached;
+
+	/**
+	 * @param algorithm The name of the search, e.g. "dijkstra"
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param path The intersections from start to goal, or null if there is no path
+	 * @param stats The work done by the search
+	 */
+	public SearchResult(String algorithm, GeographicPoint start, GeographicPoint goal,
+			List<GeographicPoint> path, SearchStats stats)
+	{
+		this(algorithm, start, goal, path, stats, false);
+	}
+
+	/**
+	 * @param algorithm The name of the search, e.g. "dijkstra"
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param path The intersections from start to goal, or null if there is no path
+	 * @param stats The work done to answer the query
+	 * @param cached true if the path came from a route cache instead of a search
+	 */
+	public SearchResult(String algorithm, GeographicPoint start, GeographicPoint goal,
+			List<GeographicPoint> path, SearchStats stats, boolean cached)
+	{
+		this.algorithm = algorithm;
+		this.start = start;
+		this.goal = goal;
+		this.path = path;
+		this.stats = stats;
+		this.cached = cached;
+	}
+
+	public String getAlgorithm() { return algorithm; }
+	public GeographicPoint getStart() { return start; }
+	public GeographicPoint getGoal() { return goal; }
+
+	/**
+	 * @return The list of intersections that form the path from start to 
+	 *   goal (including both start and goal), or null if there is no path
+	 */
+	public List<GeographicPoint> getPath() { return path; }
+
+	/** @return true if a path was found */
+	public boolean isFound() { return path != null; }
+
+	public SearchStats getStats() { return stats; }
+
+	/** @return true if the path came from a route cache, without searching */
+	public boolean isCached() { return cached; }
+
+	@Override
+	public String toString()
+	{
+		return algorithm + " from " + start + " to " + goal + ": " +
+				(isFound() ? path.size() + " intersections" : "no path") + 
+				(cached ? " (cached)" : "") + " [" + stats + "]";
+	}
+}
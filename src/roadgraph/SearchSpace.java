@@ -0,0 +1,133 @@
+package roadgraph;
+
+import java.util.Arrays;
+
+import util.ScratchCapacity;
+
+/**
+ * Scratch arrays for one search, indexed by node id.  Each thread keeps
+ * one and reuses it, so a search neither allocates per-node state nor 
+ * writes to the shared graph.
+ * 
+ * Instead of clearing the arrays before every search, each search gets 
+ * a new epoch number, and an entry only counts if its stamp matches the 
+ * current epoch.
+ * 
+ * The arrays are sized to the graph being searched, and shrink again once
+ * a thread has gone on to search smaller graphs (see ScratchCapacity).
+ *
+ */
+class SearchSpace
+{
+	/** The heap a thread keeps per node of the graph it searches, roughly */
+	static final long BYTES_PER_NODE = 3 * 4 + 2 * 8 + 4 + 2 * (4 + 8);
+
+	private final ScratchCapacity capacity = new ScratchCapacity();
+	private int epoch;
+	private int[] reached;     // epoch in which dist/parent were set
+	private int[] settled;     // epoch in which the node was settled
+	private int[] estimated;   // epoch in which the heuristic was computed
+	private double[] dist;
+	private double[] heuristic;
+	private MapEdge[] parentEdge;
+	final NodeHeap heap = new NodeHeap();
+
+	SearchSpace()
+	{
+		resize(capacity.fit(0));
+	}
+
+	/**
+	 * Get ready for a new search on a graph of the given size.
+	 * @param numNodes The number of nodes in the graph
+	 */
+	void reset(int numNodes)
+	{
+		int size = capacity.fit(numNodes);
+		if (reached.length != size) {
+			resize(size);
+		}
+		// the heap may hold a node more than once, but rarely twice over
+		heap.clear(2 * size);
+		epoch++;
+		if (epoch == Integer.MAX_VALUE) {
+			// stamps from long ago could now look current
+			Arrays.fill(reached, 0);
+			Arrays.fill(settled, 0);
+			Arrays.fill(estimated, 0);
+			epoch = 1;
+		}
+	}
+
+	/** @return The number of nodes the arrays currently have room for */
+	int capacity()
+	{
+		return reached.length;
+	}
+
+	private void resize(int size)
+	{
+		reached = new int[size];
+		settled = new int[size];
+		estimated = new int[size];
+		dist = new double[size];
+		heuristic = new double[size];
+		parentEdge = new MapEdge[size];
+		epoch = 0;
+	}
+
+	/** @return The best known distance to the node, or infinity if not reached */
+	double getDist(int node)
+	{
+		return (reached[node] == epoch) ? dist[node] : Double.POSITIVE_INFINITY;
+	}
+
+	boolean isReached(int node)
+	{
+		return reached[node] == epoch;
+	}
+
+	/**
+	 * Record a (better) way to reach a node
+	 * @param node The node reached
+	 * @param d The distance to it
+	 * @param via The edge it was reached by, or null for the start
+	 */
+	void reach(int node, double d, MapEdge via)
+	{
+		reached[node] = epoch;
+		dist[node] = d;
+		parentEdge[node] = via;
+	}
+
+	MapEdge getParentEdge(int node)
+	{
+		return (reached[node] == epoch) ? parentEdge[node] : null;
+	}
+
+	boolean isSettled(int node)
+	{
+		return settled[node] == epoch;
+	}
+
+	void settle(int node)
+	{
+		settled[node] = epoch;
+	}
+
+	boolean hasHeuristic(int node)
+	{
+		return estimated[node] == epoch;
+	}
+
+	double getHeuristic(int node)
+	{
+		return heuristic[node];
+	}
+
+	void setHeuristic(int node, double h)
+	{
+		estimated[node] = epoch;
+		heuristic[node] = h;
+	}
+}
@@ -0,0 +1,142 @@
+package roadgraph;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counters describing the work done by one search.
+ *
+ */
+public final class SearchStats {
+
+	private final int nodesSettled;
+	private final int edgesRelaxed;
+	private final int heapPushes;
+	private final int heapPops;
+	private final int peakFrontier;
+	private final long wallNanos;
+	private final long allocatedBytes;
+
+	/**
+	 * @param nodesSettled Nodes whose final distance was fixed
+	 * @param edgesRelaxed Edges that improved the distance of their end node
+	 * @param heapPushes Insertions into the frontier
+	 * @param heapPops Removals from the frontier
+	 * @param peakFrontier The largest size of the frontier
+	 * @param wallNanos Elapsed time of the search
+	 * @param allocatedBytes Bytes allocated by the searching thread, or -1 if 
+	 *   the JVM cannot report it
+	 */
+	public SearchStats(int nodesSettled, int edgesRelaxed, int heapPushes, int heapPops,
+			int peakFrontier, long wallNanos, long allocatedBytes)
+	{
+		this.nodesSettled = nodesSettled;
+		this.edgesRelaxed = edgesRelaxed;
+		this.heapPushes = heapPushes;
+		this.heapPops = heapPops;
+		this.peakFrontier = peakFrontier;
+		this.wallNanos = wallNanos;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	public int getNodesSettled() { return nodesSettled; }
+	public int getEdgesRelaxed() { return edgesRelaxed; }
+	public int getHeapPushes() { return heapPushes; }
+	public int getHeapPops() { return heapPops; }
+	public int getPeakFrontier() { return peakFrontier; }
+	public long getWallNanos() { return wallNanos; }
+	public long getAllocatedBytes() { return allocatedBytes; }
+
+	@Override
+	public String toString()
+	{
+		return "settled=" + nodesSettled + " relaxed=" + edgesRelaxed +
+				" pushes=" + heapPushes + " pops=" + heapPops +
+				" peakFrontier=" + peakFrontier + 
+				" time=" + String.format("%.3f", wallNanos / 1e6) + "ms" +
+				(allocatedBytes >= 0 ? " allocated=" + allocatedBytes + "B" : "");
+	}
+
+	/**
+	 * Mutable counters updated by a search while it runs.
+	 * Not thread safe: each search uses its own Counter.
+	 */
+	public static final class Counter {
+		private int settled;
+		private int relaxed;
+		private int pushes;
+		private int pops;
+		private int peakFrontier;
+		private final long startNanos;
+		private final long startAllocated;
+
+		/** Start counting, and start the clock. */
+		public Counter()
+		{
+			startAllocated = allocatedBytes();
+			startNanos = System.nanoTime();
+		}
+
+		/** A node's final distance was fixed */
+		public void settled() { settled++; }
+
+		/** An edge improved the distance of its end node */
+		public void relaxed() { relaxed++; }
+
+		/** 
+		 * A node was added to the frontier
+		 * @param frontierSize The size of the frontier after the push
+		 */
+		public void pushed(int frontierSize)
+		{
+			pushes++;
+			if (frontierSize > peakFrontier) {
+				peakFrontier = frontierSize;
+			}
+		}
+
+		/** A node was removed from the frontier */
+		public void popped() { pops++; }
+
+		/** @return The number of nodes settled so far */
+		public int getSettled() { return settled; }
+
+		/**
+		 * Stop the clock.
+		 * @return The counters as an immutable SearchStats
+		 */
+		public SearchStats finish()
+		{
+			long elapsed = System.nanoTime() - startNanos;
+			long allocated = -1;
+			if (startAllocated >= 0) {
+				allocated = allocatedBytes() - startAllocated;
+			}
+			return new SearchStats(settled, relaxed, pushes, pops, peakFrontier, elapsed, allocated);
+		}
+	}
+
+	// Allocation counting is a HotSpot extension of the standard thread bean
+	private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+	private static com.sun.management.ThreadMXBean threadBean()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+			if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+				return hotspot;
+			}
+		}
+		return null;
+	}
+
+	// Bytes allocated so far by the current thread, or -1 if unknown
+	private static long allocatedBytes()
+	{
+		if (THREADS == null) {
+			return -1;
+		}
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,148 @@
+package roadgraph;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The speed at which traffic moves on each type of road, for weighing
+ * roads by travel time instead of length.  The types are those of the
+ * OpenStreetMap highway tag that the map maker fetches; roads of any
+ * other type move at the default speed.
+ *
+ * Tables are immutable; withSpeed makes a changed copy.
+ *
+ */
+public final class SpeedTable {
+
+	/** Typical speeds in km/h, for a table to start from */
+	public static final SpeedTable DEFAULT = new SpeedTable(defaultSpeeds(), 40.0);
+
+	private final Map<String,Double> speeds;
+	private final double defaultSpeed;
+	private final double maxSpeed;
+
+	private SpeedTable(Map<String,Double> speeds, double defaultSpeed)
+	{
+		this.speeds = Collections.unmodifiableMap(speeds);
+		this.defaultSpeed = defaultSpeed;
+		double max = defaultSpeed;
+		for (double speed : speeds.values()) {
+			max = Math.max(max, speed);
+		}
+		maxSpeed = max;
+	}
+
+	private static Map<String,Double> defaultSpeeds()
+	{
+		Map<String,Double> speeds = new LinkedHashMap<String,Double>();
+		speeds.put("motorway", 110.0);
+		speeds.put("trunk", 90.0);
+		speeds.put("primary", 70.0);
+		speeds.put("secondary", 60.0);
+		speeds.put("tertiary", 50.0);
+		speeds.put("unclassified", 40.0);
+		speeds.put("residential", 30.0);
+		speeds.put("motorway_link", 60.0);
+		speeds.put("trunk_link", 50.0);
+		speeds.put("primary_link", 45.0);
+		speeds.put("secondary_link", 40.0);
+		speeds.put("tertiary_link", 35.0);
+		speeds.put("living_street", 10.0);
+		return speeds;
+	}
+
+	private static void checkSpeed(double speed)
+	{
+		if (!(speed > 0) || Double.isInfinite(speed))
+			throw new IllegalArgumentException("Speeds must be more than 0 and finite, not " + speed);
+	}
+
+	/**
+	 * Copy the table with a different speed for one type of road
+	 * @param roadType The type of road, e.g. "residential"
+	 * @param speed The speed in km/h
+	 * @return The changed copy
+	 * @throws IllegalArgumentException If the speed is not positive and finite
+	 */
+	public SpeedTable withSpeed(String roadType, double speed)
+	{
+		checkSpeed(speed);
+		Map<String,Double> changed = new LinkedHashMap<String,Double>(speeds);
+		changed.put(roadType, speed);
+		return new SpeedTable(changed, defaultSpeed);
+	}
+
+	/**
+	 * Copy the table with a different speed for roads of types it does not list
+	 * @param speed The speed in km/h
+	 * @return The changed copy
+	 */
+	public SpeedTable withDefaultSpeed(double speed)
+	{
+		checkSpeed(speed);
+		return new SpeedTable(new LinkedHashMap<String,Double>(speeds), speed);
+	}
+
+	/**
+	 * Change the default table by a list of speeds such as
+	 * "motorway=100,residential=25", as given on a command line
+	 * @param spec Comma separated type=speed pairs, in km/h; empty for the defaults
+	 * @return The table
+	 * @throws IllegalArgumentException If a pair cannot be read
+	 */
+	public static SpeedTable parse(String spec)
+	{
+		SpeedTable table = DEFAULT;
+		for (String pair : spec.split(",")) {
+			if (pair.trim().isEmpty()) {
+				continue;
+			}
+			int eq = pair.indexOf('=');
+			if (eq < 0)
+				throw new IllegalArgumentException("Expected type=speed, not " + pair);
+			try {
+				table = table.withSpeed(pair.substring(0, eq).trim(),
+						Double.parseDouble(pair.substring(eq + 1).trim()));
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Expected type=speed, not " + pair);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @param roadType The type of road
+	 * @return The speed on it in km/h
+	 */
+	public double getSpeed(String roadType)
+	{
+		Double speed = speeds.get(roadType);
+		return (speed == null) ? defaultSpeed : speed;
+	}
+
+	/** @return The speed on roads of types not in the table, in km/h */
+	public double getDefaultSpeed()
+	{
+		return defaultSpeed;
+	}
+
+	/** @return The highest speed on any road, in km/h */
+	public double getMaxSpeed()
+	{
+		return maxSpeed;
+	}
+
+	/** @return The speed of each type of road in the table, in km/h */
+	public Map<String,Double> getSpeeds()
+	{
+		return speeds;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SpeedTable" + speeds + ", default " + defaultSpeed;
+	}
+}
@@ -0,0 +1,100 @@
+package roadgraph;
+
+/**
+ * The cost of turning from one road segment onto the next at an
+ * intersection, in km of road length equivalent like the edge weights.
+ * When the graph weighs roads by travel time, a turn costs the time it
+ * takes to drive that far at the default speed.
+ *
+ * The turn is measured between the bearing at which the first segment
+ * arrives and the bearing at which the next one leaves, so curving roads
+ * are judged by their shape at the intersection.  Traffic keeps to the
+ * right, so left turns, which cross oncoming traffic, cost more than
+ * right turns.  Turning back onto the road just driven is a U-turn, and
+ * is only allowed where nothing else is.
+ *
+ */
+public final class TurnCosts {
+
+	/** Turns sharper than this, in degrees either way, are not straight on */
+	public static final double STRAIGHT_ANGLE = 30.0;
+
+	/** Costs close to urban traffic: a light delay for right turns, more
+	 * for left turns and a lot for turning around */
+	public static final TurnCosts DEFAULT = new TurnCosts(0.01, 0.03, 0.1);
+
+	/** No turn costs; only the restrictions apply */
+	public static final TurnCosts NONE = new TurnCosts(0.0, 0.0, 0.0);
+
+	private final double rightTurn;
+	private final double leftTurn;
+	private final double uTurn;
+
+	/**
+	 * @param rightTurn The cost of turning right, in km
+	 * @param leftTurn The cost of turning left, in km
+	 * @param uTurn The cost of turning back at a dead end, in km
+	 * @throws IllegalArgumentException If any cost is negative or not finite
+	 */
+	public TurnCosts(double rightTurn, double leftTurn, double uTurn)
+	{
+		if (!(rightTurn >= 0 && leftTurn >= 0 && uTurn >= 0) ||
+				Double.isInfinite(rightTurn + leftTurn + uTurn)) {
+			throw new IllegalArgumentException("Turn costs must be finite and not negative");
+		}
+		this.rightTurn = rightTurn;
+		this.leftTurn = leftTurn;
+		this.uTurn = uTurn;
+	}
+
+	public double getRightTurn()
+	{
+		return rightTurn;
+	}
+
+	public double getLeftTurn()
+	{
+		return leftTurn;
+	}
+
+	public double getUTurn()
+	{
+		return uTurn;
+	}
+
+	/**
+	 * Get the cost of a turn that is not a U-turn
+	 * @param angle The change of bearing, in degrees from -180 to 180,
+	 *   positive to the right
+	 * @return The cost of the turn
+	 */
+	double cost(double angle)
+	{
+		if (Math.abs(angle) < STRAIGHT_ANGLE) {
+			return 0.0;
+		}
+		return (angle > 0) ? rightTurn : leftTurn;
+	}
+
+	/**
+	 * @return The change of bearing from arriving on one segment to
+	 *   leaving on the next, in degrees from -180 to 180, positive to the right
+	 */
+	static double angle(MapEdge in, MapEdge out)
+	{
+		double angle = out.getStartBearing() - in.getEndBearing();
+		if (angle > 180) {
+			angle -= 360;
+		}
+		else if (angle <= -180) {
+			angle += 360;
+		}
+		return angle;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TurnCosts[right=" + rightTurn + ", left=" + leftTurn + ", uTurn=" + uTurn + "]";
+	}
+}
@@ -0,0 +1,339 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+import tracing.Tracing;
+import util.GraphLoader;
+
+/**
+ * The edge-based (turn-aware) form of a MapGraph: its states are the road
+ * segments, as the arcs of the graph's CsrGraph, and its links are the
+ * turns from a segment onto the next at the intersection where it ends.
+ * A search over it knows which way it arrived at every intersection, so
+ * turns can cost something or be forbidden, which a search over the
+ * intersections cannot express.
+ *
+ * The turns are kept in compressed sparse row form: those out of arc a
+ * are firstTurn[a] up to firstTurn[a+1] in turnTo, with the cost of each
+ * turn in a float array beside it.  The costs of the segments themselves
+ * are not stored, so weight updates apply without a rebuild.
+ *
+ * Built from the MapEdge pairs meeting at each intersection when first
+ * needed after the graph, its turn costs or its restrictions change.
+ *
+ */
+public final class TurnGraph {
+
+	/** Scratch for one search, one per thread */
+	private static final class Scratch {
+		final SearchSpace space = new SearchSpace();
+		int[] parentArc = new int[0];
+
+		void reset(int numArcs) {
+			space.reset(numArcs);
+			// sized like the search, so it shrinks along with it
+			if (parentArc.length != space.capacity()) {
+				parentArc = new int[space.capacity()];
+			}
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private final CsrGraph graph;
+	private final TurnCosts costs;
+	private final int[] firstTurn;
+	private final int[] turnTo;
+	private final float[] turnCost;
+	private final int numRestricted;
+	private final int numUTurns;
+
+	/**
+	 * Build the turns of a graph
+	 * @param graph The graph's topology
+	 * @param costs The cost of each kind of turn
+	 * @param restrictions The forbidden turns, as keys from {@link #turnKey}
+	 */
+	TurnGraph(CsrGraph graph, TurnCosts costs, Set<Long> restrictions)
+	{
+		this.graph = graph;
+		this.costs = costs;
+		int m = graph.getNumArcs();
+		firstTurn = new int[m + 1];
+
+		// The first pass counts the turns, the second fills them in
+		int[] to = new int[0];
+		float[] cost = new float[0];
+		int restricted = 0, uTurns = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			int t = 0;
+			restricted = 0;
+			uTurns = 0;
+			for (int a = 0; a < m; a++) {
+				firstTurn[a] = t;
+				MapEdge in = graph.getEdge(a);
+				int v = graph.head(a);
+				boolean onlyBack = true;
+				for (int b = graph.firstOut(v); b < graph.firstOut(v + 1); b++) {
+					if (restrictions.contains(turnKey(in, graph.getEdge(b)))) {
+						restricted++;
+					}
+					else if (graph.head(b) != graph.tail(a)) {
+						onlyBack = false;
+						if (pass == 1) {
+							to[t] = b;
+							cost[t] = (float) costs.cost(TurnCosts.angle(in, graph.getEdge(b)));
+						}
+						t++;
+					}
+				}
+				// Turning back is only allowed at dead ends
+				for (int b = graph.firstOut(v); onlyBack && b < graph.firstOut(v + 1); b++) {
+					if (graph.head(b) == graph.tail(a) &&
+							!restrictions.contains(turnKey(in, graph.getEdge(b)))) {
+						if (pass == 1) {
+							to[t] = b;
+							cost[t] = (float) costs.getUTurn();
+						}
+						t++;
+						uTurns++;
+					}
+				}
+			}
+			firstTurn[m] = t;
+			if (pass == 0) {
+				to = new int[t];
+				cost = new float[t];
+			}
+		}
+		turnTo = to;
+		turnCost = cost;
+		numRestricted = restricted;
+		numUTurns = uTurns;
+	}
+
+	/** @return The key of the turn from one edge onto another */
+	static long turnKey(MapEdge in, MapEdge out)
+	{
+		return ((long) in.getId() << 32) | out.getId();
+	}
+
+	/** @return The number of road segments, which are the states of the searches */
+	public int getNumArcs()
+	{
+		return graph.getNumArcs();
+	}
+
+	/** @return The number of turns allowed */
+	public int getNumTurns()
+	{
+		return turnTo.length;
+	}
+
+	/** @return The number of turns left out because they are forbidden */
+	public int getNumRestricted()
+	{
+		return numRestricted;
+	}
+
+	/** @return The number of U-turns allowed, at dead ends */
+	public int getNumUTurns()
+	{
+		return numUTurns;
+	}
+
+	public TurnCosts getCosts()
+	{
+		return costs;
+	}
+
+	/**
+	 * Search from one intersection to another over the turns.  Every
+	 * search mode is the same search over road segments: by the number
+	 * of segments, by cost with turn costs, or by cost guided toward the
+	 * goal.
+	 * @param start The start node
+	 * @param goal The goal node
+	 * @param weighted false to count segments, ignoring weights and turn costs
+	 * @param heuristicScale The multiple of the straight line distance to
+	 *   the goal that the cost of reaching it is at least, or 0 for no heuristic
+	 * @param weights The edge weights
+	 * @param residentialFactor The multiple of residential road weights
+	 * @param nodeSearched Told of each intersection reached by a settled segment
+	 * @param counter Counts the work of the search
+	 * @return The nodes of the route, including start and goal, or null if
+	 *   the goal cannot be reached
+	 */
+	int[] search(int start, int goal, boolean weighted, double heuristicScale,
+			GraphSnapshot weights, double residentialFactor,
+			Consumer<GeographicPoint> nodeSearched, SearchStats.Counter counter)
+	{
+		if (start == goal) {
+			return new int[] { start };
+		}
+		Scratch scratch = SCRATCH.get();
+		scratch.reset(graph.getNumArcs());
+		SearchSpace space = scratch.space;
+		int[] parentArc = scratch.parentArc;
+		NodeCoordinates coordinates = graph.getCoordinates();
+		double turnScale = weighted ? weights.distanceCost(1.0) : 0.0;
+
+		for (int a = graph.firstOut(start); a < graph.firstOut(start + 1); a++) {
+			double d = arcCost(a, weighted, weights, residentialFactor);
+			if (d < space.getDist(a)) {
+				space.reach(a, d, null);
+				parentArc[a] = -1;
+				space.heap.push(a, d + heuristic(a, heuristicScale, coordinates, goal, space));
+				counter.relaxed();
+				counter.pushed(space.heap.size());
+			}
+		}
+
+		int last = -1;
+		while (!space.heap.isEmpty()) {
+			int a = space.heap.pop();
+			counter.popped();
+			if (space.isSettled(a)) {
+				continue;
+			}
+			space.settle(a);
+			counter.settled();
+			int v = graph.head(a);
+			nodeSearched.accept(graph.getLocation(v));
+			if (v == goal) {
+				last = a;
+				break;
+			}
+			double d = space.getDist(a);
+			for (int t = firstTurn[a]; t < firstTurn[a + 1]; t++) {
+				int b = turnTo[t];
+				if (space.isSettled(b)) {
+					continue;
+				}
+				double db = d + arcCost(b, weighted, weights, residentialFactor) +
+						turnScale * turnCost[t];
+				if (db < space.getDist(b)) {
+					space.reach(b, db, null);
+					parentArc[b] = a;
+					space.heap.push(b, db + heuristic(b, heuristicScale, coordinates, goal, space));
+					counter.relaxed();
+					counter.pushed(space.heap.size());
+				}
+			}
+		}
+		if (last < 0) {
+			return null;
+		}
+
+		int length = 1;
+		for (int a = last; a >= 0; a = parentArc[a]) {
+			length++;
+		}
+		int[] route = new int[length];
+		for (int a = last, i = length - 1; a >= 0; a = parentArc[a], i--) {
+			route[i] = graph.head(a);
+			route[i - 1] = graph.tail(a);
+		}
+		return route;
+	}
+
+	/** @return The cost of driving a segment, infinite if it is closed */
+	private double arcCost(int a, boolean weighted, GraphSnapshot weights, double residentialFactor)
+	{
+		MapEdge edge = graph.getEdge(a);
+		if (weighted) {
+			return MapGraph.cost(edge, weights, residentialFactor);
+		}
+		// closed roads cannot be used, however few segments they save
+		return (weights.hasWeights() && weights.getWeight(edge) == Double.POSITIVE_INFINITY)
+				? Double.POSITIVE_INFINITY : 1.0;
+	}
+
+	private double heuristic(int a, double scale, NodeCoordinates coordinates, int goal, SearchSpace space)
+	{
+		if (scale == 0.0) {
+			return 0.0;
+		}
+		if (!space.hasHeuristic(a)) {
+			space.setHeuristic(a, scale * coordinates.lowerBound(graph.head(a), goal));
+		}
+		return space.getHeuristic(a);
+	}
+
+	/**
+	 * Compare routes with and without turn costs on random pairs of a map.
+	 * @param args FILE.map [queries]
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length < 1) {
+			System.err.println("Usage: TurnGraph FILE.map [queries]");
+			System.exit(2);
+		}
+		int queries = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		MapGraph graph = new MapGraph();
+		GraphLoader.loadRoadMap(args[0], graph);
+		graph.setTracer(Tracing.NONE);
+		System.out.println(graph.getNumVertices() + " intersections, " +
+				graph.getNumEdges() + " road segments");
+
+		long start = System.nanoTime();
+		graph.setTurnCosts(TurnCosts.DEFAULT);
+		TurnGraph turns = graph.getTurnGraph();
+		System.out.println(String.format(Locale.ROOT,
+				"Built %d turns (%d U-turns at dead ends) in %.1f ms",
+				turns.getNumTurns(), turns.getNumUTurns(), (System.nanoTime() - start) / 1e6));
+		graph.setTurnCosts(null);
+
+		Random random = new Random(42);
+		List<GeographicPoint> points = new ArrayList<GeographicPoint>(graph.getVertices());
+		GeographicPoint[][] pairs = new GeographicPoint[queries][];
+		for (int i = 0; i < queries; i++) {
+			pairs[i] = new GeographicPoint[] {
+				points.get(random.nextInt(points.size())), points.get(random.nextInt(points.size()))
+			};
+		}
+		double[] lengths = new double[queries];
+		List<List<GeographicPoint>> paths = new ArrayList<List<GeographicPoint>>();
+		long plainNanos = 0;
+		for (int i = 0; i < queries; i++) {
+			SearchResult result = graph.search("dijkstra", pairs[i][0], pairs[i][1]);
+			plainNanos += result.getStats().getWallNanos();
+			lengths[i] = result.isFound() ? graph.getPathLength(result.getPath()) : -1;
+			paths.add(result.isFound() ? result.getPath() : Collections.<GeographicPoint>emptyList());
+		}
+		graph.setTurnCosts(TurnCosts.DEFAULT);
+		int changed = 0, found = 0;
+		double plainLength = 0, turnLength = 0;
+		long turnNanos = 0;
+		for (int i = 0; i < queries; i++) {
+			SearchResult result = graph.search("dijkstra", pairs[i][0], pairs[i][1]);
+			turnNanos += result.getStats().getWallNanos();
+			if (result.isFound() && lengths[i] >= 0) {
+				found++;
+				plainLength += lengths[i];
+				turnLength += graph.getPathLength(result.getPath());
+				if (!result.getPath().equals(paths.get(i))) {
+					changed++;
+				}
+			}
+		}
+		System.out.println(String.format(Locale.ROOT,
+				"%d queries, %d routes changed by turn costs, %+.2f%% in total length; " +
+				"%.1f us without turns and %.1f us with on average",
+				queries, changed, 100 * (turnLength / Math.max(1e-9, plainLength) - 1),
+				plainNanos / 1e3 / Math.max(1, queries), turnNanos / 1e3 / Math.max(1, queries)));
+	}
+}
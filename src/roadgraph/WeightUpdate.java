@@ -0,0 +1,124 @@
+package roadgraph;
+
+import geography.GeographicPoint;
+
+/**
+ * A set of changes to the edge weights of a MapGraph, made through 
+ * {@link MapGraph#updateWeights}.  The changes are made to a private 
+ * copy of the weights and all become visible together when the update
+ * is published as a new snapshot.
+ * 
+ * Weights are in km of road length equivalent: an edge with weight 
+ * twice its length costs as much as a road twice as long.
+ *
+ */
+public class WeightUpdate {
+
+	private final MapGraph graph;
+	private final double[] weights;
+
+	WeightUpdate(MapGraph graph, double[] weights)
+	{
+		this.graph = graph;
+		this.weights = weights;
+	}
+
+	double[] getWeights()
+	{
+		return weights;
+	}
+
+	private static void checkWeight(double weight)
+	{
+		if (!(weight >= 0))
+			throw new IllegalArgumentException("Edge weights must be 0 or more, not " + weight);
+	}
+
+	/**
+	 * Set the weight of the road segments from one intersection to another
+	 * @param from The start of the segment
+	 * @param to The end of the segment
+	 * @param weight The new weight, or infinity to close the segment
+	 * @return This update
+	 * @throws IllegalArgumentException If there is no such segment or the 
+	 *   weight is negative
+	 */
+	public WeightUpdate setWeight(GeographicPoint from, GeographicPoint to, double weight)
+	{
+		checkWeight(weight);
+		int changed = 0;
+		for (MapEdge edge : graph.getEdgesFrom(from)) {
+			if (edge.getEndPoint().equals(to)) {
+				weights[edge.getId()] = weight;
+				changed++;
+			}
+		}
+		if (changed == 0)
+			throw new IllegalArgumentException("No road segment from " + from + " to " + to);
+		return this;
+	}
+
+	/**
+	 * Close the road segments from one intersection to another
+	 * @param from The start of the segment
+	 * @param to The end of the segment
+	 * @return This update
+	 */
+	public WeightUpdate closeSegment(GeographicPoint from, GeographicPoint to)
+	{
+		return setWeight(from, to, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Close every segment of a named road
+	 * @param roadName The name of the road
+	 * @return This update
+	 */
+	public WeightUpdate closeRoad(String roadName)
+	{
+		int code = graph.getRoadDictionary().findName(roadName);
+		if (code < 0) {
+			return this;
+		}
+		for (MapEdge edge : graph.getEdgeList()) {
+			if (edge.getRoadNameCode() == code) {
+				weights[edge.getId()] = Double.POSITIVE_INFINITY;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Weight every segment of a type of road by a multiple of its length,
+	 * e.g. 2 for roads where traffic moves at half speed
+	 * @param roadType The type of road, e.g. "primary"
+	 * @param factor The multiple of the length
+	 * @return This update
+	 */
+	public WeightUpdate setRoadTypeFactor(String roadType, double factor)
+	{
+		checkWeight(factor);
+		int code = graph.getRoadDictionary().findType(roadType);
+		if (code < 0) {
+			return this;
+		}
+		for (MapEdge edge : graph.getEdgeList()) {
+			if (edge.getRoadTypeCode() == code) {
+				weights[edge.getId()] = edge.getLength() * factor;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Set every weight back to the length of its edge
+	 * @return This update
+	 */
+	public WeightUpdate reset()
+	{
+		for (MapEdge edge : graph.getEdgeList()) {
+			weights[edge.getId()] = edge.getLength();
+		}
+		return this;
+	}
+}
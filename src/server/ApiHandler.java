@@ -0,0 +1,168 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonWriter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import geography.GeographicPoint;
+
+/**
+ * Base class for the endpoints of the routing server.  It parses the 
+ * query string, turns the JsonObject built by the endpoint into the 
+ * response, and reports bad requests as JSON errors.
+ * 
+ * Handlers hold no per-request state, so one instance serves every 
+ * worker thread.
+ *
+ */
+abstract class ApiHandler implements HttpHandler {
+
+	/**
+	 * Thrown by an endpoint to reject a request with a given HTTP status.
+	 */
+	@SuppressWarnings("serial")
+	static class ApiException extends RuntimeException {
+		final int status;
+
+		ApiException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Answer one request.
+	 * @param params The decoded query parameters
+	 * @return The response body
+	 */
+	abstract JsonObject handle(Map<String,String> params);
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		int status = 200;
+		JsonObject body;
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				throw new ApiException(405, "Only GET is supported");
+			}
+			body = handle(parseQuery(exchange.getRequestURI().getRawQuery()));
+		}
+		catch (ApiException e) {
+			status = e.status;
+			body = error(e.getMessage());
+		}
+		catch (IllegalArgumentException e) {
+			status = 400;
+			body = error(e.getMessage());
+		}
+		catch (RuntimeException e) {
+			status = 500;
+			body = error(e.toString());
+		}
+
+		StringWriter text = new StringWriter();
+		try (JsonWriter writer = Json.createWriter(text)) {
+			writer.writeObject(body);
+		}
+		send(exchange, status, "application/json", text.toString());
+	}
+
+	/**
+	 * Write a complete response and close the exchange
+	 */
+	static void send(HttpExchange exchange, int status, String contentType, String body) 
+			throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static JsonObject error(String message) {
+		return Json.createObjectBuilder()
+				.add("error", (message == null) ? "unknown error" : message)
+				.build();
+	}
+
+	private static Map<String,String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String,String> params = new HashMap<String,String>();
+		if (query == null || query.isEmpty()) {
+			return params;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			String key = (eq < 0) ? pair : pair.substring(0, eq);
+			String value = (eq < 0) ? "" : pair.substring(eq + 1);
+			params.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+		}
+		return params;
+	}
+
+	/**
+	 * Get a parameter that must be present
+	 */
+	static String require(Map<String,String> params, String name) {
+		String value = params.get(name);
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Missing parameter " + name);
+		}
+		return value;
+	}
+
+	/**
+	 * Parse a point written as "lat,lon"
+	 */
+	static GeographicPoint parsePoint(String text) {
+		String[] parts = text.split(",");
+		if (parts.length != 2) {
+			throw new IllegalArgumentException("Expected lat,lon but got " + text);
+		}
+		try {
+			double lat = Double.parseDouble(parts[0].trim());
+			double lon = Double.parseDouble(parts[1].trim());
+			// parseDouble accepts NaN and Infinity, which no range test below rejects
+			if (Double.isNaN(lat) || Double.isNaN(lon) || Double.isInfinite(lat) || Double.isInfinite(lon)
+					|| Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+				throw new IllegalArgumentException("Point out of range: " + text);
+			}
+			return new GeographicPoint(lat, lon);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Expected lat,lon but got " + text);
+		}
+	}
+
+	/**
+	 * Write a point as [lat, lon]
+	 */
+	static JsonArrayBuilder point(GeographicPoint p) {
+		return Json.createArrayBuilder().add(p.getX()).add(p.getY());
+	}
+
+	/**
+	 * Write a list of points as [[lat, lon], ...]
+	 */
+	static JsonArrayBuilder points(List<GeographicPoint> list) {
+		JsonArrayBuilder array = Json.createArrayBuilder();
+		for (GeographicPoint p : list) {
+			array.add(point(p));
+		}
+		return array;
+	}
+}
@@ -0,0 +1,284 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import application.DataSetRegistry;
+import geography.GeographicPoint;
+import roadgraph.MapGraph;
+import roadgraph.SearchResult;
+import roadgraph.SearchStats;
+import util.RouteGeometry;
+
+/**
+ * The routing endpoints.  Points in requests are written "lat,lon" and 
+ * are snapped to the nearest intersection of the chosen map before 
+ * searching.  Distances are in km.
+ *
+ */
+class Endpoints {
+
+	/** The most points on each side of a /matrix request */
+	static final int MAX_MATRIX_POINTS = 100;
+
+	/** The largest radius accepted by /isochrone, in km */
+	static final double MAX_ISOCHRONE_KM = 50;
+
+	private Endpoints() {}
+
+	/**
+	 * Base class for endpoints that work on one of the maps, chosen by 
+	 * the "map" parameter.  It may be left out when the server has only
+	 * one map.
+	 */
+	abstract static class MapHandler extends ApiHandler {
+		private final MapCatalog maps;
+
+		MapHandler(MapCatalog maps) {
+			this.maps = maps;
+		}
+
+		MapCatalog.LoadedMap map(Map<String,String> params) {
+			String name = params.get("map");
+			if (name == null) {
+				if (maps.getNames().size() == 1) {
+					name = maps.getNames().iterator().next();
+				}
+				else {
+					throw new IllegalArgumentException("Missing parameter map, one of " + maps.getNames());
+				}
+			}
+			MapCatalog.LoadedMap map = maps.load(name);
+			if (map == null) {
+				throw new ApiException(404, "Unknown map " + name);
+			}
+			return map;
+		}
+
+		static GeographicPoint snap(MapGraph graph, String text) {
+			return snap(graph, parsePoint(text));
+		}
+
+		static GeographicPoint snap(MapGraph graph, GeographicPoint point) {
+			GeographicPoint vertex = graph.nearestVertex(point);
+			if (vertex == null) {
+				throw new ApiException(404, "The map has no intersections");
+			}
+			return vertex;
+		}
+
+		/** Split a list of points written "lat,lon;lat,lon", refusing long lists before any work */
+		static String[] splitPoints(String text) {
+			String[] parts = text.split(";");
+			if (parts.length > MAX_MATRIX_POINTS) {
+				throw new IllegalArgumentException("At most " + MAX_MATRIX_POINTS + " points are allowed");
+			}
+			return parts;
+		}
+
+		static List<GeographicPoint> snapAll(MapGraph graph, String[] parts) {
+			List<GeographicPoint> snapped = new ArrayList<GeographicPoint>(parts.length);
+			for (String part : parts) {
+				snapped.add(snap(graph, part));
+			}
+			return snapped;
+		}
+
+		/** Write a distance, or null if there is none */
+		static void addDistance(JsonArrayBuilder array, double km) {
+			if (Double.isInfinite(km)) {
+				array.addNull();
+			}
+			else {
+				array.add(km);
+			}
+		}
+	}
+
+	/**
+	 * GET /maps lists the maps and whether they are loaded
+	 */
+	static class MapsHandler extends ApiHandler {
+		private final MapCatalog maps;
+
+		MapsHandler(MapCatalog maps) {
+			this.maps = maps;
+		}
+
+		@Override
+		JsonObject handle(Map<String,String> params) {
+			JsonArrayBuilder list = Json.createArrayBuilder();
+			for (String name : maps.getNames()) {
+				MapGraph graph = maps.loadedGraph(name);
+				JsonObjectBuilder map = Json.createObjectBuilder()
+						.add("name", name)
+						.add("loaded", graph != null);
+				if (graph != null) {
+					map.add("vertices", graph.getNumVertices())
+					   .add("edges", graph.getNumEdges());
+				}
+				list.add(map);
+			}
+			DataSetRegistry registry = maps.getRegistry();
+			return Json.createObjectBuilder()
+					.add("maps", list)
+					.add("usedBytes", registry.getUsedBytes())
+					.add("budgetBytes", registry.getBudgetBytes())
+					.build();
+		}
+	}
+
+	/**
+	 * GET /route?map=&amp;from=lat,lon&amp;to=lat,lon&amp;algorithm=astar|dijkstra|bfs
+	 * 
+	 * Returns the intersections on the route, the road geometry for 
+	 * drawing it, its length and the statistics of the search.
+	 */
+	static class RouteHandler extends MapHandler {
+
+		RouteHandler(MapCatalog maps) {
+			super(maps);
+		}
+
+		@Override
+		JsonObject handle(Map<String,String> params) {
+			MapCatalog.LoadedMap map = map(params);
+			MapGraph graph = map.graph;
+			GeographicPoint from = snap(graph, require(params, "from"));
+			GeographicPoint to = snap(graph, require(params, "to"));
+			String algorithm = params.containsKey("algorithm") ? params.get("algorithm") : "astar";
+
+			SearchResult result = graph.search(algorithm, from, to);
+
+			JsonObjectBuilder body = Json.createObjectBuilder()
+					.add("algorithm", algorithm)
+					.add("from", point(from))
+					.add("to", point(to))
+					.add("found", result.isFound())
+					.add("cached", result.isCached());
+			if (result.isFound()) {
+				List<GeographicPoint> path = result.getPath();
+				body.add("distanceKm", graph.getPathLength(path))
+					.add("path", points(path))
+					.add("geometry", points(RouteGeometry.constructMapPath(path, map.roads)));
+			}
+			SearchStats stats = result.getStats();
+			body.add("stats", Json.createObjectBuilder()
+					.add("nodesSettled", stats.getNodesSettled())
+					.add("edgesRelaxed", stats.getEdgesRelaxed())
+					.add("heapPushes", stats.getHeapPushes())
+					.add("heapPops", stats.getHeapPops())
+					.add("peakFrontier", stats.getPeakFrontier())
+					.add("wallNanos", stats.getWallNanos()));
+			return body.build();
+		}
+	}
+
+	/**
+	 * GET /matrix?map=&amp;sources=lat,lon;lat,lon&amp;targets=lat,lon;...
+	 * 
+	 * Returns the road distance from every source to every target, 
+	 * null where there is no route.  Targets default to the sources.
+	 */
+	static class MatrixHandler extends MapHandler {
+
+		MatrixHandler(MapCatalog maps) {
+			super(maps);
+		}
+
+		@Override
+		JsonObject handle(Map<String,String> params) {
+			String[] sourceText = splitPoints(require(params, "sources"));
+			String[] targetText = params.containsKey("targets") 
+					? splitPoints(require(params, "targets")) : null;
+			MapGraph graph = map(params).graph;
+			List<GeographicPoint> sources = snapAll(graph, sourceText);
+			List<GeographicPoint> targets = (targetText != null) ? snapAll(graph, targetText) : sources;
+
+			JsonArrayBuilder rows = Json.createArrayBuilder();
+			for (GeographicPoint source : sources) {
+				JsonArrayBuilder row = Json.createArrayBuilder();
+				for (double km : graph.distances(source, targets)) {
+					addDistance(row, km);
+				}
+				rows.add(row);
+			}
+			return Json.createObjectBuilder()
+					.add("sources", points(sources))
+					.add("targets", points(targets))
+					.add("distancesKm", rows)
+					.build();
+		}
+	}
+
+	/**
+	 * GET /nearest?map=&amp;point=lat,lon
+	 * 
+	 * Returns the intersection closest to the point.
+	 */
+	static class NearestHandler extends MapHandler {
+
+		NearestHandler(MapCatalog maps) {
+			super(maps);
+		}
+
+		@Override
+		JsonObject handle(Map<String,String> params) {
+			MapGraph graph = map(params).graph;
+			GeographicPoint point = parsePoint(require(params, "point"));
+			GeographicPoint vertex = snap(graph, point);
+			return Json.createObjectBuilder()
+					.add("point", point(point))
+					.add("vertex", point(vertex))
+					.add("distanceKm", point.distance(vertex))
+					.build();
+		}
+	}
+
+	/**
+	 * GET /isochrone?map=&amp;from=lat,lon&amp;km=1.5
+	 * 
+	 * Returns every intersection within the given road distance of the
+	 * starting point, nearest first.
+	 */
+	static class IsochroneHandler extends MapHandler {
+
+		IsochroneHandler(MapCatalog maps) {
+			super(maps);
+		}
+
+		@Override
+		JsonObject handle(Map<String,String> params) {
+			MapGraph graph = map(params).graph;
+			GeographicPoint from = snap(graph, require(params, "from"));
+			double km;
+			try {
+				km = Double.parseDouble(require(params, "km"));
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("km must be a number");
+			}
+			if (!(km >= 0 && km <= MAX_ISOCHRONE_KM)) {
+				throw new IllegalArgumentException("km must be between 0 and " + MAX_ISOCHRONE_KM);
+			}
+
+			JsonArrayBuilder reached = Json.createArrayBuilder();
+			for (Map.Entry<GeographicPoint,Double> entry : graph.isochrone(from, km).entrySet()) {
+				reached.add(Json.createObjectBuilder()
+						.add("point", point(entry.getKey()))
+						.add("distanceKm", entry.getValue()));
+			}
+			return Json.createObjectBuilder()
+					.add("from", point(from))
+					.add("km", km)
+					.add("reached", reached)
+					.build();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+import application.DataSet;
+import application.DataSetRegistry;
+import geography.GeographicPoint;
+import geography.RoadSegment;
+import roadgraph.MapGraph;
+import roadgraph.RouteCache;
+
+/**
+ * The maps a server can answer for, by name.  Maps are loaded through a
+ * DataSetRegistry when first used, so a server can offer more cities than
+ * fit in memory at once; the registry unloads the least recently used.
+ *
+ */
+class MapCatalog {
+
+	/** A consistent view of a loaded map, valid even if it is unloaded later */
+	static class LoadedMap {
+		final MapGraph graph;
+		final HashMap<GeographicPoint,HashSet<RoadSegment>> roads;
+
+		LoadedMap(MapGraph graph, HashMap<GeographicPoint,HashSet<RoadSegment>> roads) {
+			this.graph = graph;
+			this.roads = roads;
+		}
+	}
+
+	/** Tries to load a map that is unloaded again before it can be used */
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+
+	private final Map<String,String> paths;
+	private final DataSetRegistry registry;
+
+	/**
+	 * @param paths The .map file of each map, by name
+	 * @param registry The registry that loads them
+	 */
+	MapCatalog(Map<String,String> paths, DataSetRegistry registry) {
+		this.paths = Collections.unmodifiableMap(new LinkedHashMap<String,String>(paths));
+		this.registry = registry;
+	}
+
+	/** @return The names of the maps, in the order given */
+	Set<String> getNames() {
+		return paths.keySet();
+	}
+
+	DataSetRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Get a map, loading it if needed and waiting for it to load.
+	 * @param name The name of the map
+	 * @return The loaded map, or null if there is no map by that name
+	 */
+	LoadedMap load(String name) {
+		String path = paths.get(name);
+		if (path == null) {
+			return null;
+		}
+		for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+			DataSet dataSet;
+			try {
+				dataSet = registry.load(path).join();
+			}
+			catch (CompletionException e) {
+				throw new IllegalStateException("Could not load map " + name + ": " + e.getCause(), e);
+			}
+			// read each once: the registry may unload the data set at any time
+			MapGraph graph = dataSet.getGraph();
+			HashMap<GeographicPoint,HashSet<RoadSegment>> roads = dataSet.getRoads();
+			if (graph != null && roads != null) {
+				return new LoadedMap(graph, roads);
+			}
+		}
+		throw new IllegalStateException("Map " + name + " was unloaded while loading; "
+				+ "the memory budget is too small");
+	}
+
+	/**
+	 * Get the graph of a map if it is currently loaded
+	 * @param name The name of the map
+	 * @return The graph, or null if the map is not loaded
+	 */
+	MapGraph loadedGraph(String name) {
+		String path = paths.get(name);
+		return (path == null) ? null : registry.get(path).getGraph();
+	}
+
+	/** @return The route caches of the loaded maps that have one, by map name */
+	Map<String,RouteCache> routeCaches() {
+		Map<String,RouteCache> caches = new LinkedHashMap<String,RouteCache>();
+		for (String name : paths.keySet()) {
+			MapGraph graph = loadedGraph(name);
+			if (graph != null && graph.getRouteCache() != null) {
+				caches.put(name, graph.getRouteCache());
+			}
+		}
+		return caches;
+	}
+}
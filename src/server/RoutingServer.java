@@ -0,0 +1,215 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import application.DataSetRegistry;
+import metrics.SearchMetrics;
+import roadgraph.RouteCache;
+
+/**
+ * A headless routing server on the JDK's built-in HTTP server, so the 
+ * searches can be used and load tested without the JavaFX application.
+ * 
+ * Maps are loaded by a DataSetRegistry the first time they are asked 
+ * for, and unloaded least recently used first when they no longer fit in
+ * the memory budget.  A loaded map is never changed, so the request 
+ * threads share it without locking.  Requests run on a 
+ * fixed pool of worker threads with a bounded queue; when the queue is 
+ * full the thread accepting connections runs the request itself, which 
+ * slows down accepting new ones instead of queueing without limit.
+ * 
+ * Endpoints (all GET, all answering JSON except /metrics):
+ *   /route, /matrix, /nearest, /isochrone  see {@link Endpoints}
+ *   /maps     the maps and whether they are loaded
+ *   /health   a liveness check
+ *   /metrics  search statistics in the Prometheus text format
+ * 
+ * Options:
+ *   -port N     port to listen on (default 8080)
+ *   -threads N  worker threads (default the number of processors)
+ *   -queue N    requests waiting for a worker (default 256)
+ *   -cache N    routes cached per map, 0 for none (default 10000)
+ *   -budget MB  heap for loaded maps (default half the maximum heap)
+ * followed by the .map files to serve, or a .list file naming them 
+ * (default data/maps/mapfiles.list).  Each map is served under its 
+ * file name without the extension, e.g.
+ *   java -cp bin:libs/javax.json-1.0.4.jar server.RoutingServer -port 8080 data/maps/utc.map
+ *   curl "localhost:8080/route?map=utc&from=32.8674,-117.2190&to=32.8697,-117.2244"
+ *
+ */
+public class RoutingServer {
+
+	private final MapCatalog maps;
+	private final HttpServer server;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Create a server for a set of map files.  It does not accept 
+	 * requests until it is started.
+	 * @param mapFiles The .map file of each map, by name
+	 * @param registry The registry that loads the maps
+	 * @param port The port to listen on
+	 * @param threads The number of worker threads
+	 * @param queueSize The number of requests that may wait for a worker
+	 * @throws IOException If the port cannot be bound
+	 */
+	public RoutingServer(Map<String,String> mapFiles, DataSetRegistry registry, 
+			int port, int threads, int queueSize) throws IOException {
+		this.maps = new MapCatalog(mapFiles, registry);
+
+		AtomicInteger workers = new AtomicInteger();
+		ThreadFactory factory = (r) -> {
+			Thread t = new Thread(r, "routing-worker-" + workers.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), factory, 
+				new ThreadPoolExecutor.CallerRunsPolicy());
+
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.setExecutor(executor);
+		server.createContext("/route", new Endpoints.RouteHandler(maps));
+		server.createContext("/matrix", new Endpoints.MatrixHandler(maps));
+		server.createContext("/nearest", new Endpoints.NearestHandler(maps));
+		server.createContext("/isochrone", new Endpoints.IsochroneHandler(maps));
+		server.createContext("/maps", new Endpoints.MapsHandler(maps));
+		server.createContext("/health", (exchange) -> 
+				ApiHandler.send(exchange, 200, "application/json", "{\"status\":\"ok\"}"));
+		server.createContext("/metrics", (exchange) -> 
+				ApiHandler.send(exchange, 200, "text/plain; version=0.0.4", 
+						SearchMetrics.getDefault().toPrometheusText() 
+						+ RouteCache.toPrometheusText(maps.routeCaches())));
+	}
+
+	/** Start accepting requests */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stop accepting requests, let those in progress finish for up to the
+	 * given time, and stop the worker threads.
+	 * @param delaySeconds The longest to wait for requests in progress
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+	}
+
+	/** @return The port the server is listening on */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Get the name a map is served under, its file name without extension
+	 */
+	static String mapName(String path) {
+		String name = new File(path).getName();
+		int dot = name.lastIndexOf('.');
+		return (dot > 0) ? name.substring(0, dot) : name;
+	}
+
+	/**
+	 * Expand a .list file into the map files it names, which are 
+	 * relative to the list's directory
+	 */
+	private static List<String> readList(String listFile) throws IOException {
+		List<String> files = new ArrayList<String>();
+		File dir = new File(listFile).getParentFile();
+		try (BufferedReader reader = new BufferedReader(new FileReader(listFile))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty()) {
+					files.add(new File(dir, line).getPath());
+				}
+			}
+		}
+		return files;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = 8080;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int queueSize = 256;
+		int cacheSize = 10000;
+		long budget = Runtime.getRuntime().maxMemory() / 2;
+		List<String> files = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.startsWith("-")) {
+				if (i + 1 >= args.length) {
+					usage("Missing value for " + arg);
+					return;
+				}
+				String value = args[++i];
+				if (arg.equals("-port")) port = Integer.parseInt(value);
+				else if (arg.equals("-threads")) threads = Integer.parseInt(value);
+				else if (arg.equals("-queue")) queueSize = Integer.parseInt(value);
+				else if (arg.equals("-cache")) cacheSize = Integer.parseInt(value);
+				else if (arg.equals("-budget")) budget = Long.parseLong(value) << 20;
+				else {
+					usage("Unknown option " + arg);
+					return;
+				}
+			}
+			else if (arg.endsWith(".list")) {
+				files.addAll(readList(arg));
+			}
+			else {
+				files.add(arg);
+			}
+		}
+		if (files.isEmpty()) {
+			files.addAll(readList("data/maps/mapfiles.list"));
+		}
+
+		Map<String,String> mapFiles = new LinkedHashMap<String,String>();
+		for (String file : files) {
+			mapFiles.put(mapName(file), file);
+		}
+
+		DataSetRegistry registry = new DataSetRegistry(budget, 1);
+		// the workers search, and so does the dispatcher when the queue is full
+		registry.setSearchThreads(threads + 1);
+		final int routesCached = cacheSize;
+		registry.setOnLoad((dataSet) -> {
+			System.out.println("Loaded " + dataSet.getFilePath() + ", " 
+					+ dataSet.getGraph().getNumVertices() + " intersections");
+			if (routesCached > 0) {
+				RouteCache cache = new RouteCache(routesCached);
+				dataSet.getGraph().setRouteCache(cache);
+				cache.registerMBean(mapName(dataSet.getFilePath()));
+			}
+		});
+
+		RoutingServer routingServer = new RoutingServer(mapFiles, registry, port, threads, queueSize);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> routingServer.stop(2)));
+		routingServer.start();
+		System.out.println("Serving " + mapFiles.keySet() + " on port " + routingServer.getPort()
+				+ " with " + threads + " worker threads and " + (budget >> 20) + " MB for maps");
+	}
+
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("Usage: RoutingServer [-port n] [-threads n] [-queue n] [-cache n] [-budget mb] [file.map | file.list ...]");
+	}
+}
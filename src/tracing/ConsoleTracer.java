@@ -0,0 +1,72 @@
+package tracing;
+
+import java.io.PrintStream;
+
+import geography.GeographicPoint;
+
+/**
+ * Writes search events to the console.  Warnings go to System.err and
+ * everything else to System.out, as the searches used to do directly.
+ *
+ */
+public class ConsoleTracer implements SearchTracer {
+
+	private final TraceLevel level;
+	private final PrintStream out;
+	private final PrintStream err;
+
+	/**
+	 * Create a tracer writing to System.out and System.err
+	 * @param level The most verbose level to report
+	 */
+	public ConsoleTracer(TraceLevel level) {
+		this(level, System.out, System.err);
+	}
+
+	/**
+	 * Create a tracer writing to the given streams
+	 * @param level The most verbose level to report
+	 * @param out The stream for INFO, DEBUG and TRACE events
+	 * @param err The stream for WARN events
+	 */
+	public ConsoleTracer(TraceLevel level, PrintStream out, PrintStream err) {
+		this.level = level;
+		this.out = out;
+		this.err = err;
+	}
+
+	@Override
+	public boolean isEnabled(TraceLevel eventLevel) {
+		return level.includes(eventLevel);
+	}
+
+	@Override
+	public void nodeSettled(String search, GeographicPoint location, String roadType, int count) {
+		if (isEnabled(TraceLevel.TRACE)) {
+			out.println(search + " settled (" + location + ") " + roadType + " " + count);
+		}
+	}
+
+	@Override
+	public void searchFinished(String search, GeographicPoint start, GeographicPoint goal, 
+			boolean found, int count) {
+		if (isEnabled(TraceLevel.DEBUG)) {
+			out.println(search + " from " + start + " to " + goal + 
+					(found ? " found" : " did not find") + " a path after " + count + " nodes");
+		}
+	}
+
+	@Override
+	public void missingNode(String search, String role, GeographicPoint location) {
+		if (isEnabled(TraceLevel.WARN)) {
+			err.println(role + " node " + location + " does not exist");
+		}
+	}
+
+	@Override
+	public void noPathFound(String search, GeographicPoint start, GeographicPoint goal) {
+		if (isEnabled(TraceLevel.INFO)) {
+			out.println("No path found from " + start + " to " + goal);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package tracing;
+
+import geography.GeographicPoint;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Sends search events to Java Flight Recorder.  Nothing is recorded 
+ * unless a recording with the roadgraph events enabled is running, e.g.
+ *   java -XX:StartFlightRecording=filename=search.jfr ...
+ * 
+ * Requires a JDK with the jdk.jfr module (8u262 or later).  Tracing 
+ * loads this class by name, so nothing else depends on that module.
+ *
+ */
+public class JfrTracer implements SearchTracer {
+
+	private final TraceLevel level;
+
+	/**
+	 * @param level The most verbose level to record
+	 */
+	public JfrTracer(TraceLevel level) {
+		this.level = level;
+	}
+
+	@Override
+	public boolean isEnabled(TraceLevel eventLevel) {
+		if (!level.includes(eventLevel)) {
+			return false;
+		}
+		// Let the recorder tell us if anyone is listening for node events
+		if (eventLevel == TraceLevel.TRACE) {
+			return NODE_SETTLED_TYPE.isEnabled();
+		}
+		return true;
+	}
+
+	@Override
+	public void nodeSettled(String search, GeographicPoint location, String roadType, int count) {
+		NodeSettled event = new NodeSettled();
+		if (event.shouldCommit()) {
+			event.search = search;
+			event.latitude = location.getX();
+			event.longitude = location.getY();
+			event.roadType = roadType;
+			event.count = count;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void searchFinished(String search, GeographicPoint start, GeographicPoint goal, 
+			boolean found, int count) {
+		SearchFinished event = new SearchFinished();
+		if (event.shouldCommit()) {
+			event.search = search;
+			event.start = String.valueOf(start);
+			event.goal = String.valueOf(goal);
+			event.found = found;
+			event.count = count;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void missingNode(String search, String role, GeographicPoint location) {
+		MissingNode event = new MissingNode();
+		if (event.shouldCommit()) {
+			event.search = search;
+			event.role = role;
+			event.location = String.valueOf(location);
+			event.commit();
+		}
+	}
+
+	@Override
+	public void noPathFound(String search, GeographicPoint start, GeographicPoint goal) {
+		// The search reports its own SearchFinished event with found = false,
+		// so recording one here would count every failed search twice
+	}
+
+	// A throwaway instance used to ask the recorder whether node events are enabled
+	private static final NodeSettled NODE_SETTLED_TYPE = new NodeSettled();
+
+	@Name("roadgraph.NodeSettled")
+	@Label("Node Settled")
+	@Category({"Road Graph", "Search"})
+	@StackTrace(false)
+	static class NodeSettled extends Event {
+		@Label("Search") String search;
+		@Label("Latitude") double latitude;
+		@Label("Longitude") double longitude;
+		@Label("Road Type") String roadType;
+		@Label("Count") int count;
+	}
+
+	@Name("roadgraph.SearchFinished")
+	@Label("Search Finished")
+	@Category({"Road Graph", "Search"})
+	@StackTrace(false)
+	static class SearchFinished extends Event {
+		@Label("Search") String search;
+		@Label("Start") String start;
+		@Label("Goal") String goal;
+		@Label("Found") boolean found;
+		@Label("Count") int count;
+	}
+
+	@Name("roadgraph.MissingNode")
+	@Label("Missing Node")
+	@Category({"Road Graph", "Search"})
+	static class MissingNode extends Event {
+		@Label("Search") String search;
+		@Label("Role") String role;
+		@Label("Location") String location;
+	}
+}
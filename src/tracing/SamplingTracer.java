@@ -0,0 +1,60 @@
+package tracing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import geography.GeographicPoint;
+
+/**
+ * Forwards only every n-th nodeSettled event to another tracer.
+ * All other events are forwarded unchanged.  Useful to keep a TRACE
+ * level tracer running on a real map without drowning in output.
+ *
+ */
+public class SamplingTracer implements SearchTracer {
+
+	private final SearchTracer delegate;
+	private final long interval;
+	private final AtomicLong seen;
+
+	/**
+	 * @param delegate The tracer that receives the sampled events
+	 * @param interval Forward one node event out of this many
+	 * @throws IllegalArgumentException if interval is less than 1
+	 */
+	public SamplingTracer(SearchTracer delegate, long interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Sampling interval must be at least 1");
+		}
+		this.delegate = delegate;
+		this.interval = interval;
+		this.seen = new AtomicLong();
+	}
+
+	@Override
+	public boolean isEnabled(TraceLevel level) {
+		return delegate.isEnabled(level);
+	}
+
+	@Override
+	public void nodeSettled(String search, GeographicPoint location, String roadType, int count) {
+		if (seen.getAndIncrement() % interval == 0) {
+			delegate.nodeSettled(search, location, roadType, count);
+		}
+	}
+
+	@Override
+	public void searchFinished(String search, GeographicPoint start, GeographicPoint goal, 
+			boolean found, int count) {
+		delegate.searchFinished(search, start, goal, found, count);
+	}
+
+	@Override
+	public void missingNode(String search, String role, GeographicPoint location) {
+		delegate.missingNode(search, role, location);
+	}
+
+	@Override
+	public void noPathFound(String search, GeographicPoint start, GeographicPoint goal) {
+		delegate.noPathFound(search, start, goal);
+	}
+}
@@ -0,0 +1,57 @@
+package tracing;
+
+import geography.GeographicPoint;
+
+/**
+ * Receives events from the graph searches.
+ * 
+ * Searches ask isEnabled before building any event arguments, and the 
+ * per-node check is made once per search rather than once per node, so 
+ * a tracer that is switched off costs nothing inside the search loop.
+ *
+ */
+public interface SearchTracer {
+
+	/**
+	 * Whether events at the given level will be reported.
+	 * @param level The level of the event about to be sent
+	 * @return true if the event should be sent
+	 */
+	boolean isEnabled(TraceLevel level);
+
+	/**
+	 * A node was removed from the frontier of a search (TRACE).
+	 * @param search The name of the search, e.g. "dijkstra"
+	 * @param location The location of the node
+	 * @param roadType The type of the road the node was reached by
+	 * @param count The number of nodes removed so far, including this one
+	 */
+	void nodeSettled(String search, GeographicPoint location, String roadType, int count);
+
+	/**
+	 * A search has finished (DEBUG).
+	 * @param search The name of the search
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param found Whether a path was found
+	 * @param count The number of nodes removed from the frontier
+	 */
+	void searchFinished(String search, GeographicPoint start, GeographicPoint goal, 
+			boolean found, int count);
+
+	/**
+	 * A search was asked to start or end at a point that is not a node (WARN).
+	 * @param search The name of the search
+	 * @param role "Start" or "End"
+	 * @param location The missing location
+	 */
+	void missingNode(String search, String role, GeographicPoint location);
+
+	/**
+	 * A search ran to completion without reaching the goal (INFO).
+	 * @param search The name of the search
+	 * @param start The starting location
+	 * @param goal The goal location
+	 */
+	void noPathFound(String search, GeographicPoint start, GeographicPoint goal);
+}
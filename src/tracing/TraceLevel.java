@@ -0,0 +1,47 @@
+package tracing;
+
+/**
+ * Verbosity levels for search tracing, ordered from quietest to
+ * most verbose. A tracer configured at a given level reports every
+ * event at that level or below it.
+ *
+ */
+public enum TraceLevel {
+	/** Nothing is reported */
+	OFF,
+	/** Invalid input, such as a start or goal that is not in the graph */
+	WARN,
+	/** Search outcomes that are worth telling the user about (no path found) */
+	INFO,
+	/** One summary line per search */
+	DEBUG,
+	/** One event per settled node.  Very expensive on real maps. */
+	TRACE;
+
+	/**
+	 * Whether a tracer running at this level reports events at the other level.
+	 * @param other The level of the event
+	 * @return true if the event should be reported
+	 */
+	public boolean includes(TraceLevel other) {
+		return other != OFF && other.ordinal() <= this.ordinal();
+	}
+
+	/**
+	 * Parse a level name, ignoring case.
+	 * @param name The name of the level, e.g. "info"
+	 * @param fallback The level to use if name is null or not recognised
+	 * @return The matching level
+	 */
+	public static TraceLevel parse(String name, TraceLevel fallback) {
+		if (name == null) {
+			return fallback;
+		}
+		for (TraceLevel level : values()) {
+			if (level.name().equalsIgnoreCase(name.trim())) {
+				return level;
+			}
+		}
+		return fallback;
+	}
+}
@@ -0,0 +1,91 @@
+package tracing;
+
+import geography.GeographicPoint;
+
+/**
+ * Holds the default tracer given to new graphs.
+ * 
+ * The default is read once from system properties:
+ *   -Dtracing.sink=console|jfr|none   (default console)
+ *   -Dtracing.level=off|warn|info|debug|trace   (default info)
+ *   -Dtracing.sample=N   forward one node event in N (default 1)
+ * 
+ * With the defaults, searches report missing nodes and failed searches 
+ * but never individual nodes.
+ *
+ */
+public final class Tracing {
+
+	/** A tracer that drops everything */
+	public static final SearchTracer NONE = new SearchTracer() {
+		public boolean isEnabled(TraceLevel level) { return false; }
+		public void nodeSettled(String search, GeographicPoint location, String roadType, int count) {}
+		public void searchFinished(String search, GeographicPoint start, GeographicPoint goal, 
+				boolean found, int count) {}
+		public void missingNode(String search, String role, GeographicPoint location) {}
+		public void noPathFound(String search, GeographicPoint start, GeographicPoint goal) {}
+	};
+
+	private static volatile SearchTracer defaultTracer = fromSystemProperties();
+
+	private Tracing() {}
+
+	/**
+	 * @return The tracer that new graphs start with
+	 */
+	public static SearchTracer getDefaultTracer() {
+		return defaultTracer;
+	}
+
+	/**
+	 * Replace the tracer that new graphs start with.  Graphs that
+	 * already exist keep their tracer.
+	 * @param tracer The new default, or null for no tracing
+	 */
+	public static void setDefaultTracer(SearchTracer tracer) {
+		defaultTracer = (tracer == null) ? NONE : tracer;
+	}
+
+	private static SearchTracer fromSystemProperties() {
+		TraceLevel level = TraceLevel.parse(System.getProperty("tracing.level"), TraceLevel.INFO);
+		String sink = System.getProperty("tracing.sink", "console");
+		if (level == TraceLevel.OFF || sink.equalsIgnoreCase("none")) {
+			return NONE;
+		}
+
+		SearchTracer tracer;
+		if (sink.equalsIgnoreCase("jfr")) {
+			tracer = jfrTracer(level);
+		}
+		else {
+			tracer = new ConsoleTracer(level);
+		}
+
+		long interval = 1;
+		try {
+			interval = Long.parseLong(System.getProperty("tracing.sample", "1"));
+		}
+		catch (NumberFormatException e) {
+			System.err.println("Ignoring bad tracing.sample value: " + e.getMessage());
+		}
+		if (interval > 1) {
+			tracer = new SamplingTracer(tracer, interval);
+		}
+		return tracer;
+	}
+
+	/* JfrTracer needs jdk.jfr, so it is only loaded by name; the rest of 
+	 * the code builds and runs on any Java 8, and without Flight Recorder 
+	 * the searches are simply not traced.
+	 */
+	private static SearchTracer jfrTracer(TraceLevel level) {
+		try {
+			Class<?> jfr = Class.forName("tracing.JfrTracer");
+			return (SearchTracer) jfr.getConstructor(TraceLevel.class).newInstance(level);
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			System.err.println("Flight Recorder is not available, so searches are not traced: " + e);
+			return NONE;
+		}
+	}
+}
@@ -47,7 +47,7 @@ public class GraphLoader
 	{
 		Collection<GeographicPoint> nodes = new HashSet<GeographicPoint>();
         HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = 
-        		buildPointMapOneWay(roadDataFile);
+        		buildPointMapOneWay(roadDataFile, new RoadDictionary());
 		
         // Print the intersections to the file
 		List<GeographicPoint> intersections = findIntersections(pointMap);
@@ -135,8 +135,9 @@ public class GraphLoader
 			Set<GeographicPoint> intersectionsToLoad)
 	{
 		Collection<GeographicPoint> nodes = new HashSet<GeographicPoint>();
+		RoadDictionary dictionary = map.getRoadDictionary();
         HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = 
-        		buildPointMapOneWay(filename);
+        		buildPointMapOneWay(filename, dictionary);
 		
         // Add the nodes to the graph
 		List<GeographicPoint> intersections = findIntersections(pointMap);
@@ -149,7 +150,7 @@ public class GraphLoader
 		}
 		
 		
-		addEdgesAndSegments(nodes, pointMap, map, segments);
+		addEdgesAndSegments(nodes, pointMap, map, segments, dictionary);
 	}
 
 	
@@ -174,7 +175,7 @@ public class GraphLoader
 	public static void loadRoadMap(String filename, basicgraph.Graph theGraph)
 	{
 		HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = 
-        		buildPointMapOneWay(filename);
+        		buildPointMapOneWay(filename, new RoadDictionary());
 		
 		HashMap<Integer,GeographicPoint> vertexMap = 
 				new HashMap<Integer,GeographicPoint>();
@@ -271,6 +272,75 @@ public class GraphLoader
 	}
 		
 	
+	/** Read in the locations of airports from a file in the format of
+	 * the OpenFlights airports.dat:
+	 * Airport ID, Name, City, Country, IATA code, ICAO code, Latitude,
+	 * Longitude, and further fields that are not used.
+	 * Text fields are in double quotes and may contain commas; missing
+	 * values are \N.  Lines without a readable location are skipped.
+	 * @param filename The airports file
+	 * @return The location of each airport, under both its IATA and its
+	 *   ICAO code, so it matches either kind of code in a route file
+	 */
+	public static HashMap<String,GeographicPoint> loadAirportLocations(String filename)
+	{
+		HashMap<String,GeographicPoint> locations = new HashMap<String,GeographicPoint>();
+		BufferedReader reader = null;
+		try {
+			String nextLine;
+			reader = new BufferedReader(new FileReader(filename));
+			while ((nextLine = reader.readLine()) != null) {
+				List<String> fields = splitQuoted(nextLine);
+				if (fields.size() < 8) {
+					continue;
+				}
+				GeographicPoint location;
+				try {
+					location = new GeographicPoint(Double.parseDouble(fields.get(6)), 
+							Double.parseDouble(fields.get(7)));
+				}
+				catch (NumberFormatException e) {
+					continue;
+				}
+				for (int i = 4; i <= 5; i++) {
+					String code = fields.get(i);
+					if (!code.isEmpty() && !code.equals("\\N")) {
+						locations.put(code, location);
+					}
+				}
+			}
+			reader.close();
+		} catch (IOException e) {
+			System.err.println("Problem loading airport file: " + filename);
+			e.printStackTrace();
+		}
+		return locations;
+	}
+	
+	/** Split a line of comma separated fields, some of them in double quotes */
+	private static List<String> splitQuoted(String line)
+	{
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			}
+			else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+		
+	
 	/**
 	 * Loads a graph from a file.  The file is specified with each 
 	 * line representing an edge.  Vertices are numbered from 
@@ -325,7 +395,8 @@ public class GraphLoader
 	private static void addEdgesAndSegments(Collection<GeographicPoint> nodes, 
 			HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap,
 			MapGraph map, 
-			HashMap<GeographicPoint,HashSet<RoadSegment>> segments)
+			HashMap<GeographicPoint,HashSet<RoadSegment>> segments,
+			RoadDictionary dictionary)
 	{
 	
 		// Now we need to add the edges
@@ -343,7 +414,9 @@ public class GraphLoader
 						findPointsOnEdge(pointMap, info, nodes);
 				GeographicPoint end = pointsOnEdge.remove(pointsOnEdge.size()-1);
 				double length = getRoadLength(pt, end, pointsOnEdge);
-				map.addEdge(pt, end, info.roadName, info.roadType, length);
+				String roadName = dictionary.getName(info.roadName);
+				String roadType = dictionary.getType(info.roadType);
+				map.addEdge(pt, end, roadName, roadType, length, pointsOnEdge);
 
 				// If the segments variable is not null, then we 
 				// save the road geometry
@@ -355,7 +428,7 @@ public class GraphLoader
 						segments.put(pt,segs);
 					}
 					RoadSegment seg = new RoadSegment(pt, end, pointsOnEdge, 
-							info.roadName, info.roadType, length);
+							roadName, roadType, length);
 					segs.add(seg);
 					segs = segments.get(end);
 					if (segs == null) {
@@ -467,7 +540,7 @@ public class GraphLoader
 				// and intersection (dead end)
 				if (!(roadsIn.get(0).point1.equals(roadsOut.get(0).point2) &&
 						roadsIn.get(0).point2.equals(roadsOut.get(0).point1))
-						&& roadsIn.get(0).roadName.equals(roadsOut.get(0).roadName)) {
+						&& roadsIn.get(0).roadName == roadsOut.get(0).roadName) {
 					isNode = false;
 				}
 			}
@@ -477,15 +550,15 @@ public class GraphLoader
 				// this is not an intersection because the roads pass
 				// through.
 			
-				String name = roadsIn.get(0).roadName;
+				int name = roadsIn.get(0).roadName;
 				boolean sameName = true;
 				for (RoadLineInfo info : roadsIn) {
-					if (!info.roadName.equals(name)) {
+					if (info.roadName != name) {
 						sameName = false;
 					}
 				}
 				for (RoadLineInfo info : roadsOut) {
-					if (!info.roadName.equals(name)) {
+					if (info.roadName != name) {
 						sameName = false;
 					}
 				}
@@ -520,7 +593,7 @@ public class GraphLoader
 	// The first list stores the outgoing roads while the second 
 	// stores the outgoing roads.
 	private static HashMap<GeographicPoint, List<LinkedList<RoadLineInfo>>>
-	buildPointMapOneWay(String filename)
+	buildPointMapOneWay(String filename, RoadDictionary dictionary)
 	{
 		BufferedReader reader = null;
         HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = 
@@ -530,7 +603,7 @@ public class GraphLoader
             reader = new BufferedReader(new FileReader(filename));
             // Read the lines out of the file and put them in a HashMap by points
             while ((nextLine = reader.readLine()) != null) {
-            	RoadLineInfo line = splitInputString(nextLine);
+            	RoadLineInfo line = splitInputString(nextLine, dictionary);
             	addToPointsMapOneWay(line, pointMap);
             }
             reader.close();
@@ -570,8 +643,9 @@ public class GraphLoader
 		
 	}
 	
-	// Split the input string into the line information
-	private static RoadLineInfo splitInputString(String input)
+	// Split the input string into the line information, entering the road
+	// name and type in the dictionary
+	private static RoadLineInfo splitInputString(String input, RoadDictionary dictionary)
 	{	
 		
 		ArrayList<String> tokens = new ArrayList<String>();
@@ -594,7 +668,8 @@ public class GraphLoader
         GeographicPoint p1 = new GeographicPoint(lat1, lon1);
         GeographicPoint p2 = new GeographicPoint(lat2, lon2);
 
-        return new RoadLineInfo(p1, p2, tokens.get(4), tokens.get(5));
+        return new RoadLineInfo(p1, p2, dictionary.nameCode(tokens.get(4)), 
+        		dictionary.typeCode(tokens.get(5)));
 		
 	}
 	
@@ -622,17 +697,18 @@ class RoadLineInfo
 	GeographicPoint point1;
 	GeographicPoint point2;
 	
-	String roadName;
-	String roadType;
+	// Codes of the road name and type in the data set's RoadDictionary
+	int roadName;
+	int roadType;
 	
 	/** Create a new RoadLineInfo object to store information about the line 
 	 * read from the file
 	 * @param p1 One of the points
 	 * @param p2 The other point
-	 * @param roadName The name of the road
-	 * @param roadType The type of the road
+	 * @param roadName The code of the name of the road
+	 * @param roadType The code of the type of the road
 	 */
-	RoadLineInfo(GeographicPoint p1, GeographicPoint p2, String roadName, String roadType) 
+	RoadLineInfo(GeographicPoint p1, GeographicPoint p2, int roadName, int roadType) 
 	{
 		point1 = p1;
 		point2 = p2;
@@ -665,7 +741,7 @@ class RoadLineInfo
 		}
 		RoadLineInfo info = (RoadLineInfo)o;
 		return info.point1.equals(this.point1) && info.point2.equals(this.point2)  &&
-				info.roadType.equals(this.roadType) && info.roadName.equals(this.roadName);
+				info.roadType == this.roadType && info.roadName == this.roadName;
 				
 	}
 	
@@ -685,7 +761,7 @@ class RoadLineInfo
 	 */
 	public boolean sameRoad(RoadLineInfo info)
 	{
-		return info.roadName.equals(this.roadName) && info.roadType.equals(this.roadType);
+		return info.roadName == this.roadName && info.roadType == this.roadType;
 	}
 	
 	/** Return a copy of this LineInfo in the other direction */
@@ -700,13 +776,13 @@ class RoadLineInfo
 	public boolean isReverse(RoadLineInfo other)
 	{
 		return this.point1.equals(other.point2) && this.point2.equals(other.point1) &&
-				this.roadName.equals(other.roadName) && this.roadType.equals(other.roadType);
+				this.roadName == other.roadName && this.roadType == other.roadType;
 	}
 	
 	/** Return the string representation of this LineInfo. */
 	public String toString()
 	{
-		return this.point1 + " " + this.point2 + " " + this.roadName + " " + this.roadType;
+		return this.point1 + " " + this.point2 + " name#" + this.roadName + " type#" + this.roadType;
 		
 	}
 	
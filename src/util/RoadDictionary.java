@@ -0,0 +1,132 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The road names and road types of one data set, each stored once and
+ * numbered densely from 0 as they are first read, so that edges can keep
+ * int codes instead of their own copies of the strings, and checking a
+ * road's type is an int compare.
+ *
+ * The highway types the map maker fetches are entered first, in a fixed
+ * order, so their codes are the same in every data set and can be named
+ * by constants such as RESIDENTIAL.  Type codes are small, so a set of
+ * them fits the bits of a long.
+ *
+ * Like the graph, a dictionary is filled while its data set loads and
+ * only read afterwards; adding to it while others read is not safe.
+ *
+ */
+public final class RoadDictionary {
+
+	/** The highway types the map maker fetches, by code */
+	public static final String[] HIGHWAY_TYPES = {"motorway", "trunk", "primary", "secondary",
+			"tertiary", "unclassified", "residential", "motorway_link", "trunk_link",
+			"primary_link", "secondary_link", "tertiary_link", "living_street"};
+
+	public static final int MOTORWAY = 0;
+	public static final int RESIDENTIAL = 6;
+	public static final int LIVING_STREET = 12;
+
+	private final HashMap<String,Integer> nameCodes = new HashMap<String,Integer>();
+	private final List<String> names = new ArrayList<String>();
+	private final HashMap<String,Integer> typeCodes = new HashMap<String,Integer>();
+	private final List<String> types = new ArrayList<String>();
+
+	public RoadDictionary()
+	{
+		for (String type : HIGHWAY_TYPES) {
+			typeCode(type);
+		}
+	}
+
+	/**
+	 * Get the code of a road name, adding it if it is new
+	 * @param name The name
+	 * @return Its code
+	 */
+	public int nameCode(String name)
+	{
+		return intern(name, nameCodes, names);
+	}
+
+	/**
+	 * Get the code of a road type, adding it if it is new
+	 * @param type The type
+	 * @return Its code
+	 */
+	public int typeCode(String type)
+	{
+		return intern(type, typeCodes, types);
+	}
+
+	private static int intern(String symbol, HashMap<String,Integer> codes, List<String> symbols)
+	{
+		Integer code = codes.get(symbol);
+		if (code == null) {
+			code = symbols.size();
+			codes.put(symbol, code);
+			symbols.add(symbol);
+		}
+		return code;
+	}
+
+	/** @return The code of a road name, or -1 if no road has it */
+	public int findName(String name)
+	{
+		Integer code = nameCodes.get(name);
+		return (code == null) ? -1 : code;
+	}
+
+	/** @return The code of a road type, or -1 if no road has it */
+	public int findType(String type)
+	{
+		Integer code = typeCodes.get(type);
+		return (code == null) ? -1 : code;
+	}
+
+	/** @return The road name with a code */
+	public String getName(int code)
+	{
+		return names.get(code);
+	}
+
+	/** @return The road type with a code */
+	public String getType(int code)
+	{
+		return types.get(code);
+	}
+
+	/** @return The number of distinct road names */
+	public int getNumNames()
+	{
+		return names.size();
+	}
+
+	/** @return The number of distinct road types */
+	public int getNumTypes()
+	{
+		return types.size();
+	}
+
+	/**
+	 * Get the set of some road types as bits, for testing a road's type
+	 * against several at once with (mask >>> code & 1) != 0
+	 * @param types The types
+	 * @return The bits of their codes; types with codes of 64 or more, or
+	 *   that no road has, are left out
+	 */
+	public long typeMask(String... types)
+	{
+		long mask = 0;
+		for (String type : types) {
+			int code = findType(type);
+			if (code >= 0 && code < 64) {
+				mask |= 1L << code;
+			}
+		}
+		return mask;
+	}
+}
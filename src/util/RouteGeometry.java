@@ -0,0 +1,61 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import geography.GeographicPoint;
+import geography.RoadSegment;
+
+/**
+ * Turns a route through intersections into the full road geometry
+ * so it can be drawn on a map.
+ *
+ */
+public class RouteGeometry {
+
+	private RouteGeometry() {}
+
+	/**
+	 * Construct path including road segments
+	 * @param path The path with only intersections
+	 * @param roads The road segments touching each intersection, as 
+	 *   filled in by GraphLoader.loadRoadMap
+	 * @return The list of points along the roads of the route
+	 */
+	public static List<GeographicPoint> constructMapPath(List<GeographicPoint> path,
+			HashMap<GeographicPoint,HashSet<RoadSegment>> roads)
+	{
+		List<GeographicPoint> retVal = new ArrayList<GeographicPoint>();
+
+		for (int i = 0; i < path.size() - 1; i++) {
+			GeographicPoint curr = path.get(i);
+			GeographicPoint next = path.get(i+1);
+
+			HashSet<RoadSegment> segments = roads.get(curr);
+			if (segments == null) {
+				continue;
+			}
+
+			// use the shortest segment joining the two intersections
+			RoadSegment chosenSegment = null;
+			double minLength = Double.MAX_VALUE;
+			for (RoadSegment currSegment : segments) {
+				if (next.equals(currSegment.getOtherPoint(curr)) 
+						&& currSegment.getLength() < minLength) {
+					chosenSegment = currSegment;
+					minLength = currSegment.getLength();
+				}
+			}
+
+			if (chosenSegment != null) {
+				retVal.addAll(chosenSegment.getPoints(curr, next));
+			}
+			else {
+				System.err.println("ERROR in constructMapPath : chosenSegment was null");
+			}
+		}
+		return retVal;
+	}
+}
@@ -0,0 +1,49 @@
+package util;
+
+/**
+ * Decides how long the scratch arrays a thread keeps between searches
+ * should be.  They grow at once to fit a larger graph.  They shrink to fit
+ * a smaller one only after it has been searched SHRINK_AFTER times in a
+ * row, so a thread does not hold arrays sized for the largest graph it
+ * ever searched, while one that alternates between a large and a small
+ * graph does not reallocate each time.
+ *
+ * Each scratch object keeps its own, and like the scratch it is only used
+ * by one thread.
+ *
+ */
+public final class ScratchCapacity {
+
+	private static final int MIN_CAPACITY = 16;
+
+	/** The number of searches in a row needing under half the arrays before they shrink */
+	public static final int SHRINK_AFTER = 64;
+
+	private int capacity;
+	private int oversized;
+
+	/**
+	 * Get the length the arrays should have for the next search
+	 * @param n The number of entries the search needs
+	 * @return At least n; more than twice n only until the arrays have been
+	 *   that much too long for SHRINK_AFTER searches in a row
+	 */
+	public int fit(int n)
+	{
+		int needed = Math.max(n, MIN_CAPACITY);
+		if (capacity < needed) {
+			capacity = needed;
+			oversized = 0;
+		}
+		else if (capacity > 2 * needed) {
+			if (++oversized >= SHRINK_AFTER) {
+				capacity = needed;
+				oversized = 0;
+			}
+		}
+		else {
+			oversized = 0;
+		}
+		return capacity;
+	}
+}